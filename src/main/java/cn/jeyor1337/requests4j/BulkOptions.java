@@ -0,0 +1,55 @@
+package cn.jeyor1337.requests4j;
+
+/**
+ * Settings for sending many requests at once with {@link Session#sendAll} and {@link Session#sendStream}.
+ */
+public class BulkOptions {
+    private int concurrency = 8;
+    private int perHostConcurrency;
+    private boolean failFast = true;
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Sets the maximum number of requests in flight. Defaults to 8.
+     */
+    public BulkOptions setConcurrency(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be positive");
+        }
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    public int getPerHostConcurrency() {
+        return perHostConcurrency;
+    }
+
+    /**
+     * Sets the maximum number of requests in flight to any one host, or 0 for no limit beyond the overall one.
+     * Requests for a busy host wait while requests for other hosts go ahead.
+     */
+    public BulkOptions setPerHostConcurrency(int perHostConcurrency) {
+        if (perHostConcurrency < 0) {
+            throw new IllegalArgumentException("perHostConcurrency must not be negative");
+        }
+        this.perHostConcurrency = perHostConcurrency;
+        return this;
+    }
+
+    public boolean isFailFast() {
+        return failFast;
+    }
+
+    /**
+     * Sets whether the first failure stops the batch: requests not yet sent are skipped and
+     * those in flight are cancelled. Otherwise every request is sent and failures are
+     * reported in the results. On by default.
+     */
+    public BulkOptions setFailFast(boolean failFast) {
+        this.failFast = failFast;
+        return this;
+    }
+}
@@ -0,0 +1,49 @@
+package cn.jeyor1337.requests4j;
+
+import cn.jeyor1337.requests4j.exceptions.RequestException;
+
+/**
+ * The outcome of one request sent in bulk: either a response or the error it failed with.
+ */
+public class BulkResult {
+    private final int index;
+    private final Request request;
+    private final Response response;
+    private final RequestException error;
+
+    BulkResult(int index, Request request, Response response, RequestException error) {
+        this.index = index;
+        this.request = request;
+        this.response = response;
+        this.error = error;
+    }
+
+    /**
+     * Returns the position of the request in the input, starting at 0.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public Request getRequest() {
+        return request;
+    }
+
+    /**
+     * Returns the response, or null if the request failed.
+     */
+    public Response getResponse() {
+        return response;
+    }
+
+    /**
+     * Returns the error the request failed with, or null if it succeeded.
+     */
+    public RequestException getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
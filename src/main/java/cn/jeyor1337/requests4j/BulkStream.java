@@ -0,0 +1,210 @@
+package cn.jeyor1337.requests4j;
+
+import cn.jeyor1337.requests4j.exceptions.InvalidURL;
+import cn.jeyor1337.requests4j.exceptions.RequestException;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.UnaryOperator;
+
+/**
+ * Results of requests sent in bulk, in the order they complete.
+ *
+ * Requests are taken from the input only when there is room to send them, so a lazy iterator
+ * is never read far ahead of the network. Scheduling happens on the thread consuming the
+ * results; the requests themselves run on the session's executor.
+ *
+ * With fail-fast on, iteration ends after the first failed result and the requests in flight
+ * are cancelled. Closing the stream early cancels them as well.
+ */
+public class BulkStream implements Iterator<BulkResult>, AutoCloseable {
+    private final Iterator<? extends Request> input;
+    private final BulkOptions options;
+    private final ExecutorService executor;
+    private final UnaryOperator<Request> prepare;
+    private final Sender sender;
+    private final BlockingQueue<Completion> completed = new LinkedBlockingQueue<>();
+    private final Map<Integer, Future<?>> inFlight = new HashMap<>();
+    private final Map<String, Integer> hostLoad = new HashMap<>();
+    private final Deque<Pending> waiting = new ArrayDeque<>();
+    private int nextIndex;
+    private volatile boolean closed;
+
+    BulkStream(Iterator<? extends Request> input, BulkOptions options, ExecutorService executor,
+               UnaryOperator<Request> prepare, Sender sender) {
+        this.input = input;
+        this.options = options;
+        this.executor = executor;
+        this.prepare = prepare;
+        this.sender = sender;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        fill();
+        return !inFlight.isEmpty();
+    }
+
+    /**
+     * Waits for the next request to complete and returns its result.
+     *
+     * @throws NoSuchElementException if no requests are left, or the thread was interrupted while waiting
+     */
+    @Override
+    public BulkResult next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Completion completion;
+        try {
+            completion = completed.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new NoSuchElementException("Interrupted while waiting for a response");
+        }
+        inFlight.remove(completion.pending.index);
+        release(completion.pending.host);
+
+        BulkResult result = completion.result;
+        if (!result.isSuccess() && options.isFailFast()) {
+            close();
+        }
+        return result;
+    }
+
+    /**
+     * Starts requests until the concurrency limits are reached or the input runs out.
+     */
+    private void fill() {
+        while (!closed && inFlight.size() < options.getConcurrency()) {
+            Pending pending = nextStartable();
+            if (pending == null) {
+                return;
+            }
+            start(pending);
+        }
+    }
+
+    private Pending nextStartable() {
+        for (Iterator<Pending> it = waiting.iterator(); it.hasNext(); ) {
+            Pending pending = it.next();
+            if (hasRoom(pending.host)) {
+                it.remove();
+                return pending;
+            }
+        }
+        // Hold at most one batch of requests for busy hosts before pausing the input
+        while (waiting.size() < options.getConcurrency() && input.hasNext()) {
+            Request request = input.next();
+            Pending pending = new Pending(nextIndex++, request, hostOf(request));
+            if (hasRoom(pending.host)) {
+                return pending;
+            }
+            waiting.add(pending);
+        }
+        return null;
+    }
+
+    private boolean hasRoom(String host) {
+        int limit = options.getPerHostConcurrency();
+        return limit == 0 || hostLoad.getOrDefault(host, 0) < limit;
+    }
+
+    private void release(String host) {
+        if (host == null) {
+            return;
+        }
+        hostLoad.computeIfPresent(host, (key, load) -> load > 1 ? load - 1 : null);
+    }
+
+    private void start(Pending pending) {
+        if (pending.host == null) {
+            inFlight.put(pending.index, null);
+            complete(pending, null, new InvalidURL("Invalid URL: " + pending.request.getUrl()));
+            return;
+        }
+        hostLoad.merge(pending.host, 1, Integer::sum);
+        Request prepared = prepare.apply(pending.request);
+        try {
+            inFlight.put(pending.index, executor.submit(() -> {
+                try {
+                    Response response = sender.send(prepared);
+                    if (closed) {
+                        response.close(); // cancelled while in flight; nobody will read it
+                    }
+                    complete(pending, response, null);
+                } catch (RequestException e) {
+                    complete(pending, null, e);
+                } catch (RuntimeException e) {
+                    complete(pending, null, new RequestException(String.valueOf(e.getMessage()), e));
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            inFlight.put(pending.index, null);
+            complete(pending, null, new RequestException("Executor rejected the request", e));
+        }
+    }
+
+    private void complete(Pending pending, Response response, RequestException error) {
+        completed.add(new Completion(pending, new BulkResult(pending.index, pending.request, response, error)));
+    }
+
+    private static String hostOf(Request request) {
+        try {
+            return new URL(request.getUrl()).getHost().toLowerCase(Locale.ROOT);
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Stops sending: requests not yet started are skipped and those in flight are cancelled.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Future<?> future : inFlight.values()) {
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static final class Pending {
+        final int index;
+        final Request request;
+        final String host;
+
+        Pending(int index, Request request, String host) {
+            this.index = index;
+            this.request = request;
+            this.host = host;
+        }
+    }
+
+    private static final class Completion {
+        final Pending pending;
+        final BulkResult result;
+
+        Completion(Pending pending, BulkResult result) {
+            this.pending = pending;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package cn.jeyor1337.requests4j;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Resolves host names to addresses for transports that open their own sockets.
+ */
+public interface DnsResolver {
+    /**
+     * Resolves with the JVM's {@link InetAddress} lookup and cache.
+     */
+    DnsResolver SYSTEM = host -> Arrays.asList(InetAddress.getAllByName(host));
+
+    /**
+     * Resolve the host to one or more addresses, in order of preference.
+     */
+    List<InetAddress> resolve(String host) throws UnknownHostException;
+}
@@ -0,0 +1,357 @@
+package cn.jeyor1337.requests4j;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Response headers: names compared ignoring case, kept in the order they were received.
+ * Each value occupies one slot of parallel flat arrays, so a header sent several times keeps
+ * all of its values. Well-known header names are shared rather than allocated for each response,
+ * and values added as raw header lines are only cut out of the line when first read.
+ *
+ * As a map, each name appears once with all of its values. Well-known names take their usual
+ * spelling, such as {@code Content-Type} for {@code content-type}; others are spelled as first received.
+ * A Headers object is not synchronized; reading it from several threads is safe once it is filled.
+ */
+public final class Headers extends AbstractMap<String, List<String>> {
+    private static final String[] COMMON_NAMES = {
+            "Accept-Ranges", "Access-Control-Allow-Origin", "Age", "Allow", "Alt-Svc", "Cache-Control",
+            "Connection", "Content-Disposition", "Content-Encoding", "Content-Language", "Content-Length",
+            "Content-Location", "Content-Range", "Content-Security-Policy", "Content-Type", "Date", "ETag",
+            "Expires", "Keep-Alive", "Last-Modified", "Link", "Location", "Pragma", "Proxy-Authenticate",
+            "RateLimit-Limit", "RateLimit-Remaining", "RateLimit-Reset", "Referrer-Policy", "Retry-After",
+            "Server", "Set-Cookie", "Strict-Transport-Security", "Trailer", "Transfer-Encoding", "Upgrade",
+            "Vary", "Via", "WWW-Authenticate", "X-Content-Type-Options", "X-Frame-Options",
+            "X-RateLimit-Limit", "X-RateLimit-Remaining", "X-RateLimit-Reset", "X-XSS-Protection"
+    };
+
+    // Common names grouped by length, so interning compares a few candidates in place
+    private static final String[][] COMMON_BY_LENGTH = groupByLength(COMMON_NAMES);
+
+    private String[] names;
+    private String[] values;
+    private String[] lines;
+    private int size;
+    private Set<Entry<String, List<String>>> entrySet;
+
+    public Headers() {
+        this.names = new String[16];
+        this.values = new String[16];
+        this.lines = new String[16];
+    }
+
+    /**
+     * Copies headers from a map, skipping the {@code null} key some APIs use for the status line.
+     */
+    public Headers(Map<String, ? extends List<String>> headers) {
+        this();
+        for (Map.Entry<String, ? extends List<String>> header : headers.entrySet()) {
+            if (header.getKey() != null && header.getValue() != null) {
+                for (String value : header.getValue()) {
+                    add(header.getKey(), value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a value for a header, after any values it already has.
+     */
+    public Headers add(String name, String value) {
+        append(intern(name, 0, name.length()), value, null);
+        return this;
+    }
+
+    /**
+     * Adds a raw {@code Name: value} header line; the value is extracted when first read.
+     *
+     * @throws IllegalArgumentException if the line has no name
+     */
+    public Headers addLine(String line) {
+        int colon = line.indexOf(':');
+        int start = skipSpaces(line, 0, colon);
+        int end = trimSpaces(line, start, colon);
+        if (colon < 0 || start == end) {
+            throw new IllegalArgumentException("Invalid header line: " + line);
+        }
+        append(intern(line, start, end), null, line);
+        return this;
+    }
+
+    /**
+     * Replaces all values of a header with one value.
+     */
+    public Headers set(String name, String value) {
+        removeAll(name);
+        return add(name, value);
+    }
+
+    /**
+     * Returns the first value of a header, or null if it is absent.
+     */
+    public String getFirst(String name) {
+        int i = indexOf(name, 0);
+        return i < 0 ? null : value(i);
+    }
+
+    /**
+     * Returns all values of a header in the order received, or an empty list if it is absent.
+     */
+    public List<String> getAll(String name) {
+        int first = indexOf(name, 0);
+        if (first < 0) {
+            return Collections.emptyList();
+        }
+        int second = indexOf(name, first + 1);
+        if (second < 0) {
+            return Collections.singletonList(value(first));
+        }
+        List<String> all = new ArrayList<>(4);
+        all.add(value(first));
+        for (int i = second; i >= 0; i = indexOf(name, i + 1)) {
+            all.add(value(i));
+        }
+        return Collections.unmodifiableList(all);
+    }
+
+    /**
+     * Returns whether the header is present, ignoring case.
+     */
+    public boolean contains(String name) {
+        return indexOf(name, 0) >= 0;
+    }
+
+    /**
+     * Returns the number of values held, counting each value of a repeated header.
+     */
+    public int valueCount() {
+        return size;
+    }
+
+    @Override
+    public List<String> get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        List<String> all = getAll((String) key);
+        return all.isEmpty() ? null : all;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && contains((String) key);
+    }
+
+    /**
+     * Replaces all values of a header.
+     */
+    @Override
+    public List<String> put(String name, List<String> values) {
+        List<String> previous = removeAll(name);
+        for (String value : values) {
+            add(name, value);
+        }
+        return previous;
+    }
+
+    @Override
+    public List<String> remove(Object key) {
+        return key instanceof String ? removeAll((String) key) : null;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(names, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        Arrays.fill(lines, 0, size, null);
+        size = 0;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public Set<Entry<String, List<String>>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<String, List<String>>>() {
+                @Override
+                public Iterator<Entry<String, List<String>>> iterator() {
+                    return new NameIterator();
+                }
+
+                @Override
+                public int size() {
+                    int count = 0;
+                    for (int i = 0; i < size; i++) {
+                        if (isFirst(i)) {
+                            count++;
+                        }
+                    }
+                    return count;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private List<String> removeAll(String name) {
+        List<String> previous = get(name);
+        if (previous == null) {
+            return null;
+        }
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (!names[i].equalsIgnoreCase(name)) {
+                names[kept] = names[i];
+                values[kept] = values[i];
+                lines[kept] = lines[i];
+                kept++;
+            }
+        }
+        Arrays.fill(names, kept, size, null);
+        Arrays.fill(values, kept, size, null);
+        Arrays.fill(lines, kept, size, null);
+        size = kept;
+        return previous;
+    }
+
+    private void append(String name, String value, String line) {
+        if (size == names.length) {
+            int capacity = size * 2;
+            names = Arrays.copyOf(names, capacity);
+            values = Arrays.copyOf(values, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+        }
+        names[size] = name;
+        values[size] = value;
+        lines[size] = line;
+        size++;
+    }
+
+    private int indexOf(String name, int from) {
+        for (int i = from; i < size; i++) {
+            if (names[i] == name || names[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isFirst(int index) {
+        String name = names[index];
+        for (int i = 0; i < index; i++) {
+            if (names[i] == name || names[i].equalsIgnoreCase(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String value(int index) {
+        String value = values[index];
+        if (value == null) {
+            // The raw line is kept, so concurrent readers can both extract the value safely
+            String line = lines[index];
+            int colon = line.indexOf(':');
+            int start = skipSpaces(line, colon + 1, line.length());
+            value = line.substring(start, trimSpaces(line, start, line.length()));
+            values[index] = value;
+        }
+        return value;
+    }
+
+    private static String intern(String text, int start, int end) {
+        int length = end - start;
+        if (length < COMMON_BY_LENGTH.length && COMMON_BY_LENGTH[length] != null) {
+            for (String common : COMMON_BY_LENGTH[length]) {
+                if (text.regionMatches(true, start, common, 0, length)) {
+                    return common;
+                }
+            }
+        }
+        return start == 0 && end == text.length() ? text : text.substring(start, end);
+    }
+
+    private static int skipSpaces(String text, int start, int end) {
+        while (start < end && (text.charAt(start) == ' ' || text.charAt(start) == '\t')) {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimSpaces(String text, int start, int end) {
+        while (end > start && (text.charAt(end - 1) == ' ' || text.charAt(end - 1) == '\t')) {
+            end--;
+        }
+        return end;
+    }
+
+    private static String[][] groupByLength(String[] names) {
+        int longest = 0;
+        for (String name : names) {
+            longest = Math.max(longest, name.length());
+        }
+        String[][] groups = new String[longest + 1][];
+        for (String name : names) {
+            String[] group = groups[name.length()];
+            group = group == null ? new String[1] : Arrays.copyOf(group, group.length + 1);
+            group[group.length - 1] = name;
+            groups[name.length()] = group;
+        }
+        return groups;
+    }
+
+    /**
+     * Iterates distinct names in the order first received, with all of their values.
+     */
+    private final class NameIterator implements Iterator<Entry<String, List<String>>> {
+        private int cursor;
+        private int next = -1;
+        private int last = -1;
+
+        @Override
+        public boolean hasNext() {
+            if (next < 0) {
+                next = cursor;
+                while (next < size && !isFirst(next)) {
+                    next++;
+                }
+            }
+            return next < size;
+        }
+
+        @Override
+        public Entry<String, List<String>> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            cursor = next + 1;
+            next = -1;
+            String name = names[last];
+            return new SimpleImmutableEntry<>(name, getAll(name));
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            removeAll(names[last]);
+            // Later values shifted down over the removed ones
+            cursor = last;
+            last = -1;
+            next = -1;
+        }
+    }
+}
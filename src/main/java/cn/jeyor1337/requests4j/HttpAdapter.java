@@ -1,29 +1,63 @@
 package cn.jeyor1337.requests4j;
 
+import cn.jeyor1337.requests4j.cookies.Cookie;
+import cn.jeyor1337.requests4j.cookies.CookieJar;
 import cn.jeyor1337.requests4j.exceptions.*;
+import cn.jeyor1337.requests4j.tls.TlsConfig;
+import cn.jeyor1337.requests4j.tls.TlsContext;
+import cn.jeyor1337.requests4j.transport.UrlConnectionTransport;
 import com.google.gson.Gson;
 
-import javax.net.ssl.HttpsURLConnection;
 import java.io.*;
-import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
 
 /**
  * HTTP adapter that handles the actual network communication.
+ * The exchange itself is delegated to a pluggable {@link Transport}.
  */
-public class HttpAdapter {
+public class HttpAdapter implements AutoCloseable {
     private static final int DEFAULT_TIMEOUT = 30000; // 30 seconds
     private static final int MAX_REDIRECTS = 30;
+    private static final int DEFAULT_MAX_THREADS = 64;
     private static final Gson gson = new Gson();
 
     private int connectTimeout = DEFAULT_TIMEOUT;
     private int readTimeout = DEFAULT_TIMEOUT;
     private boolean followRedirects = true;
     private boolean verifySSL = true;
+    private TlsConfig tlsConfig;
+    private Transport transport;
+    private boolean ownsTransport = true;
+    private ExecutorService executor;
+    private boolean ownsExecutor;
+    private boolean virtualThreads;
+    private int maxThreads = DEFAULT_MAX_THREADS;
+    private long compressThreshold = -1;
+    private int pipelineDepth;
+    private DnsResolver dnsResolver = DnsResolver.SYSTEM;
+    private volatile CookieJar cookieJar;
+
+    public HttpAdapter() {
+        this(new UrlConnectionTransport());
+    }
+
+    public HttpAdapter(Transport transport) {
+        this.transport = transport;
+    }
 
     /**
      * Send a request and return a Response.
@@ -33,127 +67,334 @@ public class HttpAdapter {
             String urlString = buildUrlWithParams(request.getUrl(), request.getParams());
             URL url = new URL(urlString);
 
-            Response response = executeRequest(url, request, 0);
+            Response response = executeRequest(url, request, prepareBody(request), 0);
             return response;
 
-        } catch (SocketTimeoutException e) {
-            throw new ConnectTimeout("Connection timeout", e);
         } catch (IOException e) {
-            throw new ConnectionError("Connection error: " + e.getMessage(), e);
+            throw translate(e);
+        }
+    }
+
+    /**
+     * Send a request without blocking the calling thread.
+     * The returned future completes exceptionally with a {@link RequestException} on failure.
+     */
+    public CompletableFuture<Response> sendAsync(Request request) {
+        CompletableFuture<Response> result = new CompletableFuture<>();
+        CompletableFuture<Response> exchange;
+        try {
+            String urlString = buildUrlWithParams(request.getUrl(), request.getParams());
+            URL url = new URL(urlString);
+            exchange = executeRequestAsync(url, request, prepareBody(request), 0);
+        } catch (IOException e) {
+            exchange = CompletableFuture.failedFuture(e);
+        }
+
+        exchange.whenComplete((response, error) -> {
+            if (error == null) {
+                result.complete(response);
+            } else {
+                result.completeExceptionally(translate(error));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Send requests in order and return their responses in the same order.
+     * When pipelining is enabled, consecutive GET and HEAD requests without a body or streaming
+     * are handed to the transport together so that it can pipeline them; others are sent one by one.
+     */
+    public List<Response> sendPipelined(List<Request> requests) throws RequestException {
+        List<Response> responses = new ArrayList<>(requests.size());
+        int i = 0;
+        while (i < requests.size()) {
+            if (pipelineDepth <= 1 || !isPipelinable(requests.get(i))) {
+                responses.add(send(requests.get(i)));
+                i++;
+                continue;
+            }
+            int end = i + 1;
+            while (end < requests.size() && isPipelinable(requests.get(end))) {
+                end++;
+            }
+            responses.addAll(executePipelined(requests.subList(i, end)));
+            i = end;
+        }
+        return responses;
+    }
+
+    private List<Response> executePipelined(List<Request> requests) throws RequestException {
+        try {
+            List<URL> urls = new ArrayList<>(requests.size());
+            List<Request> sent = new ArrayList<>(requests.size());
+            for (Request request : requests) {
+                URL url = new URL(buildUrlWithParams(request.getUrl(), request.getParams()));
+                urls.add(url);
+                sent.add(forUrl(url, request));
+            }
+
+            List<Response> responses = transport.executePipelined(urls, sent, this);
+            for (int i = 0; i < responses.size(); i++) {
+                Response response = responses.get(i);
+                response.setRequest(sent.get(i));
+                storeCookies(urls.get(i), response);
+
+                // Redirects are followed one request at a time
+                URL redirectUrl = getRedirectUrl(urls.get(i), response);
+                if (redirectUrl != null) {
+                    response.close();
+                    Response historyResponse = toHistory(response);
+                    Response finalResponse = executeRequest(redirectUrl,
+                            redirected(urls.get(i), redirectUrl, requests.get(i)), null, 1);
+                    finalResponse.addHistory(historyResponse);
+                    responses.set(i, finalResponse);
+                }
+            }
+            return responses;
+        } catch (IOException e) {
+            throw translate(e);
         }
     }
 
-    private Response executeRequest(URL url, Request request, int redirectCount)
+    private static boolean isPipelinable(Request request) {
+        String method = request.getMethod().toUpperCase();
+        return (method.equals("GET") || method.equals("HEAD"))
+                && request.getData() == null && request.getJson() == null && !request.isStream();
+    }
+
+    private Response executeRequest(URL url, Request request, RequestBody body, int redirectCount)
             throws RequestException, IOException {
 
         if (redirectCount > MAX_REDIRECTS) {
             throw new TooManyRedirects("Exceeded maximum redirects: " + MAX_REDIRECTS);
         }
 
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-
-        // Configure connection
-        connection.setRequestMethod(request.getMethod().toUpperCase());
-        connection.setConnectTimeout(connectTimeout);
-        connection.setReadTimeout(readTimeout);
-        connection.setInstanceFollowRedirects(false); // Handle redirects manually
+        Request sent = forUrl(url, request);
+        Response response = transport.execute(url, sent, body, this);
+        response.setRequest(sent);
+        storeCookies(url, response);
 
-        // Apply authentication
-        if (request.getAuth() != null) {
-            request.getAuth().apply(request);
+        // Handle redirects
+        URL redirectUrl = getRedirectUrl(url, response);
+        if (redirectUrl != null) {
+            response.close();
+            Response historyResponse = toHistory(response);
+            Response finalResponse = executeRequest(redirectUrl, redirected(url, redirectUrl, request), body,
+                    redirectCount + 1);
+            finalResponse.addHistory(historyResponse);
+            return finalResponse;
         }
 
-        // Set headers
-        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
-            connection.setRequestProperty(header.getKey(), header.getValue());
+        return response;
+    }
+
+    private CompletableFuture<Response> executeRequestAsync(URL url, Request request, RequestBody body,
+                                                            int redirectCount) {
+        if (redirectCount > MAX_REDIRECTS) {
+            return CompletableFuture.failedFuture(
+                    new TooManyRedirects("Exceeded maximum redirects: " + MAX_REDIRECTS));
         }
 
-        // Set cookies
-        if (!request.getCookies().isEmpty()) {
-            StringBuilder cookieHeader = new StringBuilder();
-            for (Map.Entry<String, String> cookie : request.getCookies().entrySet()) {
-                if (cookieHeader.length() > 0) {
-                    cookieHeader.append("; ");
-                }
-                cookieHeader.append(cookie.getKey()).append("=").append(cookie.getValue());
+        Request sent = forUrl(url, request);
+        return transport.executeAsync(url, sent, body, this).thenCompose(response -> {
+            response.setRequest(sent);
+            storeCookies(url, response);
+
+            // Handle redirects
+            URL redirectUrl;
+            try {
+                redirectUrl = getRedirectUrl(url, response);
+            } catch (MalformedURLException e) {
+                throw new CompletionException(e);
             }
-            connection.setRequestProperty("Cookie", cookieHeader.toString());
+            if (redirectUrl == null) {
+                return CompletableFuture.completedFuture(response);
+            }
+
+            response.close();
+            Response historyResponse = toHistory(response);
+            return executeRequestAsync(redirectUrl, redirected(url, redirectUrl, request), body, redirectCount + 1)
+                    .thenApply(finalResponse -> {
+                        finalResponse.addHistory(historyResponse);
+                        return finalResponse;
+                    });
+        });
+    }
+
+    /**
+     * Returns the request as sent to one URL: with the cookies the jar holds for that URL,
+     * and with authentication applied. The given request is not changed.
+     */
+    private Request forUrl(URL url, Request request) {
+        CookieJar jar = cookieJar;
+        List<Cookie> stored = jar != null ? jar.get(url) : null;
+        if ((stored == null || stored.isEmpty()) && request.getAuth() == null) {
+            return request;
         }
 
-        // Handle request body
-        if (request.getData() != null || request.getJson() != null) {
-            connection.setDoOutput(true);
+        Request sent = request.copy();
+        if (stored != null && !stored.isEmpty()) {
+            Map<String, String> jarCookies = new LinkedHashMap<>();
+            // Most specific first, so let it win over less specific cookies of the same name
+            for (int i = stored.size() - 1; i >= 0; i--) {
+                jarCookies.put(stored.get(i).getName(), stored.get(i).getValue());
+            }
+            sent.setCookies(LayeredMap.over(jarCookies, request.getCookies()));
+        }
+        if (request.getAuth() != null) {
+            request.getAuth().apply(sent);
+        }
+        return sent;
+    }
 
-            byte[] bodyData;
-            if (request.getJson() != null) {
-                // Send JSON
-                connection.setRequestProperty("Content-Type", "application/json");
-                String jsonString = gson.toJson(request.getJson());
-                bodyData = jsonString.getBytes(StandardCharsets.UTF_8);
-            } else {
-                // Send form data
-                Object data = request.getData();
-                if (data instanceof String) {
-                    bodyData = ((String) data).getBytes(StandardCharsets.UTF_8);
-                } else if (data instanceof Map) {
-                    connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-                    @SuppressWarnings("unchecked")
-                    String formData = encodeFormData((Map<String, String>) data);
-                    bodyData = formData.getBytes(StandardCharsets.UTF_8);
-                } else {
-                    bodyData = data.toString().getBytes(StandardCharsets.UTF_8);
-                }
+    private void storeCookies(URL url, Response response) {
+        CookieJar jar = cookieJar;
+        if (jar != null) {
+            List<String> setCookies = response.getHeaders().getAll("Set-Cookie");
+            if (!setCookies.isEmpty()) {
+                jar.store(url, setCookies);
             }
+        }
+    }
 
-            try (OutputStream os = connection.getOutputStream()) {
-                os.write(bodyData);
+    /**
+     * Returns the request to send to a redirect target. Credentials and cookies given for
+     * one origin are not sent to another; there, only the jar's cookies for the target apply.
+     */
+    private static Request redirected(URL from, URL to, Request request) {
+        if (sameOrigin(from, to)) {
+            return request;
+        }
+        Map<String, String> headers = new HashMap<>();
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            if (!header.getKey().equalsIgnoreCase("Authorization") && !header.getKey().equalsIgnoreCase("Cookie")) {
+                headers.put(header.getKey(), header.getValue());
             }
         }
+        return request.copy()
+                .setHeaders(headers)
+                .setCookies(new HashMap<>())
+                .setAuth(null);
+    }
 
-        // Get response
-        Response response = new Response();
-        response.setRequest(request);
-        response.setConnection(connection);
-        response.setStatusCode(connection.getResponseCode());
-        response.setReason(connection.getResponseMessage());
-        response.setHeaders(connection.getHeaderFields());
+    private static boolean sameOrigin(URL a, URL b) {
+        int portA = a.getPort() >= 0 ? a.getPort() : a.getDefaultPort();
+        int portB = b.getPort() >= 0 ? b.getPort() : b.getDefaultPort();
+        return a.getProtocol().equalsIgnoreCase(b.getProtocol()) && a.getHost().equalsIgnoreCase(b.getHost())
+                && portA == portB;
+    }
 
-        // Handle redirects
+    /**
+     * Returns the URL to follow if the response is a redirect, or null otherwise.
+     */
+    private URL getRedirectUrl(URL url, Response response) throws MalformedURLException {
         int statusCode = response.getStatusCode();
         if (followRedirects && (statusCode == 301 || statusCode == 302 ||
                                  statusCode == 303 || statusCode == 307 ||
                                  statusCode == 308)) {
-            String location = connection.getHeaderField("Location");
+            String location = response.getHeader("Location");
             if (location != null) {
-                // Store this response in history
-                Response historyResponse = new Response();
-                historyResponse.setStatusCode(statusCode);
-                historyResponse.setReason(response.getReason());
-                historyResponse.setHeaders(response.getHeaders());
+                return new URL(url, location);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Copies the parts of a redirect response that are kept in the history.
+     */
+    private Response toHistory(Response response) {
+        Response historyResponse = new Response();
+        historyResponse.setStatusCode(response.getStatusCode());
+        historyResponse.setReason(response.getReason());
+        historyResponse.setHeaders(response.getHeaders());
+        return historyResponse;
+    }
+
+    /**
+     * Maps a transport failure to the matching RequestException.
+     */
+    private RequestException translate(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+
+        if (error instanceof RequestException) {
+            return (RequestException) error;
+        } else if (error instanceof HttpConnectTimeoutException) {
+            return new ConnectTimeout("Connection timeout", error);
+        } else if (error instanceof HttpTimeoutException) {
+            return new ReadTimeout("Read timeout", error);
+        } else if (error instanceof SocketTimeoutException) {
+            return new ConnectTimeout("Connection timeout", error);
+        } else {
+            return new ConnectionError("Connection error: " + error.getMessage(), error);
+        }
+    }
+
+    /**
+     * Encodes the request data or JSON into a body, or returns null if the request has none.
+     * The body is gzip-compressed if the request asks for it or it reaches the compression threshold.
+     */
+    private RequestBody prepareBody(Request request) throws IOException {
+        RequestBody body = encodeBody(request);
+        if (body == null || hasHeader(request, "Content-Encoding")) {
+            return body;
+        }
 
-                // Follow redirect
-                URL redirectUrl = new URL(url, location);
-                Response finalResponse = executeRequest(redirectUrl, request, redirectCount + 1);
-                finalResponse.addHistory(historyResponse);
-                return finalResponse;
+        if (request.isCompress()) {
+            return RequestBody.gzip(body);
+        }
+        if (compressThreshold >= 0) {
+            if (body.getContentLength() >= 0) {
+                return body.getContentLength() >= compressThreshold ? RequestBody.gzip(body) : body;
             }
+            // Encode up to the threshold to find out whether a streamed body is small
+            byte[] bytes = body.toByteArray(compressThreshold);
+            return bytes != null ? RequestBody.of(body.getContentType(), bytes) : RequestBody.gzip(body);
         }
+        return body;
+    }
 
-        // Read response content
-        try {
-            InputStream inputStream = (statusCode >= 400)
-                ? connection.getErrorStream()
-                : connection.getInputStream();
+    private RequestBody encodeBody(Request request) {
+        if (request.getJson() != null) {
+            // Send JSON, serialized while it is written
+            return RequestBody.json(gson, request.getJson());
+        }
+
+        Object data = request.getData();
+        if (data == null) {
+            return null;
+        }
+
+        // Send form data
+        if (data instanceof String) {
+            return RequestBody.of(null, ((String) data).getBytes(StandardCharsets.UTF_8));
+        } else if (data instanceof Map) {
+            @SuppressWarnings("unchecked")
+            String formData = encodeFormData((Map<String, String>) data);
+            return RequestBody.of("application/x-www-form-urlencoded",
+                    formData.getBytes(StandardCharsets.UTF_8));
+        } else {
+            return RequestBody.of(null, data.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
 
-            if (inputStream != null) {
-                response.readContent(inputStream);
-                response.detectEncoding();
+    private static boolean hasHeader(Request request, String name) {
+        for (String header : request.getHeaders().keySet()) {
+            if (header.equalsIgnoreCase(name)) {
+                return true;
             }
-        } catch (IOException e) {
-            // Ignore errors when reading error stream
         }
+        return false;
+    }
 
-        return response;
+    /**
+     * Returns the Cookie header value for the request, or null if it carries no cookies.
+     */
+    public String getCookieHeader(Request request) {
+        return LayeredMap.renderCookies(request.getCookies());
     }
 
     private String buildUrlWithParams(String url, Map<String, String> params) {
@@ -207,6 +448,18 @@ public class HttpAdapter {
         return result.toString();
     }
 
+    public CookieJar getCookieJar() {
+        return cookieJar;
+    }
+
+    /**
+     * Sets the jar that supplies cookies for every URL requested, redirect targets included,
+     * and stores the cookies every response sets; null to handle no cookies beyond the request's own.
+     */
+    public void setCookieJar(CookieJar cookieJar) {
+        this.cookieJar = cookieJar;
+    }
+
     public int getConnectTimeout() {
         return connectTimeout;
     }
@@ -235,7 +488,165 @@ public class HttpAdapter {
         return verifySSL;
     }
 
+    /**
+     * Turns verification of server certificates and hostnames on or off.
+     * Only turn it off for testing against servers with self-signed certificates.
+     */
     public void setVerifySSL(boolean verifySSL) {
         this.verifySSL = verifySSL;
     }
+
+    public TlsConfig getTlsConfig() {
+        return tlsConfig;
+    }
+
+    /**
+     * Sets trust material, client certificates, protocols and cipher suites for https,
+     * or null for the JVM defaults.
+     */
+    public void setTlsConfig(TlsConfig tlsConfig) {
+        this.tlsConfig = tlsConfig;
+    }
+
+    /**
+     * Returns the TLS context for the current settings. Contexts are shared by every adapter
+     * with equal settings, so their TLS sessions can be resumed across connections.
+     */
+    public TlsContext getTlsContext() throws IOException {
+        return TlsContext.of(tlsConfig, verifySSL);
+    }
+
+    /**
+     * Returns the transport used to perform requests.
+     */
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Sets the transport used to perform requests. It is closed together with the adapter.
+     */
+    public void setTransport(Transport transport) {
+        this.transport = transport;
+        this.ownsTransport = true;
+    }
+
+    /**
+     * Sets a transport that may be shared with other adapters; it is not closed with this one.
+     */
+    public void setSharedTransport(Transport transport) {
+        this.transport = transport;
+        this.ownsTransport = false;
+    }
+
+    /**
+     * Returns the executor used to run blocking request execution.
+     * Created on first use: one virtual thread per task when virtual threads are enabled
+     * and supported, otherwise a pool of at most {@link #getMaxThreads()} platform threads.
+     */
+    public synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = ThreadSupport.newExecutor(virtualThreads, maxThreads);
+            ownsExecutor = true;
+        }
+        return executor;
+    }
+
+    /**
+     * Sets the executor used to run blocking request execution.
+     */
+    public synchronized void setExecutor(ExecutorService executor) {
+        resetExecutor();
+        this.executor = executor;
+        this.ownsExecutor = false;
+    }
+
+    /**
+     * Returns the resolver used by transports that open their own sockets.
+     */
+    public DnsResolver getDnsResolver() {
+        return dnsResolver;
+    }
+
+    /**
+     * Sets the resolver used by {@link cn.jeyor1337.requests4j.transport.PooledTransport} and
+     * {@link cn.jeyor1337.requests4j.transport.NioTransport}. The JDK-based transports always use
+     * the JVM-wide resolver.
+     */
+    public void setDnsResolver(DnsResolver dnsResolver) {
+        this.dnsResolver = dnsResolver != null ? dnsResolver : DnsResolver.SYSTEM;
+    }
+
+    public int getPipelineDepth() {
+        return pipelineDepth;
+    }
+
+    /**
+     * Sets how many requests {@link #sendPipelined} may write to one connection before reading
+     * the first response; 0 or 1 disables pipelining.
+     */
+    public void setPipelineDepth(int pipelineDepth) {
+        this.pipelineDepth = pipelineDepth;
+    }
+
+    public long getCompressThreshold() {
+        return compressThreshold;
+    }
+
+    /**
+     * Gzip-compresses request bodies of at least this many bytes. -1 disables compression.
+     */
+    public void setCompressThreshold(long compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Runs blocking request execution on virtual threads.
+     * Has no effect before Java 21, where the bounded platform pool is used instead.
+     */
+    public synchronized void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        resetExecutor();
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    /**
+     * Sets the size of the platform thread pool used when virtual threads are off.
+     */
+    public synchronized void setMaxThreads(int maxThreads) {
+        this.maxThreads = maxThreads;
+        resetExecutor();
+    }
+
+    /**
+     * Returns true if virtual threads are supported by this runtime.
+     */
+    public static boolean isVirtualThreadsAvailable() {
+        return ThreadSupport.isVirtualThreadsAvailable();
+    }
+
+    private void resetExecutor() {
+        if (ownsExecutor) {
+            executor.shutdown();
+            executor = null;
+            ownsExecutor = false;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (ownsTransport) {
+            transport.close();
+        }
+        synchronized (this) {
+            resetExecutor();
+        }
+    }
 }
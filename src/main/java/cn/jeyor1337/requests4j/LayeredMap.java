@@ -0,0 +1,225 @@
+package cn.jeyor1337.requests4j;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Read-only view of per-request entries layered over session defaults, resolved on access
+ * rather than copied into a new map for every request. An override hides a default with the
+ * same name; for headers, names are compared ignoring case.
+ *
+ * A view over cookies renders its Cookie header once and keeps it; when a request adds no
+ * cookies of its own, the session's pre-rendered header is used as is.
+ */
+final class LayeredMap extends AbstractMap<String, String> {
+    private final Map<String, String> defaults;
+    private final Map<String, String> overrides;
+    private final boolean ignoreCase;
+    private final String renderedDefaults;
+    private Set<Entry<String, String>> entrySet;
+    private String rendered;
+
+    private LayeredMap(Map<String, String> defaults, Map<String, String> overrides, boolean ignoreCase,
+                       String renderedDefaults) {
+        this.defaults = defaults;
+        this.overrides = overrides;
+        this.ignoreCase = ignoreCase;
+        this.renderedDefaults = renderedDefaults;
+    }
+
+    /**
+     * Layers request headers over session headers; returns the session headers themselves when the request has none.
+     */
+    static Map<String, String> headers(Map<String, String> defaults, Map<String, String> overrides) {
+        if (overrides.isEmpty()) {
+            return defaults;
+        }
+        if (defaults.isEmpty()) {
+            return overrides;
+        }
+        return new LayeredMap(defaults, overrides, true, null);
+    }
+
+    /**
+     * Returns session cookies with their Cookie header rendered up front, ready to have request cookies layered over them.
+     */
+    static LayeredMap cookieDefaults(Map<String, String> cookies) {
+        Map<String, String> defaults = Collections.unmodifiableMap(cookies);
+        return new LayeredMap(defaults, Collections.emptyMap(), false, renderCookies(defaults));
+    }
+
+    /**
+     * Layers cookies over the ones of this map, reusing its rendered header where possible.
+     */
+    LayeredMap with(Map<String, String> cookieOverrides) {
+        return new LayeredMap(defaults, cookieOverrides, false, renderedDefaults);
+    }
+
+    /**
+     * Layers cookies over other cookies. When {@code cookies} are request cookies over session
+     * defaults, the other cookies go between the two and the defaults keep their rendered header.
+     */
+    static Map<String, String> over(Map<String, String> under, Map<String, String> cookies) {
+        if (cookies instanceof LayeredMap) {
+            LayeredMap layered = (LayeredMap) cookies;
+            Map<String, String> overrides = new LinkedHashMap<>(under);
+            overrides.putAll(layered.overrides);
+            return new LayeredMap(layered.defaults, overrides, false, layered.renderedDefaults);
+        }
+        Map<String, String> merged = new LinkedHashMap<>(under);
+        merged.putAll(cookies);
+        return merged;
+    }
+
+    /**
+     * Renders entries as a Cookie header value, or returns null if there are none.
+     */
+    static String renderCookies(Map<String, String> cookies) {
+        if (cookies instanceof LayeredMap) {
+            return ((LayeredMap) cookies).render();
+        }
+        if (cookies.isEmpty()) {
+            return null;
+        }
+        StringBuilder header = new StringBuilder();
+        for (Map.Entry<String, String> cookie : cookies.entrySet()) {
+            append(header, cookie);
+        }
+        return header.toString();
+    }
+
+    private String render() {
+        if (rendered == null) {
+            if (overrides.isEmpty()) {
+                rendered = renderedDefaults;
+            } else {
+                StringBuilder header = new StringBuilder();
+                for (Map.Entry<String, String> cookie : entrySet()) {
+                    append(header, cookie);
+                }
+                rendered = header.toString();
+            }
+        }
+        return rendered;
+    }
+
+    private static void append(StringBuilder header, Map.Entry<String, String> cookie) {
+        if (header.length() > 0) {
+            header.append("; ");
+        }
+        header.append(cookie.getKey()).append('=').append(cookie.getValue());
+    }
+
+    /**
+     * Returns the overriding value for a name, or null if it has none.
+     */
+    private String override(Object key) {
+        return lookup(overrides, key);
+    }
+
+    private boolean overridden(String key) {
+        return overrides.containsKey(key) || override(key) != null;
+    }
+
+    /**
+     * Returns the value for a name in one layer, comparing names ignoring case for headers.
+     */
+    private String lookup(Map<String, String> layer, Object key) {
+        String value = layer.get(key);
+        if (value != null || !ignoreCase || !(key instanceof String)) {
+            return value;
+        }
+        for (Entry<String, String> entry : layer.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase((String) key)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String get(Object key) {
+        String value = override(key);
+        return value != null ? value : lookup(defaults, key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return override(key) != null || lookup(defaults, key) != null;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return overrides.isEmpty() && defaults.isEmpty();
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<String, String>>() {
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    return new LayerIterator();
+                }
+
+                @Override
+                public int size() {
+                    int size = overrides.size();
+                    for (String key : defaults.keySet()) {
+                        if (!overridden(key)) {
+                            size++;
+                        }
+                    }
+                    return size;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    /**
+     * Iterates the overrides, then the defaults they do not hide.
+     */
+    private final class LayerIterator implements Iterator<Entry<String, String>> {
+        private final Iterator<Entry<String, String>> overrideIt =
+                Collections.unmodifiableMap(overrides).entrySet().iterator();
+        private final Iterator<Entry<String, String>> defaultIt =
+                Collections.unmodifiableMap(defaults).entrySet().iterator();
+        private Entry<String, String> next;
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            if (overrideIt.hasNext()) {
+                next = overrideIt.next();
+                return true;
+            }
+            while (defaultIt.hasNext()) {
+                Entry<String, String> candidate = defaultIt.next();
+                if (!overridden(candidate.getKey())) {
+                    next = candidate;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Entry<String, String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Entry<String, String> result = next;
+            next = null;
+            return result;
+        }
+    }
+}
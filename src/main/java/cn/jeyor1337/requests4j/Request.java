@@ -1,25 +1,37 @@
 package cn.jeyor1337.requests4j;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * A user-created Request object.
+ *
+ * Header, parameter and cookie maps are only allocated once they are read or something is
+ * added to them. Maps shared with another request, such as those of a {@link #copy()}, are
+ * copied before the first change, so changing one request never affects the other.
  */
 public class Request {
+    // Stands in for a map that was never used; replaced by an owned map on first access
+    private static final Map<String, String> UNSET = Collections.unmodifiableMap(new HashMap<>(0));
+
     private String method;
     private String url;
-    private Map<String, String> headers;
-    private Map<String, String> params;
+    private Map<String, String> headers = UNSET;
+    private Map<String, String> params = UNSET;
     private Object data;
     private Object json;
     private Auth auth;
-    private Map<String, String> cookies;
+    private Map<String, String> cookies = UNSET;
+    private boolean stream;
+    private boolean compress;
+
+    // Set while the corresponding map is shared and must be copied before a change
+    private boolean sharedHeaders = true;
+    private boolean sharedParams = true;
+    private boolean sharedCookies = true;
 
     public Request() {
-        this.headers = new HashMap<>();
-        this.params = new HashMap<>();
-        this.cookies = new HashMap<>();
     }
 
     public Request(String method, String url) {
@@ -47,29 +59,47 @@ public class Request {
     }
 
     public Map<String, String> getHeaders() {
+        if (headers == UNSET) {
+            headers = new HashMap<>();
+            sharedHeaders = false;
+        }
         return headers;
     }
 
     public Request setHeaders(Map<String, String> headers) {
         this.headers = headers;
+        this.sharedHeaders = false;
         return this;
     }
 
     public Request addHeader(String name, String value) {
+        if (sharedHeaders) {
+            headers = new HashMap<>(headers);
+            sharedHeaders = false;
+        }
         this.headers.put(name, value);
         return this;
     }
 
     public Map<String, String> getParams() {
+        if (params == UNSET) {
+            params = new HashMap<>();
+            sharedParams = false;
+        }
         return params;
     }
 
     public Request setParams(Map<String, String> params) {
         this.params = params;
+        this.sharedParams = false;
         return this;
     }
 
     public Request addParam(String name, String value) {
+        if (sharedParams) {
+            params = new HashMap<>(params);
+            sharedParams = false;
+        }
         this.params.put(name, value);
         return this;
     }
@@ -102,19 +132,110 @@ public class Request {
     }
 
     public Map<String, String> getCookies() {
+        if (cookies == UNSET) {
+            cookies = new HashMap<>();
+            sharedCookies = false;
+        }
         return cookies;
     }
 
     public Request setCookies(Map<String, String> cookies) {
         this.cookies = cookies;
+        this.sharedCookies = false;
         return this;
     }
 
     public Request addCookie(String name, String value) {
+        if (sharedCookies) {
+            cookies = new HashMap<>(cookies);
+            sharedCookies = false;
+        }
         this.cookies.put(name, value);
         return this;
     }
 
+    public boolean isStream() {
+        return stream;
+    }
+
+    /**
+     * If true, the response body is not read up front; it is exposed as a stream
+     * and the Response must be closed to release the connection.
+     */
+    public Request setStream(boolean stream) {
+        this.stream = stream;
+        return this;
+    }
+
+    public boolean isCompress() {
+        return compress;
+    }
+
+    /**
+     * If true, the request body is gzip-compressed and sent with Content-Encoding: gzip.
+     */
+    public Request setCompress(boolean compress) {
+        this.compress = compress;
+        return this;
+    }
+
+    /**
+     * Returns a copy of this request; this request itself is never changed, so copies may be
+     * taken from any thread. Maps this request may still change are copied, and maps it
+     * already shares are shared with the copy too, until the copy changes them.
+     */
+    public Request copy() {
+        Request copy = new Request(method, url);
+        if (!sharedHeaders) {
+            copy.headers = new HashMap<>(headers);
+            copy.sharedHeaders = false;
+        } else {
+            copy.headers = headers;
+        }
+        if (!sharedParams) {
+            copy.params = new HashMap<>(params);
+            copy.sharedParams = false;
+        } else {
+            copy.params = params;
+        }
+        if (!sharedCookies) {
+            copy.cookies = new HashMap<>(cookies);
+            copy.sharedCookies = false;
+        } else {
+            copy.cookies = cookies;
+        }
+        copy.data = data;
+        copy.json = json;
+        copy.auth = auth;
+        copy.stream = stream;
+        copy.compress = compress;
+        return copy;
+    }
+
+    /**
+     * Returns the request as sent by a session: a copy whose headers and cookies are layered
+     * over the session's. This request is left unchanged.
+     */
+    Request withDefaults(Map<String, String> sessionHeaders, LayeredMap sessionCookies, Auth sessionAuth,
+                         boolean sessionStream) {
+        Request prepared = copy();
+        Map<String, String> layered = LayeredMap.headers(sessionHeaders, prepared.headers);
+        // Still mutable and owned by the prepared request only if the session has no headers
+        prepared.sharedHeaders = prepared.sharedHeaders || layered != prepared.headers;
+        prepared.headers = layered;
+        if (prepared.params == UNSET) {
+            // Keep getters of the prepared request free of writes, as other threads read it
+            prepared.params = Collections.emptyMap();
+        }
+        prepared.cookies = prepared.cookies.isEmpty() ? sessionCookies : sessionCookies.with(prepared.cookies);
+        prepared.sharedCookies = true;
+        if (prepared.auth == null) {
+            prepared.auth = sessionAuth;
+        }
+        prepared.stream = stream || sessionStream;
+        return prepared;
+    }
+
     @Override
     public String toString() {
         return String.format("<Request [%s]>", method);
@@ -0,0 +1,228 @@
+package cn.jeyor1337.requests4j;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An encoded request body, ready to be written by a {@link Transport}.
+ * A body may be written more than once, e.g. when a redirect is followed.
+ */
+public abstract class RequestBody {
+
+    /**
+     * Returns the Content-Type of the body, or null if none should be set.
+     */
+    public abstract String getContentType();
+
+    /**
+     * Returns the Content-Encoding of the body, or null if it is not encoded.
+     */
+    public String getContentEncoding() {
+        return null;
+    }
+
+    /**
+     * Returns the length of the body in bytes, or -1 if it is not known before writing.
+     */
+    public abstract long getContentLength();
+
+    /**
+     * Writes the body to the given output stream without closing it.
+     */
+    public abstract void writeTo(OutputStream out) throws IOException;
+
+    /**
+     * Returns the body as a byte array.
+     */
+    public byte[] toByteArray() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeTo(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the body as a byte array if it is shorter than limit bytes, or null if it is not.
+     * At most limit bytes are buffered.
+     */
+    public byte[] toByteArray(long limit) throws IOException {
+        long length = getContentLength();
+        if (length >= 0) {
+            return length < limit ? toByteArray() : null;
+        }
+
+        BoundedOutputStream out = new BoundedOutputStream(limit);
+        try {
+            writeTo(out);
+        } catch (LimitExceededException e) {
+            return null;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Creates a body from bytes.
+     */
+    public static RequestBody of(String contentType, byte[] bytes) {
+        return new BytesBody(contentType, bytes);
+    }
+
+    /**
+     * Creates a body that serializes the object as JSON straight into the output stream,
+     * without building the whole document in memory first.
+     */
+    public static RequestBody json(Gson gson, Object src) {
+        return new JsonBody(gson, src);
+    }
+
+    /**
+     * Wraps a body so that it is gzip-compressed while it is written.
+     */
+    public static RequestBody gzip(RequestBody body) {
+        return new GzipBody(body);
+    }
+
+    private static class BytesBody extends RequestBody {
+        private final String contentType;
+        private final byte[] bytes;
+
+        BytesBody(String contentType, byte[] bytes) {
+            this.contentType = contentType;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public long getContentLength() {
+            return bytes.length;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(bytes);
+        }
+
+        @Override
+        public byte[] toByteArray() {
+            return bytes;
+        }
+    }
+
+    private static class JsonBody extends RequestBody {
+        private final Gson gson;
+        private final Object src;
+
+        JsonBody(Gson gson, Object src) {
+            this.gson = gson;
+            this.src = src;
+        }
+
+        @Override
+        public String getContentType() {
+            return "application/json";
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            try {
+                gson.toJson(src, src.getClass(), writer);
+            } catch (JsonIOException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e);
+            }
+            writer.flush();
+        }
+    }
+
+    private static class GzipBody extends RequestBody {
+        private final RequestBody body;
+
+        GzipBody(RequestBody body) {
+            this.body = body;
+        }
+
+        @Override
+        public String getContentType() {
+            return body.getContentType();
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return "gzip";
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            // Closing the gzip stream frees its Deflater; the shield keeps the target open
+            try (GZIPOutputStream gzip = new GZIPOutputStream(new NonClosingOutputStream(out), 8192)) {
+                body.writeTo(gzip);
+            }
+        }
+    }
+
+    private static class BoundedOutputStream extends ByteArrayOutputStream {
+        private final long limit;
+
+        BoundedOutputStream(long limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (count + len >= limit) {
+                throw new LimitExceededException();
+            }
+            super.write(b, off, len);
+        }
+    }
+
+    private static class LimitExceededException extends RuntimeException {
+        LimitExceededException() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static class NonClosingOutputStream extends FilterOutputStream {
+
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
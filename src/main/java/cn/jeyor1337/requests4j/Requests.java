@@ -1,8 +1,11 @@
 package cn.jeyor1337.requests4j;
 
 import cn.jeyor1337.requests4j.exceptions.RequestException;
+import cn.jeyor1337.requests4j.transport.HttpClientTransport;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 /**
  * Requests4J - HTTP for Humans
@@ -18,6 +21,7 @@ import java.util.Map;
  * </pre>
  */
 public class Requests {
+    private static final Transport ASYNC_TRANSPORT = new HttpClientTransport();
 
     /**
      * Sends a GET request.
@@ -168,6 +172,111 @@ public class Requests {
         }
     }
 
+    /**
+     * Sends a GET request asynchronously.
+     *
+     * @param url URL for the request
+     * @return future completed with the Response, or exceptionally with a RequestException
+     */
+    public static CompletableFuture<Response> getAsync(String url) {
+        return async(session -> session.getAsync(url));
+    }
+
+    /**
+     * Sends a GET request with query parameters asynchronously.
+     *
+     * @param url URL for the request
+     * @param params query parameters
+     * @return future completed with the Response, or exceptionally with a RequestException
+     */
+    public static CompletableFuture<Response> getAsync(String url, Map<String, String> params) {
+        return async(session -> session.getAsync(url, params));
+    }
+
+    /**
+     * Sends a POST request with data asynchronously.
+     *
+     * @param url URL for the request
+     * @param data data to send in the request body
+     * @return future completed with the Response, or exceptionally with a RequestException
+     */
+    public static CompletableFuture<Response> postAsync(String url, Object data) {
+        return async(session -> session.postAsync(url, data));
+    }
+
+    /**
+     * Sends a POST request with JSON data asynchronously.
+     *
+     * @param url URL for the request
+     * @param json JSON object to send
+     * @return future completed with the Response, or exceptionally with a RequestException
+     */
+    public static CompletableFuture<Response> postJsonAsync(String url, Object json) {
+        return async(session -> session.postJsonAsync(url, json));
+    }
+
+    /**
+     * Sends a PUT request asynchronously.
+     *
+     * @param url URL for the request
+     * @param data data to send in the request body
+     * @return future completed with the Response, or exceptionally with a RequestException
+     */
+    public static CompletableFuture<Response> putAsync(String url, Object data) {
+        return async(session -> session.putAsync(url, data));
+    }
+
+    /**
+     * Sends a PATCH request asynchronously.
+     *
+     * @param url URL for the request
+     * @param data data to send in the request body
+     * @return future completed with the Response, or exceptionally with a RequestException
+     */
+    public static CompletableFuture<Response> patchAsync(String url, Object data) {
+        return async(session -> session.patchAsync(url, data));
+    }
+
+    /**
+     * Sends a DELETE request asynchronously.
+     *
+     * @param url URL for the request
+     * @return future completed with the Response, or exceptionally with a RequestException
+     */
+    public static CompletableFuture<Response> deleteAsync(String url) {
+        return async(session -> session.deleteAsync(url));
+    }
+
+    /**
+     * Constructs and sends a generic request asynchronously.
+     *
+     * @param method HTTP method (GET, POST, PUT, DELETE, etc.)
+     * @param url URL for the request
+     * @return future completed with the Response, or exceptionally with a RequestException
+     */
+    public static CompletableFuture<Response> requestAsync(String method, String url) {
+        return async(session -> session.requestAsync(method, url));
+    }
+
+    /**
+     * Runs an async call on a one-off session backed by the shared non-blocking transport.
+     */
+    private static CompletableFuture<Response> async(Function<Session, CompletableFuture<Response>> call) {
+        Session session = new Session();
+        session.setSharedTransport(ASYNC_TRANSPORT);
+
+        CompletableFuture<Response> result = new CompletableFuture<>();
+        call.apply(session).whenComplete((response, error) -> {
+            session.close();
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(response);
+            }
+        });
+        return result;
+    }
+
     /**
      * Creates a new Session object for making requests with persistent settings.
      * Sessions allow you to persist cookies and other settings across requests.
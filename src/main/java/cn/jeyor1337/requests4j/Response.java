@@ -2,26 +2,53 @@ package cn.jeyor1337.requests4j;
 
 import cn.jeyor1337.requests4j.exceptions.HTTPError;
 import cn.jeyor1337.requests4j.exceptions.JSONDecodeError;
+import cn.jeyor1337.requests4j.io.ByteBufferInputStream;
+import cn.jeyor1337.requests4j.io.ContentDecoder;
+import cn.jeyor1337.requests4j.io.CountingInputStream;
+import cn.jeyor1337.requests4j.io.InflaterPool;
 import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
 import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
 import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The Response object, which contains a server's response to an HTTP request.
+ * When the request was sent with streaming enabled the body is read on demand
+ * and the Response should be closed to release the connection.
  */
-public class Response {
+public class Response implements Closeable {
     private int statusCode;
     private String reason;
-    private Map<String, List<String>> headers;
+    private Headers headers;
     private byte[] content;
+    private ByteBuffer contentBuffer;
+    private InputStream raw;
+    // The live body stream once handed to an iterator or reader, kept so that close() can release it
+    private InputStream handedOut;
+    private CountingInputStream rawCounter;
+    private CountingInputStream decodedCounter;
     private String encoding;
+    private Charset charset;
+    private String text;
     private HttpURLConnection connection;
     private Request request;
     private List<Response> history;
@@ -29,7 +56,7 @@ public class Response {
     private static final Gson gson = new Gson();
 
     public Response() {
-        this.headers = new HashMap<>();
+        this.headers = new Headers();
         this.encoding = "UTF-8";
         this.history = new ArrayList<>();
     }
@@ -57,43 +84,171 @@ public class Response {
     }
 
     /**
-     * Returns the response headers.
+     * Returns the response headers, whose names are compared ignoring case.
      */
-    public Map<String, List<String>> getHeaders() {
+    public Headers getHeaders() {
         return headers;
     }
 
     /**
-     * Returns a single header value (first occurrence).
+     * Returns a single header value (first occurrence), ignoring the case of the name.
      */
     public String getHeader(String name) {
-        List<String> values = headers.get(name);
-        return (values != null && !values.isEmpty()) ? values.get(0) : null;
+        return headers.getFirst(name);
     }
 
+    /**
+     * Sets the response headers. A map that is not a {@link Headers} is copied,
+     * dropping the {@code null} key {@link HttpURLConnection} uses for the status line.
+     */
     public void setHeaders(Map<String, List<String>> headers) {
-        this.headers = headers;
+        if (headers instanceof Headers) {
+            this.headers = (Headers) headers;
+        } else {
+            this.headers = headers != null ? new Headers(headers) : new Headers();
+        }
     }
 
     /**
      * Returns the content of the response, in bytes.
+     * For a streamed response this reads the rest of the body and closes the stream.
      */
     public byte[] getContent() {
+        if (content == null && contentBuffer != null) {
+            ByteBuffer buffer = contentBuffer.duplicate();
+            content = new byte[buffer.remaining()];
+            buffer.get(content);
+        }
+        if (content == null && raw != null) {
+            try (InputStream inputStream = raw) {
+                readContent(inputStream);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read response content", e);
+            } finally {
+                raw = null;
+            }
+        }
         return content;
     }
 
     public void setContent(byte[] content) {
         this.content = content;
+        this.contentBuffer = null;
+        this.text = null;
+    }
+
+    /**
+     * Sets the body to the remaining bytes of a buffer, such as a region of a memory-mapped file.
+     * The bytes are not copied unless {@link #getContent()} is called.
+     */
+    public void setContent(ByteBuffer content) {
+        this.content = null;
+        this.contentBuffer = content.asReadOnlyBuffer();
+        this.text = null;
+    }
+
+    /**
+     * Returns the body as a read-only buffer, without copying a body that was set from a buffer.
+     * For a streamed response this reads the rest of the body first.
+     */
+    public ByteBuffer getContentBuffer() {
+        if (contentBuffer != null) {
+            return contentBuffer.duplicate();
+        }
+        byte[] bytes = getContent();
+        return bytes != null ? ByteBuffer.wrap(bytes).asReadOnlyBuffer() : null;
     }
 
     /**
      * Returns the content of the response, in text form.
      */
     public String getText() {
-        if (content == null) {
-            return "";
+        if (text == null && content == null && contentBuffer != null) {
+            text = getCharset().decode(contentBuffer.duplicate()).toString();
+        }
+        if (text == null) {
+            byte[] bytes = getContent();
+            if (bytes == null) {
+                return "";
+            }
+            text = new String(bytes, getCharset());
+        }
+        return text;
+    }
+
+    /**
+     * Returns the live body stream of a streamed response, or null if the body
+     * has already been read or the request was not streamed.
+     */
+    public InputStream getRaw() {
+        return raw;
+    }
+
+    public void setRaw(InputStream raw) {
+        this.raw = raw;
+    }
+
+    /**
+     * Iterates over the response body in chunks of at most chunkSize bytes.
+     * For a streamed response the chunks are read from the connection as they are requested,
+     * and the stream is closed once the end of the body is reached.
+     */
+    public Iterator<byte[]> iterContent(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        if (raw == null) {
+            if (content == null && contentBuffer != null) {
+                return new StreamChunkIterator(new ByteBufferInputStream(contentBuffer), chunkSize);
+            }
+            return new ByteArrayChunkIterator(content == null ? new byte[0] : content, chunkSize);
+        }
+        return new StreamChunkIterator(takeRaw(), chunkSize);
+    }
+
+    /**
+     * Iterates over the response body one line at a time, decoded with the response encoding.
+     * Line terminators are not included.
+     */
+    public Iterator<String> iterLines() {
+        InputStream inputStream = takeRaw();
+        if (inputStream == null) {
+            inputStream = openContent();
+        }
+        return new LineIterator(new BufferedReader(
+                new InputStreamReader(inputStream, getCharset())));
+    }
+
+    /**
+     * Closes the body stream of a streamed response, releasing the connection, also when
+     * it was handed to an iterator or reader that stopped early.
+     * A fully read body lets the connection return to the keep-alive pool.
+     */
+    @Override
+    public void close() {
+        closeQuietly(raw);
+        closeQuietly(handedOut);
+        raw = null;
+        handedOut = null;
+    }
+
+    private InputStream takeRaw() {
+        InputStream inputStream = raw;
+        raw = null;
+        if (inputStream != null) {
+            handedOut = inputStream;
+        }
+        return inputStream;
+    }
+
+    private static void closeQuietly(InputStream inputStream) {
+        if (inputStream != null) {
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+                // Ignore errors when releasing the connection
+            }
         }
-        return new String(content, Charset.forName(encoding));
     }
 
     /**
@@ -105,20 +260,90 @@ public class Response {
 
     public void setEncoding(String encoding) {
         this.encoding = encoding;
+        this.charset = null;
+        this.text = null;
+    }
+
+    private Charset getCharset() {
+        if (charset == null) {
+            charset = Charset.forName(encoding);
+        }
+        return charset;
     }
 
     /**
      * Returns the parsed JSON-encoded content of the response, if any.
      */
     public <T> T json(Class<T> classOfT) throws JSONDecodeError {
-        try {
-            String text = getText();
-            return gson.fromJson(text, classOfT);
-        } catch (JsonSyntaxException e) {
+        return json((Type) classOfT);
+    }
+
+    /**
+     * Returns the parsed JSON-encoded content of the response as the given type,
+     * e.g. a {@code TypeToken<List<Item>>} type.
+     * The JSON is decoded straight from the body bytes, or from the connection for a
+     * streamed response, without building the text in memory first. Decoding a streamed
+     * response consumes its body.
+     */
+    public <T> T json(Type typeOfT) throws JSONDecodeError {
+        try (Reader reader = openReader()) {
+            return gson.fromJson(reader, typeOfT);
+        } catch (JsonSyntaxException | JsonIOException e) {
             throw new JSONDecodeError("Failed to decode JSON", e);
+        } catch (IOException e) {
+            throw new JSONDecodeError("Failed to read JSON", e);
         }
     }
 
+    /**
+     * Returns a lazily decoded stream of JSON values from the body. A top-level array
+     * yields one element at a time; otherwise the body is read as a sequence of values,
+     * such as newline-delimited JSON. For a streamed response the values are decoded from
+     * the connection as the stream is consumed, so memory is bounded by a single element.
+     * Decoding errors are thrown as {@link com.google.gson.JsonParseException}.
+     * Close the stream to release the connection if it is not fully consumed.
+     */
+    public <T> Stream<T> jsonStream(Class<T> classOfT) {
+        return jsonStream((Type) classOfT);
+    }
+
+    /**
+     * Returns a lazily decoded stream of JSON values of the given type from the body.
+     *
+     * @see #jsonStream(Class)
+     */
+    public <T> Stream<T> jsonStream(Type typeOfT) {
+        JsonValueIterator<T> iterator = new JsonValueIterator<>(new JsonReader(openReader()), typeOfT);
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(iterator::close);
+    }
+
+    /**
+     * Opens a reader over the body text, preferring the memoized text, then the buffered
+     * content, then the live stream.
+     */
+    private Reader openReader() {
+        if (text != null) {
+            return new StringReader(text);
+        }
+        InputStream inputStream = takeRaw();
+        if (inputStream == null) {
+            inputStream = openContent();
+        }
+        return new InputStreamReader(inputStream, getCharset());
+    }
+
+    /**
+     * Opens a stream over the buffered body.
+     */
+    private InputStream openContent() {
+        if (content == null && contentBuffer != null) {
+            return new ByteBufferInputStream(contentBuffer);
+        }
+        return new ByteArrayInputStream(content == null ? new byte[0] : content);
+    }
+
     /**
      * Returns the parsed JSON-encoded content as a Map.
      */
@@ -179,16 +404,68 @@ public class Response {
      * Reads response content from input stream.
      */
     public void readContent(InputStream inputStream) throws IOException {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        byte[] data = new byte[8192];
-        int bytesRead;
+        this.content = inputStream.readAllBytes();
+        this.contentBuffer = null;
+    }
+
+    /**
+     * Sets the body from the connection's input stream, decoding it according to
+     * the Content-Encoding header. The body is read fully and the stream closed,
+     * unless stream is true, in which case it is left for the caller to read.
+     */
+    public void readBody(InputStream inputStream, boolean stream) throws IOException {
+        rawCounter = new CountingInputStream(inputStream);
+        decodedCounter = new CountingInputStream(
+                ContentDecoder.decode(rawCounter, getHeader("Content-Encoding"), InflaterPool.shared()));
+        if (stream) {
+            this.raw = decodedCounter;
+        } else {
+            try (InputStream in = decodedCounter) {
+                readContent(in);
+            }
+        }
+    }
 
-        while ((bytesRead = inputStream.read(data, 0, data.length)) != -1) {
-            buffer.write(data, 0, bytesRead);
+    /**
+     * Sets the body from bytes already read from the connection, decoding them
+     * according to the Content-Encoding header.
+     */
+    public void readBody(byte[] body) throws IOException {
+        if (ContentDecoder.isDecodable(getHeader("Content-Encoding"))) {
+            readBody(new ByteArrayInputStream(body), false);
+        } else {
+            this.content = body;
+            this.contentBuffer = null;
         }
+    }
 
-        buffer.flush();
-        this.content = buffer.toByteArray();
+    /**
+     * Returns the number of body bytes received over the wire, before content decoding.
+     * For a streamed response this counts the bytes read so far.
+     */
+    public long getRawSize() {
+        if (rawCounter != null) {
+            return rawCounter.getCount();
+        }
+        return getContentLength();
+    }
+
+    /**
+     * Returns the number of body bytes after content decoding.
+     * For a streamed response this counts the bytes read so far.
+     */
+    public long getDecodedSize() {
+        if (decodedCounter != null) {
+            return decodedCounter.getCount();
+        }
+        return getContentLength();
+    }
+
+    private long getContentLength() {
+        if (content != null) {
+            return content.length;
+        }
+        return contentBuffer != null ? contentBuffer.remaining() : 0;
     }
 
     /**
@@ -201,12 +478,173 @@ public class Response {
             for (String part : parts) {
                 part = part.trim();
                 if (part.startsWith("charset=")) {
-                    this.encoding = part.substring(8).trim();
+                    setEncoding(part.substring(8).trim());
                     return;
                 }
             }
         }
-        this.encoding = "UTF-8";
+        setEncoding("UTF-8");
+    }
+
+    private static class ByteArrayChunkIterator implements Iterator<byte[]> {
+        private final byte[] data;
+        private final int chunkSize;
+        private int position;
+
+        ByteArrayChunkIterator(byte[] data, int chunkSize) {
+            this.data = data;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < data.length;
+        }
+
+        @Override
+        public byte[] next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int end = Math.min(position + chunkSize, data.length);
+            byte[] chunk = Arrays.copyOfRange(data, position, end);
+            position = end;
+            return chunk;
+        }
+    }
+
+    private static class StreamChunkIterator implements Iterator<byte[]> {
+        private final InputStream inputStream;
+        private final int chunkSize;
+        private byte[] nextChunk;
+        private boolean done;
+
+        StreamChunkIterator(InputStream inputStream, int chunkSize) {
+            this.inputStream = inputStream;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (nextChunk == null && !done) {
+                try {
+                    byte[] buffer = new byte[chunkSize];
+                    int bytesRead = inputStream.read(buffer, 0, chunkSize);
+                    if (bytesRead == -1) {
+                        done = true;
+                        inputStream.close();
+                    } else {
+                        nextChunk = bytesRead == chunkSize ? buffer : Arrays.copyOf(buffer, bytesRead);
+                    }
+                } catch (IOException e) {
+                    done = true;
+                    throw new UncheckedIOException("Failed to read response content", e);
+                }
+            }
+            return nextChunk != null;
+        }
+
+        @Override
+        public byte[] next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            byte[] chunk = nextChunk;
+            nextChunk = null;
+            return chunk;
+        }
+    }
+
+    private static class LineIterator implements Iterator<String> {
+        private final BufferedReader reader;
+        private String nextLine;
+        private boolean done;
+
+        LineIterator(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (nextLine == null && !done) {
+                try {
+                    nextLine = reader.readLine();
+                    if (nextLine == null) {
+                        done = true;
+                        reader.close();
+                    }
+                } catch (IOException e) {
+                    done = true;
+                    throw new UncheckedIOException("Failed to read response content", e);
+                }
+            }
+            return nextLine != null;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String line = nextLine;
+            nextLine = null;
+            return line;
+        }
+    }
+
+    private static class JsonValueIterator<T> implements Iterator<T> {
+        private final JsonReader reader;
+        private final Type type;
+        private boolean started;
+        private boolean inArray;
+        private boolean done;
+
+        JsonValueIterator(JsonReader reader, Type type) {
+            this.reader = reader;
+            this.type = type;
+            reader.setLenient(true); // allows multiple top-level values
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (done) {
+                return false;
+            }
+            try {
+                if (!started) {
+                    started = true;
+                    if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        reader.beginArray();
+                        inArray = true;
+                    }
+                }
+                boolean more = inArray ? reader.hasNext() : reader.peek() != JsonToken.END_DOCUMENT;
+                if (!more) {
+                    close();
+                }
+                return more;
+            } catch (IOException e) {
+                close();
+                throw new JsonIOException(e);
+            }
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return gson.fromJson(reader, type);
+        }
+
+        void close() {
+            done = true;
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // Ignore errors when releasing the connection
+            }
+        }
     }
 
     @Override
@@ -0,0 +1,13 @@
+package cn.jeyor1337.requests4j;
+
+import cn.jeyor1337.requests4j.exceptions.RequestException;
+
+/**
+ * Sends a prepared request and returns its response.
+ * Layers such as {@link cn.jeyor1337.requests4j.cache.HttpCache} wrap the next sender in the chain,
+ * ending with {@link HttpAdapter#send}.
+ */
+@FunctionalInterface
+public interface Sender {
+    Response send(Request request) throws RequestException;
+}
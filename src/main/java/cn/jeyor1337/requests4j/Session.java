@@ -1,30 +1,64 @@
 package cn.jeyor1337.requests4j;
 
+import cn.jeyor1337.requests4j.breaker.CircuitBreaker;
+import cn.jeyor1337.requests4j.cache.HttpCache;
+import cn.jeyor1337.requests4j.cache.RequestCoalescer;
+import cn.jeyor1337.requests4j.cookies.CookieJar;
 import cn.jeyor1337.requests4j.exceptions.RequestException;
-
+import cn.jeyor1337.requests4j.ratelimit.RateLimiter;
+import cn.jeyor1337.requests4j.retry.HedgingPolicy;
+import cn.jeyor1337.requests4j.retry.RetryPolicy;
+import cn.jeyor1337.requests4j.tls.TlsConfig;
+import cn.jeyor1337.requests4j.transport.ConnectionPool;
+import cn.jeyor1337.requests4j.transport.PooledTransport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * A Session object allows you to persist certain parameters across requests.
  * It also persists cookies across all requests made from the Session instance.
+ *
+ * Sessions are thread-safe: one session, and its connection pool, can be shared by all
+ * threads of an application.
  */
 public class Session implements AutoCloseable {
-    private Map<String, String> headers;
-    private Map<String, String> cookies;
-    private Auth auth;
-    private HttpAdapter adapter;
+    // Both are immutable and replaced on every change, so requests read them without locking
+    private volatile Map<String, String> headers;
+    private volatile LayeredMap cookies;
+    private volatile CookieJar cookieJar;
+    private volatile Auth auth;
+    private volatile HttpAdapter adapter;
+    private volatile boolean stream;
+    private volatile HttpCache cache;
+    private volatile RequestCoalescer coalescer;
+    private volatile RetryPolicy retryPolicy;
+    private volatile CircuitBreaker circuitBreaker;
+    private volatile RateLimiter rateLimiter;
+    private volatile HedgingPolicy hedgingPolicy;
 
     public Session() {
-        this.headers = new HashMap<>();
-        this.cookies = new HashMap<>();
+        this.cookies = LayeredMap.cookieDefaults(Collections.emptyMap());
+        this.cookieJar = new CookieJar();
         this.adapter = new HttpAdapter();
+        this.adapter.setCookieJar(cookieJar);
 
         // Set default headers
-        this.headers.put("User-Agent", "Requests4J/1.0.0");
-        this.headers.put("Accept", "*/*");
-        this.headers.put("Accept-Encoding", "gzip, deflate");
-        this.headers.put("Connection", "keep-alive");
+        Map<String, String> headers = new HashMap<>();
+        headers.put("User-Agent", "Requests4J/1.0.0");
+        headers.put("Accept", "*/*");
+        headers.put("Accept-Encoding", "gzip, deflate");
+        headers.put("Connection", "keep-alive");
+        this.headers = Collections.unmodifiableMap(headers);
     }
 
     /**
@@ -117,96 +151,295 @@ public class Session implements AutoCloseable {
     }
 
     /**
-     * Sends the request after merging session settings.
+     * Sends the request after merging session settings. The request itself is not changed.
      */
     public Response send(Request request) throws RequestException {
-        // Merge session headers
-        Map<String, String> mergedHeaders = new HashMap<>(this.headers);
-        mergedHeaders.putAll(request.getHeaders());
-        request.setHeaders(mergedHeaders);
-
-        // Merge session cookies
-        Map<String, String> mergedCookies = new HashMap<>(this.cookies);
-        mergedCookies.putAll(request.getCookies());
-        request.setCookies(mergedCookies);
-
-        // Apply session auth if request doesn't have its own
-        if (request.getAuth() == null && this.auth != null) {
-            request.setAuth(this.auth);
-        }
+        Request prepared = prepare(request);
 
-        // Send request
-        Response response = adapter.send(request);
+        return sender().send(prepared);
+    }
 
-        // Update session cookies from response
-        updateCookiesFromResponse(response);
+    /**
+     * Returns the chain a request goes through: the cache, then request coalescing, then retries,
+     * then hedging, then the rate limiter, then the circuit breaker, then the adapter. Each retry
+     * and hedge passes the rate limiter and circuit breaker again.
+     */
+    private Sender sender() {
+        Sender sender = adapter::send;
+        CircuitBreaker circuitBreaker = this.circuitBreaker;
+        if (circuitBreaker != null) {
+            Sender next = sender;
+            sender = request -> circuitBreaker.send(request, next);
+        }
+        RateLimiter rateLimiter = this.rateLimiter;
+        if (rateLimiter != null) {
+            Sender next = sender;
+            sender = request -> rateLimiter.send(request, next);
+        }
+        HedgingPolicy hedgingPolicy = this.hedgingPolicy;
+        if (hedgingPolicy != null) {
+            Sender next = sender;
+            sender = request -> hedgingPolicy.send(request, next);
+        }
+        RetryPolicy retryPolicy = this.retryPolicy;
+        if (retryPolicy != null) {
+            Sender next = sender;
+            sender = request -> retryPolicy.send(request, next);
+        }
+        RequestCoalescer coalescer = this.coalescer;
+        if (coalescer != null) {
+            Sender next = sender;
+            sender = request -> coalescer.send(request, next);
+        }
+        HttpCache cache = this.cache;
+        if (cache != null) {
+            Sender next = sender;
+            sender = request -> cache.send(request, next);
+        }
+        return sender;
+    }
 
-        return response;
+    /**
+     * Sends the requests in order after merging session settings, and returns the responses
+     * in the same order. With {@link #setPipelineDepth} set, runs of GET and HEAD requests
+     * to the same host are pipelined on one connection. All requests are prepared before
+     * the first is sent, so cookies set by one response only apply to later batches.
+     */
+    public List<Response> sendPipelined(List<Request> requests) throws RequestException {
+        List<Request> prepared = new ArrayList<>(requests.size());
+        for (Request request : requests) {
+            prepared.add(prepare(request));
+        }
+
+        return adapter.sendPipelined(prepared);
     }
 
-    private void updateCookiesFromResponse(Response response) {
-        Map<String, java.util.List<String>> headers = response.getHeaders();
-        java.util.List<String> setCookieHeaders = headers.get("Set-Cookie");
+    /**
+     * Sends the requests with up to {@code concurrency} in flight at once, and returns the
+     * responses in the order of the requests.
+     *
+     * @throws RequestException the first failure; requests in flight are cancelled and the rest are not sent
+     */
+    public List<Response> sendAll(Collection<? extends Request> requests, int concurrency) throws RequestException {
+        List<BulkResult> results = sendAll(requests, new BulkOptions().setConcurrency(concurrency));
+        List<Response> responses = new ArrayList<>(results.size());
+        for (BulkResult result : results) {
+            responses.add(result.getResponse());
+        }
+        return responses;
+    }
 
-        if (setCookieHeaders != null) {
-            for (String setCookie : setCookieHeaders) {
-                parseCookie(setCookie);
+    /**
+     * Sends the requests concurrently within the limits of the options, and returns the results
+     * in the order of the requests. Each request goes through {@link #send}'s chain, so caching,
+     * retries and rate limiting apply to it.
+     *
+     * @throws RequestException in fail-fast mode, the first failure; otherwise failures are in the results
+     */
+    public List<BulkResult> sendAll(Collection<? extends Request> requests, BulkOptions options)
+            throws RequestException {
+        BulkResult[] results = new BulkResult[requests.size()];
+        try (BulkStream stream = sendStream(requests.iterator(), options)) {
+            while (stream.hasNext()) {
+                BulkResult result;
+                try {
+                    result = stream.next();
+                } catch (NoSuchElementException e) {
+                    throw new RequestException("Interrupted while sending requests", e);
+                }
+                if (!result.isSuccess() && options.isFailFast()) {
+                    throw result.getError();
+                }
+                results[result.getIndex()] = result;
             }
         }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Sends the requests concurrently within the limits of the options, and returns their
+     * results in the order they complete. Requests are read from the iterator only as fast as
+     * they can be sent, so it may produce them lazily. Close the stream to stop early.
+     */
+    public BulkStream sendStream(Iterator<? extends Request> requests, BulkOptions options) {
+        return new BulkStream(requests, options, adapter.getExecutor(), this::prepare, sender());
+    }
+
+    /**
+     * Constructs a Request and sends it asynchronously.
+     */
+    public CompletableFuture<Response> requestAsync(String method, String url) {
+        Request request = new Request(method, url);
+        return sendAsync(request);
+    }
+
+    /**
+     * Sends a GET request asynchronously.
+     */
+    public CompletableFuture<Response> getAsync(String url) {
+        return requestAsync("GET", url);
+    }
+
+    /**
+     * Sends a GET request with parameters asynchronously.
+     */
+    public CompletableFuture<Response> getAsync(String url, Map<String, String> params) {
+        Request request = new Request("GET", url);
+        request.setParams(params);
+        return sendAsync(request);
+    }
+
+    /**
+     * Sends a POST request with data asynchronously.
+     */
+    public CompletableFuture<Response> postAsync(String url, Object data) {
+        Request request = new Request("POST", url);
+        request.setData(data);
+        return sendAsync(request);
+    }
+
+    /**
+     * Sends a POST request with JSON data asynchronously.
+     */
+    public CompletableFuture<Response> postJsonAsync(String url, Object json) {
+        Request request = new Request("POST", url);
+        request.setJson(json);
+        return sendAsync(request);
     }
 
-    private void parseCookie(String setCookie) {
-        // Simple cookie parsing (name=value; ...)
-        String[] parts = setCookie.split(";");
-        if (parts.length > 0) {
-            String[] nameValue = parts[0].split("=", 2);
-            if (nameValue.length == 2) {
-                this.cookies.put(nameValue[0].trim(), nameValue[1].trim());
+    /**
+     * Sends a PUT request asynchronously.
+     */
+    public CompletableFuture<Response> putAsync(String url, Object data) {
+        Request request = new Request("PUT", url);
+        request.setData(data);
+        return sendAsync(request);
+    }
+
+    /**
+     * Sends a PATCH request asynchronously.
+     */
+    public CompletableFuture<Response> patchAsync(String url, Object data) {
+        Request request = new Request("PATCH", url);
+        request.setData(data);
+        return sendAsync(request);
+    }
+
+    /**
+     * Sends a DELETE request asynchronously.
+     */
+    public CompletableFuture<Response> deleteAsync(String url) {
+        return requestAsync("DELETE", url);
+    }
+
+    /**
+     * Sends the request asynchronously after merging session settings.
+     * The future completes exceptionally with a {@link RequestException} on failure.
+     * Requests are only non-blocking end to end when the transport supports it, as the default
+     * transport, {@link cn.jeyor1337.requests4j.transport.HttpClientTransport} and
+     * {@link cn.jeyor1337.requests4j.transport.NioTransport} do; other transports run the request
+     * on the session's executor.
+     * With a rate limiter set, the request waits for its permit without holding a thread.
+     */
+    public CompletableFuture<Response> sendAsync(Request original) {
+        Request request = prepare(original);
+
+        RateLimiter rateLimiter = this.rateLimiter;
+        CompletableFuture<Response> exchange = rateLimiter == null
+                ? adapter.sendAsync(request)
+                : rateLimiter.acquireAsync(request).thenCompose(permit -> adapter.sendAsync(request));
+
+        CompletableFuture<Response> result = new CompletableFuture<>();
+        exchange.whenComplete((response, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error);
+                return;
             }
-        }
+            if (rateLimiter != null) {
+                rateLimiter.update(request, response);
+            }
+            result.complete(response);
+        });
+        return result;
     }
 
     /**
-     * Returns session headers.
+     * Returns the request with session headers, cookies and auth layered under its own.
+     * Session settings are not copied: the result reads through to the session's current ones.
+     * Cookies from the jar are added by the adapter, for each URL of a redirect chain.
+     */
+    private Request prepare(Request request) {
+        return request.withDefaults(this.headers, this.cookies, this.auth, this.stream);
+    }
+
+    /**
+     * Returns session headers as a read-only snapshot; change them with {@link #addHeader} or {@link #setHeaders}.
      */
     public Map<String, String> getHeaders() {
         return headers;
     }
 
     /**
-     * Sets session headers.
+     * Sets session headers. The map is copied.
      */
-    public void setHeaders(Map<String, String> headers) {
-        this.headers = headers;
+    public synchronized void setHeaders(Map<String, String> headers) {
+        this.headers = Collections.unmodifiableMap(new HashMap<>(headers));
     }
 
     /**
      * Adds a header to the session.
      */
     public Session addHeader(String name, String value) {
-        this.headers.put(name, value);
+        synchronized (this) {
+            Map<String, String> headers = new HashMap<>(this.headers);
+            headers.put(name, value);
+            this.headers = Collections.unmodifiableMap(headers);
+        }
         return this;
     }
 
     /**
-     * Returns session cookies.
+     * Returns the cookies sent with every request of the session, whatever its host.
+     * Cookies set by servers are kept in the {@link #getCookieJar() cookie jar} instead.
+     * The map is a read-only snapshot; change it with {@link #addCookie} or {@link #setCookies}.
      */
     public Map<String, String> getCookies() {
         return cookies;
     }
 
     /**
-     * Sets session cookies.
+     * Sets the cookies sent with every request of the session. The map is copied.
+     */
+    public synchronized void setCookies(Map<String, String> cookies) {
+        this.cookies = LayeredMap.cookieDefaults(new HashMap<>(cookies));
+    }
+
+    /**
+     * Returns the jar holding the cookies set by servers.
+     */
+    public CookieJar getCookieJar() {
+        return cookieJar;
+    }
+
+    /**
+     * Replaces the cookie jar, for example to share one between sessions.
      */
-    public void setCookies(Map<String, String> cookies) {
-        this.cookies = cookies;
+    public Session setCookieJar(CookieJar cookieJar) {
+        this.cookieJar = cookieJar;
+        this.adapter.setCookieJar(cookieJar);
+        return this;
     }
 
     /**
      * Adds a cookie to the session.
      */
     public Session addCookie(String name, String value) {
-        this.cookies.put(name, value);
+        synchronized (this) {
+            Map<String, String> cookies = new HashMap<>(this.cookies);
+            cookies.put(name, value);
+            this.cookies = LayeredMap.cookieDefaults(cookies);
+        }
         return this;
     }
 
@@ -225,6 +458,117 @@ public class Session implements AutoCloseable {
         return this;
     }
 
+    /**
+     * Returns true if responses are streamed by default.
+     */
+    public boolean isStream() {
+        return stream;
+    }
+
+    /**
+     * Streams response bodies for all requests sent through this session.
+     * Streamed responses must be closed to release their connection.
+     */
+    public Session setStream(boolean stream) {
+        this.stream = stream;
+        return this;
+    }
+
+    /**
+     * Returns the HTTP cache, or null if responses are not cached.
+     */
+    public HttpCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Caches responses to requests sent with {@link #send} and the methods built on it.
+     * Asynchronous and pipelined requests bypass the cache.
+     */
+    public Session setCache(HttpCache cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    /**
+     * Returns the request coalescer, or null if identical requests are sent separately.
+     */
+    public RequestCoalescer getCoalescer() {
+        return coalescer;
+    }
+
+    /**
+     * Lets concurrent identical GET requests sent with {@link #send} share one network call.
+     */
+    public Session setCoalescer(RequestCoalescer coalescer) {
+        this.coalescer = coalescer;
+        return this;
+    }
+
+    /**
+     * Returns the retry policy, or null if failed requests are not retried.
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Retries requests sent with {@link #send} that fail according to the policy.
+     * Asynchronous and pipelined requests are not retried.
+     */
+    public Session setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    /**
+     * Returns the circuit breaker, or null if requests are always sent.
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Fails requests sent with {@link #send} at once while their host's circuit is open.
+     * Asynchronous and pipelined requests bypass the circuit breaker.
+     */
+    public Session setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+        return this;
+    }
+
+    /**
+     * Returns the rate limiter, or null if requests are sent as fast as they come.
+     */
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Holds back requests sent with {@link #send} and {@link #sendAsync} to the limiter's rate.
+     * Pipelined requests are not limited.
+     */
+    public Session setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+        return this;
+    }
+
+    /**
+     * Returns the hedging policy, or null if requests are never hedged.
+     */
+    public HedgingPolicy getHedgingPolicy() {
+        return hedgingPolicy;
+    }
+
+    /**
+     * Sends backup copies of slow idempotent requests sent with {@link #send}.
+     * Asynchronous and pipelined requests are not hedged.
+     */
+    public Session setHedgingPolicy(HedgingPolicy hedgingPolicy) {
+        this.hedgingPolicy = hedgingPolicy;
+        return this;
+    }
+
     /**
      * Returns the HTTP adapter.
      */
@@ -233,12 +577,92 @@ public class Session implements AutoCloseable {
     }
 
     /**
-     * Sets the HTTP adapter.
+     * Sets the HTTP adapter. It is given the session's cookie jar.
      */
     public void setAdapter(HttpAdapter adapter) {
+        adapter.setCookieJar(cookieJar);
         this.adapter = adapter;
     }
 
+    /**
+     * Sets the transport used by the session's HTTP adapter.
+     */
+    public Session setTransport(Transport transport) {
+        this.adapter.setTransport(transport);
+        return this;
+    }
+
+    /**
+     * Sets a transport shared with other sessions. Unlike one set with {@link #setTransport},
+     * it is not closed with the session.
+     */
+    public Session setSharedTransport(Transport transport) {
+        this.adapter.setSharedTransport(transport);
+        return this;
+    }
+
+    /**
+     * Sends requests over HTTP/1.1 connections kept in the given pool.
+     * The pool may be shared between sessions and is not closed with the session.
+     */
+    public Session setConnectionPool(ConnectionPool pool) {
+        return setTransport(new PooledTransport(pool));
+    }
+
+    /**
+     * Sets the resolver used to look up hosts, e.g. a
+     * {@link cn.jeyor1337.requests4j.dns.CachingDnsResolver} with its own TTLs.
+     * Only transports that open their own sockets use it.
+     */
+    public Session setDnsResolver(DnsResolver dnsResolver) {
+        this.adapter.setDnsResolver(dnsResolver);
+        return this;
+    }
+
+    /**
+     * Sets trust store, client certificates, protocols and cipher suites for https requests.
+     */
+    public Session setTlsConfig(TlsConfig tlsConfig) {
+        this.adapter.setTlsConfig(tlsConfig);
+        return this;
+    }
+
+    /**
+     * Turns verification of server certificates and hostnames on or off.
+     */
+    public Session setVerifySSL(boolean verifySSL) {
+        this.adapter.setVerifySSL(verifySSL);
+        return this;
+    }
+
+    /**
+     * Runs blocking request execution on virtual threads (Java 21 and later).
+     * On older runtimes a bounded platform thread pool is used instead.
+     */
+    public Session setVirtualThreads(boolean virtualThreads) {
+        this.adapter.setVirtualThreads(virtualThreads);
+        return this;
+    }
+
+    /**
+     * Gzip-compresses request bodies of at least this many bytes; -1 disables compression.
+     * Only enable this for servers that accept compressed request bodies.
+     */
+    public Session setCompressThreshold(long compressThreshold) {
+        this.adapter.setCompressThreshold(compressThreshold);
+        return this;
+    }
+
+    /**
+     * Lets {@link #sendPipelined} write up to depth idempotent requests back-to-back on one
+     * connection; 0 or 1 disables pipelining. Only pipelining transports such as
+     * {@link PooledTransport} make use of it.
+     */
+    public Session setPipelineDepth(int depth) {
+        this.adapter.setPipelineDepth(depth);
+        return this;
+    }
+
     /**
      * Sets connection timeout in milliseconds.
      */
@@ -251,7 +675,8 @@ public class Session implements AutoCloseable {
     @Override
     public void close() {
         // Clean up resources if needed
-        this.headers.clear();
-        this.cookies.clear();
+        this.headers = Collections.emptyMap();
+        this.cookies = LayeredMap.cookieDefaults(Collections.emptyMap());
+        this.adapter.close();
     }
 }
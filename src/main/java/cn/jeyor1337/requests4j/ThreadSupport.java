@@ -0,0 +1,55 @@
+package cn.jeyor1337.requests4j;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the executors used to run blocking request execution.
+ * This is the Java 11 version; the multi-release JAR replaces it on Java 21 and later
+ * with one that can use virtual threads.
+ */
+final class ThreadSupport {
+
+    private ThreadSupport() {
+    }
+
+    /**
+     * Returns true if this runtime supports virtual threads.
+     */
+    static boolean isVirtualThreadsAvailable() {
+        return false;
+    }
+
+    /**
+     * Creates an executor for blocking request execution.
+     * Virtual threads are not available before Java 21, so a bounded platform pool is always used.
+     *
+     * @param virtualThreads whether virtual threads were requested
+     * @param maxThreads maximum number of platform threads
+     */
+    static ExecutorService newExecutor(boolean virtualThreads, int maxThreads) {
+        return newPlatformExecutor(maxThreads);
+    }
+
+    static ExecutorService newPlatformExecutor(int maxThreads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads,
+                60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new DaemonThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "requests4j-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
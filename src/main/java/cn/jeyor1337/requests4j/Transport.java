@@ -0,0 +1,65 @@
+package cn.jeyor1337.requests4j;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Transport interface that performs a single HTTP exchange for the {@link HttpAdapter}.
+ * Redirects, authentication and error mapping are handled by the adapter.
+ */
+public interface Transport extends AutoCloseable {
+    /**
+     * Send the request to the given URL and return the response.
+     *
+     * @param url resolved URL, including query parameters
+     * @param request the request being sent
+     * @param body the encoded request body, or null if the request has none
+     * @param adapter the adapter carrying timeouts and other settings
+     */
+    Response execute(URL url, Request request, RequestBody body, HttpAdapter adapter) throws IOException;
+
+    /**
+     * Send the request without blocking the calling thread.
+     * Transports without a non-blocking engine run {@link #execute} on the adapter's executor.
+     * The returned future completes exceptionally with an {@link IOException} on failure.
+     */
+    default CompletableFuture<Response> executeAsync(URL url, Request request, RequestBody body,
+                                                     HttpAdapter adapter) {
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        adapter.getExecutor().execute(() -> {
+            try {
+                future.complete(execute(url, request, body, adapter));
+            } catch (IOException | RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Send several requests without bodies and return their responses in the same order.
+     * Transports that support HTTP/1.1 pipelining may write them back-to-back on one connection,
+     * up to {@link HttpAdapter#getPipelineDepth()} at a time; by default they are sent one by one.
+     * Responses are read fully.
+     *
+     * @param urls resolved URLs, one per request
+     */
+    default List<Response> executePipelined(List<URL> urls, List<Request> requests, HttpAdapter adapter)
+            throws IOException {
+        List<Response> responses = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            responses.add(execute(urls.get(i), requests.get(i), null, adapter));
+        }
+        return responses;
+    }
+
+    /**
+     * Release any connections held by this transport.
+     */
+    @Override
+    default void close() {
+    }
+}
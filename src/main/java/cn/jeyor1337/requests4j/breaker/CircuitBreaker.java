@@ -0,0 +1,369 @@
+package cn.jeyor1337.requests4j.breaker;
+
+import cn.jeyor1337.requests4j.Request;
+import cn.jeyor1337.requests4j.Response;
+import cn.jeyor1337.requests4j.Sender;
+import cn.jeyor1337.requests4j.exceptions.CircuitBreakerOpen;
+import cn.jeyor1337.requests4j.exceptions.ConnectionError;
+import cn.jeyor1337.requests4j.exceptions.InvalidURL;
+import cn.jeyor1337.requests4j.exceptions.RequestException;
+import cn.jeyor1337.requests4j.exceptions.Timeout;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-host circuit breaker.
+ *
+ * Each host has a circuit that records the outcome of its last calls in a sliding window.
+ * Once the window holds enough calls and the share of failures or of slow calls reaches its
+ * threshold, the circuit opens: requests to the host then fail at once with
+ * {@link CircuitBreakerOpen}, without opening a socket. After the open duration the circuit
+ * turns half-open and lets a few probe requests through; if they all succeed it closes,
+ * and if any fails it opens again.
+ *
+ * Failures are connection errors, timeouts and responses with one of the failure statuses.
+ */
+public class CircuitBreaker {
+    /**
+     * State of a host's circuit.
+     */
+    public enum State {
+        /** Requests are sent and their outcomes recorded. */
+        CLOSED,
+        /** Requests fail without being sent. */
+        OPEN,
+        /** A limited number of probe requests are sent to test the host. */
+        HALF_OPEN
+    }
+
+    private final Map<String, Circuit> circuits = new ConcurrentHashMap<>();
+    private final List<CircuitBreakerListener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile int windowSize = 100;
+    private volatile int minimumCalls = 20;
+    private volatile double failureRateThreshold = 0.5;
+    private volatile double slowCallRateThreshold = 1.0;
+    private volatile long slowCallDuration = 10000;
+    private volatile long openDuration = 30000;
+    private volatile int halfOpenProbes = 3;
+    private volatile Set<Integer> failureStatuses = new HashSet<>(Arrays.asList(500, 502, 503, 504));
+
+    /**
+     * Sends the request unless the circuit for its host is open.
+     *
+     * @throws CircuitBreakerOpen if the circuit is open, or half-open with all probes in flight
+     */
+    public Response send(Request request, Sender next) throws RequestException {
+        String host = hostOf(request.getUrl());
+        Circuit circuit = circuits.computeIfAbsent(host, key -> new Circuit(key, windowSize));
+        if (!circuit.tryAcquire()) {
+            rejected.incrementAndGet();
+            throw new CircuitBreakerOpen("Circuit breaker is open for " + host);
+        }
+
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Response response = next.send(request);
+            failed = failureStatuses.contains(response.getStatusCode());
+            return response;
+        } catch (RequestException e) {
+            // Bad URLs, redirect loops and the like say nothing about the host's health
+            failed = e instanceof ConnectionError || e instanceof Timeout;
+            throw e;
+        } finally {
+            long elapsed = (System.nanoTime() - start) / 1000000;
+            circuit.record(failed, elapsed >= slowCallDuration);
+        }
+    }
+
+    static String hostOf(String url) throws InvalidURL {
+        try {
+            URL parsed = new URL(url);
+            String host = parsed.getHost().toLowerCase(Locale.ROOT);
+            return parsed.getPort() == -1 ? host : host + ":" + parsed.getPort();
+        } catch (MalformedURLException e) {
+            throw new InvalidURL("Invalid URL: " + url, e);
+        }
+    }
+
+    /**
+     * Returns the state of the circuit for a host, given as in the URL (with the port if the URL has one).
+     */
+    public State getState(String host) {
+        Circuit circuit = circuits.get(host.toLowerCase(Locale.ROOT));
+        return circuit == null ? State.CLOSED : circuit.currentState();
+    }
+
+    /**
+     * Returns the share of failed calls in the window of a host, or -1 if it holds too few calls.
+     */
+    public double getFailureRate(String host) {
+        Circuit circuit = circuits.get(host.toLowerCase(Locale.ROOT));
+        return circuit == null ? -1 : circuit.failureRate();
+    }
+
+    /**
+     * Closes every circuit and forgets all recorded calls.
+     */
+    public void reset() {
+        circuits.clear();
+    }
+
+    /**
+     * Adds a listener notified of every state change.
+     */
+    public CircuitBreaker addListener(CircuitBreakerListener listener) {
+        listeners.add(listener);
+        return this;
+    }
+
+    public void removeListener(CircuitBreakerListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the number of requests refused because a circuit was open.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * Sets the number of recent calls per host the failure and slow-call rates are computed over.
+     * Applies to hosts first seen afterwards.
+     */
+    public CircuitBreaker setWindowSize(int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("windowSize must be positive");
+        }
+        this.windowSize = windowSize;
+        return this;
+    }
+
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    /**
+     * Sets the number of calls a window must hold before the circuit may open.
+     */
+    public CircuitBreaker setMinimumCalls(int minimumCalls) {
+        this.minimumCalls = minimumCalls;
+        return this;
+    }
+
+    public double getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    /**
+     * Sets the share of failed calls, between 0 and 1, that opens the circuit.
+     */
+    public CircuitBreaker setFailureRateThreshold(double failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+        return this;
+    }
+
+    public double getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    /**
+     * Sets the share of slow calls, between 0 and 1, that opens the circuit.
+     */
+    public CircuitBreaker setSlowCallRateThreshold(double slowCallRateThreshold) {
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        return this;
+    }
+
+    public long getSlowCallDuration() {
+        return slowCallDuration;
+    }
+
+    /**
+     * Sets how long a call may take before it counts as slow, in milliseconds.
+     */
+    public CircuitBreaker setSlowCallDuration(long slowCallDuration) {
+        this.slowCallDuration = slowCallDuration;
+        return this;
+    }
+
+    public long getOpenDuration() {
+        return openDuration;
+    }
+
+    /**
+     * Sets how long a circuit stays open before probe requests are let through, in milliseconds.
+     */
+    public CircuitBreaker setOpenDuration(long openDuration) {
+        this.openDuration = openDuration;
+        return this;
+    }
+
+    public int getHalfOpenProbes() {
+        return halfOpenProbes;
+    }
+
+    /**
+     * Sets the number of probe requests that must succeed in the half-open state to close the circuit.
+     */
+    public CircuitBreaker setHalfOpenProbes(int halfOpenProbes) {
+        if (halfOpenProbes < 1) {
+            throw new IllegalArgumentException("halfOpenProbes must be positive");
+        }
+        this.halfOpenProbes = halfOpenProbes;
+        return this;
+    }
+
+    /**
+     * Sets the status codes that count as failures. Defaults to 500, 502, 503 and 504.
+     */
+    public CircuitBreaker setFailureStatuses(Integer... statuses) {
+        this.failureStatuses = new HashSet<>(Arrays.asList(statuses));
+        return this;
+    }
+
+    private void fire(String host, State from, State to) {
+        for (CircuitBreakerListener listener : listeners) {
+            try {
+                listener.onStateChange(host, from, to);
+            } catch (RuntimeException e) {
+                // A broken listener must not break requests
+            }
+        }
+    }
+
+    /**
+     * The circuit of one host. The window is a ring of outcomes with running totals.
+     */
+    private final class Circuit {
+        private static final byte FAILED = 1;
+        private static final byte SLOW = 2;
+
+        private final String host;
+        private final byte[] window;
+        private int position;
+        private int calls;
+        private int failures;
+        private int slowCalls;
+        private State state = State.CLOSED;
+        private long openedAt;
+        private int probesStarted;
+        private int probesSucceeded;
+
+        Circuit(String host, int windowSize) {
+            this.host = host;
+            this.window = new byte[windowSize];
+        }
+
+        boolean tryAcquire() {
+            State from;
+            synchronized (this) {
+                if (state == State.CLOSED) {
+                    return true;
+                }
+                if (state == State.OPEN) {
+                    if (System.nanoTime() - openedAt < openDuration * 1000000) {
+                        return false;
+                    }
+                    from = transition(State.HALF_OPEN);
+                } else {
+                    from = null;
+                }
+                if (probesStarted >= halfOpenProbes) {
+                    return false;
+                }
+                probesStarted++;
+            }
+            if (from != null) {
+                fire(host, from, State.HALF_OPEN);
+            }
+            return true;
+        }
+
+        void record(boolean failed, boolean slow) {
+            State from;
+            State to;
+            synchronized (this) {
+                from = state;
+                if (state == State.HALF_OPEN) {
+                    if (failed || slow) {
+                        transition(State.OPEN);
+                    } else if (++probesSucceeded >= halfOpenProbes) {
+                        transition(State.CLOSED);
+                    }
+                } else if (state == State.CLOSED) {
+                    add((byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0)));
+                    if (calls >= Math.max(1, minimumCalls)
+                            && (failures >= failureRateThreshold * calls || slowCalls >= slowCallRateThreshold * calls)) {
+                        transition(State.OPEN);
+                    }
+                }
+                // Calls finishing while open were started before it opened and are ignored
+                to = state;
+            }
+            if (from != to) {
+                fire(host, from, to);
+            }
+        }
+
+        private void add(byte outcome) {
+            if (calls == window.length) {
+                byte old = window[position];
+                failures -= old & FAILED;
+                slowCalls -= (old & SLOW) >> 1;
+            } else {
+                calls++;
+            }
+            window[position] = outcome;
+            failures += outcome & FAILED;
+            slowCalls += (outcome & SLOW) >> 1;
+            position = (position + 1) % window.length;
+        }
+
+        private State transition(State to) {
+            State from = state;
+            state = to;
+            if (to == State.OPEN) {
+                openedAt = System.nanoTime();
+            }
+            if (to == State.HALF_OPEN) {
+                probesStarted = 0;
+                probesSucceeded = 0;
+            }
+            if (to == State.CLOSED) {
+                position = 0;
+                calls = 0;
+                failures = 0;
+                slowCalls = 0;
+            }
+            return from;
+        }
+
+        synchronized State currentState() {
+            if (state == State.OPEN && System.nanoTime() - openedAt >= openDuration * 1000000) {
+                return State.HALF_OPEN; // the next request will probe
+            }
+            return state;
+        }
+
+        synchronized double failureRate() {
+            return calls < Math.max(1, minimumCalls) ? -1 : (double) failures / calls;
+        }
+    }
+}
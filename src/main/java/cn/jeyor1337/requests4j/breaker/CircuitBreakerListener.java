@@ -0,0 +1,15 @@
+package cn.jeyor1337.requests4j.breaker;
+
+/**
+ * Receives the state changes of a {@link CircuitBreaker}.
+ * Called on the thread whose request caused the change, so it should return quickly.
+ */
+@FunctionalInterface
+public interface CircuitBreakerListener {
+    /**
+     * Called when the circuit for a host moves from one state to another.
+     *
+     * @param host the host, with the port if one was given in the URL
+     */
+    void onStateChange(String host, CircuitBreaker.State from, CircuitBreaker.State to);
+}
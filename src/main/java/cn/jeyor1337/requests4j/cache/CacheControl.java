@@ -0,0 +1,70 @@
+package cn.jeyor1337.requests4j.cache;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The Cache-Control directives this cache acts on.
+ */
+final class CacheControl {
+    boolean noStore;
+    boolean noCache;
+    boolean onlyIfCached;
+    long maxAge = -1;
+    long minFresh = -1;
+
+    /**
+     * Parses all Cache-Control header values; unknown directives are ignored.
+     */
+    static CacheControl parse(List<String> values) {
+        CacheControl control = new CacheControl();
+        for (String value : values) {
+            for (String directive : value.split(",")) {
+                String name = directive.trim();
+                String argument = null;
+                int eq = name.indexOf('=');
+                if (eq >= 0) {
+                    argument = name.substring(eq + 1).trim();
+                    name = name.substring(0, eq).trim();
+                    if (argument.length() >= 2 && argument.startsWith("\"") && argument.endsWith("\"")) {
+                        argument = argument.substring(1, argument.length() - 1);
+                    }
+                }
+                switch (name.toLowerCase(Locale.ROOT)) {
+                    case "no-store":
+                        control.noStore = true;
+                        break;
+                    case "no-cache":
+                        control.noCache = true;
+                        break;
+                    case "only-if-cached":
+                        control.onlyIfCached = true;
+                        break;
+                    case "max-age":
+                        control.maxAge = seconds(argument);
+                        break;
+                    case "min-fresh":
+                        control.minFresh = seconds(argument);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        return control;
+    }
+
+    /**
+     * Parses a delta-seconds argument; invalid values count as 0, overflowing ones are capped.
+     */
+    private static long seconds(String argument) {
+        if (argument == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(argument));
+        } catch (NumberFormatException e) {
+            return argument.matches("\\d+") ? Integer.MAX_VALUE : 0;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package cn.jeyor1337.requests4j.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A stored response: status, headers, decoded body, and the request header values
+ * it was selected by when the response carries a {@code Vary} header.
+ */
+public final class CacheEntry {
+    private final int statusCode;
+    private final String reason;
+    private final Map<String, List<String>> headers;
+    private final ByteBuffer body;
+    private final Map<String, String> varyHeaders;
+    private final long requestTime;
+    private final long responseTime;
+    private final long size;
+
+    /**
+     * @param varyHeaders lower-case request header names listed in Vary, mapped to the values sent
+     * @param requestTime when the request was sent, in epoch milliseconds
+     * @param responseTime when the response was received, in epoch milliseconds
+     */
+    public CacheEntry(int statusCode, String reason, Map<String, List<String>> headers, byte[] body,
+                      Map<String, String> varyHeaders, long requestTime, long responseTime) {
+        this(statusCode, reason, headers, ByteBuffer.wrap(body != null ? body : new byte[0]),
+                varyHeaders, requestTime, responseTime);
+    }
+
+    /**
+     * Creates an entry whose body is the remaining bytes of the buffer, which is not copied.
+     */
+    public CacheEntry(int statusCode, String reason, Map<String, List<String>> headers, ByteBuffer body,
+                      Map<String, String> varyHeaders, long requestTime, long responseTime) {
+        this.statusCode = statusCode;
+        this.reason = reason;
+        this.headers = copy(headers);
+        this.body = body.slice().asReadOnlyBuffer();
+        this.varyHeaders = Collections.unmodifiableMap(new LinkedHashMap<>(varyHeaders));
+        this.requestTime = requestTime;
+        this.responseTime = responseTime;
+        this.size = estimateSize();
+    }
+
+    private static Map<String, List<String>> copy(Map<String, List<String>> headers) {
+        Map<String, List<String>> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            copy.put(header.getKey(), Collections.unmodifiableList(new ArrayList<>(header.getValue())));
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Returns the first value of a header, ignoring case.
+     */
+    public String getHeader(String name) {
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+                return header.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a copy of the decoded body.
+     */
+    public byte[] getBody() {
+        byte[] bytes = new byte[body.remaining()];
+        body.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns the decoded body as a read-only buffer, without copying it.
+     */
+    public ByteBuffer getBodyBuffer() {
+        return body.duplicate();
+    }
+
+    public Map<String, String> getVaryHeaders() {
+        return varyHeaders;
+    }
+
+    public long getRequestTime() {
+        return requestTime;
+    }
+
+    public long getResponseTime() {
+        return responseTime;
+    }
+
+    /**
+     * Returns the approximate number of bytes the entry occupies.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    private long estimateSize() {
+        long size = 128 + body.remaining();
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            size += header.getKey() != null ? 2L * header.getKey().length() : 0;
+            for (String value : header.getValue()) {
+                size += 2L * value.length() + 16;
+            }
+        }
+        for (Map.Entry<String, String> vary : varyHeaders.entrySet()) {
+            size += 2L * (vary.getKey().length() + (vary.getValue() != null ? vary.getValue().length() : 0));
+        }
+        return size;
+    }
+
+    /**
+     * Returns a copy with the headers of a 304 response merged in and new request and response times.
+     */
+    CacheEntry revalidated(Map<String, List<String>> notModifiedHeaders, long requestTime, long responseTime) {
+        Map<String, List<String>> merged = new LinkedHashMap<>(headers);
+        for (Map.Entry<String, List<String>> header : notModifiedHeaders.entrySet()) {
+            String name = header.getKey();
+            if (name == null || name.equalsIgnoreCase("Content-Length")
+                    || name.equalsIgnoreCase("Transfer-Encoding") || name.equalsIgnoreCase("Content-Encoding")) {
+                continue;
+            }
+            merged.keySet().removeIf(existing -> name.equalsIgnoreCase(existing));
+            merged.put(name, header.getValue());
+        }
+        return new CacheEntry(statusCode, reason, merged, body, varyHeaders, requestTime, responseTime);
+    }
+}
@@ -0,0 +1,30 @@
+package cn.jeyor1337.requests4j.cache;
+
+/**
+ * Storage for cached responses, keyed by request URL. Implementations must be thread-safe.
+ */
+public interface CacheStore {
+    /**
+     * Returns the entry for the key, or null if there is none.
+     */
+    CacheEntry get(String key);
+
+    /**
+     * Stores the entry, replacing any previous one for the key.
+     */
+    void put(String key, CacheEntry entry);
+
+    void remove(String key);
+
+    void clear();
+
+    /**
+     * Returns the number of stored entries.
+     */
+    int getEntryCount();
+
+    /**
+     * Returns the approximate number of bytes stored.
+     */
+    long getSize();
+}
@@ -0,0 +1,585 @@
+package cn.jeyor1337.requests4j.cache;
+
+import cn.jeyor1337.requests4j.io.ByteBufferInputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Cache store kept in a directory, so cached responses survive restarts and may outgrow the heap.
+ *
+ * Entries are appended to fixed-size segment files, which are memory-mapped; bodies are returned
+ * as slices of the mapping and never copied onto the heap. Once the segments exceed the maximum size,
+ * the oldest segment is deleted along with the entries in it.
+ *
+ * A compact index of keys and record offsets is written when a segment fills up, on {@link #flush()}
+ * and on {@link #close()}. On open the index is loaded and records appended after it are recovered by
+ * scanning the segments; every record carries a checksum and a sequence number, and scanning stops
+ * at the first torn or stale record, so a crash loses at most the entries written after the last flush.
+ */
+public class DiskCacheStore implements CacheStore, Closeable {
+    private static final int RECORD_MAGIC = 0x52344a43;
+    private static final int INDEX_MAGIC = 0x52344a49;
+    private static final int INDEX_VERSION = 1;
+    private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int MIN_SEGMENT_SIZE = 64 * 1024;
+    private static final String INDEX_FILE = "index";
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.dat");
+
+    // magic, crc, sequence, key length, meta length, body length (-1 for a removal)
+    private static final int HEADER_SIZE = 28;
+
+    private final Path directory;
+    private final long maxSize;
+    private final int segmentSize;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final Map<String, Location> index = new HashMap<>();
+    private Segment active;
+    private long sequence;
+    private long evictions;
+    private boolean closed;
+
+    /**
+     * Opens the store in the directory, recovering entries left by a previous run.
+     *
+     * @param maxSize maximum number of bytes kept on disk
+     */
+    public DiskCacheStore(Path directory, long maxSize) throws IOException {
+        this(directory, maxSize, (int) Math.max(MIN_SEGMENT_SIZE, Math.min(DEFAULT_SEGMENT_SIZE, maxSize / 4)));
+    }
+
+    /**
+     * @param maxSize maximum number of bytes kept on disk
+     * @param segmentSize size of each segment file, which bounds the size of a single entry
+     */
+    public DiskCacheStore(Path directory, long maxSize, int segmentSize) throws IOException {
+        if (segmentSize < MIN_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("segmentSize must be at least " + MIN_SEGMENT_SIZE);
+        }
+        if (maxSize < 2L * segmentSize) {
+            throw new IllegalArgumentException("maxSize must hold at least two segments");
+        }
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    @Override
+    public CacheEntry get(String key) {
+        Location location;
+        Segment segment;
+        synchronized (this) {
+            location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+            segment = segments.get(location.segment);
+        }
+        // Records are never modified once written, so they are decoded without holding the lock
+        try {
+            return decode(segment.buffer, location.offset, key);
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                index.remove(key, location);
+            }
+            return null;
+        }
+    }
+
+    @Override
+    public void put(String key, CacheEntry entry) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] meta;
+        try {
+            meta = encodeMeta(entry);
+        } catch (IOException e) {
+            remove(key); // a header too long to encode
+            return;
+        }
+        ByteBuffer body = entry.getBodyBuffer();
+        long size = (long) HEADER_SIZE + keyBytes.length + meta.length + body.remaining();
+        if (size > segmentSize) {
+            remove(key);
+            return;
+        }
+        synchronized (this) {
+            try {
+                Location location = append(keyBytes, meta, body, (int) size);
+                if (location != null) {
+                    index.put(key, location);
+                }
+            } catch (IOException e) {
+                // A cache write that fails only costs a miss later
+                index.remove(key);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void remove(String key) {
+        if (index.remove(key) != null) {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            try {
+                // Recorded so that recovery does not bring the entry back
+                append(keyBytes, new byte[0], null, HEADER_SIZE + keyBytes.length);
+            } catch (IOException e) {
+                // The entry is gone for this run; at worst it is recovered after a crash
+            }
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        if (closed) {
+            return;
+        }
+        index.clear();
+        try {
+            for (Segment segment : segments.values()) {
+                Files.deleteIfExists(segment.path);
+            }
+            segments.clear();
+            Files.deleteIfExists(directory.resolve(INDEX_FILE));
+            active = createSegment(active != null ? active.id + 1 : 0);
+        } catch (IOException e) {
+            active = null; // recreated on the next write
+        }
+    }
+
+    @Override
+    public synchronized int getEntryCount() {
+        return index.size();
+    }
+
+    /**
+     * Returns the number of bytes written to the segments, including replaced and removed entries
+     * not yet reclaimed by deleting their segment.
+     */
+    @Override
+    public synchronized long getSize() {
+        long size = 0;
+        for (Segment segment : segments.values()) {
+            size += segment.position;
+        }
+        return size;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Returns the number of entries dropped when their segment was deleted to stay within the size limit.
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Forces written entries to disk and saves the index, so a later open does not need to scan for them.
+     */
+    public synchronized void flush() throws IOException {
+        if (closed) {
+            return;
+        }
+        for (Segment segment : segments.values()) {
+            if (segment.dirty) {
+                segment.buffer.force();
+                segment.dirty = false;
+            }
+        }
+        writeIndex();
+    }
+
+    /**
+     * Flushes the store. Bodies already returned stay readable; the store itself can no longer be used.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            flush();
+            closed = true;
+            index.clear();
+        }
+    }
+
+    /**
+     * Appends a record to the active segment, starting a new segment if it does not fit.
+     */
+    private Location append(byte[] key, byte[] meta, ByteBuffer body, int size) throws IOException {
+        if (closed) {
+            return null;
+        }
+        if (active == null) {
+            active = createSegment(segments.isEmpty() ? 0 : segments.lastKey() + 1);
+        } else if (active.buffer.capacity() - active.position < size) {
+            roll();
+        }
+
+        Segment segment = active;
+        int offset = segment.position;
+        long seq = ++sequence;
+        ByteBuffer out = segment.buffer.duplicate();
+        out.position(offset + 8);
+        out.putLong(seq);
+        out.putInt(key.length);
+        out.putInt(meta.length);
+        out.putInt(body != null ? body.remaining() : -1);
+        out.put(key);
+        out.put(meta);
+        if (body != null) {
+            out.put(body.duplicate());
+        }
+        out.putInt(offset + 4, checksum(segment.buffer, offset, size));
+        out.putInt(offset, RECORD_MAGIC);
+        segment.position = offset + size;
+        segment.dirty = true;
+        return new Location(segment.id, offset, seq);
+    }
+
+    /**
+     * Seals the active segment and starts the next one, deleting the oldest segments beyond the size limit.
+     */
+    private void roll() throws IOException {
+        Segment next = createSegment(active.id + 1);
+        active = next;
+        while ((long) segments.size() * segmentSize > maxSize && segments.size() > 1) {
+            evict(segments.firstEntry().getValue());
+        }
+        flush(); // a full segment is a natural checkpoint
+    }
+
+    private void evict(Segment segment) throws IOException {
+        segments.remove(segment.id);
+        Iterator<Location> it = index.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().segment == segment.id) {
+                it.remove();
+                evictions++;
+            }
+        }
+        // Bodies handed out earlier stay readable through their mapping
+        Files.deleteIfExists(segment.path);
+    }
+
+    private Segment createSegment(long id) throws IOException {
+        Path path = directory.resolve("segment-" + id + ".dat");
+        Segment segment;
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(segmentSize);
+            segment = new Segment(id, path, file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+        }
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private static int checksum(ByteBuffer buffer, int offset, int size) {
+        ByteBuffer region = buffer.duplicate();
+        region.limit(offset + size).position(offset + 8);
+        CRC32 crc = new CRC32();
+        crc.update(region);
+        return (int) crc.getValue();
+    }
+
+    private static CacheEntry decode(ByteBuffer buffer, int offset, String key) throws IOException {
+        ByteBuffer in = buffer.duplicate();
+        if (in.getInt(offset) != RECORD_MAGIC) {
+            throw new IOException("Corrupt cache record");
+        }
+        int keyLength = in.getInt(offset + 16);
+        int metaLength = in.getInt(offset + 20);
+        int bodyLength = in.getInt(offset + 24);
+        int metaStart = offset + HEADER_SIZE + keyLength;
+        byte[] keyBytes = new byte[keyLength];
+        in.position(offset + HEADER_SIZE);
+        in.get(keyBytes);
+        if (bodyLength < 0 || !key.equals(new String(keyBytes, StandardCharsets.UTF_8))) {
+            throw new IOException("Corrupt cache record");
+        }
+
+        in.limit(metaStart + metaLength).position(metaStart);
+        DataInputStream meta = new DataInputStream(new ByteBufferInputStream(in.slice()));
+        int statusCode = meta.readInt();
+        String reason = meta.readBoolean() ? meta.readUTF() : null;
+        long requestTime = meta.readLong();
+        long responseTime = meta.readLong();
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        for (int i = meta.readInt(); i > 0; i--) {
+            String name = meta.readBoolean() ? meta.readUTF() : null;
+            List<String> values = new ArrayList<>();
+            for (int j = meta.readInt(); j > 0; j--) {
+                values.add(meta.readUTF());
+            }
+            headers.put(name, values);
+        }
+        Map<String, String> vary = new LinkedHashMap<>();
+        for (int i = meta.readInt(); i > 0; i--) {
+            String name = meta.readUTF();
+            vary.put(name, meta.readBoolean() ? meta.readUTF() : null);
+        }
+
+        in.limit(metaStart + metaLength + bodyLength).position(metaStart + metaLength);
+        return new CacheEntry(statusCode, reason, headers, in.slice(), vary, requestTime, responseTime);
+    }
+
+    private static byte[] encodeMeta(CacheEntry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(entry.getStatusCode());
+        writeNullable(out, entry.getReason());
+        out.writeLong(entry.getRequestTime());
+        out.writeLong(entry.getResponseTime());
+        out.writeInt(entry.getHeaders().size());
+        for (Map.Entry<String, List<String>> header : entry.getHeaders().entrySet()) {
+            writeNullable(out, header.getKey());
+            out.writeInt(header.getValue().size());
+            for (String value : header.getValue()) {
+                out.writeUTF(value);
+            }
+        }
+        out.writeInt(entry.getVaryHeaders().size());
+        for (Map.Entry<String, String> vary : entry.getVaryHeaders().entrySet()) {
+            out.writeUTF(vary.getKey());
+            writeNullable(out, vary.getValue());
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * Writes the index to a temporary file and moves it into place, so a crash leaves the old one intact.
+     */
+    private void writeIndex() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + index.size() * 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(INDEX_MAGIC);
+        out.writeInt(INDEX_VERSION);
+        out.writeLong(sequence);
+        out.writeInt(segments.size());
+        for (Segment segment : segments.values()) {
+            out.writeLong(segment.id);
+            out.writeInt(segment.position);
+        }
+        out.writeInt(index.size());
+        for (Map.Entry<String, Location> entry : index.entrySet()) {
+            byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(key.length);
+            out.write(key);
+            out.writeLong(entry.getValue().segment);
+            out.writeInt(entry.getValue().offset);
+            out.writeLong(entry.getValue().sequence);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+
+        Path temp = directory.resolve(INDEX_FILE + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temp.toFile());
+             BufferedOutputStream buffered = new BufferedOutputStream(file)) {
+            bytes.writeTo(buffered);
+            buffered.flush();
+            file.getChannel().force(true);
+        }
+        Files.move(temp, directory.resolve(INDEX_FILE),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps the existing segments, loads the index and replays the records written after it.
+     */
+    private void recover() throws IOException {
+        List<Long> ids = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "segment-*.dat")) {
+            for (Path file : files) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    ids.add(Long.parseLong(matcher.group(1)));
+                }
+            }
+        }
+        for (long id : ids) {
+            Path path = directory.resolve("segment-" + id + ".dat");
+            try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+                long length = Math.min(file.length(), Integer.MAX_VALUE);
+                segments.put(id, new Segment(id, path,
+                        file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length)));
+            }
+        }
+
+        Map<Long, Integer> checkpoints = readIndex();
+        Map<String, Long> removed = new HashMap<>();
+        Segment last = null;
+        for (Segment segment : segments.values()) {
+            Integer checkpoint = checkpoints.get(segment.id);
+            segment.position = scan(segment, checkpoint != null ? checkpoint : 0, removed);
+            last = segment;
+        }
+
+        // Continue in the last segment only if nothing but zeroes follows its last record,
+        // so records left over from before a crash can never follow new ones
+        if (last != null && last.position + 4 <= last.buffer.capacity()
+                && last.buffer.getInt(last.position) == 0 && last.buffer.capacity() == segmentSize) {
+            active = last;
+        } else {
+            active = createSegment(last != null ? last.id + 1 : 0);
+        }
+        while ((long) segments.size() * segmentSize > maxSize && segments.size() > 1) {
+            evict(segments.firstEntry().getValue());
+        }
+    }
+
+    /**
+     * Loads the index into memory and returns the end of each segment at the time it was written,
+     * or no positions if the index is missing or damaged.
+     */
+    private Map<Long, Integer> readIndex() {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(directory.resolve(INDEX_FILE));
+        } catch (IOException e) {
+            return new HashMap<>();
+        }
+        if (bytes.length < 8) {
+            return new HashMap<>();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 8);
+        if (crc.getValue() != ByteBuffer.wrap(bytes, bytes.length - 8, 8).getLong()) {
+            return new HashMap<>();
+        }
+
+        Map<Long, Integer> checkpoints = new HashMap<>();
+        Map<String, Location> entries = new HashMap<>();
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 8));
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) {
+                return new HashMap<>();
+            }
+            long savedSequence = in.readLong();
+            for (int i = in.readInt(); i > 0; i--) {
+                checkpoints.put(in.readLong(), in.readInt());
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                byte[] key = new byte[in.readInt()];
+                in.readFully(key);
+                Location location = new Location(in.readLong(), in.readInt(), in.readLong());
+                if (segments.containsKey(location.segment)) {
+                    entries.put(new String(key, StandardCharsets.UTF_8), location);
+                }
+            }
+            sequence = Math.max(sequence, savedSequence);
+        } catch (IOException e) {
+            return new HashMap<>();
+        }
+        index.putAll(entries);
+        return checkpoints;
+    }
+
+    /**
+     * Applies the valid records of a segment from the given position and returns where they end.
+     */
+    private int scan(Segment segment, int start, Map<String, Long> removed) {
+        ByteBuffer buffer = segment.buffer;
+        int capacity = buffer.capacity();
+        int position = start;
+        long lastSequence = -1;
+        while (position + HEADER_SIZE <= capacity && buffer.getInt(position) == RECORD_MAGIC) {
+            long seq = buffer.getLong(position + 8);
+            int keyLength = buffer.getInt(position + 16);
+            int metaLength = buffer.getInt(position + 20);
+            int bodyLength = buffer.getInt(position + 24);
+            if (keyLength < 0 || metaLength < 0 || bodyLength < -1 || seq <= lastSequence) {
+                break;
+            }
+            long size = (long) HEADER_SIZE + keyLength + metaLength + Math.max(0, bodyLength);
+            if (position + size > capacity
+                    || buffer.getInt(position + 4) != checksum(buffer, position, (int) size)) {
+                break; // torn by a crash
+            }
+
+            byte[] keyBytes = new byte[keyLength];
+            ByteBuffer keyRegion = buffer.duplicate();
+            keyRegion.position(position + HEADER_SIZE);
+            keyRegion.get(keyBytes);
+            String key = new String(keyBytes, StandardCharsets.UTF_8);
+            Location current = index.get(key);
+            Long removedAt = removed.get(key);
+            boolean newer = (current == null || seq > current.sequence) && (removedAt == null || seq > removedAt);
+            if (newer) {
+                if (bodyLength < 0) {
+                    index.remove(key);
+                    removed.put(key, seq);
+                } else {
+                    index.put(key, new Location(segment.id, position, seq));
+                }
+            }
+            sequence = Math.max(sequence, seq);
+            lastSequence = seq;
+            position += (int) size;
+        }
+        return position;
+    }
+
+    private static final class Segment {
+        final long id;
+        final Path path;
+        final MappedByteBuffer buffer;
+        int position;
+        boolean dirty;
+
+        Segment(long id, Path path, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+
+    private static final class Location {
+        final long segment;
+        final int offset;
+        final long sequence;
+
+        Location(long segment, int offset, long sequence) {
+            this.segment = segment;
+            this.offset = offset;
+            this.sequence = sequence;
+        }
+    }
+}
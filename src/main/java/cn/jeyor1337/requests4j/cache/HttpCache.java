@@ -0,0 +1,385 @@
+package cn.jeyor1337.requests4j.cache;
+
+import cn.jeyor1337.requests4j.Headers;
+import cn.jeyor1337.requests4j.Request;
+import cn.jeyor1337.requests4j.Response;
+import cn.jeyor1337.requests4j.Sender;
+import cn.jeyor1337.requests4j.exceptions.RequestException;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Private HTTP cache following RFC 9111.
+ * GET responses are stored according to {@code Cache-Control}, {@code Expires} and {@code Vary},
+ * and served without contacting the server while fresh. Stale responses with an {@code ETag} or
+ * {@code Last-Modified} validator are revalidated with a conditional request, and a 304 answer
+ * is turned into the stored response. Unsafe requests invalidate the stored response for their URL.
+ */
+public class HttpCache {
+    private static final Set<Integer> CACHEABLE_BY_DEFAULT = new HashSet<>(
+            Arrays.asList(200, 203, 204, 300, 301, 308, 404, 405, 410, 414, 501));
+    private static final long MAX_HEURISTIC_LIFETIME = 24 * 60 * 60 * 1000L;
+
+    private final CacheStore store;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+
+    /**
+     * Creates a cache keeping at most maxSize bytes in memory.
+     */
+    public HttpCache(long maxSize) {
+        this(new MemoryCacheStore(maxSize));
+    }
+
+    public HttpCache(CacheStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Answers the request from the cache or passes it on to the next sender, storing the response if allowed.
+     */
+    public Response send(Request request, Sender next) throws RequestException {
+        String method = request.getMethod().toUpperCase(Locale.ROOT);
+        if (!method.equals("GET")) {
+            Response response = next.send(request);
+            if (!isSafe(method) && response.getStatusCode() < 400) {
+                store.remove(key(request));
+            }
+            return response;
+        }
+        if (!isCacheable(request)) {
+            misses.incrementAndGet();
+            return next.send(request);
+        }
+
+        // Vary is matched against the headers as they are before the request is sent
+        Map<String, String> requestHeaders = new HashMap<>(request.getHeaders());
+        CacheControl requestControl = requestCacheControl(request);
+        String key = key(request);
+        long now = System.currentTimeMillis();
+        CacheEntry entry = store.get(key);
+        if (entry != null && !matchesVary(entry, requestHeaders)) {
+            entry = null;
+        }
+
+        if (entry != null && !requestControl.noCache && isFresh(entry, requestControl, now)) {
+            hits.incrementAndGet();
+            return toResponse(entry, request);
+        }
+        if (requestControl.onlyIfCached) {
+            misses.incrementAndGet();
+            return gatewayTimeout(request);
+        }
+
+        if (entry != null && (entry.getHeader("ETag") != null || entry.getHeader("Last-Modified") != null)) {
+            revalidations.incrementAndGet();
+            Response response = next.send(conditional(request, entry));
+            response.setRequest(request);
+            long responseTime = System.currentTimeMillis();
+            if (response.getStatusCode() == 304) {
+                notModified.incrementAndGet();
+                response.close();
+                CacheEntry updated = entry.revalidated(response.getHeaders(), now, responseTime);
+                if (!requestControl.noStore) {
+                    store.put(key, updated);
+                }
+                return toResponse(updated, request);
+            }
+            return store(key, request, requestHeaders, requestControl, response, now, responseTime);
+        }
+
+        misses.incrementAndGet();
+        Response response = next.send(request);
+        return store(key, request, requestHeaders, requestControl, response, now, System.currentTimeMillis());
+    }
+
+    private Response store(String key, Request request, Map<String, String> requestHeaders,
+                           CacheControl requestControl, Response response, long requestTime, long responseTime) {
+        if (requestControl.noStore || !isStorable(response)) {
+            if (response.getStatusCode() < 400) {
+                store.remove(key); // superseded by the new response
+            }
+            return response;
+        }
+        Map<String, String> vary = new LinkedHashMap<>();
+        for (String name : varyNames(response.getHeaders())) {
+            vary.put(name, headerValue(requestHeaders, name));
+        }
+        CacheEntry entry = new CacheEntry(response.getStatusCode(), response.getReason(), response.getHeaders(),
+                response.getContent(), vary, requestTime, responseTime);
+        if (freshnessLifetime(entry, CacheControl.parse(headerValues(entry.getHeaders(), "Cache-Control"))) <= 0
+                && entry.getHeader("ETag") == null && entry.getHeader("Last-Modified") == null) {
+            store.remove(key); // stale on arrival and cannot be revalidated
+            return response;
+        }
+        store.put(key, entry);
+        return response;
+    }
+
+    private static boolean isSafe(String method) {
+        return method.equals("GET") || method.equals("HEAD") || method.equals("OPTIONS") || method.equals("TRACE");
+    }
+
+    /**
+     * Streamed, ranged and caller-made conditional requests bypass the cache.
+     */
+    private static boolean isCacheable(Request request) {
+        Map<String, String> headers = request.getHeaders();
+        return !request.isStream()
+                && request.getData() == null && request.getJson() == null
+                && headerValue(headers, "Range") == null
+                && headerValue(headers, "If-None-Match") == null
+                && headerValue(headers, "If-Modified-Since") == null;
+    }
+
+    private static CacheControl requestCacheControl(Request request) {
+        String value = headerValue(request.getHeaders(), "Cache-Control");
+        if (value != null) {
+            return CacheControl.parse(Collections.singletonList(value));
+        }
+        CacheControl control = new CacheControl();
+        String pragma = headerValue(request.getHeaders(), "Pragma");
+        control.noCache = pragma != null && pragma.toLowerCase(Locale.ROOT).contains("no-cache");
+        return control;
+    }
+
+    private static boolean isStorable(Response response) {
+        if (response.getRaw() != null || !response.getHistory().isEmpty()) {
+            return false; // body not read yet, or answered for another URL after redirects
+        }
+        Map<String, List<String>> headers = response.getHeaders();
+        CacheControl control = CacheControl.parse(headerValues(headers, "Cache-Control"));
+        if (control.noStore || varyNames(headers).contains("*")) {
+            return false;
+        }
+        int status = response.getStatusCode();
+        if (status < 200 || status == 206 || status == 304) {
+            return false;
+        }
+        return CACHEABLE_BY_DEFAULT.contains(status)
+                || control.maxAge >= 0 || !headerValues(headers, "Expires").isEmpty();
+    }
+
+    private static boolean isFresh(CacheEntry entry, CacheControl requestControl, long now) {
+        CacheControl control = CacheControl.parse(headerValues(entry.getHeaders(), "Cache-Control"));
+        if (control.noCache) {
+            return false;
+        }
+        long lifetime = freshnessLifetime(entry, control);
+        if (requestControl.maxAge >= 0) {
+            lifetime = Math.min(lifetime, requestControl.maxAge * 1000);
+        }
+        long age = currentAge(entry, now);
+        if (requestControl.minFresh >= 0) {
+            age += requestControl.minFresh * 1000;
+        }
+        return age < lifetime;
+    }
+
+    private static long freshnessLifetime(CacheEntry entry, CacheControl control) {
+        if (control.maxAge >= 0) {
+            return control.maxAge * 1000;
+        }
+        long date = parseDate(entry.getHeader("Date"), entry.getResponseTime());
+        String expires = entry.getHeader("Expires");
+        if (expires != null) {
+            // An invalid Expires value means the response is already stale
+            return Math.max(0, parseDate(expires, 0) - date);
+        }
+        String lastModified = entry.getHeader("Last-Modified");
+        if (lastModified != null && CACHEABLE_BY_DEFAULT.contains(entry.getStatusCode())) {
+            long modified = parseDate(lastModified, date);
+            return Math.min(MAX_HEURISTIC_LIFETIME, Math.max(0, (date - modified) / 10));
+        }
+        return 0;
+    }
+
+    /**
+     * Computes the age of the entry as described in RFC 9111 section 4.2.3.
+     */
+    private static long currentAge(CacheEntry entry, long now) {
+        long date = parseDate(entry.getHeader("Date"), entry.getResponseTime());
+        long apparentAge = Math.max(0, entry.getResponseTime() - date);
+        long ageValue = 0;
+        String age = entry.getHeader("Age");
+        if (age != null) {
+            try {
+                ageValue = Math.max(0, Long.parseLong(age.trim())) * 1000;
+            } catch (NumberFormatException e) {
+                // Ignore an invalid Age header
+            }
+        }
+        long responseDelay = entry.getResponseTime() - entry.getRequestTime();
+        long correctedInitialAge = Math.max(apparentAge, ageValue + responseDelay);
+        return correctedInitialAge + (now - entry.getResponseTime());
+    }
+
+    private static long parseDate(String value, long fallback) {
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+                    .toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return fallback;
+        }
+    }
+
+    private static boolean matchesVary(CacheEntry entry, Map<String, String> requestHeaders) {
+        for (Map.Entry<String, String> vary : entry.getVaryHeaders().entrySet()) {
+            String value = headerValue(requestHeaders, vary.getKey());
+            if (value == null ? vary.getValue() != null : !value.equals(vary.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<String> varyNames(Map<String, List<String>> headers) {
+        List<String> names = new ArrayList<>();
+        for (String value : headerValues(headers, "Vary")) {
+            for (String name : value.split(",")) {
+                if (!name.trim().isEmpty()) {
+                    names.add(name.trim().toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        return names;
+    }
+
+    private static Request conditional(Request request, CacheEntry entry) {
+        Map<String, String> headers = new HashMap<>(request.getHeaders());
+        String etag = entry.getHeader("ETag");
+        if (etag != null) {
+            headers.put("If-None-Match", etag);
+        }
+        String lastModified = entry.getHeader("Last-Modified");
+        if (lastModified != null) {
+            headers.put("If-Modified-Since", lastModified);
+        }
+        return new Request(request.getMethod(), request.getUrl())
+                .setHeaders(headers)
+                .setParams(request.getParams())
+                .setCookies(request.getCookies())
+                .setAuth(request.getAuth())
+                .setStream(request.isStream())
+                .setCompress(request.isCompress());
+    }
+
+    private static Response toResponse(CacheEntry entry, Request request) {
+        Response response = new Response();
+        response.setStatusCode(entry.getStatusCode());
+        response.setReason(entry.getReason());
+        response.setHeaders(new Headers(entry.getHeaders()));
+        response.setContent(entry.getBodyBuffer());
+        response.detectEncoding();
+        response.setRequest(request);
+        return response;
+    }
+
+    private static Response gatewayTimeout(Request request) {
+        Response response = new Response();
+        response.setStatusCode(504);
+        response.setReason("Gateway Timeout");
+        response.setContent(new byte[0]);
+        response.setRequest(request);
+        return response;
+    }
+
+    /**
+     * Returns the cache key: the URL with the query parameters appended in sorted order.
+     */
+    static String key(Request request) {
+        String url = request.getUrl();
+        if (request.getParams() == null || request.getParams().isEmpty()) {
+            return url;
+        }
+        StringBuilder key = new StringBuilder(url);
+        char separator = url.contains("?") ? '&' : '?';
+        for (Map.Entry<String, String> param : new TreeMap<>(request.getParams()).entrySet()) {
+            key.append(separator)
+                    .append(URLEncoder.encode(param.getKey(), StandardCharsets.UTF_8))
+                    .append('=')
+                    .append(URLEncoder.encode(param.getValue(), StandardCharsets.UTF_8));
+            separator = '&';
+        }
+        return key.toString();
+    }
+
+    private static String headerValue(Map<String, String> headers, String name) {
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static List<String> headerValues(Map<String, List<String>> headers, String name) {
+        List<String> values = new ArrayList<>();
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                values.addAll(header.getValue());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Drops all stored responses.
+     */
+    public void clear() {
+        store.clear();
+    }
+
+    public CacheStore getStore() {
+        return store;
+    }
+
+    /**
+     * Returns the number of requests answered from the cache without contacting the server.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of requests sent to the server without a usable stored response.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of conditional requests sent to revalidate stale responses.
+     */
+    public long getRevalidationCount() {
+        return revalidations.get();
+    }
+
+    /**
+     * Returns the number of revalidations the server answered with 304 Not Modified.
+     */
+    public long getNotModifiedCount() {
+        return notModified.get();
+    }
+}
@@ -0,0 +1,83 @@
+package cn.jeyor1337.requests4j.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory store that evicts the least recently used entries once it holds more than a number of bytes.
+ */
+public class MemoryCacheStore implements CacheStore {
+    private final long maxSize;
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+    private long evictions;
+
+    /**
+     * @param maxSize maximum number of bytes kept, counting bodies and headers
+     */
+    public MemoryCacheStore(long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public synchronized CacheEntry get(String key) {
+        return entries.get(key);
+    }
+
+    @Override
+    public synchronized void put(String key, CacheEntry entry) {
+        long entrySize = entry.getSize();
+        remove(key);
+        if (entrySize > maxSize) {
+            return; // would evict everything else and still not fit
+        }
+        entries.put(key, entry);
+        size += entrySize;
+
+        Iterator<Map.Entry<String, CacheEntry>> it = entries.entrySet().iterator();
+        while (size > maxSize && it.hasNext()) {
+            size -= it.next().getValue().getSize();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    @Override
+    public synchronized void remove(String key) {
+        CacheEntry removed = entries.remove(key);
+        if (removed != null) {
+            size -= removed.getSize();
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    @Override
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of entries evicted to stay within the size limit.
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+}
@@ -0,0 +1,192 @@
+package cn.jeyor1337.requests4j.cache;
+
+import cn.jeyor1337.requests4j.Headers;
+import cn.jeyor1337.requests4j.Request;
+import cn.jeyor1337.requests4j.Response;
+import cn.jeyor1337.requests4j.Sender;
+import cn.jeyor1337.requests4j.exceptions.RequestException;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets concurrent identical GET and HEAD requests share one network call ("single flight").
+ * Requests are identical when their method, URL, parameters, cookies, auth and the values of
+ * the headers responses may vary on all match. The first caller sends the request; callers
+ * arriving while it is in flight wait for its response. Every caller gets its own {@link Response}
+ * over the shared, read-only body.
+ *
+ * Streamed requests and requests with a body are never coalesced.
+ */
+public class RequestCoalescer {
+    private static final String[] DEFAULT_VARY_HEADERS = {
+            "Accept", "Accept-Encoding", "Accept-Language", "Authorization", "Range"
+    };
+
+    private final Map<Key, CompletableFuture<Response>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private volatile String[] varyHeaders = DEFAULT_VARY_HEADERS;
+
+    /**
+     * Sends the request, or waits for an identical one already in flight.
+     */
+    public Response send(Request request, Sender next) throws RequestException {
+        String method = request.getMethod().toUpperCase(Locale.ROOT);
+        if (!(method.equals("GET") || method.equals("HEAD")) || request.isStream()
+                || request.getData() != null || request.getJson() != null) {
+            return next.send(request);
+        }
+
+        Key key = new Key(method, request, varyHeaders);
+        CompletableFuture<Response> call = new CompletableFuture<>();
+        CompletableFuture<Response> existing = inFlight.putIfAbsent(key, call);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return view(await(existing), request);
+        }
+
+        sent.incrementAndGet();
+        Response response;
+        try {
+            response = next.send(request);
+            // Read the body once so that every view shares it
+            response.getContentBuffer();
+            call.complete(response);
+        } catch (RequestException | RuntimeException | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+        return view(response, request);
+    }
+
+    private static Response await(CompletableFuture<Response> call) throws RequestException {
+        try {
+            return call.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RequestException("Interrupted while waiting for a coalesced request", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RequestException) {
+                throw (RequestException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    /**
+     * Returns a response of its own for one caller, sharing the body of the response received.
+     */
+    private static Response view(Response shared, Request request) {
+        Response response = new Response();
+        response.setStatusCode(shared.getStatusCode());
+        response.setReason(shared.getReason());
+        response.setHeaders(new Headers(shared.getHeaders()));
+        ByteBuffer body = shared.getContentBuffer();
+        if (body != null) {
+            response.setContent(body);
+        }
+        response.setEncoding(shared.getEncoding());
+        response.setHistory(new ArrayList<>(shared.getHistory()));
+        response.setRequest(request);
+        return response;
+    }
+
+    /**
+     * Sets the request headers that tell otherwise identical requests apart.
+     * Defaults to Accept, Accept-Encoding, Accept-Language, Authorization and Range.
+     */
+    public RequestCoalescer setVaryHeaders(String... varyHeaders) {
+        this.varyHeaders = varyHeaders.clone();
+        return this;
+    }
+
+    public String[] getVaryHeaders() {
+        return varyHeaders.clone();
+    }
+
+    /**
+     * Returns the number of requests that went to the network.
+     */
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    /**
+     * Returns the number of requests answered with the response of an identical request in flight.
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * Returns the number of distinct requests in flight.
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private static final class Key {
+        private final String method;
+        private final String url;
+        private final List<String> headers;
+        private final Map<String, String> cookies;
+        private final Object auth;
+        private final int hash;
+
+        Key(String method, Request request, String[] varyHeaders) {
+            this.method = method;
+            this.url = HttpCache.key(request);
+            this.headers = new ArrayList<>(varyHeaders.length);
+            for (String name : varyHeaders) {
+                headers.add(headerValue(request.getHeaders(), name));
+            }
+            this.cookies = request.getCookies() != null ? new TreeMap<>(request.getCookies()) : null;
+            this.auth = request.getAuth();
+            this.hash = Arrays.hashCode(new Object[]{method, url, headers, cookies, auth});
+        }
+
+        private static String headerValue(Map<String, String> headers, String name) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                if (name.equalsIgnoreCase(header.getKey())) {
+                    return header.getValue();
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return method.equals(key.method) && url.equals(key.url) && headers.equals(key.headers)
+                    && Objects.equals(cookies, key.cookies) && Objects.equals(auth, key.auth);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package cn.jeyor1337.requests4j.cookies;
+
+import java.net.URL;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * An HTTP cookie as stored by a {@link CookieJar}, following RFC 6265. Cookies are immutable.
+ */
+public final class Cookie {
+    /**
+     * Expiry time of session cookies, which last until the jar is cleared.
+     */
+    public static final long SESSION = Long.MAX_VALUE;
+
+    private static final DateTimeFormatter[] DATE_FORMATS = {
+            formatter("EEE, d MMM yyyy HH:mm:ss"),      // RFC 1123
+            formatter("EEE, d-MMM-yyyy HH:mm:ss"),      // Netscape
+            formatter("EEEE, d-MMM-yy HH:mm:ss"),       // RFC 850
+            formatter("EEE, d MMM yy HH:mm:ss"),
+            formatter("EEE MMM d HH:mm:ss yyyy"),       // asctime
+    };
+
+    private final String name;
+    private final String value;
+    private final String domain;
+    private final String path;
+    private final long expiresAt;
+    private final boolean hostOnly;
+    private final boolean secure;
+    private final boolean httpOnly;
+    private final long createdAt;
+
+    /**
+     * Creates a session cookie sent to the domain and all its subdomains, for every path.
+     */
+    public Cookie(String name, String value, String domain) {
+        this(name, value, domain.toLowerCase(Locale.ROOT), "/", SESSION, false, false, false,
+                System.currentTimeMillis());
+    }
+
+    Cookie(String name, String value, String domain, String path, long expiresAt, boolean hostOnly,
+           boolean secure, boolean httpOnly, long createdAt) {
+        this.name = name;
+        this.value = value;
+        this.domain = domain;
+        this.path = path;
+        this.expiresAt = expiresAt;
+        this.hostOnly = hostOnly;
+        this.secure = secure;
+        this.httpOnly = httpOnly;
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * Parses a Set-Cookie header received from the URL, as described in RFC 6265 section 5.2 and 5.3.
+     *
+     * @return the cookie, or null if the header is malformed or the URL may not set it
+     */
+    static Cookie parse(String header, URL url, long now) {
+        String[] parts = header.split(";");
+        int eq = parts[0].indexOf('=');
+        if (eq < 0) {
+            return null;
+        }
+        String name = parts[0].substring(0, eq).trim();
+        String value = parts[0].substring(eq + 1).trim();
+        if (name.isEmpty()) {
+            return null;
+        }
+
+        String domain = null;
+        String path = null;
+        long expires = SESSION;
+        long maxAge = Long.MIN_VALUE;
+        boolean secure = false;
+        boolean httpOnly = false;
+        for (int i = 1; i < parts.length; i++) {
+            String attribute = parts[i];
+            int sep = attribute.indexOf('=');
+            String key = (sep < 0 ? attribute : attribute.substring(0, sep)).trim().toLowerCase(Locale.ROOT);
+            String arg = sep < 0 ? "" : attribute.substring(sep + 1).trim();
+            switch (key) {
+                case "expires":
+                    long date = parseDate(arg);
+                    if (date != Long.MIN_VALUE) {
+                        expires = date;
+                    }
+                    break;
+                case "max-age":
+                    try {
+                        long seconds = Long.parseLong(arg);
+                        maxAge = seconds <= 0 ? 0 : now + Math.min(seconds, SESSION / 2000) * 1000;
+                    } catch (NumberFormatException e) {
+                        // Ignore the attribute
+                    }
+                    break;
+                case "domain":
+                    if (!arg.isEmpty()) {
+                        domain = (arg.startsWith(".") ? arg.substring(1) : arg).toLowerCase(Locale.ROOT);
+                    }
+                    break;
+                case "path":
+                    path = arg.startsWith("/") ? arg : null;
+                    break;
+                case "secure":
+                    secure = true;
+                    break;
+                case "httponly":
+                    httpOnly = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        String host = url.getHost().toLowerCase(Locale.ROOT);
+        boolean hostOnly = domain == null;
+        if (hostOnly) {
+            domain = host;
+        } else if (!domainMatches(host, domain) || domain.indexOf('.') < 0) {
+            return null; // a host may only set cookies for itself and its parent domains, never a TLD
+        }
+        if (secure && !"https".equalsIgnoreCase(url.getProtocol())) {
+            return null;
+        }
+        return new Cookie(name, value, domain, path != null ? path : defaultPath(url.getPath()),
+                maxAge != Long.MIN_VALUE ? maxAge : expires, hostOnly, secure, httpOnly, now);
+    }
+
+    private static long parseDate(String value) {
+        // Zone names are ignored: cookie dates are always GMT
+        String text = value.replaceAll("\\s+(GMT|UTC|Z)$", "").trim();
+        for (DateTimeFormatter format : DATE_FORMATS) {
+            try {
+                return LocalDateTime.parse(text, format).toInstant(ZoneOffset.UTC).toEpochMilli();
+            } catch (DateTimeParseException e) {
+                // Try the next format
+            }
+        }
+        return Long.MIN_VALUE;
+    }
+
+    private static DateTimeFormatter formatter(String pattern) {
+        return new DateTimeFormatterBuilder()
+                .parseCaseInsensitive()
+                .appendPattern(pattern)
+                .toFormatter(Locale.US);
+    }
+
+    /**
+     * Returns the directory of a request path, the default path of cookies it sets.
+     */
+    static String defaultPath(String uriPath) {
+        if (uriPath == null || !uriPath.startsWith("/")) {
+            return "/";
+        }
+        int slash = uriPath.lastIndexOf('/');
+        return slash == 0 ? "/" : uriPath.substring(0, slash);
+    }
+
+    /**
+     * Returns whether a host is the domain or one of its subdomains. IP addresses only match themselves.
+     */
+    static boolean domainMatches(String host, String domain) {
+        if (host.equals(domain)) {
+            return true;
+        }
+        return host.endsWith(domain) && host.charAt(host.length() - domain.length() - 1) == '.'
+                && !isIpAddress(host);
+    }
+
+    static boolean pathMatches(String requestPath, String cookiePath) {
+        if (requestPath.equals(cookiePath)) {
+            return true;
+        }
+        return requestPath.startsWith(cookiePath)
+                && (cookiePath.endsWith("/") || requestPath.charAt(cookiePath.length()) == '/');
+    }
+
+    private static boolean isIpAddress(String host) {
+        return host.indexOf(':') >= 0 || host.matches("\\d+\\.\\d+\\.\\d+\\.\\d+");
+    }
+
+    /**
+     * Returns whether the cookie should be sent to a host and path.
+     */
+    public boolean matches(String host, String path, boolean secureChannel) {
+        if (secure && !secureChannel) {
+            return false;
+        }
+        if (hostOnly ? !host.equals(domain) : !domainMatches(host, domain)) {
+            return false;
+        }
+        return pathMatches(path.isEmpty() ? "/" : path, this.path);
+    }
+
+    public boolean isExpired(long now) {
+        return expiresAt != SESSION && now >= expiresAt;
+    }
+
+    /**
+     * Returns whether the other cookie has the same name, domain and path, so that it replaces this one.
+     */
+    boolean sameIdentity(Cookie other) {
+        return name.equals(other.name) && domain.equals(other.domain) && path.equals(other.path);
+    }
+
+    Cookie withCreatedAt(long createdAt) {
+        return new Cookie(name, value, domain, path, expiresAt, hostOnly, secure, httpOnly, createdAt);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the expiry time in epoch milliseconds, or {@link #SESSION} for a session cookie.
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * Returns whether the cookie is only sent to the host that set it, not to its subdomains.
+     */
+    public boolean isHostOnly() {
+        return hostOnly;
+    }
+
+    public boolean isSecure() {
+        return secure;
+    }
+
+    public boolean isHttpOnly() {
+        return httpOnly;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    @Override
+    public String toString() {
+        return name + "=" + value + "; Domain=" + domain + "; Path=" + path;
+    }
+}
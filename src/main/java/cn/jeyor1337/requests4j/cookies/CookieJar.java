@@ -0,0 +1,282 @@
+package cn.jeyor1337.requests4j.cookies;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe cookie store following RFC 6265.
+ *
+ * Cookies are indexed by domain. Each domain holds an immutable array that is replaced on every
+ * change, so looking up the cookies for a request takes no lock; changes lock only their own
+ * domain. Expired cookies are never sent, and are removed when their domain changes and in a
+ * full sweep at most once per sweep interval.
+ *
+ * Limits follow the RFC's recommendations: 50 cookies per domain and 3000 in total; when
+ * either is exceeded the oldest cookies go first.
+ */
+public class CookieJar {
+    private static final Cookie[] EMPTY = new Cookie[0];
+    private static final Comparator<Cookie> SEND_ORDER = Comparator
+            .comparingInt((Cookie cookie) -> -cookie.getPath().length())
+            .thenComparingLong(Cookie::getCreatedAt);
+
+    private final Map<String, Domain> domains = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong nextSweep = new AtomicLong();
+    private volatile int maxPerDomain = 50;
+    private volatile int maxCookies = 3000;
+    private volatile long sweepInterval = 60000;
+
+    /**
+     * Stores the cookies set by a response to a request for the URL.
+     */
+    public void store(URL url, List<String> setCookieHeaders) {
+        long now = System.currentTimeMillis();
+        for (String header : setCookieHeaders) {
+            Cookie cookie = Cookie.parse(header, url, now);
+            if (cookie != null) {
+                add(cookie, now);
+            }
+        }
+        sweepIfDue(now);
+    }
+
+    /**
+     * Adds a cookie, replacing one with the same name, domain and path.
+     * An expired cookie only removes the one it replaces.
+     */
+    public void add(Cookie cookie) {
+        add(cookie, System.currentTimeMillis());
+    }
+
+    private void add(Cookie cookie, long now) {
+        while (!tryAdd(cookie, now)) {
+            // The domain was dropped from the index while we waited for its lock; use a fresh one
+        }
+        if (size.get() > maxCookies) {
+            trim(now);
+        }
+    }
+
+    private boolean tryAdd(Cookie cookie, long now) {
+        Domain domain = domains.computeIfAbsent(cookie.getDomain(), key -> new Domain());
+        synchronized (domain) {
+            if (domain.removed) {
+                return false;
+            }
+            List<Cookie> updated = new ArrayList<>(domain.cookies.length + 1);
+            boolean replaced = false;
+            for (Cookie existing : domain.cookies) {
+                if (existing.sameIdentity(cookie)) {
+                    // The replacement takes the place and creation time of the old cookie
+                    replaced = true;
+                    if (!cookie.isExpired(now)) {
+                        updated.add(cookie.withCreatedAt(existing.getCreatedAt()));
+                    }
+                } else if (!existing.isExpired(now)) {
+                    updated.add(existing);
+                }
+            }
+            if (!replaced && !cookie.isExpired(now)) {
+                updated.add(cookie);
+            }
+            if (updated.size() > maxPerDomain) {
+                updated.sort(Comparator.comparingLong(Cookie::getCreatedAt));
+                updated = new ArrayList<>(updated.subList(updated.size() - maxPerDomain, updated.size()));
+            }
+            replace(domain, updated.toArray(EMPTY));
+            return true;
+        }
+    }
+
+    private void replace(Domain domain, Cookie[] cookies) {
+        size.addAndGet(cookies.length - domain.cookies.length);
+        domain.cookies = cookies;
+    }
+
+    /**
+     * Returns the cookies to send with a request for the URL, most specific path first.
+     */
+    public List<Cookie> get(URL url) {
+        String host = url.getHost().toLowerCase(Locale.ROOT);
+        String path = url.getPath();
+        boolean secure = "https".equalsIgnoreCase(url.getProtocol());
+        long now = System.currentTimeMillis();
+
+        List<Cookie> matches = null;
+        // Cookies for a host live under the host itself and each of its parent domains
+        for (String domain = host; domain != null; domain = parent(domain)) {
+            Domain entry = domains.get(domain);
+            if (entry == null) {
+                continue;
+            }
+            for (Cookie cookie : entry.cookies) {
+                if (!cookie.isExpired(now) && cookie.matches(host, path, secure)) {
+                    if (matches == null) {
+                        matches = new ArrayList<>();
+                    }
+                    matches.add(cookie);
+                }
+            }
+        }
+        if (matches == null) {
+            return Collections.emptyList();
+        }
+        matches.sort(SEND_ORDER);
+        return matches;
+    }
+
+    private static String parent(String domain) {
+        int dot = domain.indexOf('.');
+        return dot < 0 || dot == domain.length() - 1 ? null : domain.substring(dot + 1);
+    }
+
+    /**
+     * Returns every cookie in the jar, expired ones included until they are swept.
+     */
+    public List<Cookie> getAll() {
+        List<Cookie> all = new ArrayList<>();
+        for (Domain domain : domains.values()) {
+            all.addAll(Arrays.asList(domain.cookies));
+        }
+        return all;
+    }
+
+    /**
+     * Removes the cookies with the given name for a domain, whatever their path.
+     */
+    public void remove(String domainName, String name) {
+        Domain domain = domains.get(domainName.toLowerCase(Locale.ROOT));
+        if (domain == null) {
+            return;
+        }
+        synchronized (domain) {
+            List<Cookie> kept = new ArrayList<>();
+            for (Cookie cookie : domain.cookies) {
+                if (!cookie.getName().equals(name)) {
+                    kept.add(cookie);
+                }
+            }
+            replace(domain, kept.toArray(EMPTY));
+        }
+    }
+
+    /**
+     * Removes all expired cookies.
+     */
+    public void removeExpired() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Domain> entry : domains.entrySet()) {
+            Domain domain = entry.getValue();
+            synchronized (domain) {
+                List<Cookie> kept = new ArrayList<>();
+                for (Cookie cookie : domain.cookies) {
+                    if (!cookie.isExpired(now)) {
+                        kept.add(cookie);
+                    }
+                }
+                if (kept.size() != domain.cookies.length) {
+                    replace(domain, kept.toArray(EMPTY));
+                }
+                if (kept.isEmpty()) {
+                    domain.removed = true;
+                    domains.remove(entry.getKey(), domain);
+                }
+            }
+        }
+    }
+
+    private void sweepIfDue(long now) {
+        long due = nextSweep.get();
+        if (now >= due && nextSweep.compareAndSet(due, now + sweepInterval)) {
+            removeExpired();
+        }
+    }
+
+    /**
+     * Brings the jar back under its total limit: expired cookies first, then the oldest.
+     */
+    private synchronized void trim(long now) {
+        removeExpired();
+        int excess = size.get() - maxCookies;
+        if (excess <= 0) {
+            return;
+        }
+        List<Cookie> all = getAll();
+        all.sort(Comparator.comparingLong(Cookie::getCreatedAt));
+        for (Cookie cookie : all.subList(0, Math.min(excess, all.size()))) {
+            Domain domain = domains.get(cookie.getDomain());
+            if (domain == null) {
+                continue;
+            }
+            synchronized (domain) {
+                List<Cookie> kept = new ArrayList<>(Arrays.asList(domain.cookies));
+                if (kept.remove(cookie)) {
+                    replace(domain, kept.toArray(EMPTY));
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all cookies.
+     */
+    public void clear() {
+        for (Map.Entry<String, Domain> entry : domains.entrySet()) {
+            Domain domain = entry.getValue();
+            synchronized (domain) {
+                replace(domain, EMPTY);
+                domain.removed = true;
+                domains.remove(entry.getKey(), domain);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of cookies stored, expired ones included until they are swept.
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Sets the maximum number of cookies kept per domain.
+     */
+    public CookieJar setMaxPerDomain(int maxPerDomain) {
+        this.maxPerDomain = maxPerDomain;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of cookies kept in total.
+     */
+    public CookieJar setMaxCookies(int maxCookies) {
+        this.maxCookies = maxCookies;
+        return this;
+    }
+
+    /**
+     * Sets how often expired cookies are swept out of the whole jar, in milliseconds.
+     */
+    public CookieJar setSweepInterval(long sweepInterval) {
+        this.sweepInterval = sweepInterval;
+        return this;
+    }
+
+    /**
+     * The cookies of one domain. The array is never modified, only replaced under the domain's lock.
+     */
+    private static final class Domain {
+        volatile Cookie[] cookies = EMPTY;
+        boolean removed;
+    }
+}
@@ -0,0 +1,259 @@
+package cn.jeyor1337.requests4j.dns;
+
+import cn.jeyor1337.requests4j.DnsResolver;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resolver that caches the answers of another resolver.
+ * Successful lookups are kept for the TTL and failures for the negative TTL.
+ * Once an entry has been cached for part of its TTL, the next hit refreshes it in the background,
+ * so hot hosts never wait for a lookup. Concurrent misses for a host share one lookup.
+ */
+public class CachingDnsResolver implements DnsResolver {
+    private static final int DEFAULT_MAX_ENTRIES = 10000;
+    private static final Executor DEFAULT_REFRESH_EXECUTOR = newRefreshExecutor();
+
+    private final DnsResolver delegate;
+    private final Executor refreshExecutor;
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private volatile long ttl = 60000;
+    private volatile long negativeTtl = 5000;
+    private volatile double refreshAhead = 0.75;
+    private volatile int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    public CachingDnsResolver() {
+        this(DnsResolver.SYSTEM);
+    }
+
+    public CachingDnsResolver(DnsResolver delegate) {
+        this(delegate, DEFAULT_REFRESH_EXECUTOR);
+    }
+
+    /**
+     * @param delegate resolver performing the actual lookups
+     * @param refreshExecutor executor running background refreshes
+     */
+    public CachingDnsResolver(DnsResolver delegate, Executor refreshExecutor) {
+        this.delegate = delegate;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    @Override
+    public List<InetAddress> resolve(String host) throws UnknownHostException {
+        String key = host.toLowerCase(Locale.ROOT);
+        long now = System.currentTimeMillis();
+        Entry entry = cache.get(key);
+        if (entry != null && now < entry.expiresAt) {
+            hits.incrementAndGet();
+            if (entry.addresses != null && now >= entry.refreshAt && entry.refreshing.compareAndSet(false, true)) {
+                refresh(key, host, entry);
+            }
+            return entry.get(host);
+        }
+
+        misses.incrementAndGet();
+        return lookup(key, host).get(host);
+    }
+
+    /**
+     * Performs a lookup, sharing it with concurrent callers for the same host.
+     */
+    private Entry lookup(String key, String host) {
+        CompletableFuture<Entry> future = new CompletableFuture<>();
+        CompletableFuture<Entry> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                return Entry.failed(e.getCause().getMessage(), System.currentTimeMillis());
+            }
+        }
+
+        Entry entry;
+        try {
+            entry = newEntry(delegate.resolve(host));
+        } catch (UnknownHostException e) {
+            entry = Entry.failed(e.getMessage(), System.currentTimeMillis() + negativeTtl);
+        } catch (RuntimeException e) {
+            inFlight.remove(key);
+            future.completeExceptionally(e);
+            throw e;
+        }
+        put(key, entry);
+        inFlight.remove(key);
+        future.complete(entry);
+        return entry;
+    }
+
+    private void refresh(String key, String host, Entry stale) {
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    put(key, newEntry(delegate.resolve(host)));
+                    refreshes.incrementAndGet();
+                } catch (UnknownHostException | RuntimeException e) {
+                    // Keep serving the cached addresses until they expire
+                    stale.refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            stale.refreshing.set(false);
+        }
+    }
+
+    private Entry newEntry(List<InetAddress> addresses) {
+        long now = System.currentTimeMillis();
+        return new Entry(addresses, null, now + ttl, now + (long) (ttl * refreshAhead));
+    }
+
+    private void put(String key, Entry entry) {
+        if (cache.size() >= maxEntries && !cache.containsKey(key)) {
+            evict();
+        }
+        cache.put(key, entry);
+    }
+
+    /**
+     * Makes room by dropping expired entries, or an arbitrary one if none has expired.
+     */
+    private void evict() {
+        long now = System.currentTimeMillis();
+        cache.values().removeIf(entry -> now >= entry.expiresAt);
+        Iterator<String> it = cache.keySet().iterator();
+        while (cache.size() >= maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    /**
+     * Drops all cached answers.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Drops the cached answer for one host.
+     */
+    public void invalidate(String host) {
+        cache.remove(host.toLowerCase(Locale.ROOT));
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    /**
+     * Sets how long successful lookups are cached, in milliseconds.
+     */
+    public CachingDnsResolver setTtl(long ttl) {
+        this.ttl = ttl;
+        return this;
+    }
+
+    public long getNegativeTtl() {
+        return negativeTtl;
+    }
+
+    /**
+     * Sets how long failed lookups are cached, in milliseconds (0 disables negative caching).
+     */
+    public CachingDnsResolver setNegativeTtl(long negativeTtl) {
+        this.negativeTtl = negativeTtl;
+        return this;
+    }
+
+    public double getRefreshAhead() {
+        return refreshAhead;
+    }
+
+    /**
+     * Sets the fraction of the TTL after which a hit triggers a background refresh;
+     * 1 or more disables refreshing ahead.
+     */
+    public CachingDnsResolver setRefreshAhead(double refreshAhead) {
+        this.refreshAhead = refreshAhead;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of hosts kept in the cache.
+     */
+    public CachingDnsResolver setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        return this;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of completed background refreshes.
+     */
+    public long getRefreshCount() {
+        return refreshes.get();
+    }
+
+    private static Executor newRefreshExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(1024), task -> {
+                    Thread thread = new Thread(task, "requests4j-dns-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static final class Entry {
+        final List<InetAddress> addresses;
+        final String error;
+        final long expiresAt;
+        final long refreshAt;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(List<InetAddress> addresses, String error, long expiresAt, long refreshAt) {
+            this.addresses = addresses;
+            this.error = error;
+            this.expiresAt = expiresAt;
+            this.refreshAt = refreshAt;
+        }
+
+        static Entry failed(String error, long expiresAt) {
+            return new Entry(null, error, expiresAt, Long.MAX_VALUE);
+        }
+
+        List<InetAddress> get(String host) throws UnknownHostException {
+            if (addresses == null) {
+                throw new UnknownHostException(error != null ? error : host);
+            }
+            return addresses;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package cn.jeyor1337.requests4j.dns;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connects to the first reachable address of a host, racing IPv6 and IPv4 as described in RFC 8305.
+ * Attempts start one after another, a short delay apart, without waiting for earlier ones to fail;
+ * the first connection to succeed wins and the others are closed.
+ */
+public final class HappyEyeballs {
+    /**
+     * The connection attempt delay recommended by RFC 8305.
+     */
+    public static final long DEFAULT_ATTEMPT_DELAY = 250;
+
+    private HappyEyeballs() {
+    }
+
+    /**
+     * Orders addresses for connection attempts: families alternate, starting with the family
+     * of the first address, and the order within each family is kept.
+     */
+    public static List<InetAddress> interleave(List<InetAddress> addresses) {
+        Deque<InetAddress> v6 = new ArrayDeque<>();
+        Deque<InetAddress> v4 = new ArrayDeque<>();
+        for (InetAddress address : addresses) {
+            (address instanceof Inet6Address ? v6 : v4).add(address);
+        }
+        if (v6.isEmpty() || v4.isEmpty()) {
+            return addresses;
+        }
+
+        List<InetAddress> ordered = new ArrayList<>(addresses.size());
+        boolean six = addresses.get(0) instanceof Inet6Address;
+        while (!v6.isEmpty() || !v4.isEmpty()) {
+            Deque<InetAddress> next = six ? v6 : v4;
+            if (!next.isEmpty()) {
+                ordered.add(next.poll());
+            }
+            six = !six;
+        }
+        return ordered;
+    }
+
+    /**
+     * Connects a blocking socket to one of the addresses.
+     *
+     * @param timeoutMillis overall connect timeout, 0 for none
+     * @param attemptDelayMillis delay before starting the next attempt while earlier ones are pending
+     */
+    public static Socket connect(List<InetAddress> addresses, int port, int timeoutMillis, long attemptDelayMillis)
+            throws IOException {
+        if (addresses.isEmpty()) {
+            throw new ConnectException("No addresses to connect to");
+        }
+        if (addresses.size() == 1) {
+            Socket socket = new Socket();
+            try {
+                socket.setTcpNoDelay(true);
+                socket.connect(new InetSocketAddress(addresses.get(0), port), timeoutMillis);
+                return socket;
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+        return race(interleave(addresses), port, timeoutMillis, attemptDelayMillis).socket();
+    }
+
+    private static SocketChannel race(List<InetAddress> addresses, int port, int timeoutMillis,
+                                      long attemptDelayMillis) throws IOException {
+        long deadline = timeoutMillis > 0
+                ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis)
+                : Long.MAX_VALUE;
+        List<SocketChannel> pending = new ArrayList<>();
+        IOException failure = null;
+        int next = 0;
+
+        try (Selector selector = Selector.open()) {
+            while (true) {
+                if (next < addresses.size()) {
+                    SocketChannel channel = null;
+                    try {
+                        channel = SocketChannel.open();
+                        channel.configureBlocking(false);
+                        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                        if (channel.connect(new InetSocketAddress(addresses.get(next), port))) {
+                            return won(channel, pending);
+                        }
+                        channel.register(selector, SelectionKey.OP_CONNECT);
+                        pending.add(channel);
+                    } catch (IOException e) {
+                        failure = addFailure(failure, e);
+                        closeQuietly(channel);
+                    }
+                    next++;
+                }
+                if (pending.isEmpty() && next >= addresses.size()) {
+                    throw failure != null ? failure : new ConnectException("Connection failed");
+                }
+
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    throw new SocketTimeoutException("Connect timed out");
+                }
+                // Wait for an attempt to finish, or until it is time to start the next one
+                long wait = next < addresses.size() ? Math.min(remaining, attemptDelayMillis) : remaining;
+                if (pending.isEmpty()) {
+                    continue; // start the next attempt right away
+                }
+                selector.select(Math.max(1, wait));
+
+                for (SelectionKey key : selector.selectedKeys()) {
+                    SocketChannel channel = (SocketChannel) key.channel();
+                    try {
+                        if (channel.finishConnect()) {
+                            key.cancel();
+                            pending.remove(channel);
+                            selector.selectNow(); // flush the cancelled key before blocking mode
+                            return won(channel, pending);
+                        }
+                    } catch (IOException e) {
+                        failure = addFailure(failure, e);
+                        key.cancel();
+                        pending.remove(channel);
+                        closeQuietly(channel);
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        } finally {
+            for (SocketChannel channel : pending) {
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    private static SocketChannel won(SocketChannel channel, List<SocketChannel> losers) throws IOException {
+        for (SocketChannel loser : losers) {
+            closeQuietly(loser);
+        }
+        losers.clear();
+        channel.configureBlocking(true);
+        return channel;
+    }
+
+    private static IOException addFailure(IOException failure, IOException e) {
+        if (failure == null) {
+            return e;
+        }
+        failure.addSuppressed(e);
+        return failure;
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Ignore errors when closing
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package cn.jeyor1337.requests4j.dns;
+
+import cn.jeyor1337.requests4j.DnsResolver;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resolver answering from a fixed table, for tests and for pinning hosts to known addresses.
+ * Unknown hosts fail, or go to a fallback resolver if one is set.
+ */
+public class StaticDnsResolver implements DnsResolver {
+    private final Map<String, List<InetAddress>> hosts = new ConcurrentHashMap<>();
+    private final DnsResolver fallback;
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    public StaticDnsResolver() {
+        this(null);
+    }
+
+    /**
+     * @param fallback resolver for hosts not in the table, or null to fail them
+     */
+    public StaticDnsResolver(DnsResolver fallback) {
+        this.fallback = fallback;
+    }
+
+    /**
+     * Maps the host to the given addresses, replacing any previous mapping.
+     */
+    public StaticDnsResolver put(String host, InetAddress... addresses) {
+        List<InetAddress> list = new ArrayList<>();
+        Collections.addAll(list, addresses);
+        hosts.put(host.toLowerCase(Locale.ROOT), Collections.unmodifiableList(list));
+        return this;
+    }
+
+    /**
+     * Maps the host to the given IP address literals.
+     */
+    public StaticDnsResolver put(String host, String... addresses) throws UnknownHostException {
+        InetAddress[] resolved = new InetAddress[addresses.length];
+        for (int i = 0; i < addresses.length; i++) {
+            // An IP literal is parsed without a lookup
+            resolved[i] = InetAddress.getByAddress(host, InetAddress.getByName(addresses[i]).getAddress());
+        }
+        return put(host, resolved);
+    }
+
+    public StaticDnsResolver remove(String host) {
+        hosts.remove(host.toLowerCase(Locale.ROOT));
+        return this;
+    }
+
+    @Override
+    public List<InetAddress> resolve(String host) throws UnknownHostException {
+        lookups.incrementAndGet();
+        List<InetAddress> addresses = hosts.get(host.toLowerCase(Locale.ROOT));
+        if (addresses != null) {
+            return addresses;
+        }
+        if (fallback != null) {
+            return fallback.resolve(host);
+        }
+        throw new UnknownHostException(host);
+    }
+
+    /**
+     * Returns the number of lookups made through this resolver.
+     */
+    public int getLookupCount() {
+        return lookups.get();
+    }
+}
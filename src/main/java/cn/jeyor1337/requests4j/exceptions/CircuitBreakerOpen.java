@@ -0,0 +1,14 @@
+package cn.jeyor1337.requests4j.exceptions;
+
+/**
+ * The request was refused without being sent because the circuit breaker for its host is open.
+ */
+public class CircuitBreakerOpen extends RequestException {
+    public CircuitBreakerOpen(String message) {
+        super(message);
+    }
+
+    public CircuitBreakerOpen(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
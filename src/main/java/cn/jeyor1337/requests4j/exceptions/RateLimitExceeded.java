@@ -0,0 +1,14 @@
+package cn.jeyor1337.requests4j.exceptions;
+
+/**
+ * The request was not sent because the client-side rate limit would not allow it before the deadline.
+ */
+public class RateLimitExceeded extends RequestException {
+    public RateLimitExceeded(String message) {
+        super(message);
+    }
+
+    public RateLimitExceeded(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
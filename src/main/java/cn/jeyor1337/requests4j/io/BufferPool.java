@@ -0,0 +1,64 @@
+package cn.jeyor1337.requests4j.io;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of reusable direct {@link ByteBuffer}s of a fixed size.
+ * Direct buffers are expensive to allocate and are only freed by the garbage collector,
+ * so connections borrow them while an exchange is in progress and return them afterwards.
+ */
+public class BufferPool {
+    private final int bufferSize;
+    private final int maxIdle;
+    private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idle = new AtomicInteger();
+
+    /**
+     * @param bufferSize capacity of each buffer in bytes
+     * @param maxIdle maximum number of idle buffers kept for reuse
+     */
+    public BufferPool(int bufferSize, int maxIdle) {
+        this.bufferSize = bufferSize;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Takes a cleared buffer from the pool, or allocates one if none is idle.
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        idle.decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool, or drops it if the pool is full.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize) {
+            return;
+        }
+        buffer.clear();
+        if (idle.incrementAndGet() <= maxIdle) {
+            buffers.offer(buffer);
+        } else {
+            idle.decrementAndGet();
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Returns the number of idle buffers in the pool.
+     */
+    public int getIdleCount() {
+        return idle.get();
+    }
+}
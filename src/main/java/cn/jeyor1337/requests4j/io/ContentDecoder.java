@@ -0,0 +1,54 @@
+package cn.jeyor1337.requests4j.io;
+
+import java.io.InputStream;
+import java.util.Locale;
+
+/**
+ * Decodes response bodies according to their Content-Encoding.
+ */
+public final class ContentDecoder {
+
+    private ContentDecoder() {
+    }
+
+    /**
+     * Returns true if the Content-Encoding can be decoded.
+     * Absent and identity encodings are reported as not needing decoding.
+     */
+    public static boolean isDecodable(String contentEncoding) {
+        if (contentEncoding == null) {
+            return false;
+        }
+        boolean encoded = false;
+        for (String coding : contentEncoding.split(",")) {
+            coding = coding.trim().toLowerCase(Locale.ROOT);
+            if (coding.equals("gzip") || coding.equals("x-gzip") || coding.equals("deflate")) {
+                encoded = true;
+            } else if (!coding.isEmpty() && !coding.equals("identity")) {
+                return false;
+            }
+        }
+        return encoded;
+    }
+
+    /**
+     * Wraps the stream so that reading it yields the decoded body.
+     * Codings are undone in the reverse order they were applied. Streams with
+     * an unsupported coding are returned unchanged.
+     */
+    public static InputStream decode(InputStream in, String contentEncoding, InflaterPool pool) {
+        if (!isDecodable(contentEncoding)) {
+            return in;
+        }
+        String[] codings = contentEncoding.split(",");
+        for (int i = codings.length - 1; i >= 0; i--) {
+            String coding = codings[i].trim().toLowerCase(Locale.ROOT);
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                in = new InflatingInputStream(in, pool, true);
+            } else if (coding.equals("deflate")) {
+                in = new InflatingInputStream(in, pool, false);
+            }
+        }
+        return in;
+    }
+}
@@ -0,0 +1,68 @@
+package cn.jeyor1337.requests4j.io;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Inflater;
+
+/**
+ * Pool of reusable {@link Inflater} instances.
+ * Each Inflater holds native zlib memory, so reusing them avoids an allocation
+ * and a native init per compressed response.
+ */
+public class InflaterPool {
+    private static final int DEFAULT_MAX_IDLE = 32;
+    private static final InflaterPool SHARED = new InflaterPool(DEFAULT_MAX_IDLE);
+
+    private final int maxIdle;
+    private final ConcurrentLinkedQueue<Inflater> rawInflaters = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Inflater> zlibInflaters = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idle = new AtomicInteger();
+
+    /**
+     * @param maxIdle maximum number of idle Inflaters kept for reuse
+     */
+    public InflaterPool(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Returns the pool shared by all responses.
+     */
+    public static InflaterPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Takes an Inflater from the pool, or creates one if none is idle.
+     *
+     * @param nowrap true for raw deflate data (as inside gzip), false for zlib-wrapped data
+     */
+    public Inflater acquire(boolean nowrap) {
+        Inflater inflater = (nowrap ? rawInflaters : zlibInflaters).poll();
+        if (inflater == null) {
+            return new Inflater(nowrap);
+        }
+        idle.decrementAndGet();
+        return inflater;
+    }
+
+    /**
+     * Returns an Inflater to the pool, or frees it if the pool is full.
+     */
+    public void release(Inflater inflater, boolean nowrap) {
+        inflater.reset();
+        if (idle.incrementAndGet() <= maxIdle) {
+            (nowrap ? rawInflaters : zlibInflaters).offer(inflater);
+        } else {
+            idle.decrementAndGet();
+            inflater.end();
+        }
+    }
+
+    /**
+     * Returns the number of idle Inflaters in the pool.
+     */
+    public int getIdleCount() {
+        return idle.get();
+    }
+}
@@ -0,0 +1,253 @@
+package cn.jeyor1337.requests4j.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses a gzip or deflate stream using an Inflater borrowed from an {@link InflaterPool}.
+ * The Inflater goes back to the pool as soon as the end of the data is reached or the stream is closed.
+ */
+class InflatingInputStream extends InputStream {
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final InputStream in;
+    private final InflaterPool pool;
+    private final boolean gzip;
+    private final byte[] buf = new byte[8192];
+    private final byte[] single = new byte[1];
+    private final CRC32 crc = new CRC32();
+    private int pos;
+    private int limit;
+    private Inflater inflater;
+    private boolean nowrap;
+    private boolean started;
+    private boolean eof;
+    private boolean closed;
+
+    /**
+     * @param gzip true for gzip data, false for deflate data (zlib-wrapped or raw)
+     */
+    InflatingInputStream(InputStream in, InflaterPool pool, boolean gzip) {
+        this.in = in;
+        this.pool = pool;
+        this.gzip = gzip;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (!started) {
+            started = true;
+            if (!start()) {
+                finish();
+                return -1;
+            }
+        }
+
+        while (!eof) {
+            int n;
+            try {
+                n = inflater.inflate(b, off, len);
+            } catch (DataFormatException e) {
+                throw new ZipException(e.getMessage() != null ? e.getMessage() : "Invalid compressed data");
+            }
+            if (n > 0) {
+                if (gzip) {
+                    crc.update(b, off, n);
+                }
+                return n;
+            }
+
+            if (inflater.finished()) {
+                pos = limit - inflater.getRemaining();
+                if (!gzip || !nextMember()) {
+                    finish();
+                }
+            } else if (inflater.needsDictionary()) {
+                throw new ZipException("Compressed data requires a preset dictionary");
+            } else if (inflater.needsInput()) {
+                if (pos == limit && !fill()) {
+                    throw new EOFException("Unexpected end of compressed stream");
+                }
+                inflater.setInput(buf, pos, limit - pos);
+                pos = limit;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads the stream header and borrows an Inflater. Returns false for an empty body.
+     */
+    private boolean start() throws IOException {
+        if (!fill()) {
+            return false;
+        }
+        if (gzip) {
+            nowrap = true;
+            inflater = pool.acquire(true);
+            readGzipHeader();
+        } else {
+            // "deflate" should be zlib-wrapped, but some servers send raw deflate data
+            nowrap = !isZlibHeader();
+            inflater = pool.acquire(nowrap);
+        }
+        return true;
+    }
+
+    private boolean isZlibHeader() throws IOException {
+        int cmf = buf[pos] & 0xff;
+        if (limit - pos < 2 && !fillMore()) {
+            return false;
+        }
+        int flg = buf[pos + 1] & 0xff;
+        return (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+    }
+
+    /**
+     * Verifies the trailer of the current gzip member and starts the next one, if any.
+     */
+    private boolean nextMember() throws IOException {
+        long expectedCrc = readUInt();
+        long expectedSize = readUInt();
+        if (expectedCrc != crc.getValue()) {
+            throw new ZipException("Corrupt gzip trailer: CRC mismatch");
+        }
+        if (expectedSize != (inflater.getBytesWritten() & 0xffffffffL)) {
+            throw new ZipException("Corrupt gzip trailer: size mismatch");
+        }
+
+        if (pos == limit && !fill()) {
+            return false;
+        }
+        if ((buf[pos] & 0xff) != (GZIP_MAGIC & 0xff)) {
+            // Ignore trailing garbage after the last member
+            return false;
+        }
+        inflater.reset();
+        crc.reset();
+        readGzipHeader();
+        return true;
+    }
+
+    private void readGzipHeader() throws IOException {
+        if (readUShort() != GZIP_MAGIC) {
+            throw new ZipException("Not in gzip format");
+        }
+        if (readUByte() != 8) {
+            throw new ZipException("Unsupported gzip compression method");
+        }
+        int flags = readUByte();
+        skipBytes(6); // mtime, xfl, os
+
+        if ((flags & FEXTRA) == FEXTRA) {
+            skipBytes(readUShort());
+        }
+        if ((flags & FNAME) == FNAME) {
+            while (readUByte() != 0) {
+                // skip file name
+            }
+        }
+        if ((flags & FCOMMENT) == FCOMMENT) {
+            while (readUByte() != 0) {
+                // skip comment
+            }
+        }
+        if ((flags & FHCRC) == FHCRC) {
+            skipBytes(2);
+        }
+    }
+
+    private long readUInt() throws IOException {
+        long low = readUShort();
+        return ((long) readUShort() << 16) | low;
+    }
+
+    private int readUShort() throws IOException {
+        int low = readUByte();
+        return (readUByte() << 8) | low;
+    }
+
+    private int readUByte() throws IOException {
+        if (pos == limit && !fill()) {
+            throw new EOFException("Unexpected end of gzip stream");
+        }
+        return buf[pos++] & 0xff;
+    }
+
+    private void skipBytes(int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            readUByte();
+        }
+    }
+
+    /**
+     * Refills the buffer from the underlying stream. Returns false at end of stream.
+     */
+    private boolean fill() throws IOException {
+        int n = in.read(buf, 0, buf.length);
+        if (n == -1) {
+            pos = limit = 0;
+            return false;
+        }
+        pos = 0;
+        limit = n;
+        return true;
+    }
+
+    /**
+     * Appends more data after the unread bytes in the buffer. Returns false at end of stream.
+     */
+    private boolean fillMore() throws IOException {
+        System.arraycopy(buf, pos, buf, 0, limit - pos);
+        limit -= pos;
+        pos = 0;
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n == -1) {
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+
+    private void finish() {
+        eof = true;
+        if (inflater != null) {
+            pool.release(inflater, nowrap);
+            inflater = null;
+        }
+    }
+
+    @Override
+    public int available() throws IOException {
+        return eof || closed ? 0 : 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            finish();
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package cn.jeyor1337.requests4j.ratelimit;
+
+import cn.jeyor1337.requests4j.Request;
+import cn.jeyor1337.requests4j.Response;
+import cn.jeyor1337.requests4j.Sender;
+import cn.jeyor1337.requests4j.exceptions.InvalidURL;
+import cn.jeyor1337.requests4j.exceptions.RateLimitExceeded;
+import cn.jeyor1337.requests4j.exceptions.RequestException;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Client-side rate limiter with one {@link TokenBucket} per key.
+ *
+ * Requests are keyed by host by default; {@link #perSession} puts them all in one bucket and
+ * {@link #setKeyFunction} allows any other grouping. Keys without a limit of their own from
+ * {@link #setLimit} use the default rate.
+ *
+ * Responses adjust the buckets. A {@code Retry-After} header on a 429 or 503 response pauses
+ * the key for that long. {@code X-RateLimit-Remaining} and {@code X-RateLimit-Reset} (or the
+ * unprefixed {@code RateLimit-*} forms) spread the remaining quota over the time left until the
+ * reset, so requests never run out of quota early, and stop requests entirely once it is spent.
+ */
+public class RateLimiter {
+    private static final Function<Request, String> BY_HOST = RateLimiter::hostOf;
+    private static final Function<Request, String> BY_SESSION = request -> "";
+
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final Map<String, double[]> limits = new ConcurrentHashMap<>();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final double permitsPerSecond;
+    private final int burst;
+    private volatile Function<Request, String> keyFunction = BY_HOST;
+    private volatile long maxWait = 30000;
+    private volatile boolean adaptive = true;
+
+    /**
+     * Limits each host to the given rate.
+     *
+     * @param permitsPerSecond default sustained rate per key
+     * @param burst default number of requests that may go out at once after a quiet period
+     */
+    public RateLimiter(double permitsPerSecond, int burst) {
+        checkLimit(permitsPerSecond, burst);
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+    }
+
+    /**
+     * Returns a limiter sharing one bucket between all requests.
+     */
+    public static RateLimiter perSession(double permitsPerSecond, int burst) {
+        return new RateLimiter(permitsPerSecond, burst).setKeyFunction(BY_SESSION);
+    }
+
+    /**
+     * Sends the request once the rate limit allows it, and adapts to the rate limit headers of the response.
+     *
+     * @throws RateLimitExceeded if no permit can be had within the maximum wait
+     */
+    public Response send(Request request, Sender next) throws RequestException {
+        String key = keyOf(request);
+        TokenBucket bucket = bucket(key);
+        long wait = reserve(key, bucket);
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RateLimitExceeded("Interrupted while waiting for the rate limit of " + key, e);
+            }
+        }
+        Response response = next.send(request);
+        update(bucket, response);
+        return response;
+    }
+
+    /**
+     * Waits for a permit without blocking a thread. The future completes once the request may be
+     * sent, or fails with {@link RateLimitExceeded} right away if that would take longer than the maximum wait.
+     */
+    public CompletableFuture<Void> acquireAsync(Request request) {
+        String key;
+        long wait;
+        try {
+            key = keyOf(request);
+            wait = reserve(key, bucket(key));
+        } catch (RequestException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (wait == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> { },
+                CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS, Runnable::run));
+    }
+
+    /**
+     * Applies the rate limit headers of a response to the bucket of its request.
+     */
+    public void update(Request request, Response response) {
+        try {
+            update(bucket(keyOf(request)), response);
+        } catch (InvalidURL e) {
+            // Nothing was sent for an invalid URL
+        }
+    }
+
+    private long reserve(String key, TokenBucket bucket) throws RateLimitExceeded {
+        long wait = bucket.reserve(TimeUnit.MILLISECONDS.toNanos(maxWait));
+        if (wait < 0) {
+            rejected.incrementAndGet();
+            throw new RateLimitExceeded("Rate limit for " + key + " would delay the request past " + maxWait + " ms");
+        }
+        if (wait > 0) {
+            waits.incrementAndGet();
+        }
+        return wait;
+    }
+
+    private void update(TokenBucket bucket, Response response) {
+        if (!adaptive || response == null) {
+            return;
+        }
+        int status = response.getStatusCode();
+        if (status == 429 || status == 503) {
+            long retryAfter = parseRetryAfter(response.getHeader("Retry-After"));
+            if (retryAfter > 0) {
+                bucket.pause(retryAfter, TimeUnit.MILLISECONDS);
+                return;
+            }
+        }
+
+        long remaining = parseLong(header(response, "Remaining"));
+        long reset = parseReset(header(response, "Reset"));
+        if (remaining < 0 || reset < 0) {
+            return;
+        }
+        if (remaining == 0) {
+            bucket.pause(reset, TimeUnit.MILLISECONDS);
+        } else {
+            // Spread what is left of the quota evenly over the rest of the window,
+            // if that is slower than the bucket's own rate
+            long gap = TimeUnit.MILLISECONDS.toNanos(reset) / (remaining + 1);
+            if (gap > bucket.getInterval()) {
+                bucket.pause(gap, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private static String header(Response response, String name) {
+        String value = response.getHeader("X-RateLimit-" + name);
+        return value != null ? value : response.getHeader("RateLimit-" + name);
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Parses a reset time into milliseconds from now. Servers send either seconds until the reset
+     * or the reset time in epoch seconds; values too large to be a delay are taken as the latter.
+     */
+    static long parseReset(String value) {
+        long seconds = parseLong(value);
+        if (seconds < 0) {
+            return -1;
+        }
+        if (seconds > 1000000000L) {
+            return Math.max(0, seconds * 1000 - System.currentTimeMillis());
+        }
+        return seconds * 1000;
+    }
+
+    private static long parseRetryAfter(String value) {
+        long seconds = parseLong(value);
+        if (seconds >= 0) {
+            return seconds * 1000;
+        }
+        if (value == null) {
+            return -1;
+        }
+        try {
+            long at = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return Math.max(0, at - System.currentTimeMillis());
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    private String keyOf(Request request) throws InvalidURL {
+        try {
+            return keyFunction.apply(request);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidURL("Invalid URL: " + request.getUrl(), e);
+        }
+    }
+
+    private static String hostOf(Request request) {
+        try {
+            return new URL(request.getUrl()).getHost().toLowerCase(Locale.ROOT);
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private TokenBucket bucket(String key) {
+        return buckets.computeIfAbsent(key, k -> {
+            double[] limit = limits.get(k);
+            return limit != null
+                    ? new TokenBucket(limit[0], (int) limit[1])
+                    : new TokenBucket(permitsPerSecond, burst);
+        });
+    }
+
+    /**
+     * Sets the rate for one key, such as a host, instead of the default.
+     */
+    public RateLimiter setLimit(String key, double permitsPerSecond, int burst) {
+        checkLimit(permitsPerSecond, burst);
+        limits.put(key, new double[] {permitsPerSecond, burst});
+        TokenBucket existing = buckets.get(key);
+        if (existing != null) {
+            existing.setRate(permitsPerSecond, burst);
+        }
+        return this;
+    }
+
+    private static void checkLimit(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("permitsPerSecond and burst must be positive");
+        }
+    }
+
+    /**
+     * Sets how requests are grouped into buckets; requests with equal keys share a rate.
+     * The default keys requests by host.
+     */
+    public RateLimiter setKeyFunction(Function<Request, String> keyFunction) {
+        this.keyFunction = keyFunction;
+        buckets.clear();
+        return this;
+    }
+
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * Sets how long a request may wait for a permit, in milliseconds.
+     * Requests that would have to wait longer fail with {@link RateLimitExceeded} without waiting.
+     */
+    public RateLimiter setMaxWait(long maxWait) {
+        this.maxWait = maxWait;
+        return this;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * Sets whether rate limit headers of responses slow the buckets down. On by default.
+     */
+    public RateLimiter setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+        return this;
+    }
+
+    /**
+     * Returns the bucket for a key, creating it if needed.
+     */
+    public TokenBucket getBucket(String key) {
+        return bucket(key);
+    }
+
+    /**
+     * Returns the number of requests that had to wait for a permit.
+     */
+    public long getWaitCount() {
+        return waits.get();
+    }
+
+    /**
+     * Returns the number of requests refused because they would have waited too long.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+}
@@ -0,0 +1,108 @@
+package cn.jeyor1337.requests4j.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket.
+ *
+ * Rather than counting tokens, the bucket keeps the time at which it will next be empty
+ * (the generic cell rate algorithm), so taking a permit is a single compare-and-set on one
+ * {@code long}. Permits are reserved in order: a caller that has to wait learns how long,
+ * and the permit is its own once that time has come.
+ */
+public class TokenBucket {
+    private final AtomicLong emptyAt = new AtomicLong(Long.MIN_VALUE);
+    private volatile long interval;
+    private volatile long tolerance;
+
+    /**
+     * @param permitsPerSecond sustained rate
+     * @param burst permits that may be taken at once after the bucket has been idle
+     */
+    public TokenBucket(double permitsPerSecond, int burst) {
+        setRate(permitsPerSecond, burst);
+    }
+
+    /**
+     * Changes the rate and burst; permits already reserved keep their times.
+     */
+    public void setRate(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("permitsPerSecond and burst must be positive");
+        }
+        long interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.interval = interval;
+        this.tolerance = interval * (burst - 1);
+    }
+
+    /**
+     * Reserves a permit if it can be had within the given wait.
+     *
+     * @return nanoseconds to wait before using the permit, or -1 if none is reserved
+     */
+    public long reserve(long maxWaitNanos) {
+        while (true) {
+            long now = System.nanoTime();
+            long current = emptyAt.get();
+            long start = current == Long.MIN_VALUE || current - now < 0 ? now : current;
+            long wait = Math.max(0, start - tolerance - now);
+            if (wait > maxWaitNanos) {
+                return -1;
+            }
+            if (emptyAt.compareAndSet(current, start + interval)) {
+                return wait;
+            }
+        }
+    }
+
+    /**
+     * Takes a permit if one is available right now.
+     */
+    public boolean tryAcquire() {
+        return reserve(0) == 0;
+    }
+
+    /**
+     * Takes a permit, waiting at most the timeout for it.
+     *
+     * @return false if no permit could be had within the timeout
+     */
+    public boolean acquire(long timeout, TimeUnit unit) throws InterruptedException {
+        long wait = reserve(unit.toNanos(timeout));
+        if (wait < 0) {
+            return false;
+        }
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+        return true;
+    }
+
+    /**
+     * Hands out no permits until the delay has passed, and then only one at a time at the sustained rate.
+     */
+    public void pause(long delay, TimeUnit unit) {
+        long until = System.nanoTime() + unit.toNanos(delay) + tolerance;
+        emptyAt.accumulateAndGet(until, (current, next) ->
+                current == Long.MIN_VALUE || current - next < 0 ? next : current);
+    }
+
+    /**
+     * Returns the time between permits at the sustained rate, in nanoseconds.
+     */
+    long getInterval() {
+        return interval;
+    }
+
+    /**
+     * Returns the number of permits that could be taken right now without waiting.
+     */
+    public int getAvailablePermits() {
+        long now = System.nanoTime();
+        long current = emptyAt.get();
+        long start = current == Long.MIN_VALUE || current - now < 0 ? now : current;
+        long room = now + tolerance - start;
+        return room < 0 ? 0 : (int) (room / interval) + 1;
+    }
+}
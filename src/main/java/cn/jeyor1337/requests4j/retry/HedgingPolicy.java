@@ -0,0 +1,339 @@
+package cn.jeyor1337.requests4j.retry;
+
+import cn.jeyor1337.requests4j.Request;
+import cn.jeyor1337.requests4j.Response;
+import cn.jeyor1337.requests4j.Sender;
+import cn.jeyor1337.requests4j.exceptions.InvalidURL;
+import cn.jeyor1337.requests4j.exceptions.RequestException;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends backup copies of slow idempotent requests.
+ *
+ * If no response has arrived after the hedge delay, the request is sent again, to the next
+ * alternate endpoint if any are set. The first response wins; the other attempts are interrupted
+ * and their responses, should they still arrive, are closed. The delay is either fixed or,
+ * when adaptive, the observed 95th percentile latency, so only the slowest few percent of
+ * requests are hedged. A {@link RetryBudget} caps the extra load.
+ *
+ * Attempts run on the executor while the caller waits for the first response. When the executor
+ * has no thread to spare, the request is sent on the caller's thread without hedges.
+ * Interrupting a losing attempt only stops it on transports that wait interruptibly, such as
+ * {@link cn.jeyor1337.requests4j.transport.NioTransport}; a blocking socket read cannot be
+ * interrupted, so there the loser keeps its thread and connection until its response arrives
+ * or the read timeout expires.
+ *
+ * An attempt that fails does not trigger a hedge: failures are left to a {@link RetryPolicy}.
+ */
+public class HedgingPolicy {
+    private static final Set<String> IDEMPOTENT_METHODS = new HashSet<>(
+            Arrays.asList("GET", "HEAD", "OPTIONS", "TRACE", "PUT", "DELETE"));
+    private static final ExecutorService DEFAULT_EXECUTOR = newExecutor();
+    private static final int DEFAULT_MAX_THREADS = 64;
+    private static final int LATENCY_SAMPLES = 512;
+    private static final int MIN_SAMPLES = 20;
+
+    private final ExecutorService executor;
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private int latencyCount;
+    private int latencyPosition;
+    private long cachedPercentile = -1;
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private volatile long delay = 100;
+    private volatile double percentile = -1;
+    private volatile int maxHedges = 1;
+    private volatile List<String> endpoints = Collections.emptyList();
+    private volatile RetryBudget budget = new RetryBudget(0.05, 1);
+
+    public HedgingPolicy() {
+        this(DEFAULT_EXECUTOR);
+    }
+
+    /**
+     * @param executor runs the attempts; its threads are interrupted to cancel losing attempts.
+     *                 Requests it rejects are sent on the caller's thread, without hedges.
+     */
+    public HedgingPolicy(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sends the request, racing hedged copies against it when it is slow.
+     */
+    public Response send(Request request, Sender next) throws RequestException {
+        RetryBudget budget = this.budget;
+        if (budget != null) {
+            budget.onRequest();
+        }
+        if (!IDEMPOTENT_METHODS.contains(request.getMethod().toUpperCase(Locale.ROOT))) {
+            return next.send(request);
+        }
+
+        Race race = new Race();
+        List<Future<?>> attempts = new ArrayList<>();
+        try {
+            try {
+                attempts.add(race.start(request, next, 0));
+            } catch (RejectedExecutionException e) {
+                // No thread to spare for racing, so send it like an unhedged request
+                return next.send(request);
+            }
+            long hedgeDelay = getHedgeDelay();
+            for (int hedge = 1; hedge <= maxHedges; hedge++) {
+                try {
+                    return race.result.get(hedgeDelay, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    if (budget != null && !budget.tryAcquire()) {
+                        break;
+                    }
+                    try {
+                        attempts.add(race.start(copy(request, hedge), next, hedge));
+                    } catch (RejectedExecutionException rejected) {
+                        break;
+                    }
+                    hedges.incrementAndGet();
+                }
+            }
+            return race.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RequestException("Interrupted while waiting for a response", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RequestException) {
+                throw (RequestException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RequestException(String.valueOf(cause.getMessage()), cause);
+        } finally {
+            for (Future<?> attempt : attempts) {
+                // The winner has finished, so only losers are interrupted; see the class doc for blocking reads
+                attempt.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Builds the request for a hedge: a copy, so that attempts never share mutable state,
+     * sent to the next alternate endpoint if there are any.
+     */
+    private Request copy(Request request, int hedge) throws InvalidURL {
+        String url = request.getUrl();
+        List<String> endpoints = this.endpoints;
+        if (!endpoints.isEmpty()) {
+            url = rebase(url, endpoints.get((hedge - 1) % endpoints.size()));
+        }
+        return request.copy().setUrl(url);
+    }
+
+    /**
+     * Replaces the scheme, host and port of a URL with those of an endpoint.
+     */
+    static String rebase(String url, String endpoint) throws InvalidURL {
+        try {
+            URL original = new URL(url);
+            URL base = new URL(endpoint);
+            String file = original.getFile().isEmpty() ? "/" : original.getFile();
+            String ref = original.getRef() != null ? "#" + original.getRef() : "";
+            return new URL(base.getProtocol(), base.getHost(), base.getPort(), file).toString() + ref;
+        } catch (MalformedURLException e) {
+            throw new InvalidURL("Invalid URL: " + url + " or endpoint " + endpoint, e);
+        }
+    }
+
+    /**
+     * Returns the current hedge delay in milliseconds: the observed percentile once enough
+     * responses have been timed, and the fixed delay before that or when not adaptive.
+     */
+    public long getHedgeDelay() {
+        if (percentile <= 0) {
+            return delay;
+        }
+        synchronized (latencies) {
+            if (latencyCount < MIN_SAMPLES) {
+                return delay;
+            }
+            if (cachedPercentile < 0) {
+                long[] sorted = Arrays.copyOf(latencies, latencyCount);
+                Arrays.sort(sorted);
+                int index = (int) Math.ceil(percentile * sorted.length) - 1;
+                cachedPercentile = sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+            }
+            return cachedPercentile;
+        }
+    }
+
+    private void recordLatency(long millis) {
+        synchronized (latencies) {
+            latencies[latencyPosition] = millis;
+            latencyPosition = (latencyPosition + 1) % latencies.length;
+            latencyCount = Math.min(latencyCount + 1, latencies.length);
+            // Recompute now and then rather than sorting on every request
+            if (latencyPosition % 16 == 0) {
+                cachedPercentile = -1;
+            }
+        }
+    }
+
+    /**
+     * Attempts racing for one request; the first to complete the result wins.
+     */
+    private final class Race {
+        final CompletableFuture<Response> result = new CompletableFuture<>();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger winner = new AtomicInteger(-1);
+
+        Future<?> start(Request request, Sender next, int hedge) {
+            running.incrementAndGet();
+            try {
+                return submit(request, next, hedge);
+            } catch (RejectedExecutionException e) {
+                running.decrementAndGet();
+                throw e;
+            }
+        }
+
+        private Future<?> submit(Request request, Sender next, int hedge) {
+            return executor.submit(() -> {
+                long start = System.nanoTime();
+                try {
+                    Response response = next.send(request);
+                    if (winner.compareAndSet(-1, hedge)) {
+                        recordLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                        if (hedge > 0) {
+                            hedgeWins.incrementAndGet();
+                        }
+                    }
+                    if (winner.get() != hedge || !result.complete(response)) {
+                        response.close(); // lost the race; release its connection
+                    }
+                } catch (RequestException | RuntimeException e) {
+                    // Fail only once no other attempt can still succeed
+                    if (running.decrementAndGet() == 0) {
+                        result.completeExceptionally(e);
+                    }
+                    return;
+                }
+                running.decrementAndGet();
+            });
+        }
+    }
+
+    public long getDelay() {
+        return delay;
+    }
+
+    /**
+     * Sets the fixed hedge delay in milliseconds, also used by the adaptive delay until enough responses are timed.
+     */
+    public HedgingPolicy setDelay(long delay) {
+        this.delay = delay;
+        return this;
+    }
+
+    /**
+     * Derives the hedge delay from the latency of recent responses, e.g. 0.95 to hedge
+     * requests slower than 95% of them; 0 or less uses the fixed delay.
+     */
+    public HedgingPolicy setAdaptive(double percentile) {
+        if (percentile >= 1) {
+            throw new IllegalArgumentException("percentile must be below 1");
+        }
+        this.percentile = percentile;
+        synchronized (latencies) {
+            cachedPercentile = -1;
+        }
+        return this;
+    }
+
+    public int getMaxHedges() {
+        return maxHedges;
+    }
+
+    /**
+     * Sets how many hedges may be sent for one request, each a hedge delay after the previous attempt.
+     */
+    public HedgingPolicy setMaxHedges(int maxHedges) {
+        if (maxHedges < 1) {
+            throw new IllegalArgumentException("maxHedges must be positive");
+        }
+        this.maxHedges = maxHedges;
+        return this;
+    }
+
+    public List<String> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * Sends hedges to these endpoints in turn, such as {@code https://replica-2.example.com},
+     * keeping the path and query of the original URL.
+     */
+    public HedgingPolicy setEndpoints(String... endpoints) {
+        this.endpoints = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(endpoints)));
+        return this;
+    }
+
+    public RetryBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * Sets the budget limiting hedges to a share of requests, or null for no limit.
+     * Defaults to 5% of requests plus one hedge per second.
+     */
+    public HedgingPolicy setBudget(RetryBudget budget) {
+        this.budget = budget;
+        return this;
+    }
+
+    /**
+     * Returns the number of hedges sent.
+     */
+    public long getHedgeCount() {
+        return hedges.get();
+    }
+
+    /**
+     * Returns the number of hedges that answered before the attempts they backed up.
+     */
+    public long getHedgeWinCount() {
+        return hedgeWins.get();
+    }
+
+    /**
+     * Creates the shared default executor: a thread per attempt, up to {@link #DEFAULT_MAX_THREADS},
+     * rejecting attempts beyond that rather than queueing them behind slow ones.
+     */
+    private static ExecutorService newExecutor() {
+        return new ThreadPoolExecutor(0, DEFAULT_MAX_THREADS, 30, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), task -> {
+                    Thread thread = new Thread(task, "requests4j-hedge");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+}
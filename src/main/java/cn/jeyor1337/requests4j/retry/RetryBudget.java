@@ -0,0 +1,80 @@
+package cn.jeyor1337.requests4j.retry;
+
+/**
+ * Token bucket that caps retries at a share of the traffic, so that retries cannot multiply
+ * the load on a failing server. Every request deposits a fraction of a token and every retry
+ * withdraws a whole one; a small refill per second lets low-traffic clients retry at all.
+ */
+public class RetryBudget {
+    private final double ratio;
+    private final double minPerSecond;
+    private final double capacity;
+    private double tokens;
+    private long lastRefill;
+    private long exhausted;
+
+    /**
+     * Allows retries for up to 10% of requests, plus one retry per second.
+     */
+    public RetryBudget() {
+        this(0.1, 1);
+    }
+
+    /**
+     * @param ratio retries allowed per request sent, e.g. 0.2 for 20%
+     * @param minPerSecond retries allowed per second regardless of traffic
+     */
+    public RetryBudget(double ratio, double minPerSecond) {
+        if (ratio < 0 || minPerSecond < 0) {
+            throw new IllegalArgumentException("ratio and minPerSecond must not be negative");
+        }
+        this.ratio = ratio;
+        this.minPerSecond = minPerSecond;
+        // Room for ten seconds' worth of the minimum rate, and bursts of at least ten retries
+        this.capacity = Math.max(10, minPerSecond * 10);
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Records a request sent for the first time.
+     */
+    public synchronized void onRequest() {
+        refill();
+        tokens = Math.min(capacity, tokens + ratio);
+    }
+
+    /**
+     * Takes a token for a retry; returns false if the budget is spent.
+     */
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        exhausted++;
+        return false;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) / 1e9 * minPerSecond);
+        lastRefill = now;
+    }
+
+    /**
+     * Returns the number of retries currently allowed.
+     */
+    public synchronized double getAvailable() {
+        refill();
+        return tokens;
+    }
+
+    /**
+     * Returns the number of retries refused because the budget was spent.
+     */
+    public synchronized long getExhaustedCount() {
+        return exhausted;
+    }
+}
@@ -0,0 +1,293 @@
+package cn.jeyor1337.requests4j.retry;
+
+import cn.jeyor1337.requests4j.Request;
+import cn.jeyor1337.requests4j.Response;
+import cn.jeyor1337.requests4j.Sender;
+import cn.jeyor1337.requests4j.exceptions.ConnectTimeout;
+import cn.jeyor1337.requests4j.exceptions.ConnectionError;
+import cn.jeyor1337.requests4j.exceptions.RequestException;
+import cn.jeyor1337.requests4j.exceptions.Timeout;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Retries failed requests with backoff.
+ *
+ * A request is retried when it fails with one of the retryable exceptions or gets one of the
+ * retryable status codes. Non-idempotent requests (POST, PATCH) are only retried after a
+ * {@link ConnectTimeout}, which means the request was never sent, unless
+ * {@link #setRetryNonIdempotent} is on. Delays follow "decorrelated jitter": each one is drawn
+ * between the base delay and three times the previous delay, capped at the maximum.
+ * A {@code Retry-After} header replaces the computed delay, and a shared {@link RetryBudget}
+ * stops retries once they exceed their share of the traffic.
+ *
+ * When retries run out, the last response is returned or the last exception thrown.
+ */
+public class RetryPolicy {
+    private static final Set<String> IDEMPOTENT_METHODS = new HashSet<>(
+            Arrays.asList("GET", "HEAD", "OPTIONS", "TRACE", "PUT", "DELETE"));
+
+    private volatile int maxAttempts = 3;
+    private volatile Set<Integer> retryStatuses = new HashSet<>(Arrays.asList(429, 502, 503, 504));
+    private volatile List<Class<? extends RequestException>> retryExceptions =
+            Arrays.asList(ConnectionError.class, Timeout.class);
+    private volatile boolean retryNonIdempotent;
+    private volatile long baseDelay = 100;
+    private volatile long maxDelay = 10000;
+    private volatile boolean respectRetryAfter = true;
+    private volatile long maxRetryAfter = 60000;
+    private volatile RetryBudget budget = new RetryBudget();
+    private final AtomicLong retries = new AtomicLong();
+
+    /**
+     * Sends the request, retrying it according to this policy.
+     */
+    public Response send(Request request, Sender next) throws RequestException {
+        RetryBudget budget = this.budget;
+        if (budget != null) {
+            budget.onRequest();
+        }
+        boolean idempotent = retryNonIdempotent
+                || IDEMPOTENT_METHODS.contains(request.getMethod().toUpperCase(Locale.ROOT));
+        long delay = baseDelay;
+
+        for (int attempt = 1; ; attempt++) {
+            Response response;
+            long retryAfter = -1;
+            try {
+                response = next.send(request);
+            } catch (RequestException e) {
+                boolean notSent = e instanceof ConnectTimeout;
+                if (attempt >= maxAttempts || !isRetryable(e) || !(idempotent || notSent)
+                        || !acquire(budget)) {
+                    throw e;
+                }
+                delay = nextDelay(delay);
+                if (!sleep(delay)) {
+                    throw e;
+                }
+                continue;
+            }
+
+            if (attempt >= maxAttempts || !retryStatuses.contains(response.getStatusCode()) || !idempotent) {
+                return response;
+            }
+            if (respectRetryAfter) {
+                retryAfter = parseRetryAfter(response.getHeader("Retry-After"));
+                if (retryAfter > maxRetryAfter) {
+                    return response; // the server asks for longer than we are willing to wait
+                }
+            }
+            if (!acquire(budget)) {
+                return response;
+            }
+            delay = nextDelay(delay);
+            if (!sleep(retryAfter >= 0 ? retryAfter : delay)) {
+                return response; // interrupted: the caller gets the response as it is, still readable
+            }
+            response.close(); // release the connection of a streamed response
+        }
+    }
+
+    private boolean isRetryable(RequestException e) {
+        for (Class<? extends RequestException> type : retryExceptions) {
+            if (type.isInstance(e)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean acquire(RetryBudget budget) {
+        if (budget != null && !budget.tryAcquire()) {
+            return false;
+        }
+        retries.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Returns the next delay with decorrelated jitter: random between the base delay and three times
+     * the previous delay, capped at the maximum delay.
+     */
+    long nextDelay(long previous) {
+        long base = Math.max(0, baseDelay);
+        long upper = Math.max(base, Math.min(maxDelay, previous * 3));
+        long delay = upper > base ? ThreadLocalRandom.current().nextLong(base, upper + 1) : base;
+        return Math.min(maxDelay, delay);
+    }
+
+    /**
+     * Parses a Retry-After value, in seconds or as an HTTP date, into milliseconds; -1 if absent or invalid.
+     */
+    static long parseRetryAfter(String value) {
+        if (value == null) {
+            return -1;
+        }
+        value = value.trim();
+        try {
+            return Math.max(0, Long.parseLong(value)) * 1000;
+        } catch (NumberFormatException e) {
+            // Not delta-seconds, try an HTTP date
+        }
+        try {
+            long at = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return Math.max(0, at - System.currentTimeMillis());
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Sleeps for the delay; returns false if interrupted, keeping the interrupt status.
+     */
+    private static boolean sleep(long millis) {
+        if (millis <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Sets the number of attempts including the first one; 1 disables retries.
+     */
+    public RetryPolicy setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    public Set<Integer> getRetryStatuses() {
+        return Collections.unmodifiableSet(retryStatuses);
+    }
+
+    /**
+     * Sets the status codes that are retried. Defaults to 429, 502, 503 and 504.
+     */
+    public RetryPolicy setRetryStatuses(Integer... statuses) {
+        this.retryStatuses = new HashSet<>(Arrays.asList(statuses));
+        return this;
+    }
+
+    public List<Class<? extends RequestException>> getRetryExceptions() {
+        return Collections.unmodifiableList(retryExceptions);
+    }
+
+    /**
+     * Sets the exceptions, including their subclasses, that are retried.
+     * Defaults to {@link ConnectionError} and {@link Timeout}.
+     */
+    @SafeVarargs
+    public final RetryPolicy setRetryExceptions(Class<? extends RequestException>... exceptions) {
+        // Copied element by element: handing the generic array on would void @SafeVarargs
+        List<Class<? extends RequestException>> types = new ArrayList<>(exceptions.length);
+        for (Class<? extends RequestException> type : exceptions) {
+            types.add(type);
+        }
+        this.retryExceptions = types;
+        return this;
+    }
+
+    public boolean isRetryNonIdempotent() {
+        return retryNonIdempotent;
+    }
+
+    /**
+     * Retries POST and PATCH requests like idempotent ones. Only enable this for endpoints
+     * that tolerate receiving a request twice.
+     */
+    public RetryPolicy setRetryNonIdempotent(boolean retryNonIdempotent) {
+        this.retryNonIdempotent = retryNonIdempotent;
+        return this;
+    }
+
+    public long getBaseDelay() {
+        return baseDelay;
+    }
+
+    /**
+     * Sets the smallest delay between attempts, in milliseconds.
+     */
+    public RetryPolicy setBaseDelay(long baseDelay) {
+        this.baseDelay = baseDelay;
+        return this;
+    }
+
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    /**
+     * Sets the largest computed delay between attempts, in milliseconds.
+     */
+    public RetryPolicy setMaxDelay(long maxDelay) {
+        this.maxDelay = maxDelay;
+        return this;
+    }
+
+    public boolean isRespectRetryAfter() {
+        return respectRetryAfter;
+    }
+
+    /**
+     * Waits as long as a response's Retry-After header asks instead of the computed delay.
+     */
+    public RetryPolicy setRespectRetryAfter(boolean respectRetryAfter) {
+        this.respectRetryAfter = respectRetryAfter;
+        return this;
+    }
+
+    public long getMaxRetryAfter() {
+        return maxRetryAfter;
+    }
+
+    /**
+     * Sets the longest Retry-After wait accepted, in milliseconds; responses asking for longer are returned.
+     */
+    public RetryPolicy setMaxRetryAfter(long maxRetryAfter) {
+        this.maxRetryAfter = maxRetryAfter;
+        return this;
+    }
+
+    public RetryBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * Sets the budget shared by all requests sent with this policy, or null for no limit.
+     */
+    public RetryPolicy setBudget(RetryBudget budget) {
+        this.budget = budget;
+        return this;
+    }
+
+    /**
+     * Returns the number of retries made.
+     */
+    public long getRetryCount() {
+        return retries.get();
+    }
+}
@@ -0,0 +1,165 @@
+package cn.jeyor1337.requests4j.tls;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * TLS settings for HTTPS connections: trust material, client certificates,
+ * protocol and cipher selection, and client session cache tuning.
+ * Transports share one {@link TlsContext} per distinct configuration, so sessions
+ * opened with equal settings resume each other's TLS sessions.
+ */
+public class TlsConfig {
+    private KeyStore trustStore;
+    private KeyStore keyStore;
+    private char[] keyPassword;
+    private String[] protocols;
+    private String[] cipherSuites;
+    private int sessionCacheSize = -1;
+    private int sessionTimeout = -1;
+
+    /**
+     * Trusts the certificates in the key store instead of the JVM's default trust store.
+     */
+    public TlsConfig setTrustStore(KeyStore trustStore) {
+        this.trustStore = trustStore;
+        return this;
+    }
+
+    /**
+     * Loads the trust store from a PKCS12 or JKS file.
+     */
+    public TlsConfig setTrustStore(String path, String password) throws IOException {
+        return setTrustStore(load(path, password));
+    }
+
+    /**
+     * Presents the client certificate and key in the key store to servers that ask for one.
+     */
+    public TlsConfig setKeyStore(KeyStore keyStore, String keyPassword) {
+        this.keyStore = keyStore;
+        this.keyPassword = keyPassword != null ? keyPassword.toCharArray() : null;
+        return this;
+    }
+
+    /**
+     * Loads the client key store from a PKCS12 or JKS file; the key password is the store password.
+     */
+    public TlsConfig setKeyStore(String path, String password) throws IOException {
+        return setKeyStore(load(path, password), password);
+    }
+
+    /**
+     * Restricts the enabled protocols, e.g. "TLSv1.3", "TLSv1.2".
+     */
+    public TlsConfig setProtocols(String... protocols) {
+        this.protocols = protocols != null ? protocols.clone() : null;
+        return this;
+    }
+
+    /**
+     * Restricts the enabled cipher suites.
+     */
+    public TlsConfig setCipherSuites(String... cipherSuites) {
+        this.cipherSuites = cipherSuites != null ? cipherSuites.clone() : null;
+        return this;
+    }
+
+    /**
+     * Sets the number of TLS sessions kept for resumption (0 for no limit, -1 for the JVM default).
+     */
+    public TlsConfig setSessionCacheSize(int sessionCacheSize) {
+        this.sessionCacheSize = sessionCacheSize;
+        return this;
+    }
+
+    /**
+     * Sets how long TLS sessions may be resumed, in seconds (0 for no limit, -1 for the JVM default).
+     */
+    public TlsConfig setSessionTimeout(int sessionTimeout) {
+        this.sessionTimeout = sessionTimeout;
+        return this;
+    }
+
+    public KeyStore getTrustStore() {
+        return trustStore;
+    }
+
+    public KeyStore getKeyStore() {
+        return keyStore;
+    }
+
+    char[] getKeyPassword() {
+        return keyPassword;
+    }
+
+    public String[] getProtocols() {
+        return protocols != null ? protocols.clone() : null;
+    }
+
+    public String[] getCipherSuites() {
+        return cipherSuites != null ? cipherSuites.clone() : null;
+    }
+
+    public int getSessionCacheSize() {
+        return sessionCacheSize;
+    }
+
+    public int getSessionTimeout() {
+        return sessionTimeout;
+    }
+
+    private static KeyStore load(String path, String password) throws IOException {
+        try {
+            return KeyStore.getInstance(new File(path), password != null ? password.toCharArray() : null);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Cannot load key store " + path, e);
+        }
+    }
+
+    /**
+     * Key stores compare by identity; everything else by value.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TlsConfig)) {
+            return false;
+        }
+        TlsConfig that = (TlsConfig) o;
+        return trustStore == that.trustStore
+                && keyStore == that.keyStore
+                && Arrays.equals(keyPassword, that.keyPassword)
+                && Arrays.equals(protocols, that.protocols)
+                && Arrays.equals(cipherSuites, that.cipherSuites)
+                && sessionCacheSize == that.sessionCacheSize
+                && sessionTimeout == that.sessionTimeout;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Objects.hash(System.identityHashCode(trustStore), System.identityHashCode(keyStore),
+                sessionCacheSize, sessionTimeout);
+        result = 31 * result + Arrays.hashCode(protocols);
+        result = 31 * result + Arrays.hashCode(cipherSuites);
+        return result;
+    }
+
+    TlsConfig copy() {
+        TlsConfig copy = new TlsConfig();
+        copy.trustStore = trustStore;
+        copy.keyStore = keyStore;
+        copy.keyPassword = keyPassword != null ? keyPassword.clone() : null;
+        copy.protocols = protocols != null ? protocols.clone() : null;
+        copy.cipherSuites = cipherSuites != null ? cipherSuites.clone() : null;
+        copy.sessionCacheSize = sessionCacheSize;
+        copy.sessionTimeout = sessionTimeout;
+        return copy;
+    }
+}
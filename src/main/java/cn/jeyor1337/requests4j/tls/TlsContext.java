@@ -0,0 +1,286 @@
+package cn.jeyor1337.requests4j.tls;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedTrustManager;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An {@link SSLContext} built from a {@link TlsConfig}, together with the socket factory,
+ * parameters and hostname verifier the transports apply to each connection.
+ * Contexts are cached per configuration, so repeat connections share one client session
+ * cache and resume earlier handshakes instead of doing full ones.
+ */
+public final class TlsContext {
+    private static final int MAX_CACHED = 64;
+    private static final Map<Key, TlsContext> CACHE = new ConcurrentHashMap<>();
+    private static final HostnameVerifier NO_VERIFIER = (hostname, session) -> true;
+
+    private final SSLContext sslContext;
+    private final SSLSocketFactory socketFactory;
+    private final String[] protocols;
+    private final String[] cipherSuites;
+    private final boolean verify;
+
+    private TlsContext(SSLContext sslContext, String[] protocols, String[] cipherSuites, boolean verify) {
+        this.sslContext = sslContext;
+        this.protocols = protocols;
+        this.cipherSuites = cipherSuites;
+        this.verify = verify;
+        this.socketFactory = new ConfiguredSocketFactory(sslContext.getSocketFactory());
+    }
+
+    /**
+     * Returns the context for the configuration, building it on first use.
+     *
+     * @param config TLS settings, or null for the JVM defaults
+     * @param verify whether to verify server certificates and hostnames
+     */
+    public static TlsContext of(TlsConfig config, boolean verify) throws IOException {
+        Key key = new Key(config != null ? config.copy() : null, verify);
+        TlsContext context = CACHE.get(key);
+        if (context != null) {
+            return context;
+        }
+        context = build(key.config, verify);
+        if (CACHE.size() >= MAX_CACHED) {
+            CACHE.clear();
+        }
+        TlsContext existing = CACHE.putIfAbsent(key, context);
+        return existing != null ? existing : context;
+    }
+
+    private static TlsContext build(TlsConfig config, boolean verify) throws IOException {
+        try {
+            SSLContext sslContext;
+            if (config == null && verify) {
+                sslContext = SSLContext.getDefault();
+            } else {
+                sslContext = SSLContext.getInstance("TLS");
+                sslContext.init(keyManagers(config), trustManagers(config, verify), null);
+            }
+            if (config != null) {
+                SSLSessionContext sessions = sslContext.getClientSessionContext();
+                if (config.getSessionCacheSize() >= 0) {
+                    sessions.setSessionCacheSize(config.getSessionCacheSize());
+                }
+                if (config.getSessionTimeout() >= 0) {
+                    sessions.setSessionTimeout(config.getSessionTimeout());
+                }
+                return new TlsContext(sslContext, config.getProtocols(), config.getCipherSuites(), verify);
+            }
+            return new TlsContext(sslContext, null, null, verify);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Cannot initialize TLS: " + e.getMessage(), e);
+        }
+    }
+
+    private static KeyManager[] keyManagers(TlsConfig config) throws GeneralSecurityException {
+        if (config == null || config.getKeyStore() == null) {
+            return null;
+        }
+        KeyManagerFactory factory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        factory.init(config.getKeyStore(), config.getKeyPassword());
+        return factory.getKeyManagers();
+    }
+
+    private static TrustManager[] trustManagers(TlsConfig config, boolean verify) throws GeneralSecurityException {
+        if (!verify) {
+            return new TrustManager[]{new TrustAllManager()};
+        }
+        if (config == null || config.getTrustStore() == null) {
+            return null;
+        }
+        TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        factory.init(config.getTrustStore());
+        return factory.getTrustManagers();
+    }
+
+    public SSLContext getSSLContext() {
+        return sslContext;
+    }
+
+    /**
+     * Returns a socket factory whose sockets have the configured protocols and cipher suites enabled.
+     */
+    public SSLSocketFactory getSocketFactory() {
+        return socketFactory;
+    }
+
+    /**
+     * Returns the hostname verifier for {@link HttpsURLConnection}s.
+     */
+    public HostnameVerifier getHostnameVerifier() {
+        return verify ? HttpsURLConnection.getDefaultHostnameVerifier() : NO_VERIFIER;
+    }
+
+    public boolean isVerify() {
+        return verify;
+    }
+
+    /**
+     * Returns the parameters for a new connection: the configured protocols and cipher suites,
+     * and HTTPS endpoint identification when verifying.
+     */
+    public SSLParameters getSSLParameters() {
+        SSLParameters parameters = sslContext.getDefaultSSLParameters();
+        if (protocols != null) {
+            parameters.setProtocols(protocols);
+        }
+        if (cipherSuites != null) {
+            parameters.setCipherSuites(cipherSuites);
+        }
+        if (verify) {
+            parameters.setEndpointIdentificationAlgorithm("HTTPS");
+        }
+        return parameters;
+    }
+
+    private void configure(Socket socket) {
+        if (socket instanceof SSLSocket) {
+            SSLSocket ssl = (SSLSocket) socket;
+            SSLParameters parameters = ssl.getSSLParameters();
+            if (protocols != null) {
+                parameters.setProtocols(protocols);
+            }
+            if (cipherSuites != null) {
+                parameters.setCipherSuites(cipherSuites);
+            }
+            ssl.setSSLParameters(parameters);
+        }
+    }
+
+    private static final class Key {
+        final TlsConfig config;
+        final boolean verify;
+
+        Key(TlsConfig config, boolean verify) {
+            this.config = config;
+            this.verify = verify;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return verify == that.verify && Objects.equals(config, that.config);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(config) * 31 + (verify ? 1 : 0);
+        }
+    }
+
+    /**
+     * Applies the configured protocols and cipher suites to every socket it creates.
+     */
+    private final class ConfiguredSocketFactory extends SSLSocketFactory {
+        private final SSLSocketFactory delegate;
+
+        ConfiguredSocketFactory(SSLSocketFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return cipherSuites != null ? cipherSuites.clone() : delegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return delegate.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return configured(delegate.createSocket());
+        }
+
+        @Override
+        public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+            return configured(delegate.createSocket(socket, host, port, autoClose));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return configured(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
+                throws IOException {
+            return configured(delegate.createSocket(host, port, localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return configured(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+                throws IOException {
+            return configured(delegate.createSocket(address, port, localAddress, localPort));
+        }
+
+        private Socket configured(Socket socket) {
+            configure(socket);
+            return socket;
+        }
+    }
+
+    /**
+     * Accepts any server certificate. Being an extended trust manager, it also stops the JDK
+     * from checking the hostname during the handshake.
+     */
+    private static final class TrustAllManager extends X509ExtendedTrustManager {
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) {
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+        }
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+    }
+}
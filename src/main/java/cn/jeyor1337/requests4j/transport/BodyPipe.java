@@ -0,0 +1,222 @@
+package cn.jeyor1337.requests4j.transport;
+
+import cn.jeyor1337.requests4j.RequestBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+/**
+ * Carries a request body of unknown length from the thread encoding it to the transport sending it,
+ * for transports that cannot let the body write itself to the connection. At most {@link #LIMIT} bytes
+ * wait in the pipe; the encoder blocks until the sender catches up, so memory stays bounded however
+ * large the body is.
+ */
+final class BodyPipe extends OutputStream {
+    /**
+     * Returned by {@link #poll} once the whole body has been taken.
+     */
+    static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private static final int LIMIT = 64 * 1024;
+    private static final int SEGMENT_SIZE = 8192;
+
+    // Segments are kept in write mode until they are taken
+    private final ArrayDeque<ByteBuffer> segments = new ArrayDeque<>();
+    private int buffered;
+    private boolean finished;
+    private boolean cancelled;
+    private IOException error;
+    private Runnable listener;
+
+    /**
+     * Encodes the body into a new pipe on the executor, with chunked transfer coding if asked.
+     */
+    static BodyPipe start(RequestBody body, boolean chunked, Executor executor) {
+        BodyPipe pipe = new BodyPipe();
+        executor.execute(() -> {
+            try {
+                if (chunked) {
+                    ChunkedOutputStream out = new ChunkedOutputStream(pipe, SEGMENT_SIZE - 16);
+                    body.writeTo(out);
+                    out.finish();
+                } else {
+                    body.writeTo(pipe);
+                }
+                pipe.close();
+            } catch (IOException e) {
+                pipe.fail(e);
+            } catch (RuntimeException e) {
+                pipe.fail(new IOException("Failed to encode the request body", e));
+            }
+        });
+        return pipe;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        Runnable ready;
+        synchronized (this) {
+            while (len > 0) {
+                while (buffered >= LIMIT && !cancelled) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while encoding the request body");
+                    }
+                }
+                if (cancelled) {
+                    throw new IOException("Request body is no longer needed");
+                }
+                ByteBuffer tail = segments.peekLast();
+                if (tail == null || !tail.hasRemaining()) {
+                    tail = ByteBuffer.allocate(SEGMENT_SIZE);
+                    segments.add(tail);
+                }
+                int n = Math.min(len, tail.remaining());
+                tail.put(b, off, n);
+                buffered += n;
+                off += n;
+                len -= n;
+            }
+            ready = takeListener();
+        }
+        run(ready);
+    }
+
+    /**
+     * Marks the end of the body.
+     */
+    @Override
+    public void close() {
+        Runnable ready;
+        synchronized (this) {
+            finished = true;
+            ready = takeListener();
+        }
+        run(ready);
+    }
+
+    private void fail(IOException e) {
+        Runnable ready;
+        synchronized (this) {
+            error = e;
+            ready = takeListener();
+        }
+        run(ready);
+    }
+
+    /**
+     * Takes the next part of the body without blocking: returns {@link #END} after the last part,
+     * or null if the encoder has not caught up yet, in which case the listener runs once it has.
+     *
+     * @throws IOException if encoding the body failed
+     */
+    synchronized ByteBuffer poll(Runnable onReady) throws IOException {
+        if (error != null) {
+            throw error;
+        }
+        ByteBuffer segment = segments.peekFirst();
+        if (segment != null && segment.position() > 0) {
+            segments.pollFirst();
+            buffered -= segment.position();
+            notifyAll();
+            segment.flip();
+            return segment;
+        }
+        if (finished) {
+            return END;
+        }
+        listener = onReady;
+        return null;
+    }
+
+    /**
+     * Stops the encoder: the body is not needed any more, e.g. because the exchange failed.
+     */
+    synchronized void cancel() {
+        cancelled = true;
+        segments.clear();
+        buffered = 0;
+        listener = null;
+        notifyAll();
+    }
+
+    /**
+     * Returns a blocking stream over the body, closed by cancelling the pipe.
+     */
+    InputStream inputStream() {
+        return new InputStream() {
+            private ByteBuffer current = END;
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                while (!current.hasRemaining()) {
+                    current = take();
+                    if (current == END) {
+                        return -1;
+                    }
+                }
+                int n = Math.min(len, current.remaining());
+                current.get(b, off, n);
+                return n;
+            }
+
+            @Override
+            public void close() {
+                cancel();
+            }
+        };
+    }
+
+    private synchronized ByteBuffer take() throws IOException {
+        while (true) {
+            ByteBuffer segment = poll(null);
+            if (segment != null) {
+                return segment;
+            }
+            if (cancelled) {
+                throw new IOException("Request body is no longer needed");
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while sending the request body");
+            }
+        }
+    }
+
+    private Runnable takeListener() {
+        // Also wakes a blocked reader of inputStream()
+        notifyAll();
+        Runnable ready = listener;
+        listener = null;
+        return ready;
+    }
+
+    private static void run(Runnable ready) {
+        if (ready != null) {
+            ready.run();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package cn.jeyor1337.requests4j.transport;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a body framed with chunked transfer coding. Trailers are discarded.
+ */
+class ChunkedInputStream extends InputStream {
+    private final Http1Connection connection;
+    private final InputStream in;
+    private long chunkRemaining;
+    private boolean started;
+    private boolean eof;
+
+    ChunkedInputStream(Http1Connection connection) {
+        this.connection = connection;
+        this.in = connection.getInputStream();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (eof) {
+            return -1;
+        }
+        if (chunkRemaining == 0) {
+            nextChunk();
+            if (eof) {
+                return -1;
+            }
+        }
+        int n = in.read(b, off, (int) Math.min(len, chunkRemaining));
+        if (n == -1) {
+            throw new EOFException("Unexpected end of chunked stream");
+        }
+        chunkRemaining -= n;
+        return n;
+    }
+
+    private void nextChunk() throws IOException {
+        if (started) {
+            connection.readLine(); // CRLF after the previous chunk's data
+        }
+        started = true;
+
+        String line = connection.readLine();
+        int extension = line.indexOf(';');
+        if (extension >= 0) {
+            line = line.substring(0, extension);
+        }
+        try {
+            chunkRemaining = Long.parseLong(line.trim(), 16);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid chunk size: " + line);
+        }
+        if (chunkRemaining < 0) {
+            throw new IOException("Invalid chunk size: " + line);
+        }
+
+        if (chunkRemaining == 0) {
+            // Skip trailers up to the terminating empty line
+            while (!connection.readLine().isEmpty()) {
+                // ignore trailer field
+            }
+            eof = true;
+        }
+    }
+
+    @Override
+    public int available() throws IOException {
+        return eof ? 0 : (int) Math.min(in.available(), chunkRemaining);
+    }
+}
@@ -0,0 +1,437 @@
+package cn.jeyor1337.requests4j.transport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A pool of keep-alive HTTP/1.1 connections used by {@link PooledTransport}.
+ * Connections are bounded in total and per route (scheme, host and port), reused
+ * most-recently-released first, and closed once they have been idle or open for too long.
+ * Idle connections are checked for staleness before they are handed out again.
+ */
+public class ConnectionPool implements AutoCloseable {
+    private static final long SWEEP_INTERVAL = 1000;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final Map<Route, RoutePool> routes = new HashMap<>();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private int leasedCount;
+    private int idleCount;
+    private int pendingCount;
+    private long lastSweep;
+    private boolean closed;
+
+    private volatile int maxTotal = 64;
+    private volatile int maxPerRoute = 8;
+    private volatile long idleTimeout = 60000;
+    private volatile long maxLifetime = 0;
+    private volatile long validateAfterInactivity = 2000;
+
+    /**
+     * Opens new connections for the pool.
+     */
+    interface Connector {
+        Http1Connection connect(Route route) throws IOException;
+    }
+
+    /**
+     * Leases a connection to the route, reusing an idle one if possible.
+     * Waits up to waitMillis for a connection to become available when the pool is full (0 waits forever).
+     */
+    Http1Connection lease(Route route, Connector connector, long waitMillis) throws IOException {
+        long deadline = waitMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis) : 0;
+        while (true) {
+            Http1Connection connection;
+            List<Http1Connection> toClose = new ArrayList<>();
+            lock.lock();
+            try {
+                connection = acquire(route, deadline, toClose);
+            } finally {
+                lock.unlock();
+                closeAll(toClose);
+            }
+
+            if (connection == null) {
+                // A slot was reserved for a new connection
+                try {
+                    connection = connector.connect(route);
+                } catch (IOException | RuntimeException e) {
+                    cancelReservation(route);
+                    throw e;
+                }
+                created.incrementAndGet();
+                connection.leased = true;
+                connection.markUsed();
+                return connection;
+            }
+
+            if (System.currentTimeMillis() - connection.getLastUsedAt() >= validateAfterInactivity
+                    && connection.isStale()) {
+                discard(connection);
+                continue;
+            }
+            connection.markUsed();
+            return connection;
+        }
+    }
+
+    private Http1Connection acquire(Route route, long deadline, List<Http1Connection> toClose) throws IOException {
+        RoutePool pool = routes.computeIfAbsent(route, RoutePool::new);
+        pool.pending++;
+        pendingCount++;
+        try {
+            while (true) {
+                if (closed) {
+                    throw new IOException("Connection pool is closed");
+                }
+                long now = System.currentTimeMillis();
+                sweep(now, toClose);
+
+                // LIFO: the most recently released connection is the most likely to still be alive
+                Http1Connection connection;
+                while ((connection = pool.idle.pollFirst()) != null) {
+                    idleCount--;
+                    if (isExpired(connection, now)) {
+                        evicted.incrementAndGet();
+                        toClose.add(connection);
+                        continue;
+                    }
+                    pool.leased++;
+                    leasedCount++;
+                    connection.leased = true;
+                    return connection;
+                }
+
+                if (pool.leased < maxPerRoute) {
+                    if (leasedCount + idleCount >= maxTotal) {
+                        evictOldestIdle(toClose);
+                    }
+                    if (leasedCount + idleCount < maxTotal) {
+                        pool.leased++;
+                        leasedCount++;
+                        return null;
+                    }
+                }
+
+                await(route, deadline);
+            }
+        } finally {
+            pool.pending--;
+            pendingCount--;
+            removeIfUnused(pool);
+        }
+    }
+
+    private void await(Route route, long deadline) throws IOException {
+        try {
+            if (deadline == 0) {
+                available.await();
+            } else {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new SocketTimeoutException("Timed out waiting for a pooled connection to " + route);
+                }
+                available.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a pooled connection");
+        }
+    }
+
+    /**
+     * Returns a leased connection to the pool. Non-reusable connections are closed.
+     * Releasing a connection more than once has no effect.
+     */
+    void release(Http1Connection connection, boolean reusable) {
+        Http1Connection toClose = null;
+        lock.lock();
+        try {
+            if (!connection.leased) {
+                return;
+            }
+            connection.leased = false;
+            RoutePool pool = routes.get(connection.getRoute());
+            pool.leased--;
+            leasedCount--;
+
+            long now = System.currentTimeMillis();
+            if (reusable && !closed && !isExpired(connection, now)) {
+                connection.markIdle();
+                pool.idle.addFirst(connection);
+                idleCount++;
+            } else {
+                if (reusable) {
+                    evicted.incrementAndGet();
+                }
+                toClose = connection;
+                removeIfUnused(pool);
+            }
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (toClose != null) {
+            toClose.close();
+        }
+    }
+
+    private void discard(Http1Connection connection) {
+        evicted.incrementAndGet();
+        release(connection, false);
+    }
+
+    private void cancelReservation(Route route) {
+        lock.lock();
+        try {
+            RoutePool pool = routes.get(route);
+            pool.leased--;
+            leasedCount--;
+            removeIfUnused(pool);
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes idle connections that have exceeded the idle timeout or maximum lifetime.
+     */
+    public void closeExpired() {
+        List<Http1Connection> toClose = new ArrayList<>();
+        lock.lock();
+        try {
+            lastSweep = 0;
+            sweep(System.currentTimeMillis(), toClose);
+        } finally {
+            lock.unlock();
+        }
+        closeAll(toClose);
+    }
+
+    /**
+     * Closes all idle connections. Leased connections are closed when they are released.
+     */
+    public void evictAll() {
+        List<Http1Connection> toClose = new ArrayList<>();
+        lock.lock();
+        try {
+            for (Iterator<RoutePool> it = routes.values().iterator(); it.hasNext(); ) {
+                RoutePool pool = it.next();
+                toClose.addAll(pool.idle);
+                idleCount -= pool.idle.size();
+                pool.idle.clear();
+                if (pool.leased == 0 && pool.pending == 0) {
+                    it.remove();
+                }
+            }
+            evicted.addAndGet(toClose.size());
+        } finally {
+            lock.unlock();
+        }
+        closeAll(toClose);
+    }
+
+    private void sweep(long now, List<Http1Connection> toClose) {
+        if (now - lastSweep < SWEEP_INTERVAL) {
+            return;
+        }
+        lastSweep = now;
+        for (Iterator<RoutePool> it = routes.values().iterator(); it.hasNext(); ) {
+            RoutePool pool = it.next();
+            for (Iterator<Http1Connection> idle = pool.idle.iterator(); idle.hasNext(); ) {
+                Http1Connection connection = idle.next();
+                if (isExpired(connection, now)) {
+                    idle.remove();
+                    idleCount--;
+                    evicted.incrementAndGet();
+                    toClose.add(connection);
+                }
+            }
+            if (pool.idle.isEmpty() && pool.leased == 0 && pool.pending == 0) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Closes the least recently used idle connection of any route to make room for a new one.
+     */
+    private void evictOldestIdle(List<Http1Connection> toClose) {
+        RoutePool oldest = null;
+        for (RoutePool pool : routes.values()) {
+            Http1Connection last = pool.idle.peekLast();
+            if (last != null && (oldest == null
+                    || last.getLastUsedAt() < oldest.idle.peekLast().getLastUsedAt())) {
+                oldest = pool;
+            }
+        }
+        if (oldest != null) {
+            toClose.add(oldest.idle.pollLast());
+            idleCount--;
+            evicted.incrementAndGet();
+        }
+    }
+
+    private boolean isExpired(Http1Connection connection, long now) {
+        long idle = idleTimeout;
+        long lifetime = maxLifetime;
+        return connection.isClosed()
+                || (idle > 0 && now - connection.getLastUsedAt() >= idle)
+                || (lifetime > 0 && now - connection.getCreatedAt() >= lifetime);
+    }
+
+    private void removeIfUnused(RoutePool pool) {
+        if (pool.idle.isEmpty() && pool.leased == 0 && pool.pending == 0) {
+            routes.remove(pool.route);
+        }
+    }
+
+    private static void closeAll(List<Http1Connection> connections) {
+        for (Http1Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the whole pool.
+     */
+    public PoolStats getStats() {
+        lock.lock();
+        try {
+            return new PoolStats(leasedCount, idleCount, pendingCount, created.get(), evicted.get());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a snapshot per route, keyed by "scheme://host[:port]".
+     * Created and evicted counts are only tracked for the whole pool and are reported as 0.
+     */
+    public Map<String, PoolStats> getRouteStats() {
+        Map<String, PoolStats> stats = new HashMap<>();
+        lock.lock();
+        try {
+            for (RoutePool pool : routes.values()) {
+                stats.put(pool.route.toString(), new PoolStats(pool.leased, pool.idle.size(), pool.pending, 0, 0));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return Collections.unmodifiableMap(stats);
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    /**
+     * Sets the maximum number of open connections across all routes.
+     */
+    public void setMaxTotal(int maxTotal) {
+        if (maxTotal < 1) {
+            throw new IllegalArgumentException("maxTotal must be positive");
+        }
+        this.maxTotal = maxTotal;
+        signalAll();
+    }
+
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    /**
+     * Sets the maximum number of connections leased to a single route at once.
+     */
+    public void setMaxPerRoute(int maxPerRoute) {
+        if (maxPerRoute < 1) {
+            throw new IllegalArgumentException("maxPerRoute must be positive");
+        }
+        this.maxPerRoute = maxPerRoute;
+        signalAll();
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Sets how long a connection may stay idle before it is closed, in milliseconds (0 for no limit).
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public long getMaxLifetime() {
+        return maxLifetime;
+    }
+
+    /**
+     * Sets how long a connection may stay open in total, in milliseconds (0 for no limit).
+     */
+    public void setMaxLifetime(long maxLifetime) {
+        this.maxLifetime = maxLifetime;
+    }
+
+    public long getValidateAfterInactivity() {
+        return validateAfterInactivity;
+    }
+
+    /**
+     * Sets how long a connection must have been idle before it is checked for staleness on reuse,
+     * in milliseconds (0 checks every time).
+     */
+    public void setValidateAfterInactivity(long validateAfterInactivity) {
+        this.validateAfterInactivity = validateAfterInactivity;
+    }
+
+    private void signalAll() {
+        lock.lock();
+        try {
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes all idle connections and fails pending leases. Leased connections are closed on release.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        evictAll();
+    }
+
+    private static final class RoutePool {
+        final Route route;
+        final ArrayDeque<Http1Connection> idle = new ArrayDeque<>();
+        int leased;
+        int pending;
+
+        RoutePool(Route route) {
+            this.route = route;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package cn.jeyor1337.requests4j.transport;
+
+import cn.jeyor1337.requests4j.HttpAdapter;
+import cn.jeyor1337.requests4j.Request;
+import cn.jeyor1337.requests4j.RequestBody;
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Encodes HTTP/1.1 request heads for the socket-based transports.
+ */
+final class Http1Codec {
+
+    private Http1Codec() {
+    }
+
+    /**
+     * Encodes the request line and headers. A body of unknown length is announced as chunked.
+     *
+     * @throws IllegalArgumentException if a header name is not a token, or the request target or
+     *         a header value contains CR, LF or NUL, which would let it inject headers or requests
+     */
+    static byte[] encodeRequestHead(URL url, Route route, String method, Request request,
+                                    RequestBody body, HttpAdapter adapter) {
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.put("Host", route.getHostHeader());
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            String name = header.getKey();
+            if (!name.equalsIgnoreCase("Host") && !name.equalsIgnoreCase("Content-Length")
+                    && !name.equalsIgnoreCase("Transfer-Encoding")) {
+                headers.put(name, header.getValue());
+            }
+        }
+
+        String cookieHeader = adapter.getCookieHeader(request);
+        if (cookieHeader != null) {
+            headers.put("Cookie", cookieHeader);
+        }
+
+        if (body != null) {
+            if (body.getContentType() != null) {
+                headers.put("Content-Type", body.getContentType());
+            }
+            if (body.getContentEncoding() != null) {
+                headers.put("Content-Encoding", body.getContentEncoding());
+            }
+            if (body.getContentLength() >= 0) {
+                headers.put("Content-Length", Long.toString(body.getContentLength()));
+            } else {
+                headers.put("Transfer-Encoding", "chunked");
+            }
+        } else if (method.equals("POST") || method.equals("PUT") || method.equals("PATCH")) {
+            headers.put("Content-Length", "0");
+        }
+
+        String target = url.getFile();
+        if (!isToken(method) || target.indexOf(' ') >= 0 || hasLineBreak(target)) {
+            throw new IllegalArgumentException("Invalid request line: " + method + " " + target);
+        }
+        StringBuilder head = new StringBuilder(256);
+        head.append(method).append(' ').append(target.isEmpty() ? "/" : target).append(" HTTP/1.1\r\n");
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            checkHeader(header.getKey(), header.getValue());
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        head.append("\r\n");
+        return head.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Rejects a header that could not be sent as a single header line, as
+     * {@link java.net.HttpURLConnection} does.
+     */
+    static void checkHeader(String name, String value) {
+        if (!isToken(name)) {
+            throw new IllegalArgumentException("Invalid header name: " + name);
+        }
+        if (value == null || hasLineBreak(value)) {
+            throw new IllegalArgumentException("Invalid value for header " + name);
+        }
+    }
+
+    /**
+     * Returns true if the text is a non-empty RFC 7230 token.
+     */
+    private static boolean isToken(String text) {
+        if (text == null || text.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            boolean alphanumeric = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+            if (!alphanumeric && "!#$%&'*+-.^_`|~".indexOf(c) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasLineBreak(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\r' || c == '\n' || c == '\0') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the method may safely be sent again after a connection failure.
+     */
+    static boolean isIdempotent(String method) {
+        switch (method) {
+            case "GET":
+            case "HEAD":
+            case "OPTIONS":
+            case "TRACE":
+            case "PUT":
+            case "DELETE":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns true if a response to the method with this status carries no body.
+     */
+    static boolean hasNoBody(String method, int statusCode) {
+        return "HEAD".equals(method) || statusCode == 204 || statusCode == 304
+                || (statusCode >= 100 && statusCode < 200);
+    }
+}
@@ -0,0 +1,248 @@
+package cn.jeyor1337.requests4j.transport;
+
+import cn.jeyor1337.requests4j.dns.HappyEyeballs;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * A blocking HTTP/1.1 connection to a single route.
+ */
+final class Http1Connection implements Closeable {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_LINE_LENGTH = 65536;
+
+    private final Route route;
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private final long createdAt;
+    private final ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream(128);
+    private long lastUsedAt;
+    private int useCount;
+    private volatile boolean closed;
+
+    // Guarded by the pool's lock
+    boolean leased;
+
+    Http1Connection(Route route, Socket socket) throws IOException {
+        this.route = route;
+        this.socket = socket;
+        this.in = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+        this.out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+        this.createdAt = System.currentTimeMillis();
+        this.lastUsedAt = createdAt;
+    }
+
+    /**
+     * Opens a connection to the route, racing its addresses and performing the TLS handshake for https.
+     */
+    static Http1Connection connect(Route route, List<InetAddress> addresses, int connectTimeout,
+                                   SSLSocketFactory sslSocketFactory, boolean verifyHostname)
+            throws IOException {
+        Socket socket = HappyEyeballs.connect(addresses, route.getPort(), connectTimeout,
+                HappyEyeballs.DEFAULT_ATTEMPT_DELAY);
+        try {
+            if (route.isSecure()) {
+                socket = startTls(socket, route, sslSocketFactory, verifyHostname);
+            }
+            return new Http1Connection(route, socket);
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private static Socket startTls(Socket socket, Route route, SSLSocketFactory sslSocketFactory,
+                                   boolean verifyHostname) throws IOException {
+        // Passing the peer lets the handshake resume a session cached by the factory's context
+        SSLSocket sslSocket = (SSLSocket) sslSocketFactory.createSocket(
+                socket, route.getHost(), route.getPort(), true);
+        if (verifyHostname) {
+            SSLParameters parameters = sslSocket.getSSLParameters();
+            parameters.setEndpointIdentificationAlgorithm("HTTPS");
+            sslSocket.setSSLParameters(parameters);
+        }
+        sslSocket.startHandshake();
+        return sslSocket;
+    }
+
+    Route getRoute() {
+        return route;
+    }
+
+    InputStream getInputStream() {
+        return in;
+    }
+
+    OutputStream getOutputStream() {
+        return out;
+    }
+
+    long getCreatedAt() {
+        return createdAt;
+    }
+
+    long getLastUsedAt() {
+        return lastUsedAt;
+    }
+
+    /**
+     * Returns true if the connection has carried a previous exchange.
+     */
+    boolean isReused() {
+        return useCount > 1;
+    }
+
+    void markUsed() {
+        useCount++;
+        lastUsedAt = System.currentTimeMillis();
+    }
+
+    void markIdle() {
+        lastUsedAt = System.currentTimeMillis();
+    }
+
+    void setReadTimeout(int readTimeout) throws IOException {
+        socket.setSoTimeout(readTimeout);
+    }
+
+    boolean isClosed() {
+        return closed || socket.isClosed();
+    }
+
+    /**
+     * Checks whether an idle connection was closed by the server or has unexpected data pending.
+     */
+    boolean isStale() {
+        if (isClosed()) {
+            return true;
+        }
+        try {
+            if (in.available() > 0) {
+                return true;
+            }
+            int timeout = socket.getSoTimeout();
+            try {
+                socket.setSoTimeout(1);
+                in.mark(1);
+                int b = in.read();
+                if (b == -1) {
+                    return true;
+                }
+                in.reset();
+                return true; // unsolicited data on an idle connection
+            } catch (SocketTimeoutException e) {
+                return false; // nothing to read: the connection is alive
+            } finally {
+                socket.setSoTimeout(timeout);
+            }
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Reads a CRLF- or LF-terminated line, without the terminator.
+     */
+    String readLine() throws IOException {
+        lineBuffer.reset();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1) {
+                throw new EOFException("Unexpected end of stream");
+            }
+            if (lineBuffer.size() >= MAX_LINE_LENGTH) {
+                throw new IOException("Line too long");
+            }
+            lineBuffer.write(b);
+        }
+        int length = lineBuffer.size();
+        byte[] bytes = lineBuffer.toByteArray();
+        if (length > 0 && bytes[length - 1] == '\r') {
+            length--;
+        }
+        return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Reads the status line and headers of the next final (non-1xx) response.
+     */
+    ResponseHead readResponseHead() throws IOException {
+        while (true) {
+            ResponseHead head = readHead();
+            if (head.statusCode >= 200 || head.statusCode == 101) {
+                return head;
+            }
+            // Skip interim responses such as 100 Continue
+        }
+    }
+
+    private ResponseHead readHead() throws IOException {
+        ResponseHead.Builder builder = new ResponseHead.Builder(readLine());
+        String line;
+        while (!(line = readLine()).isEmpty()) {
+            builder.headerLine(line);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the framed body stream for the response, or null if it has no body.
+     */
+    InputStream openBody(String method, ResponseHead head) throws IOException {
+        if (Http1Codec.hasNoBody(method, head.statusCode)) {
+            return null;
+        }
+
+        if (head.isChunked()) {
+            return new ChunkedInputStream(this);
+        }
+
+        String contentLength = head.getHeader("Content-Length");
+        if (contentLength != null) {
+            long length;
+            try {
+                length = Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid Content-Length: " + contentLength);
+            }
+            return length == 0 ? null : new FixedLengthInputStream(in, length);
+        }
+
+        // Body delimited by the server closing the connection
+        head.keepAlive = false;
+        return in;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Ignore errors when closing
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Http1Connection[" + route + "]";
+    }
+}
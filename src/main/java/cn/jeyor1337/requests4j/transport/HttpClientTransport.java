@@ -0,0 +1,284 @@
+package cn.jeyor1337.requests4j.transport;
+
+import cn.jeyor1337.requests4j.HttpAdapter;
+import cn.jeyor1337.requests4j.Request;
+import cn.jeyor1337.requests4j.RequestBody;
+import cn.jeyor1337.requests4j.Response;
+import cn.jeyor1337.requests4j.Transport;
+import cn.jeyor1337.requests4j.tls.TlsContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+/**
+ * Transport backed by {@link java.net.http.HttpClient}.
+ * Negotiates HTTP/2 via ALPN where the server supports it, so concurrent requests
+ * to the same host are multiplexed over a shared connection instead of one socket each.
+ */
+public class HttpClientTransport implements Transport {
+    private static final Set<String> RESTRICTED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        // Headers managed by HttpClient itself; setting them throws IllegalArgumentException
+        RESTRICTED_HEADERS.add("Connection");
+        RESTRICTED_HEADERS.add("Content-Length");
+        RESTRICTED_HEADERS.add("Expect");
+        RESTRICTED_HEADERS.add("Host");
+        RESTRICTED_HEADERS.add("Upgrade");
+    }
+
+    private final HttpClient.Version version;
+    private final Executor executor;
+    private HttpClient client;
+    private int clientConnectTimeout;
+    private TlsContext clientTls;
+
+    public HttpClientTransport() {
+        this(HttpClient.Version.HTTP_2, null);
+    }
+
+    public HttpClientTransport(HttpClient.Version version) {
+        this(version, null);
+    }
+
+    /**
+     * @param version preferred HTTP version
+     * @param executor executor for HttpClient's internal tasks, or null for the default
+     */
+    public HttpClientTransport(HttpClient.Version version, Executor executor) {
+        this.version = version;
+        this.executor = executor;
+    }
+
+    @Override
+    public Response execute(URL url, Request request, RequestBody body, HttpAdapter adapter) throws IOException {
+        HttpResponse<?> httpResponse;
+        try {
+            httpResponse = getClient(adapter).send(buildRequest(url, request, body, adapter),
+                    bodyHandler(request));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Request interrupted");
+        }
+        return toResponse(httpResponse);
+    }
+
+    /**
+     * Sends the request on HttpClient's non-blocking engine; no thread waits for the response.
+     */
+    @Override
+    public CompletableFuture<Response> executeAsync(URL url, Request request, RequestBody body,
+                                                    HttpAdapter adapter) {
+        HttpClient httpClient;
+        HttpRequest httpRequest;
+        try {
+            httpClient = getClient(adapter);
+            httpRequest = buildRequest(url, request, body, adapter);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return httpClient
+                .sendAsync(httpRequest, bodyHandler(request))
+                .thenApply(httpResponse -> {
+                    try {
+                        return toResponse(httpResponse);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                });
+    }
+
+    /**
+     * Streamed requests expose the live body; others are read fully by HttpClient.
+     */
+    private HttpResponse.BodyHandler<?> bodyHandler(Request request) {
+        return request.isStream()
+                ? HttpResponse.BodyHandlers.ofInputStream()
+                : HttpResponse.BodyHandlers.ofByteArray();
+    }
+
+    private Response toResponse(HttpResponse<?> httpResponse) throws IOException {
+        Response response = new Response();
+        response.setStatusCode(httpResponse.statusCode());
+        response.setReason(reasonPhrase(httpResponse.statusCode()));
+        response.setHeaders(httpResponse.headers().map());
+        if (httpResponse.body() instanceof InputStream) {
+            response.readBody((InputStream) httpResponse.body(), true);
+        } else {
+            response.readBody((byte[]) httpResponse.body());
+        }
+        response.detectEncoding();
+        return response;
+    }
+
+    /**
+     * Returns the HttpClient for the adapter's settings, creating it on first use
+     * and again whenever the connect timeout or TLS settings change.
+     */
+    protected synchronized HttpClient getClient(HttpAdapter adapter) throws IOException {
+        TlsContext tls = adapter.getTlsContext();
+        if (client == null || clientConnectTimeout != adapter.getConnectTimeout() || clientTls != tls) {
+            HttpClient.Builder builder = HttpClient.newBuilder()
+                    .version(version)
+                    .followRedirects(HttpClient.Redirect.NEVER) // Redirects are handled by the adapter
+                    .sslContext(tls.getSSLContext())
+                    .sslParameters(tls.getSSLParameters());
+            if (adapter.getConnectTimeout() > 0) {
+                builder.connectTimeout(Duration.ofMillis(adapter.getConnectTimeout()));
+            }
+            if (executor != null) {
+                builder.executor(executor);
+            }
+            client = builder.build();
+            clientConnectTimeout = adapter.getConnectTimeout();
+            clientTls = tls;
+        }
+        return client;
+    }
+
+    protected HttpRequest buildRequest(URL url, Request request, RequestBody body, HttpAdapter adapter)
+            throws IOException {
+        HttpRequest.Builder builder;
+        try {
+            builder = HttpRequest.newBuilder(url.toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid URL: " + url, e);
+        }
+
+        if (adapter.getReadTimeout() > 0) {
+            builder.timeout(Duration.ofMillis(adapter.getReadTimeout()));
+        }
+
+        // Set headers
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            if (!RESTRICTED_HEADERS.contains(header.getKey())) {
+                builder.setHeader(header.getKey(), header.getValue());
+            }
+        }
+
+        // Set cookies
+        String cookieHeader = adapter.getCookieHeader(request);
+        if (cookieHeader != null) {
+            builder.setHeader("Cookie", cookieHeader);
+        }
+
+        // Handle request body
+        HttpRequest.BodyPublisher publisher = HttpRequest.BodyPublishers.noBody();
+        if (body != null) {
+            if (body.getContentType() != null) {
+                builder.setHeader("Content-Type", body.getContentType());
+            }
+            if (body.getContentEncoding() != null) {
+                builder.setHeader("Content-Encoding", body.getContentEncoding());
+            }
+            publisher = body.getContentLength() >= 0
+                    ? HttpRequest.BodyPublishers.ofByteArray(body.toByteArray())
+                    : streamingPublisher(body, adapter.getExecutor());
+        }
+
+        return builder.method(request.getMethod().toUpperCase(), publisher).build();
+    }
+
+    /**
+     * Publishes a body of unknown length as it is encoded. HttpClient pulls the body while the
+     * encoder writes it, so the encoder runs on the executor and a bounded amount is buffered
+     * between the two. It is stopped if HttpClient gives up on the body.
+     */
+    private static HttpRequest.BodyPublisher streamingPublisher(RequestBody body, Executor executor) {
+        return new HttpRequest.BodyPublisher() {
+            @Override
+            public long contentLength() {
+                return -1;
+            }
+
+            @Override
+            public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+                BodyPipe pipe = BodyPipe.start(body, false, executor);
+                HttpRequest.BodyPublishers.ofInputStream(pipe::inputStream).subscribe(new Flow.Subscriber<>() {
+                    @Override
+                    public void onSubscribe(Flow.Subscription subscription) {
+                        subscriber.onSubscribe(new Flow.Subscription() {
+                            @Override
+                            public void request(long n) {
+                                subscription.request(n);
+                            }
+
+                            @Override
+                            public void cancel() {
+                                subscription.cancel();
+                                pipe.cancel();
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void onNext(ByteBuffer item) {
+                        subscriber.onNext(item);
+                    }
+
+                    @Override
+                    public void onError(Throwable error) {
+                        pipe.cancel();
+                        subscriber.onError(error);
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        subscriber.onComplete();
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * HTTP/2 carries no reason phrase, so one is derived from the status code.
+     */
+    static String reasonPhrase(int statusCode) {
+        switch (statusCode) {
+            case 200: return "OK";
+            case 201: return "Created";
+            case 202: return "Accepted";
+            case 204: return "No Content";
+            case 206: return "Partial Content";
+            case 301: return "Moved Permanently";
+            case 302: return "Found";
+            case 303: return "See Other";
+            case 304: return "Not Modified";
+            case 307: return "Temporary Redirect";
+            case 308: return "Permanent Redirect";
+            case 400: return "Bad Request";
+            case 401: return "Unauthorized";
+            case 403: return "Forbidden";
+            case 404: return "Not Found";
+            case 405: return "Method Not Allowed";
+            case 408: return "Request Timeout";
+            case 409: return "Conflict";
+            case 410: return "Gone";
+            case 413: return "Payload Too Large";
+            case 415: return "Unsupported Media Type";
+            case 429: return "Too Many Requests";
+            case 500: return "Internal Server Error";
+            case 501: return "Not Implemented";
+            case 502: return "Bad Gateway";
+            case 503: return "Service Unavailable";
+            case 504: return "Gateway Timeout";
+            default: return "";
+        }
+    }
+}
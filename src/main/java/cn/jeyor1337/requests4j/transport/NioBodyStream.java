@@ -0,0 +1,164 @@
+package cn.jeyor1337.requests4j.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * The body of a streamed response on the non-blocking transport. The selector thread offers
+ * bytes as they arrive and the caller reads them; once too much is buffered, the connection
+ * stops reading from the network until the caller catches up. Closing the stream before the
+ * end of the body closes the connection.
+ */
+final class NioBodyStream extends InputStream {
+    private static final int MAX_BUFFERED = 256 * 1024;
+
+    private final ArrayDeque<byte[]> chunks = new ArrayDeque<>();
+    private byte[] current;
+    private int position;
+    private int buffered;
+    private boolean full;
+    private boolean ended;
+    private boolean closed;
+    private IOException error;
+
+    private volatile SelectorLoop loop;
+    private volatile NioConnection connection;
+
+    /**
+     * Binds the stream to the connection carrying its exchange.
+     */
+    void attach(SelectorLoop loop, NioConnection connection) {
+        this.loop = loop;
+        this.connection = connection;
+    }
+
+    /**
+     * Adds body bytes from the network.
+     */
+    synchronized void offer(ByteBuffer in, int n) {
+        if (closed) {
+            in.position(in.position() + n); // nobody reads these any more
+            return;
+        }
+        byte[] chunk = new byte[n];
+        in.get(chunk);
+        chunks.add(chunk);
+        buffered += n;
+        notifyAll();
+        if (buffered >= MAX_BUFFERED) {
+            full = true;
+        }
+    }
+
+    /**
+     * Returns true once the connection should stop reading until it is told to resume.
+     */
+    synchronized boolean isFull() {
+        return full;
+    }
+
+    synchronized void end() {
+        ended = true;
+        notifyAll();
+    }
+
+    synchronized void fail(IOException error) {
+        if (!ended) {
+            this.error = error;
+            notifyAll();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        boolean resume = false;
+        int n;
+        synchronized (this) {
+            while (current == null && chunks.isEmpty()) {
+                if (closed) {
+                    throw new IOException("Stream closed");
+                }
+                if (error != null) {
+                    throw error;
+                }
+                if (ended) {
+                    return -1;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while reading the response body");
+                }
+            }
+            if (current == null) {
+                current = chunks.poll();
+                position = 0;
+            }
+            n = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, n);
+            position += n;
+            if (position == current.length) {
+                current = null;
+            }
+            buffered -= n;
+            if (full && buffered <= MAX_BUFFERED / 2) {
+                full = false;
+                resume = true;
+            }
+        }
+        if (resume) {
+            NioConnection connection = this.connection;
+            post(() -> connection.resume(this));
+        }
+        return n;
+    }
+
+    @Override
+    public synchronized int available() {
+        return buffered;
+    }
+
+    @Override
+    public void close() {
+        boolean abort;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            abort = !ended && error == null;
+            chunks.clear();
+            current = null;
+            buffered = 0;
+            notifyAll();
+        }
+        if (abort) {
+            NioConnection connection = this.connection;
+            post(() -> connection.abort(this));
+        }
+    }
+
+    private void post(Runnable task) {
+        SelectorLoop loop = this.loop;
+        if (loop != null) {
+            try {
+                loop.execute(task);
+            } catch (IllegalStateException e) {
+                // The transport is closed, and the connection with it
+            }
+        }
+    }
+}
@@ -0,0 +1,574 @@
+package cn.jeyor1337.requests4j.transport;
+
+import cn.jeyor1337.requests4j.io.BufferPool;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A non-blocking HTTP/1.1 connection driven by a {@link SelectorLoop}.
+ * All methods run on the loop's thread. Network buffers are borrowed from the pool
+ * while an exchange is in progress and returned when the connection goes idle.
+ */
+final class NioConnection {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private enum State { CONNECTING, HANDSHAKING, WRITING, READING, IDLE, CLOSED }
+
+    private final SelectorLoop loop;
+    private final Route route;
+    private final BufferPool buffers;
+    private SocketChannel channel;
+    private SelectionKey key;
+    private SSLEngine engine;
+    private State state = State.CONNECTING;
+
+    // netIn is kept in write mode, netOut and appIn in read mode
+    private ByteBuffer netIn;
+    private ByteBuffer netOut;
+    private ByteBuffer appIn;
+
+    private NioExchange exchange;
+    private ByteBuffer request;
+    // Supplies a chunked request body after the head, as fast as it is encoded
+    private BodyPipe pipe;
+    private ResponseParser parser;
+    private long deadline;
+    // Set while reading is paused because the caller has not caught up with a streamed body
+    private boolean paused;
+    private long lastUsedAt;
+    private int exchanges;
+
+    NioConnection(SelectorLoop loop, Route route, BufferPool buffers) {
+        this.loop = loop;
+        this.route = route;
+        this.buffers = buffers;
+    }
+
+    Route getRoute() {
+        return route;
+    }
+
+    long getLastUsedAt() {
+        return lastUsedAt;
+    }
+
+    /**
+     * Opens the connection and starts the exchange once it is established.
+     */
+    void connect(NioExchange exchange) {
+        begin(exchange);
+        try {
+            deadline = System.nanoTime() + timeout(exchange.connectTimeout);
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            boolean connected = channel.connect(
+                    new InetSocketAddress(exchange.addresses.get(exchange.addressIndex), route.getPort()));
+            key = channel.register(loop.getSelector(), connected ? 0 : SelectionKey.OP_CONNECT, this);
+            if (connected) {
+                onConnected();
+            }
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Checks that this idle connection is still open before it is reused, closing it if not.
+     * The server may have closed it since the selector last looked, and a request written to
+     * such a connection is lost; only idempotent ones could be retried.
+     */
+    boolean isReusable() {
+        try {
+            checkIdle();
+        } catch (IOException | RuntimeException e) {
+            close();
+        }
+        return state == State.IDLE;
+    }
+
+    /**
+     * Starts an exchange on this idle keep-alive connection.
+     */
+    void reuse(NioExchange exchange) {
+        begin(exchange);
+        try {
+            startWriting();
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    private void begin(NioExchange exchange) {
+        this.exchange = exchange;
+        this.request = ByteBuffer.wrap(exchange.requestData);
+        this.parser = new ResponseParser(exchange.method, exchange.body);
+        this.paused = false;
+        this.exchanges++;
+        if (exchange.body != null) {
+            exchange.body.attach(loop, this);
+        }
+        acquireBuffers();
+    }
+
+    /**
+     * Handles readiness events from the selector.
+     */
+    void onReady(int readyOps) {
+        try {
+            if ((readyOps & SelectionKey.OP_CONNECT) != 0) {
+                if (channel.finishConnect()) {
+                    onConnected();
+                }
+                return;
+            }
+            if ((readyOps & SelectionKey.OP_WRITE) != 0) {
+                onWritable();
+            }
+            if ((readyOps & SelectionKey.OP_READ) != 0 && state != State.CLOSED) {
+                onReadable();
+            }
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    private void onConnected() throws IOException {
+        if (!route.isSecure()) {
+            startWriting();
+            return;
+        }
+        // Passing the peer lets the handshake resume a session cached by the context
+        engine = exchange.sslContext.createSSLEngine(route.getHost(), route.getPort());
+        engine.setUseClientMode(true);
+        engine.setSSLParameters(exchange.sslParameters);
+        acquireBuffers();
+        state = State.HANDSHAKING;
+        engine.beginHandshake();
+        handshake();
+    }
+
+    private void handshake() throws IOException {
+        while (true) {
+            switch (engine.getHandshakeStatus()) {
+                case NEED_TASK:
+                    runDelegatedTasks();
+                    break;
+                case NEED_WRAP:
+                    wrap(EMPTY);
+                    if (!flush()) {
+                        interest(SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    break;
+                case NEED_UNWRAP:
+                case NEED_UNWRAP_AGAIN:
+                    netIn.flip();
+                    SSLEngineResult result = engine.unwrap(netIn, appIn.compact());
+                    appIn.flip();
+                    netIn.compact();
+                    if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                        throw new SSLException("Connection closed during TLS handshake");
+                    }
+                    if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                        interest(SelectionKey.OP_READ);
+                        return;
+                    }
+                    break;
+                default:
+                    startWriting();
+                    return;
+            }
+        }
+    }
+
+    private void runDelegatedTasks() {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    private void startWriting() throws IOException {
+        state = State.WRITING;
+        deadline = System.nanoTime() + timeout(exchange.readTimeout);
+        if (exchange.chunkedBody != null) {
+            pipe = BodyPipe.start(exchange.chunkedBody, true, exchange.executor);
+        }
+        writeRequest();
+    }
+
+    private void writeRequest() throws IOException {
+        while (true) {
+            if (engine == null) {
+                channel.write(request);
+            } else {
+                while (flush() && request.hasRemaining()) {
+                    wrap(request);
+                }
+            }
+            if (request.hasRemaining() || (engine != null && netOut.hasRemaining())) {
+                interest(SelectionKey.OP_WRITE);
+                return;
+            }
+            if (pipe == null) {
+                break;
+            }
+            BodyPipe waiting = pipe;
+            ByteBuffer next = pipe.poll(() -> post(() -> resumeWriting(waiting)));
+            if (next == BodyPipe.END) {
+                pipe = null;
+                break;
+            }
+            if (next == null) {
+                interest(0); // until the encoder has written more
+                return;
+            }
+            request = next;
+        }
+        state = State.READING;
+        interest(SelectionKey.OP_READ);
+        if (netIn.position() > 0 || (appIn != null && appIn.hasRemaining())) {
+            processInput(false); // data that arrived along with the handshake
+        }
+    }
+
+    /**
+     * Continues writing once the encoder has written more of the body, if it is still wanted.
+     */
+    private void resumeWriting(BodyPipe waiting) {
+        if (pipe != waiting || state != State.WRITING) {
+            return;
+        }
+        try {
+            deadline = System.nanoTime() + timeout(exchange.readTimeout);
+            writeRequest();
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    private void post(Runnable task) {
+        try {
+            loop.execute(task);
+        } catch (IllegalStateException e) {
+            // The transport is closed, and the connection with it
+        }
+    }
+
+    private void cancelPipe() {
+        if (pipe != null) {
+            pipe.cancel();
+            pipe = null;
+        }
+    }
+
+    private void onWritable() throws IOException {
+        if (state == State.HANDSHAKING) {
+            if (flush()) {
+                handshake();
+            }
+        } else if (state == State.WRITING) {
+            writeRequest();
+        }
+    }
+
+    private void onReadable() throws IOException {
+        if (state == State.IDLE) {
+            checkIdle();
+            return;
+        }
+        int n = channel.read(netIn);
+        if (state == State.HANDSHAKING) {
+            if (n == -1) {
+                throw new EOFException("Connection closed during TLS handshake");
+            }
+            handshake();
+        } else if (state == State.READING) {
+            if (n > 0) {
+                deadline = System.nanoTime() + timeout(exchange.readTimeout);
+            }
+            processInput(n == -1);
+        }
+    }
+
+    /**
+     * Feeds received bytes to the parser, completing the exchange once the response is complete.
+     */
+    private void processInput(boolean endOfInput) throws IOException {
+        boolean closed = endOfInput;
+        boolean done;
+        netIn.flip();
+        if (engine == null) {
+            done = parser.feed(netIn);
+        } else {
+            done = parser.feed(appIn);
+            while (!done && netIn.hasRemaining()) {
+                SSLEngineResult result = engine.unwrap(netIn, appIn.compact());
+                appIn.flip();
+                done = parser.feed(appIn);
+                if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                    closed = true;
+                    break;
+                }
+                if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                    break;
+                }
+                if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                    runDelegatedTasks();
+                } else if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                    wrap(EMPTY); // e.g. a TLS 1.3 key update
+                    flush();
+                }
+            }
+        }
+        netIn.compact();
+
+        if (!done && closed) {
+            done = parser.endOfInput();
+            if (!done) {
+                throw new EOFException(parser.isStarted()
+                        ? "Connection closed before the response was complete"
+                        : "Connection closed before a response was received");
+            }
+        }
+        if (!done && exchange.body != null && parser.getHead() != null) {
+            // Hand the head over now; the body follows through the stream
+            exchange.future.complete(parser);
+            if (exchange.body.isFull()) {
+                pause();
+            }
+        }
+        if (done) {
+            // Bytes after the response mean the server did not follow the protocol; don't reuse
+            boolean reusable = !closed && parser.getHead().keepAlive
+                    && netIn.position() == 0 && (appIn == null || !appIn.hasRemaining());
+            complete(reusable);
+        }
+    }
+
+    private void complete(boolean reusable) {
+        NioExchange finished = exchange;
+        ResponseParser response = parser;
+        exchange = null;
+        parser = null;
+        request = null;
+        cancelPipe(); // the server answered before the whole body was sent
+        if (reusable && !finished.future.isCancelled()) {
+            state = State.IDLE;
+            lastUsedAt = System.nanoTime();
+            releaseBuffers();
+            interest(SelectionKey.OP_READ); // notices when the server closes the idle connection
+            loop.onIdle(this);
+        } else {
+            close();
+        }
+        if (finished.body != null) {
+            finished.body.end(); // only once the connection is back in the pool or closed
+        }
+        finished.future.complete(response);
+    }
+
+    /**
+     * Stops reading until the caller has read part of the streamed body.
+     */
+    private void pause() {
+        paused = true;
+        deadline = System.nanoTime() + Long.MAX_VALUE / 2;
+        interest(0);
+    }
+
+    /**
+     * Resumes reading the streamed body, if the connection is still carrying it.
+     */
+    void resume(NioBodyStream body) {
+        if (paused && exchange != null && exchange.body == body && state == State.READING) {
+            paused = false;
+            deadline = System.nanoTime() + timeout(exchange.readTimeout);
+            interest(SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * The caller closed the streamed body before its end: the connection cannot be reused.
+     */
+    void abort(NioBodyStream body) {
+        if (exchange != null && exchange.body == body) {
+            exchange = null;
+            close();
+        }
+    }
+
+    /**
+     * An idle connection became readable: the server closed it or sent unsolicited data.
+     */
+    private void checkIdle() throws IOException {
+        acquireBuffers();
+        int n = channel.read(netIn);
+        boolean stale = n == -1 || (engine == null && netIn.position() > 0);
+        if (!stale && engine != null && netIn.position() > 0) {
+            // TLS 1.3 servers may send session tickets after the handshake; anything else is unexpected
+            netIn.flip();
+            SSLEngineResult result = engine.unwrap(netIn, appIn.compact());
+            appIn.flip();
+            netIn.compact();
+            stale = result.getStatus() == SSLEngineResult.Status.CLOSED || appIn.hasRemaining();
+        }
+        if (stale) {
+            close();
+        } else {
+            releaseBuffers();
+        }
+    }
+
+    /**
+     * Fails the current exchange with a timeout if its deadline has passed.
+     */
+    void checkTimeout(long now) {
+        if (exchange == null) {
+            return;
+        }
+        if (exchange.future.isCancelled()) {
+            close(); // cancelled by the caller
+        } else if (now - deadline >= 0) {
+            fail(state == State.CONNECTING || state == State.HANDSHAKING
+                    ? new HttpConnectTimeoutException("Connect timed out: " + route)
+                    : new HttpTimeoutException("Read timed out: " + route));
+        }
+    }
+
+    /**
+     * Closes the connection and fails the current exchange. A failed connect moves on to the
+     * host's next address, and an exchange on a reused connection that failed before any response
+     * arrived is retried once on a new connection.
+     */
+    void fail(Throwable error) {
+        NioExchange failed = exchange;
+        boolean retry = failed != null && exchanges > 1 && !failed.retried && !loop.isClosed()
+                && !(error instanceof HttpTimeoutException)
+                && parser != null && !parser.isStarted()
+                && Http1Codec.isIdempotent(failed.method);
+        boolean nextAddress = failed != null && state == State.CONNECTING && !loop.isClosed()
+                && failed.addressIndex + 1 < failed.addresses.size();
+        exchange = null;
+        close();
+        if (failed == null) {
+            return;
+        }
+        if (nextAddress) {
+            failed.addressIndex++;
+            loop.connect(failed);
+        } else if (retry) {
+            failed.retried = true;
+            loop.connect(failed);
+        } else if (failed.body != null && failed.future.isDone()) {
+            // The head was already handed over; the failure surfaces while reading the body
+            failed.body.fail(error instanceof IOException ? (IOException) error : new IOException(error));
+        } else {
+            failed.future.completeExceptionally(error);
+        }
+    }
+
+    void close() {
+        if (state == State.CLOSED) {
+            return;
+        }
+        boolean idle = state == State.IDLE;
+        state = State.CLOSED;
+        cancelPipe();
+        if (engine != null) {
+            engine.closeOutbound();
+        }
+        if (key != null) {
+            key.cancel();
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Ignore errors when closing
+            }
+        }
+        releaseBuffers();
+        loop.onClosed(this, idle);
+    }
+
+    private void interest(int ops) {
+        key.interestOps(ops);
+    }
+
+    /**
+     * Encrypts application data into netOut.
+     */
+    private void wrap(ByteBuffer source) throws IOException {
+        SSLEngineResult result = engine.wrap(source, netOut.compact());
+        netOut.flip();
+        if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+            throw new SSLException("TLS connection closed");
+        }
+    }
+
+    /**
+     * Writes pending TLS records. Returns true once nothing is left to write.
+     */
+    private boolean flush() throws IOException {
+        if (netOut.hasRemaining()) {
+            channel.write(netOut);
+        }
+        return !netOut.hasRemaining();
+    }
+
+    private void acquireBuffers() {
+        if (netIn == null) {
+            netIn = buffers.acquire();
+        }
+        if (route.isSecure() && netOut == null) {
+            netOut = buffers.acquire();
+            netOut.flip();
+            appIn = buffers.acquire();
+            appIn.flip();
+        }
+    }
+
+    private void releaseBuffers() {
+        if (netIn != null && netIn.position() == 0) {
+            buffers.release(netIn);
+            netIn = null;
+        }
+        if (netOut != null && !netOut.hasRemaining() && !appIn.hasRemaining() && netIn == null) {
+            buffers.release(netOut);
+            buffers.release(appIn);
+            netOut = null;
+            appIn = null;
+        }
+        if (state == State.CLOSED) {
+            // A closed connection returns everything, whatever it still held
+            if (netIn != null) {
+                buffers.release(netIn);
+                netIn = null;
+            }
+            if (netOut != null) {
+                buffers.release(netOut);
+                buffers.release(appIn);
+                netOut = null;
+                appIn = null;
+            }
+        }
+    }
+
+    private static long timeout(int millis) {
+        return millis > 0 ? TimeUnit.MILLISECONDS.toNanos(millis) : Long.MAX_VALUE / 2;
+    }
+}
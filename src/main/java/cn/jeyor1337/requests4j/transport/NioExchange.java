@@ -0,0 +1,55 @@
+package cn.jeyor1337.requests4j.transport;
+
+import cn.jeyor1337.requests4j.RequestBody;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import java.net.InetAddress;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * A request waiting to be carried out by {@link NioTransport}, and the future that receives its response.
+ */
+final class NioExchange {
+    final Route route;
+    final String method;
+    // The request head, followed by the body when its length is known
+    final byte[] requestData;
+    // A body of unknown length, sent chunked as it is encoded on the executor; null if there is none
+    final RequestBody chunkedBody;
+    final Executor executor;
+    final int connectTimeout;
+    final int readTimeout;
+    final SSLContext sslContext;
+    final SSLParameters sslParameters;
+    // Completes with the parser once the response is complete, or once its head is parsed when streaming
+    final CompletableFuture<ResponseParser> future = new CompletableFuture<>();
+    // The body of a streamed response, or null if the body is collected in memory
+    final NioBodyStream body;
+
+    // Resolved before the exchange is handed to a selector loop
+    List<InetAddress> addresses;
+
+    // Set once the exchange has been retried after a reused connection failed
+    boolean retried;
+
+    // The address being connected to; later addresses are tried if connecting fails
+    int addressIndex;
+
+    NioExchange(Route route, String method, byte[] requestData, RequestBody chunkedBody, Executor executor,
+                boolean stream, int connectTimeout, int readTimeout, SSLContext sslContext,
+                SSLParameters sslParameters) {
+        this.route = route;
+        this.body = stream ? new NioBodyStream() : null;
+        this.method = method;
+        this.requestData = requestData;
+        this.chunkedBody = chunkedBody;
+        this.executor = executor;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.sslContext = sslContext;
+        this.sslParameters = sslParameters;
+    }
+}
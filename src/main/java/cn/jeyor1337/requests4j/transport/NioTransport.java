@@ -0,0 +1,261 @@
+package cn.jeyor1337.requests4j.transport;
+
+import cn.jeyor1337.requests4j.HttpAdapter;
+import cn.jeyor1337.requests4j.Request;
+import cn.jeyor1337.requests4j.RequestBody;
+import cn.jeyor1337.requests4j.Response;
+import cn.jeyor1337.requests4j.Transport;
+import cn.jeyor1337.requests4j.dns.HappyEyeballs;
+import cn.jeyor1337.requests4j.io.BufferPool;
+
+import javax.net.ssl.SSLContext;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking HTTP/1.1 transport built on {@link java.nio.channels.SocketChannel}s.
+ * A few selector threads drive every connection, so in-flight requests and idle keep-alive
+ * connections cost no thread each; TLS runs through {@link javax.net.ssl.SSLEngine}.
+ * Responses are parsed incrementally as bytes arrive, through buffers borrowed from a {@link BufferPool}.
+ *
+ * Response bodies are collected in memory before the response is returned, except for streamed
+ * requests: their response is returned once its head arrives, and the body is read through
+ * {@link Response#getRaw()} as it comes in. At most a few hundred kilobytes of a streamed body
+ * are buffered; beyond that the connection stops reading until the caller catches up.
+ */
+public class NioTransport implements Transport {
+    private static final int BUFFER_SIZE = 32 * 1024;
+
+    private final int selectorThreads;
+    private final BufferPool bufferPool;
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile long idleTimeout = 60000;
+    private SelectorLoop[] loops;
+    private boolean closed;
+
+    public NioTransport() {
+        this(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)));
+    }
+
+    /**
+     * @param selectorThreads number of threads running selectors
+     */
+    public NioTransport(int selectorThreads) {
+        if (selectorThreads < 1) {
+            throw new IllegalArgumentException("selectorThreads must be positive");
+        }
+        this.selectorThreads = selectorThreads;
+        this.bufferPool = new BufferPool(BUFFER_SIZE, 256 * selectorThreads);
+    }
+
+    @Override
+    public Response execute(URL url, Request request, RequestBody body, HttpAdapter adapter) throws IOException {
+        NioExchange exchange = newExchange(url, request, body, adapter);
+        start(exchange, adapter);
+        CompletableFuture<ResponseParser> future = exchange.future;
+        try {
+            return toResponse(future.get(), request);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Request interrupted");
+        } catch (ExecutionException e) {
+            throw asIOException(e.getCause());
+        }
+    }
+
+    /**
+     * Sends the request without blocking; the host is resolved and the response built on
+     * the adapter's executor, never on the calling thread or a selector thread.
+     */
+    @Override
+    public CompletableFuture<Response> executeAsync(URL url, Request request, RequestBody body,
+                                                    HttpAdapter adapter) {
+        NioExchange exchange;
+        try {
+            exchange = newExchange(url, request, body, adapter);
+            adapter.getExecutor().execute(() -> {
+                try {
+                    start(exchange, adapter);
+                } catch (IOException | RuntimeException e) {
+                    exchange.future.completeExceptionally(e);
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<ResponseParser> future = exchange.future;
+        CompletableFuture<Response> result = future.thenApplyAsync(parser -> {
+            try {
+                return toResponse(parser, request);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, adapter.getExecutor());
+        result.whenComplete((response, error) -> {
+            if (error instanceof CancellationException) {
+                future.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private NioExchange newExchange(URL url, Request request, RequestBody body, HttpAdapter adapter)
+            throws IOException {
+        Route route = Route.of(url, adapter);
+        String method = request.getMethod().toUpperCase();
+        RequestBody chunkedBody = body != null && body.getContentLength() < 0 ? body : null;
+        return new NioExchange(route, method,
+                encodeRequest(url, route, method, request, body, adapter), chunkedBody, adapter.getExecutor(),
+                request.isStream(),
+                adapter.getConnectTimeout(), adapter.getReadTimeout(),
+                route.isSecure() ? getSSLContext(adapter) : null,
+                route.isSecure() ? route.getTls().getSSLParameters() : null);
+    }
+
+    /**
+     * Resolves the host and hands the exchange to a selector. The lookup may block,
+     * so it never runs on a selector thread.
+     */
+    private void start(NioExchange exchange, HttpAdapter adapter) throws IOException {
+        if (exchange.future.isDone()) {
+            return; // cancelled before it started
+        }
+        String host = exchange.route.getHost();
+        List<InetAddress> addresses = HappyEyeballs.interleave(adapter.getDnsResolver().resolve(host));
+        if (addresses.isEmpty()) {
+            throw new UnknownHostException(host);
+        }
+        exchange.addresses = addresses;
+        try {
+            getLoop().submit(exchange);
+        } catch (IllegalStateException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    /**
+     * Encodes the request head, followed by the body if its length is known. A body of unknown
+     * length is encoded while it is sent, a bounded amount at a time.
+     */
+    private static byte[] encodeRequest(URL url, Route route, String method, Request request,
+                                        RequestBody body, HttpAdapter adapter) throws IOException {
+        byte[] head = Http1Codec.encodeRequestHead(url, route, method, request, body, adapter);
+        if (body == null || body.getContentLength() < 0) {
+            return head;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(head.length + (int) body.getContentLength());
+        out.write(head);
+        body.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static Response toResponse(ResponseParser parser, Request request) throws IOException {
+        ResponseHead head = parser.getHead();
+        Response response = new Response();
+        response.setStatusCode(head.statusCode);
+        response.setReason(head.reason);
+        response.setHeaders(head.headers);
+        if (parser.getBodyStream() != null) {
+            response.readBody(parser.getBodyStream(), true);
+        } else {
+            response.readBody(parser.getBody());
+        }
+        response.detectEncoding();
+        return response;
+    }
+
+    private static IOException asIOException(Throwable error) {
+        if (error instanceof IOException) {
+            return (IOException) error;
+        }
+        if (error instanceof UncheckedIOException) {
+            return ((UncheckedIOException) error).getCause();
+        }
+        return new IOException(error);
+    }
+
+    private synchronized SelectorLoop getLoop() throws IOException {
+        if (closed) {
+            throw new IOException("Transport is closed");
+        }
+        if (loops == null) {
+            SelectorLoop[] created = new SelectorLoop[selectorThreads];
+            for (int i = 0; i < created.length; i++) {
+                created[i] = new SelectorLoop(this, bufferPool, "requests4j-nio-" + (i + 1));
+                created[i].start();
+            }
+            loops = created;
+        }
+        return loops[Math.floorMod(next.getAndIncrement(), loops.length)];
+    }
+
+    /**
+     * Returns the SSL context used for https connections, built from the adapter's TLS settings.
+     */
+    protected SSLContext getSSLContext(HttpAdapter adapter) throws IOException {
+        return adapter.getTlsContext().getSSLContext();
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Sets how long a keep-alive connection may stay idle before it is closed, in milliseconds (0 for no limit).
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Returns the number of open connections, idle or in use.
+     */
+    public synchronized int getOpenConnections() {
+        int count = 0;
+        if (loops != null) {
+            for (SelectorLoop loop : loops) {
+                count += loop.getOpenCount();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of keep-alive connections waiting to be reused.
+     */
+    public synchronized int getIdleConnections() {
+        int count = 0;
+        if (loops != null) {
+            for (SelectorLoop loop : loops) {
+                count += loop.getIdleCount();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Stops the selector threads, failing requests in flight and closing all connections.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (loops != null) {
+            for (SelectorLoop loop : loops) {
+                loop.close();
+            }
+            loops = null;
+        }
+    }
+}
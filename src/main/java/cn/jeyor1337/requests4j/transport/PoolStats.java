@@ -0,0 +1,62 @@
+package cn.jeyor1337.requests4j.transport;
+
+/**
+ * A snapshot of the state of a {@link ConnectionPool}, or of one of its routes.
+ */
+public final class PoolStats {
+    private final int leased;
+    private final int idle;
+    private final int pending;
+    private final long created;
+    private final long evicted;
+
+    public PoolStats(int leased, int idle, int pending, long created, long evicted) {
+        this.leased = leased;
+        this.idle = idle;
+        this.pending = pending;
+        this.created = created;
+        this.evicted = evicted;
+    }
+
+    /**
+     * Returns the number of connections currently in use.
+     */
+    public int getLeased() {
+        return leased;
+    }
+
+    /**
+     * Returns the number of open connections waiting to be reused.
+     */
+    public int getIdle() {
+        return idle;
+    }
+
+    /**
+     * Returns the number of callers waiting for a connection.
+     */
+    public int getPending() {
+        return pending;
+    }
+
+    /**
+     * Returns the number of connections opened since the pool was created.
+     */
+    public long getCreated() {
+        return created;
+    }
+
+    /**
+     * Returns the number of connections closed by the pool because they were idle too long,
+     * too old, stale, or made room for another route.
+     */
+    public long getEvicted() {
+        return evicted;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolStats{leased=" + leased + ", idle=" + idle + ", pending=" + pending
+                + ", created=" + created + ", evicted=" + evicted + "}";
+    }
+}
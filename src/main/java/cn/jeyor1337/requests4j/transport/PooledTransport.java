@@ -0,0 +1,319 @@
+package cn.jeyor1337.requests4j.transport;
+
+import cn.jeyor1337.requests4j.HttpAdapter;
+import cn.jeyor1337.requests4j.Request;
+import cn.jeyor1337.requests4j.RequestBody;
+import cn.jeyor1337.requests4j.Response;
+import cn.jeyor1337.requests4j.Transport;
+
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * HTTP/1.1 transport that keeps connections in an explicit {@link ConnectionPool},
+ * instead of relying on the JVM-wide keep-alive cache of {@link java.net.HttpURLConnection}.
+ * A connection returns to the pool once its response body has been read to the end or closed.
+ */
+public class PooledTransport implements Transport {
+    private static final int CHUNK_SIZE = 8192;
+    private static final long MAX_DRAIN = 65536;
+
+    private final ConnectionPool pool;
+    private final boolean ownsPool;
+    private final Set<Route> noPipelining = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates a transport with its own pool, closed together with the transport.
+     */
+    public PooledTransport() {
+        this.pool = new ConnectionPool();
+        this.ownsPool = true;
+    }
+
+    /**
+     * Creates a transport using the given pool, which may be shared and is not closed with the transport.
+     */
+    public PooledTransport(ConnectionPool pool) {
+        this.pool = pool;
+        this.ownsPool = false;
+    }
+
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    @Override
+    public Response execute(URL url, Request request, RequestBody body, HttpAdapter adapter) throws IOException {
+        Route route = Route.of(url, adapter);
+        String method = request.getMethod().toUpperCase();
+        // Encoded before leasing, so that an invalid request never touches a connection
+        byte[] requestHead = Http1Codec.encodeRequestHead(url, route, method, request, body, adapter);
+
+        while (true) {
+            Http1Connection connection = pool.lease(route, connector(adapter), adapter.getConnectTimeout());
+            ResponseHead head;
+            try {
+                connection.setReadTimeout(adapter.getReadTimeout());
+                writeRequest(connection, requestHead, body);
+                head = connection.readResponseHead();
+            } catch (IOException e) {
+                pool.release(connection, false);
+                // The server may have closed a kept-alive connection just as it was reused
+                if (connection.isReused() && Http1Codec.isIdempotent(method)
+                        && !(e instanceof SocketTimeoutException)) {
+                    continue;
+                }
+                throw e;
+            }
+            return readResponse(connection, method, head, request);
+        }
+    }
+
+    private void writeRequest(Http1Connection connection, byte[] requestHead, RequestBody body) throws IOException {
+        OutputStream out = connection.getOutputStream();
+        out.write(requestHead);
+        if (body != null) {
+            if (body.getContentLength() >= 0) {
+                body.writeTo(out);
+            } else {
+                ChunkedOutputStream chunked = new ChunkedOutputStream(out, CHUNK_SIZE);
+                body.writeTo(chunked);
+                chunked.finish();
+            }
+        }
+        out.flush();
+    }
+
+    private Response readResponse(Http1Connection connection, String method, ResponseHead head,
+                                  Request request) throws IOException {
+        Response response = new Response();
+        response.setStatusCode(head.statusCode);
+        response.setReason(head.reason);
+        response.setHeaders(head.headers);
+
+        InputStream body;
+        try {
+            body = connection.openBody(method, head);
+        } catch (IOException e) {
+            pool.release(connection, false);
+            throw e;
+        }
+
+        if (body == null) {
+            pool.release(connection, head.keepAlive);
+            response.setContent(new byte[0]);
+        } else {
+            ReleasingInputStream in = new ReleasingInputStream(body, connection, head.keepAlive);
+            try {
+                response.readBody(in, request.isStream());
+            } catch (IOException e) {
+                in.abort();
+                throw e;
+            }
+        }
+        response.detectEncoding();
+        return response;
+    }
+
+    /**
+     * Writes runs of requests to the same route back-to-back on one connection, up to the adapter's
+     * pipeline depth, and reads the responses in order. If the server closes the connection before
+     * answering them all, the rest are sent one by one and the route is no longer pipelined.
+     */
+    @Override
+    public List<Response> executePipelined(List<URL> urls, List<Request> requests, HttpAdapter adapter)
+            throws IOException {
+        List<Response> responses = new ArrayList<>(requests.size());
+        int depth = adapter.getPipelineDepth();
+        int i = 0;
+        while (i < requests.size()) {
+            Route route = Route.of(urls.get(i), adapter);
+            int end = i + 1;
+            if (!noPipelining.contains(route)) {
+                while (end < requests.size() && end - i < depth
+                        && Route.of(urls.get(end), adapter).equals(route)) {
+                    end++;
+                }
+            }
+
+            int answered = 0;
+            if (end - i > 1) {
+                answered = pipeline(route, urls.subList(i, end), requests.subList(i, end), adapter, responses);
+            }
+            if (answered == 0) {
+                responses.add(execute(urls.get(i), requests.get(i), null, adapter));
+                answered = 1;
+            }
+            i += answered;
+        }
+        return responses;
+    }
+
+    /**
+     * Pipelines the requests on one connection and adds the responses received.
+     * Returns how many requests were answered.
+     */
+    private int pipeline(Route route, List<URL> urls, List<Request> requests, HttpAdapter adapter,
+                         List<Response> responses) throws IOException {
+        List<byte[]> requestHeads = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            String method = requests.get(i).getMethod().toUpperCase();
+            requestHeads.add(Http1Codec.encodeRequestHead(urls.get(i), route, method, requests.get(i), null, adapter));
+        }
+
+        Http1Connection connection = pool.lease(route, connector(adapter), adapter.getConnectTimeout());
+        int answered = 0;
+        boolean keepAlive = true;
+        try {
+            connection.setReadTimeout(adapter.getReadTimeout());
+            OutputStream out = connection.getOutputStream();
+            for (byte[] requestHead : requestHeads) {
+                out.write(requestHead);
+            }
+            out.flush();
+
+            while (answered < requests.size() && keepAlive) {
+                String method = requests.get(answered).getMethod().toUpperCase();
+                ResponseHead head = connection.readResponseHead();
+                responses.add(readFully(connection, method, head));
+                answered++;
+                keepAlive = head.keepAlive && !"HTTP/1.0".equals(head.version);
+            }
+        } catch (IOException e) {
+            pool.release(connection, false);
+            if (answered == 0 && !connection.isReused()) {
+                throw e;
+            }
+            if (answered > 0) {
+                noPipelining.add(route);
+            }
+            return answered;
+        }
+
+        if (answered < requests.size()) {
+            // The server closed the connection part way through the pipeline
+            noPipelining.add(route);
+        }
+        pool.release(connection, keepAlive);
+        return answered;
+    }
+
+    private Response readFully(Http1Connection connection, String method, ResponseHead head) throws IOException {
+        Response response = new Response();
+        response.setStatusCode(head.statusCode);
+        response.setReason(head.reason);
+        response.setHeaders(head.headers);
+        InputStream body = connection.openBody(method, head);
+        response.readBody(body == null ? new byte[0] : body.readAllBytes());
+        response.detectEncoding();
+        return response;
+    }
+
+    private ConnectionPool.Connector connector(HttpAdapter adapter) {
+        return route -> Http1Connection.connect(route, adapter.getDnsResolver().resolve(route.getHost()),
+                adapter.getConnectTimeout(), getSSLSocketFactory(adapter), adapter.isVerifySSL());
+    }
+
+    /**
+     * Returns the socket factory used for https connections, built from the adapter's TLS settings.
+     */
+    protected SSLSocketFactory getSSLSocketFactory(HttpAdapter adapter) throws IOException {
+        return adapter.getTlsContext().getSocketFactory();
+    }
+
+    @Override
+    public void close() {
+        if (ownsPool) {
+            pool.close();
+        }
+    }
+
+    /**
+     * Hands the connection back to the pool when the body has been read to the end or closed.
+     */
+    private class ReleasingInputStream extends InputStream {
+        private final InputStream in;
+        private final Http1Connection connection;
+        private final boolean keepAlive;
+        private boolean released;
+
+        ReleasingInputStream(InputStream in, Http1Connection connection, boolean keepAlive) {
+            this.in = in;
+            this.connection = connection;
+            this.keepAlive = keepAlive;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (released) {
+                return -1;
+            }
+            int n;
+            try {
+                n = in.read(b, off, len);
+            } catch (IOException e) {
+                abort();
+                throw e;
+            }
+            if (n == -1) {
+                release(keepAlive);
+            }
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return released ? 0 : in.available();
+        }
+
+        /**
+         * Releases the connection, draining a small unread remainder so that it can be reused.
+         */
+        @Override
+        public void close() {
+            if (released) {
+                return;
+            }
+            if (!keepAlive) {
+                abort();
+                return;
+            }
+            try {
+                byte[] buffer = new byte[CHUNK_SIZE];
+                long drained = 0;
+                int n;
+                while (drained < MAX_DRAIN && (n = in.read(buffer)) != -1) {
+                    drained += n;
+                }
+                release(drained < MAX_DRAIN || in.read() == -1);
+            } catch (IOException e) {
+                abort();
+            }
+        }
+
+        void abort() {
+            release(false);
+        }
+
+        private void release(boolean reusable) {
+            if (!released) {
+                released = true;
+                pool.release(connection, reusable);
+            }
+        }
+    }
+}
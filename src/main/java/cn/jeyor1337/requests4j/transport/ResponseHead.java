@@ -0,0 +1,99 @@
+package cn.jeyor1337.requests4j.transport;
+
+import cn.jeyor1337.requests4j.Headers;
+
+import java.io.IOException;
+
+/**
+ * The status line and headers of an HTTP/1.x response.
+ */
+final class ResponseHead {
+    final String version;
+    final int statusCode;
+    final String reason;
+    final Headers headers;
+    boolean keepAlive;
+
+    ResponseHead(String version, int statusCode, String reason, Headers headers) {
+        this.version = version;
+        this.statusCode = statusCode;
+        this.reason = reason;
+        this.headers = headers;
+
+        String connection = getHeader("Connection");
+        if ("HTTP/1.0".equals(version)) {
+            this.keepAlive = connection != null && connection.equalsIgnoreCase("keep-alive");
+        } else {
+            this.keepAlive = connection == null || !connection.equalsIgnoreCase("close");
+        }
+    }
+
+    String getHeader(String name) {
+        return headers.getFirst(name);
+    }
+
+    boolean isChunked() {
+        String transferEncoding = getHeader("Transfer-Encoding");
+        return transferEncoding != null && transferEncoding.toLowerCase().contains("chunked");
+    }
+
+    /**
+     * Collects the status line and header lines of a response as they are read.
+     */
+    static final class Builder {
+        private final String version;
+        private final int statusCode;
+        private final String reason;
+        private final Headers headers = new Headers();
+        // The last header line, held back until it is known not to be continued on the next line
+        private String pending;
+
+        Builder(String statusLine) throws IOException {
+            int firstSpace = statusLine.indexOf(' ');
+            if (!statusLine.startsWith("HTTP/") || firstSpace < 0) {
+                throw new IOException("Invalid status line: " + statusLine);
+            }
+            int secondSpace = statusLine.indexOf(' ', firstSpace + 1);
+            String code = secondSpace < 0
+                    ? statusLine.substring(firstSpace + 1)
+                    : statusLine.substring(firstSpace + 1, secondSpace);
+            try {
+                this.statusCode = Integer.parseInt(code.trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid status line: " + statusLine);
+            }
+            this.version = statusLine.substring(0, firstSpace);
+            this.reason = secondSpace < 0 ? "" : statusLine.substring(secondSpace + 1);
+        }
+
+        int getStatusCode() {
+            return statusCode;
+        }
+
+        void headerLine(String line) throws IOException {
+            if ((line.charAt(0) == ' ' || line.charAt(0) == '\t') && pending != null) {
+                // Obsolete line folding: continue the previous value
+                pending = pending.trim() + " " + line.trim();
+                return;
+            }
+            flush();
+            pending = line;
+        }
+
+        private void flush() throws IOException {
+            if (pending != null) {
+                try {
+                    headers.addLine(pending);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(e.getMessage());
+                }
+                pending = null;
+            }
+        }
+
+        ResponseHead build() throws IOException {
+            flush();
+            return new ResponseHead(version, statusCode, reason, headers);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package cn.jeyor1337.requests4j.transport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Incremental HTTP/1.1 response parser for the non-blocking transport.
+ * Bytes are fed as they arrive from the network and the parser keeps its position
+ * between calls, so no thread waits for a complete response.
+ */
+final class ResponseParser {
+    private static final int MAX_HEAD_SIZE = 65536;
+    private static final int MAX_INITIAL_BODY = 1 << 20;
+
+    private enum State {
+        STATUS_LINE, HEADERS, BODY_FIXED, CHUNK_SIZE, CHUNK_DATA, CHUNK_END, TRAILERS, BODY_UNTIL_CLOSE, DONE
+    }
+
+    private final String method;
+    private final NioBodyStream stream;
+    private State state = State.STATUS_LINE;
+    private byte[] line = new byte[128];
+    private int lineLength;
+    private int headSize;
+    private ResponseHead.Builder builder;
+    private ResponseHead head;
+    private byte[] body = new byte[0];
+    private int bodyLength;
+    private long remaining;
+
+    /**
+     * @param stream where body bytes go as they arrive, or null to collect the body in memory
+     */
+    ResponseParser(String method, NioBodyStream stream) {
+        this.method = method;
+        this.stream = stream;
+    }
+
+    /**
+     * Consumes bytes from the buffer and returns true once the response is complete.
+     * Bytes after the end of the response are left in the buffer.
+     */
+    boolean feed(ByteBuffer in) throws IOException {
+        while (in.hasRemaining() && state != State.DONE) {
+            switch (state) {
+                case BODY_FIXED:
+                case CHUNK_DATA: {
+                    int n = (int) Math.min(remaining, in.remaining());
+                    readBody(in, n);
+                    remaining -= n;
+                    if (remaining == 0) {
+                        state = state == State.BODY_FIXED ? State.DONE : State.CHUNK_END;
+                    }
+                    break;
+                }
+                case BODY_UNTIL_CLOSE:
+                    readBody(in, in.remaining());
+                    break;
+                default: {
+                    String text = readLine(in);
+                    if (text != null) {
+                        onLine(text);
+                    }
+                    break;
+                }
+            }
+        }
+        return state == State.DONE;
+    }
+
+    /**
+     * Signals that the server closed the connection. Returns true if that ends the response,
+     * which is only the case for a body delimited by the connection closing.
+     */
+    boolean endOfInput() {
+        if (state == State.BODY_UNTIL_CLOSE) {
+            state = State.DONE;
+        }
+        return state == State.DONE;
+    }
+
+    /**
+     * Returns true if no byte of the response has been received yet.
+     */
+    boolean isStarted() {
+        return state != State.STATUS_LINE || lineLength > 0;
+    }
+
+    ResponseHead getHead() {
+        return head;
+    }
+
+    NioBodyStream getBodyStream() {
+        return stream;
+    }
+
+    byte[] getBody() {
+        return bodyLength == body.length ? body : Arrays.copyOf(body, bodyLength);
+    }
+
+    private void onLine(String text) throws IOException {
+        switch (state) {
+            case STATUS_LINE:
+                builder = new ResponseHead.Builder(text);
+                state = State.HEADERS;
+                break;
+            case HEADERS:
+                if (!text.isEmpty()) {
+                    builder.headerLine(text);
+                } else if (builder.getStatusCode() >= 100 && builder.getStatusCode() < 200
+                        && builder.getStatusCode() != 101) {
+                    // Skip interim responses such as 100 Continue
+                    builder = null;
+                    state = State.STATUS_LINE;
+                } else {
+                    head = builder.build();
+                    builder = null;
+                    startBody();
+                }
+                break;
+            case CHUNK_SIZE:
+                remaining = parseChunkSize(text);
+                state = remaining == 0 ? State.TRAILERS : State.CHUNK_DATA;
+                break;
+            case CHUNK_END:
+                if (!text.isEmpty()) {
+                    throw new IOException("Missing CRLF after chunk data");
+                }
+                state = State.CHUNK_SIZE;
+                break;
+            case TRAILERS:
+                if (text.isEmpty()) {
+                    state = State.DONE;
+                }
+                break;
+            default:
+                throw new IllegalStateException(state.name());
+        }
+    }
+
+    private void startBody() throws IOException {
+        if (Http1Codec.hasNoBody(method, head.statusCode)) {
+            state = State.DONE;
+        } else if (head.isChunked()) {
+            state = State.CHUNK_SIZE;
+        } else if (head.getHeader("Content-Length") != null) {
+            String contentLength = head.getHeader("Content-Length");
+            try {
+                remaining = Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid Content-Length: " + contentLength);
+            }
+            if (remaining < 0 || remaining > Integer.MAX_VALUE - 8) {
+                throw new IOException("Invalid Content-Length: " + contentLength);
+            }
+            if (stream == null) {
+                body = new byte[(int) Math.min(remaining, MAX_INITIAL_BODY)];
+            }
+            state = remaining == 0 ? State.DONE : State.BODY_FIXED;
+        } else {
+            // Body delimited by the server closing the connection
+            head.keepAlive = false;
+            state = State.BODY_UNTIL_CLOSE;
+        }
+    }
+
+    private static long parseChunkSize(String text) throws IOException {
+        int extension = text.indexOf(';');
+        String size = (extension >= 0 ? text.substring(0, extension) : text).trim();
+        try {
+            long value = Long.parseLong(size, 16);
+            if (value < 0) {
+                throw new NumberFormatException();
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid chunk size: " + text);
+        }
+    }
+
+    private void readBody(ByteBuffer in, int n) throws IOException {
+        if (stream != null) {
+            stream.offer(in, n);
+            return;
+        }
+        if (bodyLength + n > body.length) {
+            long capacity = Math.max((long) bodyLength + n, Math.max(8192, (long) body.length * 2));
+            if (capacity > Integer.MAX_VALUE - 8) {
+                throw new IOException("Response body too large");
+            }
+            body = Arrays.copyOf(body, (int) capacity);
+        }
+        in.get(body, bodyLength, n);
+        bodyLength += n;
+    }
+
+    /**
+     * Reads up to the next LF, returning the line without its terminator, or null if more input is needed.
+     */
+    private String readLine(ByteBuffer in) throws IOException {
+        while (in.hasRemaining()) {
+            byte b = in.get();
+            if (state == State.STATUS_LINE || state == State.HEADERS || state == State.TRAILERS) {
+                if (++headSize > MAX_HEAD_SIZE) {
+                    throw new IOException("Response head too large");
+                }
+            }
+            if (b == '\n') {
+                int length = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+                lineLength = 0;
+                return new String(line, 0, length, StandardCharsets.ISO_8859_1);
+            }
+            if (lineLength == line.length) {
+                if (lineLength >= MAX_HEAD_SIZE) {
+                    throw new IOException("Line too long");
+                }
+                line = Arrays.copyOf(line, lineLength * 2);
+            }
+            line[lineLength++] = b;
+        }
+        return null;
+    }
+}
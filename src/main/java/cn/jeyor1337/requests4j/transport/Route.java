@@ -0,0 +1,97 @@
+package cn.jeyor1337.requests4j.transport;
+
+import cn.jeyor1337.requests4j.HttpAdapter;
+import cn.jeyor1337.requests4j.tls.TlsContext;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * The scheme, host and port that a connection is opened to.
+ * Https routes also carry the TLS context, so connections made with different
+ * trust material or client certificates are never shared.
+ */
+final class Route {
+    private final String scheme;
+    private final String host;
+    private final int port;
+    private final TlsContext tls;
+
+    Route(String scheme, String host, int port) {
+        this(scheme, host, port, null);
+    }
+
+    Route(String scheme, String host, int port, TlsContext tls) {
+        this.scheme = scheme;
+        this.host = host;
+        this.port = port;
+        this.tls = tls;
+    }
+
+    static Route of(URL url, HttpAdapter adapter) throws IOException {
+        String scheme = url.getProtocol().toLowerCase(Locale.ROOT);
+        int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+        String host = url.getHost().toLowerCase(Locale.ROOT);
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1); // IPv6 literal
+        }
+        return new Route(scheme, host, port, "https".equals(scheme) ? adapter.getTlsContext() : null);
+    }
+
+    String getScheme() {
+        return scheme;
+    }
+
+    String getHost() {
+        return host;
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    /**
+     * Returns the TLS context for https routes, null otherwise.
+     */
+    TlsContext getTls() {
+        return tls;
+    }
+
+    boolean isSecure() {
+        return "https".equals(scheme);
+    }
+
+    /**
+     * Returns the value of the Host header for this route.
+     */
+    String getHostHeader() {
+        String name = host.indexOf(':') >= 0 ? "[" + host + "]" : host;
+        int defaultPort = isSecure() ? 443 : 80;
+        return port == defaultPort ? name : name + ":" + port;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Route)) {
+            return false;
+        }
+        Route route = (Route) o;
+        return port == route.port && scheme.equals(route.scheme) && host.equals(route.host)
+                && tls == route.tls;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(scheme, host, port, tls);
+    }
+
+    @Override
+    public String toString() {
+        return scheme + "://" + getHostHeader();
+    }
+}
@@ -0,0 +1,238 @@
+package cn.jeyor1337.requests4j.transport;
+
+import cn.jeyor1337.requests4j.io.BufferPool;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A thread running a {@link Selector} over many {@link NioConnection}s.
+ * Connections and their idle pool are confined to the loop's thread; other threads
+ * hand work over through a task queue.
+ */
+final class SelectorLoop implements Runnable {
+    private static final long TICK_MILLIS = 100;
+
+    private final Selector selector;
+    private final Thread thread;
+    private final BufferPool buffers;
+    private final NioTransport transport;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Map<Route, ArrayDeque<NioConnection>> idle = new HashMap<>();
+    private final Set<NioConnection> active = new HashSet<>();
+    private final AtomicInteger openCount = new AtomicInteger();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private volatile boolean closed;
+
+    SelectorLoop(NioTransport transport, BufferPool buffers, String name) throws IOException {
+        this.transport = transport;
+        this.buffers = buffers;
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    Selector getSelector() {
+        return selector;
+    }
+
+    int getOpenCount() {
+        return openCount.get();
+    }
+
+    int getIdleCount() {
+        return idleCount.get();
+    }
+
+    /**
+     * Starts the exchange on an idle connection to its route, or on a new one.
+     */
+    void submit(NioExchange exchange) {
+        execute(() -> {
+            NioConnection connection = pollIdle(exchange.route);
+            while (connection != null && !connection.isReusable()) {
+                connection = pollIdle(exchange.route);
+            }
+            if (connection != null) {
+                active.add(connection);
+                connection.reuse(exchange);
+            } else {
+                connect(exchange);
+            }
+        });
+    }
+
+    /**
+     * Starts the exchange on a new connection. Must be called on the loop's thread.
+     */
+    void connect(NioExchange exchange) {
+        NioConnection connection = new NioConnection(this, exchange.route, buffers);
+        openCount.incrementAndGet();
+        active.add(connection);
+        connection.connect(exchange);
+    }
+
+    /**
+     * Runs the task on the loop's thread.
+     *
+     * @throws IllegalStateException if the loop is closed
+     */
+    void execute(Runnable task) {
+        if (closed) {
+            throw new IllegalStateException("Transport is closed");
+        }
+        tasks.add(task);
+        if (closed && tasks.remove(task)) {
+            throw new IllegalStateException("Transport is closed");
+        }
+        selector.wakeup();
+    }
+
+    private NioConnection pollIdle(Route route) {
+        ArrayDeque<NioConnection> connections = idle.get(route);
+        if (connections == null) {
+            return null;
+        }
+        // LIFO: the most recently used connection is the least likely to have been closed by the server
+        NioConnection connection = connections.pollFirst();
+        if (connections.isEmpty()) {
+            idle.remove(route);
+        }
+        if (connection != null) {
+            idleCount.decrementAndGet();
+        }
+        return connection;
+    }
+
+    void onIdle(NioConnection connection) {
+        active.remove(connection);
+        idle.computeIfAbsent(connection.getRoute(), r -> new ArrayDeque<>()).addFirst(connection);
+        idleCount.incrementAndGet();
+    }
+
+    void onClosed(NioConnection connection, boolean wasIdle) {
+        openCount.decrementAndGet();
+        if (wasIdle) {
+            ArrayDeque<NioConnection> connections = idle.get(connection.getRoute());
+            if (connections != null && connections.remove(connection)) {
+                idleCount.decrementAndGet();
+                if (connections.isEmpty()) {
+                    idle.remove(connection.getRoute());
+                }
+            }
+        } else {
+            active.remove(connection);
+        }
+    }
+
+    @Override
+    public void run() {
+        long nextSweep = 0;
+        try {
+            while (!closed) {
+                selector.select(TICK_MILLIS);
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+
+                Set<SelectionKey> selected = selector.selectedKeys();
+                for (SelectionKey key : selected) {
+                    if (key.isValid()) {
+                        ((NioConnection) key.attachment()).onReady(key.readyOps());
+                    }
+                }
+                selected.clear();
+
+                long now = System.nanoTime();
+                if (now - nextSweep >= 0) {
+                    sweep(now);
+                    nextSweep = now + TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // The selector itself failed; fall through and fail everything still in flight
+        } finally {
+            shutdown();
+        }
+    }
+
+    /**
+     * Fails exchanges past their deadline and closes idle connections past the idle timeout.
+     */
+    private void sweep(long now) {
+        for (NioConnection connection : new ArrayList<>(active)) {
+            connection.checkTimeout(now);
+        }
+
+        long idleTimeout = TimeUnit.MILLISECONDS.toNanos(transport.getIdleTimeout());
+        if (idleTimeout <= 0) {
+            return;
+        }
+        for (Iterator<ArrayDeque<NioConnection>> it = idle.values().iterator(); it.hasNext(); ) {
+            ArrayDeque<NioConnection> connections = it.next();
+            // The oldest connections are at the tail
+            NioConnection connection;
+            while ((connection = connections.peekLast()) != null
+                    && now - connection.getLastUsedAt() >= idleTimeout) {
+                connections.pollLast();
+                idleCount.decrementAndGet();
+                connection.close();
+            }
+            if (connections.isEmpty()) {
+                it.remove();
+            }
+        }
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+    private void shutdown() {
+        closed = true;
+        IOException error = new IOException("Transport is closed");
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run(); // registers the connection, which is failed below
+            } catch (RuntimeException e) {
+                // Ignore
+            }
+        }
+        for (NioConnection connection : new ArrayList<>(active)) {
+            connection.fail(error);
+        }
+        for (ArrayDeque<NioConnection> connections : new ArrayList<>(idle.values())) {
+            for (NioConnection connection : new ArrayList<>(connections)) {
+                connection.close();
+            }
+        }
+        idle.clear();
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // Ignore errors when closing
+        }
+    }
+}
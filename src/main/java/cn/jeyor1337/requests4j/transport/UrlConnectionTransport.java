@@ -0,0 +1,116 @@
+package cn.jeyor1337.requests4j.transport;
+
+import cn.jeyor1337.requests4j.HttpAdapter;
+import cn.jeyor1337.requests4j.Request;
+import cn.jeyor1337.requests4j.RequestBody;
+import cn.jeyor1337.requests4j.Response;
+import cn.jeyor1337.requests4j.Transport;
+import cn.jeyor1337.requests4j.tls.TlsContext;
+
+import javax.net.ssl.HttpsURLConnection;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Transport backed by {@link HttpURLConnection}.
+ * Uses HTTP/1.1 and the JVM-wide keep-alive cache.
+ * HttpURLConnection has no non-blocking mode, so async requests go through an
+ * {@link HttpClientTransport} speaking HTTP/1.1 instead of holding a thread each.
+ */
+public class UrlConnectionTransport implements Transport {
+    private HttpClientTransport asyncTransport;
+
+    @Override
+    public Response execute(URL url, Request request, RequestBody body, HttpAdapter adapter) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+
+        // Configure connection
+        connection.setRequestMethod(request.getMethod().toUpperCase());
+        connection.setConnectTimeout(adapter.getConnectTimeout());
+        connection.setReadTimeout(adapter.getReadTimeout());
+        connection.setInstanceFollowRedirects(false); // Redirects are handled by the adapter
+        if (connection instanceof HttpsURLConnection) {
+            TlsContext tls = adapter.getTlsContext();
+            ((HttpsURLConnection) connection).setSSLSocketFactory(tls.getSocketFactory());
+            ((HttpsURLConnection) connection).setHostnameVerifier(tls.getHostnameVerifier());
+        }
+
+        // Set headers
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+
+        // Set cookies
+        String cookieHeader = adapter.getCookieHeader(request);
+        if (cookieHeader != null) {
+            connection.setRequestProperty("Cookie", cookieHeader);
+        }
+
+        // Handle request body
+        if (body != null) {
+            connection.setDoOutput(true);
+            if (body.getContentType() != null) {
+                connection.setRequestProperty("Content-Type", body.getContentType());
+            }
+            if (body.getContentEncoding() != null) {
+                connection.setRequestProperty("Content-Encoding", body.getContentEncoding());
+            }
+            // Stream the body instead of letting the connection buffer a copy of it
+            if (body.getContentLength() >= 0) {
+                connection.setFixedLengthStreamingMode(body.getContentLength());
+            } else {
+                connection.setChunkedStreamingMode(0);
+            }
+
+            try (OutputStream os = connection.getOutputStream()) {
+                body.writeTo(os);
+            }
+        }
+
+        // Get response
+        Response response = new Response();
+        response.setConnection(connection);
+        response.setStatusCode(connection.getResponseCode());
+        response.setReason(connection.getResponseMessage());
+        response.setHeaders(connection.getHeaderFields());
+
+        // Read response content
+        int statusCode = response.getStatusCode();
+        try {
+            InputStream inputStream = (statusCode >= 400)
+                ? connection.getErrorStream()
+                : connection.getInputStream();
+
+            if (inputStream != null) {
+                response.readBody(inputStream, request.isStream());
+                response.detectEncoding();
+            }
+        } catch (IOException e) {
+            // Ignore errors when reading error stream
+        }
+
+        return response;
+    }
+
+    /**
+     * Sends the request on HttpClient's non-blocking engine; no thread waits for the response.
+     */
+    @Override
+    public CompletableFuture<Response> executeAsync(URL url, Request request, RequestBody body,
+                                                    HttpAdapter adapter) {
+        return getAsyncTransport().executeAsync(url, request, body, adapter);
+    }
+
+    private synchronized HttpClientTransport getAsyncTransport() {
+        if (asyncTransport == null) {
+            asyncTransport = new HttpClientTransport(HttpClient.Version.HTTP_1_1);
+        }
+        return asyncTransport;
+    }
+}
@@ -0,0 +1,58 @@
+package cn.jeyor1337.requests4j;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the executors used to run blocking request execution.
+ * This is the Java 21 version from the multi-release JAR, which runs each task on its own virtual thread.
+ */
+final class ThreadSupport {
+
+    private ThreadSupport() {
+    }
+
+    /**
+     * Returns true if this runtime supports virtual threads.
+     */
+    static boolean isVirtualThreadsAvailable() {
+        return true;
+    }
+
+    /**
+     * Creates an executor for blocking request execution.
+     *
+     * @param virtualThreads whether to start a virtual thread per task
+     * @param maxThreads maximum number of platform threads, used when virtual threads are off
+     */
+    static ExecutorService newExecutor(boolean virtualThreads, int maxThreads) {
+        if (virtualThreads) {
+            return Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name("requests4j-virtual-", 1).factory());
+        }
+        return newPlatformExecutor(maxThreads);
+    }
+
+    static ExecutorService newPlatformExecutor(int maxThreads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads,
+                60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new DaemonThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "requests4j-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package cn.jeyor1337.requests4j;
+
+import cn.jeyor1337.requests4j.exceptions.ConnectionError;
+import cn.jeyor1337.requests4j.exceptions.RequestException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Bulk sending tests against a local server that records how many requests it handles at once.
+ */
+public class BulkTest {
+    private static TestServer server;
+    private static int port;
+    private static final AtomicInteger active = new AtomicInteger();
+    private static final AtomicInteger maxActive = new AtomicInteger();
+    private static final Map<String, AtomicInteger> activeByHost = new ConcurrentHashMap<>();
+    private static final Map<String, Integer> maxActiveByHost = new ConcurrentHashMap<>();
+
+    @BeforeAll
+    public static void startServer() throws IOException {
+        server = TestServer.loopback().concurrent();
+        server.handle("/", exchange -> {
+            String host = exchange.getRequestHeaders().getFirst("Host").split(":")[0];
+            AtomicInteger hostActive = activeByHost.computeIfAbsent(host, key -> new AtomicInteger());
+            int now = active.incrementAndGet();
+            maxActive.accumulateAndGet(now, Math::max);
+            maxActiveByHost.merge(host, hostActive.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(exchange.getRequestURI().getPath().startsWith("/slow") ? 50 : 5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            hostActive.decrementAndGet();
+            active.decrementAndGet();
+
+            int status = exchange.getRequestURI().getPath().startsWith("/fail") ? 500 : 200;
+            byte[] body = exchange.getRequestURI().getPath().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        port = server.getPort();
+    }
+
+    @AfterAll
+    public static void stopServer() {
+        server.close();
+    }
+
+    @BeforeEach
+    public void resetCounters() {
+        maxActive.set(0);
+        maxActiveByHost.clear();
+    }
+
+    private static List<Request> requests(String host, String prefix, int count) {
+        List<Request> requests = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            requests.add(new Request("GET", "http://" + host + ":" + port + "/" + prefix + i));
+        }
+        return requests;
+    }
+
+    @Test
+    public void testSendAllKeepsOrderAndConcurrency() throws Exception {
+        try (Session session = new Session()) {
+            List<Response> responses = session.sendAll(requests("127.0.0.1", "slow", 20), 4);
+            assertEquals(20, responses.size());
+            for (int i = 0; i < 20; i++) {
+                assertEquals("/slow" + i, responses.get(i).getText());
+            }
+            assertTrue(maxActive.get() <= 4, "max active " + maxActive.get());
+            assertTrue(maxActive.get() > 1, "max active " + maxActive.get());
+        }
+    }
+
+    @Test
+    public void testPerHostConcurrency() throws Exception {
+        List<Request> requests = new ArrayList<>(requests("127.0.0.1", "slow", 12));
+        requests.addAll(requests("localhost", "slow", 12));
+        try (Session session = new Session()) {
+            List<BulkResult> results = session.sendAll(requests,
+                    new BulkOptions().setConcurrency(8).setPerHostConcurrency(2));
+            assertEquals(24, results.size());
+            for (BulkResult result : results) {
+                assertTrue(result.isSuccess());
+            }
+        }
+        assertTrue(maxActiveByHost.get("127.0.0.1") <= 2);
+        assertTrue(maxActiveByHost.get("localhost") <= 2);
+    }
+
+    @Test
+    public void testFailFastAndCollectErrors() throws Exception {
+        List<Request> requests = new ArrayList<>(requests("127.0.0.1", "ok", 3));
+        requests.add(new Request("GET", "http://127.0.0.1:1/refused"));
+        requests.add(new Request("GET", "not a url"));
+        requests.addAll(requests("127.0.0.1", "ok", 3));
+
+        try (Session session = new Session()) {
+            assertThrows(RequestException.class, () -> session.sendAll(requests, 2));
+
+            List<BulkResult> results = session.sendAll(requests, new BulkOptions().setFailFast(false));
+            assertEquals(8, results.size());
+            assertTrue(results.get(0).isSuccess());
+            assertTrue(results.get(3).getError() instanceof ConnectionError);
+            assertFalse(results.get(4).isSuccess());
+            assertEquals("/ok2", results.get(7).getResponse().getText());
+        }
+    }
+
+    @Test
+    public void testStreamReadsInputLazily() throws Exception {
+        AtomicInteger produced = new AtomicInteger();
+        Iterator<Request> input = new Iterator<Request>() {
+            @Override
+            public boolean hasNext() {
+                return produced.get() < 1000;
+            }
+
+            @Override
+            public Request next() {
+                return new Request("GET", "http://127.0.0.1:" + port + "/item" + produced.getAndIncrement());
+            }
+        };
+
+        try (Session session = new Session();
+             BulkStream stream = session.sendStream(input, new BulkOptions().setConcurrency(3))) {
+            for (int i = 0; i < 5; i++) {
+                assertTrue(stream.hasNext());
+                assertTrue(stream.next().isSuccess());
+            }
+            // Only what fits in flight has been read ahead
+            assertTrue(produced.get() <= 5 + 3, "produced " + produced.get());
+        }
+    }
+}
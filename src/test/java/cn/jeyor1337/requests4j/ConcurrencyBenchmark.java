@@ -0,0 +1,95 @@
+package cn.jeyor1337.requests4j;
+
+import cn.jeyor1337.requests4j.exceptions.RequestException;
+import com.sun.net.httpserver.HttpServer;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures how the blocking API scales with many concurrent requests against a local server
+ * that holds each request for a fixed delay.
+ *
+ * Run against the packaged multi-release JAR so the Java 21 layer is picked up:
+ * <pre>
+ * mvn package -DskipTests
+ * java -cp target/requests4j-1.0.0.jar:target/test-classes:gson.jar \
+ *     cn.jeyor1337.requests4j.ConcurrencyBenchmark [requests] [delayMillis] [virtual|platform]
+ * </pre>
+ */
+public class ConcurrencyBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int delayMillis = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        boolean virtualThreads = args.length > 2
+                ? "virtual".equals(args[2])
+                : HttpAdapter.isVirtualThreadsAvailable();
+
+        byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), requests);
+        ExecutorService serverExecutor = ThreadSupport.newExecutor(true, 512);
+        server.setExecutor(serverExecutor);
+        server.createContext("/", exchange -> {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+
+        HttpAdapter adapter = new HttpAdapter();
+        adapter.setVirtualThreads(virtualThreads);
+        adapter.setMaxThreads(200);
+        ExecutorService clients = adapter.getExecutor();
+
+        long[] latencies = new long[requests];
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(requests);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            int index = i;
+            clients.execute(() -> {
+                long requestStart = System.nanoTime();
+                try {
+                    adapter.send(new Request("GET", url));
+                } catch (RequestException e) {
+                    failures.incrementAndGet();
+                } finally {
+                    latencies[index] = System.nanoTime() - requestStart;
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        System.out.printf("mode:        %s threads (virtual available: %s)%n",
+                virtualThreads && HttpAdapter.isVirtualThreadsAvailable() ? "virtual" : "platform",
+                HttpAdapter.isVirtualThreadsAvailable());
+        System.out.printf("requests:    %d, server delay %d ms, failures %d%n", requests, delayMillis, failures.get());
+        System.out.printf("elapsed:     %d ms%n", TimeUnit.NANOSECONDS.toMillis(elapsed));
+        System.out.printf("throughput:  %.0f req/s%n", requests / (elapsed / 1e9));
+        System.out.printf("latency:     p50 %d ms, p99 %d ms%n",
+                TimeUnit.NANOSECONDS.toMillis(latencies[requests / 2]),
+                TimeUnit.NANOSECONDS.toMillis(latencies[(int) (requests * 0.99)]));
+        System.out.printf("peak threads: %d%n", ManagementFactory.getThreadMXBean().getPeakThreadCount());
+
+        adapter.close();
+        server.stop(0);
+        serverExecutor.shutdown();
+    }
+}
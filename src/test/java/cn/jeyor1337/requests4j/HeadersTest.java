@@ -0,0 +1,99 @@
+package cn.jeyor1337.requests4j;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HeadersTest {
+
+    @Test
+    public void testLookupIgnoresCase() {
+        Headers headers = new Headers()
+                .addLine("content-type: text/html; charset=utf-8")
+                .addLine("X-Custom:  spaced value \t");
+
+        assertEquals("text/html; charset=utf-8", headers.getFirst("Content-Type"));
+        assertEquals("text/html; charset=utf-8", headers.getFirst("CONTENT-TYPE"));
+        assertEquals("spaced value", headers.getFirst("x-custom"));
+        assertTrue(headers.containsKey("x-CUSTOM"));
+        assertNull(headers.getFirst("Missing"));
+        assertNull(headers.get("Missing"));
+    }
+
+    @Test
+    public void testRepeatedHeadersKeepOrder() {
+        Headers headers = new Headers()
+                .addLine("Set-Cookie: a=1")
+                .addLine("Date: today")
+                .addLine("set-cookie: b=2")
+                .add("Vary", "Accept");
+
+        assertEquals(Arrays.asList("a=1", "b=2"), headers.getAll("Set-Cookie"));
+        assertEquals(3, headers.size());
+        assertEquals(4, headers.valueCount());
+
+        Iterator<Map.Entry<String, List<String>>> it = headers.entrySet().iterator();
+        assertEquals("Set-Cookie", it.next().getKey());
+        assertEquals("Date", it.next().getKey());
+        assertEquals("Vary", it.next().getKey());
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void testCommonNamesAreInterned() {
+        Headers first = new Headers().addLine("content-length: 1");
+        Headers second = new Headers().addLine("CONTENT-LENGTH: 2");
+
+        String name = first.keySet().iterator().next();
+        assertEquals("Content-Length", name);
+        assertSame(name, second.keySet().iterator().next());
+
+        // Other names keep the spelling they arrived with
+        assertEquals("x-request-ID", new Headers().addLine("x-request-ID: 3").keySet().iterator().next());
+    }
+
+    @Test
+    public void testStatusLineKeyIsDropped() {
+        Map<String, List<String>> fields = new HashMap<>();
+        fields.put(null, Collections.singletonList("HTTP/1.1 200 OK"));
+        fields.put("Server", Collections.singletonList("test"));
+
+        Response response = new Response();
+        response.setHeaders(fields);
+        assertFalse(response.getHeaders().containsKey(null));
+        assertEquals(1, response.getHeaders().size());
+        assertEquals("test", response.getHeader("server"));
+    }
+
+    @Test
+    public void testChanges() {
+        Headers headers = new Headers()
+                .add("Accept", "a")
+                .add("Link", "1")
+                .add("accept", "b");
+
+        assertEquals(Arrays.asList("a", "b"), headers.put("ACCEPT", Collections.singletonList("c")));
+        assertEquals(Arrays.asList("1"), headers.getAll("Link"));
+        assertEquals("c", headers.getFirst("Accept"));
+
+        headers.set("link", "2");
+        assertEquals(Collections.singletonList("2"), headers.getAll("Link"));
+
+        Iterator<Map.Entry<String, List<String>>> it = headers.entrySet().iterator();
+        it.next();
+        it.remove();
+        assertThrows(IllegalStateException.class, it::remove);
+        assertEquals("Link", it.next().getKey());
+        assertFalse(it.hasNext());
+        assertEquals(1, headers.size());
+
+        assertThrows(IllegalArgumentException.class, () -> headers.addLine("no colon"));
+    }
+}
@@ -0,0 +1,202 @@
+package cn.jeyor1337.requests4j;
+
+import cn.jeyor1337.requests4j.transport.PooledTransport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * HTTP/1.1 pipelining tests against a raw socket server.
+ */
+public class PipeliningTest {
+    private ServerSocket server;
+    private final AtomicInteger connections = new AtomicInteger();
+
+    @AfterEach
+    public void stopServer() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testPipelined() throws Exception {
+        // Only answers once all three requests have arrived, so sequential sends would time out
+        String baseUrl = startServer(3, false);
+        try (Session session = Requests.session()) {
+            session.setTransport(new PooledTransport());
+            session.setPipelineDepth(3);
+            session.setTimeout(5000);
+
+            List<Response> responses = session.sendPipelined(requests(baseUrl, 3));
+            assertEquals(3, responses.size());
+            for (int i = 0; i < 3; i++) {
+                assertEquals("/item/" + i, responses.get(i).getText());
+            }
+            assertEquals(1, connections.get());
+        }
+    }
+
+    @Test
+    public void testFallbackWhenServerCloses() throws Exception {
+        // Answers the first request with "Connection: close" and drops the rest
+        String baseUrl = startServer(1, true);
+        try (Session session = Requests.session()) {
+            session.setTransport(new PooledTransport());
+            session.setPipelineDepth(4);
+            session.setTimeout(5000);
+
+            List<Response> responses = session.sendPipelined(requests(baseUrl, 4));
+            for (int i = 0; i < 4; i++) {
+                assertEquals("/item/" + i, responses.get(i).getText());
+            }
+            assertEquals(4, connections.get());
+        }
+    }
+
+    @Test
+    public void testPipeliningDisabled() throws Exception {
+        String baseUrl = startServer(1, false);
+        try (Session session = Requests.session()) {
+            session.setTransport(new PooledTransport());
+
+            List<Response> responses = session.sendPipelined(requests(baseUrl, 3));
+            assertEquals("/item/2", responses.get(2).getText());
+            assertEquals(1, connections.get());
+        }
+    }
+
+    @Test
+    public void testRedirectIsClosedBeforeFollowing() throws Exception {
+        AtomicBoolean redirectClosed = new AtomicBoolean();
+        Transport transport = new Transport() {
+            @Override
+            public Response execute(URL url, Request request, RequestBody body, HttpAdapter adapter) throws IOException {
+                assertTrue(redirectClosed.get(), "redirect still open when following it");
+                return response(200, null, url.getPath(), null);
+            }
+
+            @Override
+            public List<Response> executePipelined(List<URL> urls, List<Request> requests, HttpAdapter adapter)
+                    throws IOException {
+                List<Response> responses = new ArrayList<>();
+                responses.add(response(302, "/moved", "", () -> redirectClosed.set(true)));
+                responses.add(response(200, null, urls.get(1).getPath(), null));
+                return responses;
+            }
+        };
+        try (Session session = Requests.session()) {
+            session.setTransport(transport);
+            session.setPipelineDepth(2);
+
+            List<Response> responses = session.sendPipelined(requests("http://example.com", 2));
+            assertEquals("/moved", responses.get(0).getText());
+            assertEquals(302, responses.get(0).getHistory().get(0).getStatusCode());
+            assertEquals("/item/1", responses.get(1).getText());
+        }
+    }
+
+    private static Response response(int status, String location, String text, Runnable onClose) throws IOException {
+        Response response = new Response();
+        response.setStatusCode(status);
+        Map<String, List<String>> headers = new HashMap<>();
+        if (location != null) {
+            headers.put("Location", Collections.singletonList(location));
+        }
+        response.setHeaders(headers);
+        response.readBody(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public void close() {
+                if (onClose != null) {
+                    onClose.run();
+                }
+            }
+        }, onClose != null);
+        return response;
+    }
+
+    private static List<Request> requests(String baseUrl, int count) {
+        List<Request> requests = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            requests.add(new Request("GET", baseUrl + "/item/" + i));
+        }
+        return requests;
+    }
+
+    /**
+     * Starts a server that waits for batch request heads before answering them,
+     * echoing each request path as the body.
+     */
+    private String startServer(int batch, boolean closeAfterFirst) throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread thread = new Thread(() -> {
+            while (!server.isClosed()) {
+                try (Socket socket = server.accept()) {
+                    connections.incrementAndGet();
+                    serve(socket, batch, closeAfterFirst);
+                } catch (IOException e) {
+                    // Server closed or client went away
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return "http://127.0.0.1:" + server.getLocalPort();
+    }
+
+    private static void serve(Socket socket, int batch, boolean closeAfterFirst) throws IOException {
+        InputStream in = socket.getInputStream();
+        OutputStream out = socket.getOutputStream();
+        while (true) {
+            List<String> paths = new ArrayList<>();
+            for (int i = 0; i < batch; i++) {
+                String path = readRequestPath(in);
+                if (path == null) {
+                    return;
+                }
+                paths.add(path);
+            }
+            for (String path : paths) {
+                byte[] body = path.getBytes(StandardCharsets.UTF_8);
+                String head = "HTTP/1.1 200 OK\r\nContent-Length: " + body.length + "\r\n"
+                        + (closeAfterFirst ? "Connection: close\r\n" : "") + "\r\n";
+                out.write(head.getBytes(StandardCharsets.ISO_8859_1));
+                out.write(body);
+                out.flush();
+                if (closeAfterFirst) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static String readRequestPath(InputStream in) throws IOException {
+        StringBuilder head = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1) {
+            head.append((char) b);
+            if (head.length() >= 4 && head.substring(head.length() - 4).equals("\r\n\r\n")) {
+                return head.toString().split(" ")[1];
+            }
+        }
+        return null;
+    }
+}
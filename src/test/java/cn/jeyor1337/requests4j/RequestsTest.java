@@ -2,10 +2,20 @@ package cn.jeyor1337.requests4j;
 
 import cn.jeyor1337.requests4j.auth.BasicAuth;
 import cn.jeyor1337.requests4j.exceptions.*;
+import com.google.gson.reflect.TypeToken;
 import org.junit.jupiter.api.Test;
 
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -107,4 +117,88 @@ public class RequestsTest {
         assertEquals("value", request.getParams().get("key"));
         assertEquals("123", request.getCookies().get("session"));
     }
+
+    @Test
+    public void testJsonWithType() throws RequestException {
+        Response response = new Response();
+        response.setContent("[{\"name\":\"a\"},{\"name\":\"b\"}]".getBytes(StandardCharsets.UTF_8));
+
+        List<Map<String, String>> items = response.json(new TypeToken<List<Map<String, String>>>() {}.getType());
+        assertEquals(2, items.size());
+        assertEquals("b", items.get(1).get("name"));
+
+        // Decoding again after the text is memoized gives the same result
+        assertSame(response.getText(), response.getText());
+        assertEquals(2, response.json(List.class).size());
+
+        response.setContent("{not json".getBytes(StandardCharsets.UTF_8));
+        assertThrows(JSONDecodeError.class, () -> response.json());
+    }
+
+    @Test
+    public void testJsonStream() {
+        Response response = new Response();
+        response.setContent("[{\"id\":1},{\"id\":2},{\"id\":3}]".getBytes(StandardCharsets.UTF_8));
+        try (Stream<Item> items = response.jsonStream(Item.class)) {
+            assertEquals(3, items.count());
+        }
+
+        response.setContent("{\"id\":1}\n{\"id\":2}\n".getBytes(StandardCharsets.UTF_8));
+        Iterator<Item> items = response.jsonStream(Item.class).iterator();
+        assertEquals(1, items.next().id);
+        assertEquals(2, items.next().id);
+        assertFalse(items.hasNext());
+    }
+
+    @Test
+    public void testJsonStreamFromLiveResponse() throws Exception {
+        // The server holds back the rest of the array until the client has decoded the first element
+        CountDownLatch firstDecoded = new CountDownLatch(1);
+        AtomicBoolean decodedEarly = new AtomicBoolean();
+        try (TestServer server = TestServer.loopback().concurrent()) {
+            server.handle("/items", exchange -> {
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, 0);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write("[{\"id\":1,\"name\":\"a\"},".getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    try {
+                        decodedEarly.set(firstDecoded.await(10, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    out.write("{\"id\":2,\"name\":\"b\"},{\"id\":3,\"name\":\"c\"}]".getBytes(StandardCharsets.UTF_8));
+                }
+            });
+            server.start();
+
+            try (Session session = new Session()) {
+                String url = server.url("/items");
+                Response response = session.send(new Request("GET", url).setStream(true));
+                try (Stream<Item> items = response.jsonStream(Item.class)) {
+                    Iterator<Item> it = items.iterator();
+                    Item first = it.next();
+                    firstDecoded.countDown();
+                    assertEquals(1, first.id);
+                    assertEquals("a", first.name);
+                    assertEquals("b", it.next().name);
+                    assertEquals(3, it.next().id);
+                    assertFalse(it.hasNext());
+                }
+                assertTrue(decodedEarly.get(), "the first element was only decoded after the whole body arrived");
+
+                // Stopping after the first value closes the connection part way through the body
+                Type type = new TypeToken<Map<String, Object>>() {}.getType();
+                try (Stream<Map<String, Object>> maps =
+                             session.send(new Request("GET", url).setStream(true)).jsonStream(type)) {
+                    assertEquals("a", maps.findFirst().map(item -> item.get("name")).orElse(null));
+                }
+            }
+        }
+    }
+
+    static class Item {
+        int id;
+        String name;
+    }
 }
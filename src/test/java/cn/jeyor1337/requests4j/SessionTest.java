@@ -0,0 +1,181 @@
+package cn.jeyor1337.requests4j;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests how session defaults are layered under request settings, against a local server
+ * that echoes the headers it receives.
+ */
+public class SessionTest {
+    private static TestServer server;
+    private static String base;
+
+    @BeforeAll
+    public static void startServer() throws IOException {
+        server = TestServer.loopback().concurrent();
+        server.handle("/", exchange -> {
+            StringBuilder echo = new StringBuilder();
+            for (String name : new String[]{"X-Agent", "X-Session", "Cookie"}) {
+                echo.append(name).append(": ").append(exchange.getRequestHeaders().get(name)).append('\n');
+            }
+            byte[] body = echo.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        base = server.getBaseUrl();
+    }
+
+    @AfterAll
+    public static void stopServer() {
+        server.close();
+    }
+
+    @Test
+    public void testRequestHeadersOverrideSessionHeaders() throws Exception {
+        try (Session session = new Session()) {
+            session.addHeader("X-Agent", "session").addHeader("X-Session", "yes");
+            Request request = new Request("GET", base + "/").addHeader("x-agent", "request");
+
+            String body = session.send(request).getText();
+            assertTrue(body.contains("X-Agent: [request]"), body);
+            assertTrue(body.contains("X-Session: [yes]"), body);
+        }
+    }
+
+    @Test
+    public void testCallerRequestIsLeftUnchanged() throws Exception {
+        try (Session session = new Session()) {
+            session.addHeader("X-Session", "yes").addCookie("sid", "1");
+            Request request = new Request("GET", base + "/").addHeader("X-Agent", "request");
+            Map<String, String> headers = request.getHeaders();
+
+            session.send(request).close();
+            assertEquals(1, request.getHeaders().size());
+            assertTrue(request.getCookies().isEmpty());
+            assertNull(request.getAuth());
+
+            // Sending neither replaces the request's maps nor marks them as shared
+            request.addHeader("X-Other", "1");
+            assertSame(headers, request.getHeaders());
+            assertEquals(2, headers.size());
+        }
+    }
+
+    @Test
+    public void testCopyIsIndependent() {
+        Request request = new Request("GET", base + "/").addHeader("X-Agent", "a").addCookie("sid", "1");
+        Map<String, String> headers = request.getHeaders();
+        Request copy = request.copy();
+
+        request.addHeader("X-Agent", "b").addCookie("sid", "2");
+        assertSame(headers, request.getHeaders());
+        assertEquals("a", copy.getHeaders().get("X-Agent"));
+        assertEquals("1", copy.getCookies().get("sid"));
+
+        copy.addHeader("X-Session", "yes");
+        assertFalse(request.getHeaders().containsKey("X-Session"));
+    }
+
+    @Test
+    public void testRequestMapsAreMutable() {
+        Request request = new Request("GET", base + "/");
+        request.getHeaders().put("X-Agent", "a");
+        request.getParams().put("q", "1");
+        request.getCookies().put("sid", "1");
+        assertEquals("a", request.getHeaders().get("X-Agent"));
+        assertEquals("1", request.getParams().get("q"));
+        assertEquals("1", request.getCookies().get("sid"));
+
+        // An owned map is copied even while empty, so later changes stay out of the copy
+        Request owner = new Request("GET", base + "/").setHeaders(new HashMap<>());
+        Request copy = owner.copy();
+        owner.addHeader("X-Agent", "a");
+        owner.getHeaders().put("X-Session", "yes");
+        assertTrue(copy.getHeaders().isEmpty());
+    }
+
+    @Test
+    public void testLayeredHeadersIgnoreCase() {
+        Map<String, String> defaults = new HashMap<>();
+        defaults.put("User-Agent", "session");
+        defaults.put("Accept", "*/*");
+        Map<String, String> overrides = new HashMap<>();
+        overrides.put("accept", "text/html");
+
+        Map<String, String> layered = LayeredMap.headers(defaults, overrides);
+        assertEquals("session", layered.get("user-agent"));
+        assertTrue(layered.containsKey("USER-AGENT"));
+        assertEquals("text/html", layered.get("Accept"));
+        assertEquals(2, layered.size());
+    }
+
+    @Test
+    public void testCookiesAreLayered() throws Exception {
+        try (Session session = new Session()) {
+            session.addCookie("sid", "1").addCookie("theme", "dark");
+
+            String body = session.get(base + "/").getText();
+            assertTrue(body.contains("sid=1"), body);
+            assertTrue(body.contains("theme=dark"), body);
+
+            Map<String, String> cookies = new HashMap<>();
+            cookies.put("theme", "light");
+            body = session.send(new Request("GET", base + "/").setCookies(cookies)).getText();
+            assertTrue(body.contains("sid=1"), body);
+            assertTrue(body.contains("theme=light"), body);
+            assertFalse(body.contains("theme=dark"), body);
+        }
+    }
+
+    @Test
+    public void testSessionMapsAreReadOnlySnapshots() {
+        try (Session session = new Session()) {
+            session.addCookie("sid", "1");
+            Map<String, String> cookies = session.getCookies();
+            session.addCookie("sid", "2");
+
+            assertEquals("1", cookies.get("sid"));
+            assertEquals("2", session.getCookies().get("sid"));
+            assertThrows(UnsupportedOperationException.class, () -> session.getHeaders().put("X", "1"));
+        }
+    }
+
+    @Test
+    public void testSharedTransportIsNotClosed() throws Exception {
+        AtomicInteger closed = new AtomicInteger();
+        Transport transport = new Transport() {
+            @Override
+            public Response execute(URL url, Request request, RequestBody body, HttpAdapter adapter) {
+                Response response = new Response();
+                response.setStatusCode(204);
+                return response;
+            }
+
+            @Override
+            public void close() {
+                closed.incrementAndGet();
+            }
+        };
+
+        try (Session session = new Session().setSharedTransport(transport)) {
+            assertEquals(204, session.get(base + "/").getStatusCode());
+        }
+        assertEquals(0, closed.get());
+
+        new Session().setTransport(transport).close();
+        assertEquals(1, closed.get());
+    }
+}
@@ -0,0 +1,85 @@
+package cn.jeyor1337.requests4j;
+
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A local HTTP server for tests, on a free port. Register handlers, start it, and close it
+ * when done:
+ * <pre>
+ * try (TestServer server = TestServer.loopback().handle("/", handler).start()) {
+ *     Requests.get(server.url("/"));
+ * }
+ * </pre>
+ */
+public final class TestServer implements AutoCloseable {
+    private final HttpServer server;
+    private ExecutorService executor;
+
+    private TestServer(InetSocketAddress address) throws IOException {
+        this.server = HttpServer.create(address, 0);
+    }
+
+    /**
+     * Creates a server listening on 127.0.0.1 only.
+     */
+    public static TestServer loopback() throws IOException {
+        return new TestServer(new InetSocketAddress("127.0.0.1", 0));
+    }
+
+    /**
+     * Creates a server listening on all local addresses, so that it can also be reached
+     * under other names such as {@code localhost}.
+     */
+    public static TestServer anyAddress() throws IOException {
+        return new TestServer(new InetSocketAddress(0));
+    }
+
+    /**
+     * Handles each exchange on its own thread, for tests that keep several requests open at once.
+     * Otherwise exchanges are handled one at a time on the server's own thread.
+     */
+    public TestServer concurrent() {
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        return this;
+    }
+
+    public TestServer handle(String path, HttpHandler handler) {
+        server.createContext(path, handler);
+        return this;
+    }
+
+    public TestServer start() {
+        server.start();
+        return this;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Returns {@code http://127.0.0.1:port}, without a trailing slash.
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + getPort();
+    }
+
+    public String url(String path) {
+        return getBaseUrl() + path;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,410 @@
+package cn.jeyor1337.requests4j;
+
+import cn.jeyor1337.requests4j.exceptions.ConnectionError;
+import cn.jeyor1337.requests4j.exceptions.RequestException;
+import cn.jeyor1337.requests4j.transport.ConnectionPool;
+import cn.jeyor1337.requests4j.transport.HttpClientTransport;
+import cn.jeyor1337.requests4j.transport.NioTransport;
+import cn.jeyor1337.requests4j.transport.PoolStats;
+import cn.jeyor1337.requests4j.transport.PooledTransport;
+import cn.jeyor1337.requests4j.transport.UrlConnectionTransport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Transport tests against a local server.
+ */
+public class TransportTest {
+    private static TestServer server;
+    private static String baseUrl;
+    private static final int BIG_BLOCKS = 128; // 8 MB
+    private static final AtomicInteger injected = new AtomicInteger();
+
+    @BeforeAll
+    public static void startServer() throws IOException {
+        server = TestServer.loopback().concurrent();
+        server.handle("/redirect", exchange -> {
+            exchange.getResponseHeaders().add("Location", "/echo");
+            exchange.sendResponseHeaders(302, -1);
+            exchange.close();
+        });
+        server.handle("/echo", exchange -> {
+            if (exchange.getRequestHeaders().containsKey("X-Injected")) {
+                injected.incrementAndGet();
+            }
+            InputStream in = exchange.getRequestBody();
+            String prefix = "";
+            if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                in = new GZIPInputStream(in);
+                prefix = "gzip ";
+            }
+            byte[] requestBody = in.readAllBytes();
+            String text = prefix + exchange.getRequestMethod() + " " + new String(requestBody, StandardCharsets.UTF_8);
+            byte[] body = text.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.handle("/lines", exchange -> {
+            // Chunked, one line per chunk
+            exchange.sendResponseHeaders(200, 0);
+            for (String line : new String[]{"one\n", "two\n", "three\n"}) {
+                exchange.getResponseBody().write(line.getBytes(StandardCharsets.UTF_8));
+                exchange.getResponseBody().flush();
+            }
+            exchange.close();
+        });
+        server.handle("/big", exchange -> {
+            byte[] block = new byte[64 * 1024];
+            Arrays.fill(block, (byte) 'x');
+            exchange.sendResponseHeaders(200, (long) BIG_BLOCKS * block.length);
+            try {
+                for (int i = 0; i < BIG_BLOCKS; i++) {
+                    exchange.getResponseBody().write(block);
+                }
+            } catch (IOException e) {
+                // The client stopped reading
+            }
+            exchange.close();
+        });
+        server.handle("/gzip", exchange -> {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write("compressed body".getBytes(StandardCharsets.UTF_8));
+            }
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, compressed.size());
+            compressed.writeTo(exchange.getResponseBody());
+            exchange.close();
+        });
+        server.start();
+        baseUrl = server.getBaseUrl();
+    }
+
+    @AfterAll
+    public static void stopServer() {
+        server.close();
+    }
+
+    @Test
+    public void testUrlConnectionTransport() throws RequestException {
+        assertTransport(new UrlConnectionTransport());
+    }
+
+    @Test
+    public void testHttpClientTransport() throws RequestException {
+        assertTransport(new HttpClientTransport());
+    }
+
+    @Test
+    public void testPooledTransport() throws RequestException {
+        PooledTransport transport = new PooledTransport();
+        assertTransport(transport);
+        assertEquals(0, transport.getPool().getStats().getIdle()); // closed with the session
+    }
+
+    @Test
+    public void testNioTransport() throws Exception {
+        NioTransport transport = new NioTransport(2);
+        assertTransport(transport);
+        try (Session closed = Requests.session().setTransport(transport)) {
+            assertThrows(RequestException.class, () -> closed.get(baseUrl + "/echo"));
+        }
+
+        try (Session session = Requests.session()) {
+            NioTransport nio = new NioTransport(1);
+            session.setTransport(nio);
+            List<CompletableFuture<Response>> futures = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                futures.add(session.postAsync(baseUrl + "/echo", "n" + i));
+            }
+            for (int i = 0; i < 50; i++) {
+                assertEquals("POST n" + i, futures.get(i).get(10, TimeUnit.SECONDS).getText());
+            }
+
+            // Sequential requests reuse the idle keep-alive connections
+            int open = nio.getOpenConnections();
+            assertTrue(open > 0 && open <= 50);
+            for (int i = 0; i < 5; i++) {
+                session.get(baseUrl + "/lines");
+            }
+            assertEquals(open, nio.getOpenConnections());
+            assertEquals(open, nio.getIdleConnections());
+        }
+    }
+
+    @Test
+    public void testNioStreamsBody() throws Exception {
+        NioTransport nio = new NioTransport(1);
+        try (Session session = Requests.session()) {
+            session.setTransport(nio);
+            session.setStream(true);
+
+            // Returned before the body is in, and only part of it is buffered while nobody reads
+            Response response = session.get(baseUrl + "/big");
+            InputStream raw = response.getRaw();
+            assertEquals('x', raw.read());
+            Thread.sleep(200);
+            assertTrue(raw.available() < 1024 * 1024, "buffered " + raw.available());
+
+            // Closing early drops the connection instead of reading the rest
+            response.close();
+            for (int i = 0; i < 50 && nio.getOpenConnections() > 0; i++) {
+                Thread.sleep(20);
+            }
+            assertEquals(0, nio.getOpenConnections());
+
+            try (Response full = session.get(baseUrl + "/big")) {
+                long total = 0;
+                byte[] buffer = new byte[8192];
+                for (int n; (n = full.getRaw().read(buffer)) >= 0; ) {
+                    total += n;
+                }
+                assertEquals(BIG_BLOCKS * 64L * 1024, total);
+            }
+            assertEquals(1, nio.getIdleConnections());
+        }
+    }
+
+    @Test
+    public void testConnectionPool() throws RequestException {
+        try (ConnectionPool pool = new ConnectionPool(); Session session = Requests.session()) {
+            pool.setMaxPerRoute(1);
+            session.setConnectionPool(pool);
+            session.setTimeout(1000);
+            session.setStream(true);
+
+            Response first = session.get(baseUrl + "/lines");
+            PoolStats stats = pool.getStats();
+            assertEquals(1, stats.getLeased());
+            assertEquals(0, stats.getIdle());
+
+            // The only connection for the route is in use until the body is closed
+            assertThrows(RequestException.class, () -> session.get(baseUrl + "/lines"));
+            first.close();
+            assertEquals(1, pool.getStats().getIdle());
+
+            for (int i = 0; i < 5; i++) {
+                try (Response response = session.get(baseUrl + "/lines")) {
+                    assertEquals("one\ntwo\nthree\n", response.getText());
+                }
+            }
+            stats = pool.getStats();
+            assertEquals(1, stats.getCreated());
+            assertEquals(0, stats.getLeased());
+            assertEquals(1, stats.getIdle());
+
+            pool.evictAll();
+            assertEquals(0, pool.getStats().getIdle());
+            assertEquals(1, pool.getStats().getEvicted());
+        }
+    }
+
+    @Test
+    public void testCloseAfterPartialRead() throws RequestException {
+        try (ConnectionPool pool = new ConnectionPool(); Session session = Requests.session()) {
+            pool.setMaxPerRoute(1);
+            session.setConnectionPool(pool);
+            session.setTimeout(1000);
+            session.setStream(true);
+
+            Response lines = session.get(baseUrl + "/lines");
+            assertEquals("one", lines.iterLines().next());
+            lines.close();
+            assertEquals(0, pool.getStats().getLeased());
+
+            Response chunks = session.get(baseUrl + "/lines");
+            chunks.iterContent(2).next();
+            chunks.close();
+            assertEquals(0, pool.getStats().getLeased());
+
+            // The route's only connection is free again
+            try (Response response = session.get(baseUrl + "/lines")) {
+                assertEquals("one\ntwo\nthree\n", response.getText());
+            }
+        }
+    }
+
+    @Test
+    public void testStream() throws RequestException {
+        for (Transport transport : new Transport[]{new UrlConnectionTransport(), new HttpClientTransport(),
+                new PooledTransport(), new NioTransport(1)}) {
+            try (Session session = Requests.session()) {
+                session.setTransport(transport);
+                session.setStream(true);
+
+                try (Response response = session.get(baseUrl + "/lines")) {
+                    assertNotNull(response.getRaw());
+                    List<String> lines = new ArrayList<>();
+                    response.iterLines().forEachRemaining(lines::add);
+                    assertEquals(Arrays.asList("one", "two", "three"), lines);
+                }
+
+                try (Response response = session.get(baseUrl + "/lines")) {
+                    Iterator<byte[]> chunks = response.iterContent(4);
+                    assertArrayEquals("one\n".getBytes(StandardCharsets.UTF_8), chunks.next());
+                }
+
+                Response response = session.get(baseUrl + "/lines");
+                assertEquals("one\ntwo\nthree\n", response.getText());
+                assertNull(response.getRaw());
+            }
+        }
+    }
+
+    @Test
+    public void testGzipResponse() throws RequestException {
+        for (Transport transport : new Transport[]{new UrlConnectionTransport(), new HttpClientTransport(),
+                new PooledTransport(), new NioTransport(1)}) {
+            try (Session session = Requests.session()) {
+                session.setTransport(transport);
+
+                Response response = session.get(baseUrl + "/gzip");
+                assertEquals("compressed body", response.getText());
+                assertEquals(15, response.getDecodedSize());
+                assertTrue(response.getRawSize() > 15);
+            }
+        }
+    }
+
+    @Test
+    public void testCompressedRequest() throws RequestException {
+        for (Transport transport : new Transport[]{new UrlConnectionTransport(), new HttpClientTransport(),
+                new PooledTransport(), new NioTransport(1)}) {
+            try (Session session = Requests.session()) {
+                session.setTransport(transport);
+                session.setCompressThreshold(10);
+
+                assertEquals("POST small", session.post(baseUrl + "/echo", "small").getText());
+                assertEquals("gzip POST large enough", session.post(baseUrl + "/echo", "large enough").getText());
+
+                Request request = new Request("POST", baseUrl + "/echo").setData("tiny").setCompress(true);
+                assertEquals("gzip POST tiny", session.send(request).getText());
+
+                assertEquals("POST [1]", session.postJson(baseUrl + "/echo", Arrays.asList(1)).getText());
+                assertEquals("gzip POST [1,2,3,4,5]",
+                        session.postJson(baseUrl + "/echo", Arrays.asList(1, 2, 3, 4, 5)).getText());
+            }
+        }
+    }
+
+    @Test
+    public void testLargeStreamedRequest() throws Exception {
+        // Larger than what the NIO and HttpClient transports buffer between the encoder and the socket
+        List<Integer> numbers = new ArrayList<>();
+        StringBuilder expected = new StringBuilder("[");
+        for (int i = 0; i < 100_000; i++) {
+            numbers.add(i);
+            expected.append(i == 0 ? "" : ",").append(i);
+        }
+        expected.append(']');
+        for (Transport transport : new Transport[]{new UrlConnectionTransport(), new HttpClientTransport(),
+                new PooledTransport(), new NioTransport(1)}) {
+            try (Session session = Requests.session()) {
+                session.setTransport(transport);
+                assertEquals("POST " + expected, session.postJson(baseUrl + "/echo", numbers).getText());
+                assertEquals("POST " + expected,
+                        session.postJsonAsync(baseUrl + "/echo", numbers).get(10, TimeUnit.SECONDS).getText());
+
+                session.setCompressThreshold(10);
+                assertEquals("gzip POST " + expected, session.postJson(baseUrl + "/echo", numbers).getText());
+            }
+        }
+    }
+
+    @Test
+    public void testAsync() throws Exception {
+        CompletableFuture<Response> future = Requests.getAsync(baseUrl + "/redirect");
+        Response response = future.get(10, TimeUnit.SECONDS);
+        assertEquals(200, response.getStatusCode());
+        assertEquals(1, response.getHistory().size());
+
+        try (Session session = Requests.session()) {
+            response = session.postAsync(baseUrl + "/echo", "data").get(10, TimeUnit.SECONDS);
+            assertEquals("POST data", response.getText());
+        }
+    }
+
+    @Test
+    public void testDefaultTransportAsyncHoldsNoThread() throws Exception {
+        ExecutorService rejecting = new ThreadPoolExecutor(0, 1, 0, TimeUnit.SECONDS, new SynchronousQueue<>());
+        rejecting.shutdown();
+        try (Session session = Requests.session()) {
+            session.getAdapter().setExecutor(rejecting);
+            // Nothing may run on the executor, as it rejects every task
+            assertEquals("POST data", session.postAsync(baseUrl + "/echo", "data").get(10, TimeUnit.SECONDS).getText());
+            assertEquals(1, session.getAsync(baseUrl + "/redirect").get(10, TimeUnit.SECONDS).getHistory().size());
+        }
+    }
+
+    @Test
+    public void testHeaderInjectionIsRejected() throws Exception {
+        String attack = "a\r\nX-Injected: 1";
+        for (Transport transport : new Transport[]{new PooledTransport(), new NioTransport(1)}) {
+            try (Session session = Requests.session()) {
+                session.setTransport(transport);
+                Request header = new Request("GET", baseUrl + "/echo").addHeader("X-Test", attack);
+                assertThrows(IllegalArgumentException.class, () -> session.send(header));
+                Request name = new Request("GET", baseUrl + "/echo").addHeader("X-Test: a\r\nX-Injected", "1");
+                assertThrows(IllegalArgumentException.class, () -> session.send(name));
+                Request cookie = new Request("GET", baseUrl + "/echo").addCookie("sid", attack);
+                assertThrows(IllegalArgumentException.class, () -> session.send(cookie));
+
+                ExecutionException e = assertThrows(ExecutionException.class,
+                        () -> session.sendAsync(header).get(10, TimeUnit.SECONDS));
+                assertInstanceOf(IllegalArgumentException.class, e.getCause().getCause());
+
+                // Nothing was written, so the next request goes through as usual
+                assertEquals("GET ", session.get(baseUrl + "/echo").getText());
+            }
+        }
+        assertEquals(0, injected.get());
+    }
+
+    @Test
+    public void testAsyncFailure() {
+        CompletableFuture<Response> future = Requests.getAsync("http://127.0.0.1:1/");
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(ConnectionError.class, e.getCause());
+    }
+
+    private void assertTransport(Transport transport) throws RequestException {
+        try (Session session = Requests.session()) {
+            session.setTransport(transport);
+
+            Response response = session.get(baseUrl + "/redirect");
+            assertEquals(200, response.getStatusCode());
+            assertEquals("GET ", response.getText());
+            assertEquals(1, response.getHistory().size());
+
+            Map<String, Object> json = new HashMap<>();
+            json.put("name", "John");
+            response = session.postJson(baseUrl + "/echo", json);
+            assertEquals("POST {\"name\":\"John\"}", response.getText());
+        }
+    }
+}
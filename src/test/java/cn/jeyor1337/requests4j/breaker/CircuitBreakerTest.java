@@ -0,0 +1,163 @@
+package cn.jeyor1337.requests4j.breaker;
+
+import cn.jeyor1337.requests4j.Request;
+import cn.jeyor1337.requests4j.Response;
+import cn.jeyor1337.requests4j.Sender;
+import cn.jeyor1337.requests4j.exceptions.CircuitBreakerOpen;
+import cn.jeyor1337.requests4j.exceptions.ConnectionError;
+import cn.jeyor1337.requests4j.exceptions.InvalidURL;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Circuit breaker tests against scripted senders.
+ */
+public class CircuitBreakerTest {
+    private static final String URL = "http://api.example.com/items";
+
+    private static Sender status(int status, AtomicInteger calls) {
+        return request -> {
+            calls.incrementAndGet();
+            Response response = new Response();
+            response.setStatusCode(status);
+            return response;
+        };
+    }
+
+    private static CircuitBreaker breaker() {
+        return new CircuitBreaker().setWindowSize(10).setMinimumCalls(4).setOpenDuration(100);
+    }
+
+    @Test
+    public void testOpensOnFailureRateAndFailsFast() throws Exception {
+        CircuitBreaker breaker = breaker();
+        List<String> transitions = new ArrayList<>();
+        breaker.addListener((host, from, to) -> transitions.add(host + " " + from + "->" + to));
+        AtomicInteger calls = new AtomicInteger();
+
+        breaker.send(new Request("GET", URL), status(200, calls));
+        breaker.send(new Request("GET", URL), status(200, calls));
+        breaker.send(new Request("GET", URL), status(503, calls));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState("api.example.com"));
+        breaker.send(new Request("GET", URL), status(503, calls)); // 2 of 4 failed
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState("api.example.com"));
+
+        assertThrows(CircuitBreakerOpen.class, () -> breaker.send(new Request("GET", URL), status(200, calls)));
+        assertEquals(4, calls.get());
+        assertEquals(1, breaker.getRejectedCount());
+        assertEquals(List.of("api.example.com CLOSED->OPEN"), transitions);
+
+        // Other hosts are unaffected
+        breaker.send(new Request("GET", "http://other.example.com/"), status(200, calls));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState("other.example.com"));
+    }
+
+    @Test
+    public void testHalfOpenProbes() throws Exception {
+        CircuitBreaker breaker = breaker().setHalfOpenProbes(2);
+        List<CircuitBreaker.State> states = new ArrayList<>();
+        breaker.addListener((host, from, to) -> states.add(to));
+        AtomicInteger calls = new AtomicInteger();
+        Sender refused = request -> {
+            calls.incrementAndGet();
+            throw new ConnectionError("refused");
+        };
+
+        for (int i = 0; i < 4; i++) {
+            assertThrows(ConnectionError.class, () -> breaker.send(new Request("GET", URL), refused));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState("api.example.com"));
+
+        // A failed probe opens the circuit again
+        Thread.sleep(150);
+        assertThrows(ConnectionError.class, () -> breaker.send(new Request("GET", URL), refused));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState("api.example.com"));
+
+        // Successful probes close it
+        Thread.sleep(150);
+        breaker.send(new Request("GET", URL), status(200, calls));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState("api.example.com"));
+        breaker.send(new Request("GET", URL), status(200, calls));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState("api.example.com"));
+
+        assertEquals(List.of(CircuitBreaker.State.OPEN, CircuitBreaker.State.HALF_OPEN, CircuitBreaker.State.OPEN,
+                CircuitBreaker.State.HALF_OPEN, CircuitBreaker.State.CLOSED), states);
+    }
+
+    @Test
+    public void testHalfOpenLimitsProbesInFlight() throws Exception {
+        CircuitBreaker breaker = breaker().setHalfOpenProbes(1);
+        AtomicInteger calls = new AtomicInteger();
+        for (int i = 0; i < 4; i++) {
+            breaker.send(new Request("GET", URL), status(500, calls));
+        }
+        Thread.sleep(150);
+
+        // While the single probe is in flight, other requests are refused
+        Sender probe = request -> {
+            assertThrows(CircuitBreakerOpen.class, () -> breaker.send(new Request("GET", URL), status(200, calls)));
+            return status(200, calls).send(request);
+        };
+        assertEquals(200, breaker.send(new Request("GET", URL), probe).getStatusCode());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState("api.example.com"));
+    }
+
+    @Test
+    public void testOpensOnSlowCalls() throws Exception {
+        CircuitBreaker breaker = breaker().setSlowCallDuration(20).setSlowCallRateThreshold(0.5);
+        Sender slow = request -> {
+            try {
+                Thread.sleep(30);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            Response response = new Response();
+            response.setStatusCode(200);
+            return response;
+        };
+        AtomicInteger calls = new AtomicInteger();
+        breaker.send(new Request("GET", URL), status(200, calls));
+        breaker.send(new Request("GET", URL), status(200, calls));
+        breaker.send(new Request("GET", URL), slow);
+        breaker.send(new Request("GET", URL), slow);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState("api.example.com"));
+    }
+
+    @Test
+    public void testSlidingWindowForgetsOldFailures() throws Exception {
+        CircuitBreaker breaker = breaker().setFailureRateThreshold(0.35);
+        AtomicInteger calls = new AtomicInteger();
+        for (int i = 0; i < 4; i++) {
+            breaker.send(new Request("GET", URL), status(200, calls));
+        }
+        breaker.send(new Request("GET", URL), status(500, calls));
+        breaker.send(new Request("GET", URL), status(500, calls));
+        for (int i = 0; i < 10; i++) {
+            breaker.send(new Request("GET", URL), status(200, calls));
+        }
+        assertEquals(0.0, breaker.getFailureRate("api.example.com"));
+        for (int i = 0; i < 3; i++) {
+            breaker.send(new Request("GET", URL), status(500, calls));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState("api.example.com"));
+        breaker.send(new Request("GET", URL), status(500, calls));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState("api.example.com"));
+    }
+
+    @Test
+    public void testClientErrorsAreNotFailures() {
+        CircuitBreaker breaker = breaker();
+        Sender invalid = request -> {
+            throw new InvalidURL("bad");
+        };
+        for (int i = 0; i < 10; i++) {
+            assertThrows(InvalidURL.class, () -> breaker.send(new Request("GET", URL), invalid));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState("api.example.com"));
+    }
+}
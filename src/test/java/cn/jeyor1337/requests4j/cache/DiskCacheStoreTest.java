@@ -0,0 +1,185 @@
+package cn.jeyor1337.requests4j.cache;
+
+import cn.jeyor1337.requests4j.Request;
+import cn.jeyor1337.requests4j.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Disk cache store tests: persistence, eviction and recovery after a crash.
+ */
+public class DiskCacheStoreTest {
+    private static final int SEGMENT_SIZE = 64 * 1024;
+
+    private Path directory;
+
+    @BeforeEach
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("requests4j-cache");
+    }
+
+    @AfterEach
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static CacheEntry entry(String body) {
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        headers.put(null, Collections.singletonList("HTTP/1.1 200 OK"));
+        headers.put("Content-Type", Collections.singletonList("text/plain; charset=utf-8"));
+        headers.put("Set-Cookie", Arrays.asList("a=1", "b=2"));
+        return new CacheEntry(200, "OK", headers, body.getBytes(StandardCharsets.UTF_8),
+                Collections.singletonMap("accept-language", "en"), 1000, 2000);
+    }
+
+    private static String body(CacheEntry entry) {
+        return StandardCharsets.UTF_8.decode(entry.getBodyBuffer()).toString();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        try (DiskCacheStore store = new DiskCacheStore(directory, 4 * SEGMENT_SIZE, SEGMENT_SIZE)) {
+            store.put("http://a/1", entry("one"));
+            CacheEntry entry = store.get("http://a/1");
+            assertEquals("one", body(entry));
+            assertTrue(entry.getBodyBuffer().isDirect());
+            assertEquals(200, entry.getStatusCode());
+            assertEquals("OK", entry.getReason());
+            assertEquals(Arrays.asList("a=1", "b=2"), entry.getHeaders().get("Set-Cookie"));
+            assertEquals("HTTP/1.1 200 OK", entry.getHeaders().get(null).get(0));
+            assertEquals("en", entry.getVaryHeaders().get("accept-language"));
+            assertEquals(1000, entry.getRequestTime());
+            assertEquals(2000, entry.getResponseTime());
+
+            store.put("http://a/1", entry("replaced"));
+            assertEquals("replaced", body(store.get("http://a/1")));
+            store.remove("http://a/1");
+            assertNull(store.get("http://a/1"));
+            assertEquals(0, store.getEntryCount());
+        }
+    }
+
+    @Test
+    public void testEntriesSurviveReopen() throws IOException {
+        try (DiskCacheStore store = new DiskCacheStore(directory, 4 * SEGMENT_SIZE, SEGMENT_SIZE)) {
+            store.put("http://a/1", entry("one"));
+            store.put("http://a/2", entry("two"));
+            store.put("http://a/3", entry("three"));
+            store.remove("http://a/3");
+        }
+        try (DiskCacheStore store = new DiskCacheStore(directory, 4 * SEGMENT_SIZE, SEGMENT_SIZE)) {
+            assertEquals("one", body(store.get("http://a/1")));
+            assertEquals("two", body(store.get("http://a/2")));
+            assertNull(store.get("http://a/3"));
+            assertEquals(2, store.getEntryCount());
+        }
+    }
+
+    @Test
+    public void testRecoveryAfterCrash() throws IOException {
+        DiskCacheStore crashed = new DiskCacheStore(directory, 4 * SEGMENT_SIZE, SEGMENT_SIZE);
+        crashed.put("http://a/1", entry("one"));
+        crashed.flush();
+        // Written after the last index, so only found by scanning
+        crashed.put("http://a/2", entry("two"));
+        crashed.remove("http://a/1");
+        crashed.put("http://a/3", entry("three"));
+
+        // Tear the last record, as if the process died while writing it
+        Path segment = directory.resolve("segment-0.dat");
+        long torn = crashed.getSize() - 2;
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(torn);
+            file.write(new byte[]{'X', 'X'});
+        }
+
+        try (DiskCacheStore store = new DiskCacheStore(directory, 4 * SEGMENT_SIZE, SEGMENT_SIZE)) {
+            assertNull(store.get("http://a/1"));
+            assertEquals("two", body(store.get("http://a/2")));
+            assertNull(store.get("http://a/3"));
+
+            // Writing continues in a fresh segment, after the torn one
+            store.put("http://a/4", entry("four"));
+            assertEquals(2, store.getSegmentCount());
+        }
+        try (DiskCacheStore store = new DiskCacheStore(directory, 4 * SEGMENT_SIZE, SEGMENT_SIZE)) {
+            assertEquals("two", body(store.get("http://a/2")));
+            assertEquals("four", body(store.get("http://a/4")));
+            assertNull(store.get("http://a/3"));
+        }
+    }
+
+    @Test
+    public void testRecoveryWithDamagedIndex() throws IOException {
+        try (DiskCacheStore store = new DiskCacheStore(directory, 4 * SEGMENT_SIZE, SEGMENT_SIZE)) {
+            store.put("http://a/1", entry("one"));
+            store.put("http://a/1", entry("newer"));
+        }
+        Files.write(directory.resolve("index"), new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9});
+        try (DiskCacheStore store = new DiskCacheStore(directory, 4 * SEGMENT_SIZE, SEGMENT_SIZE)) {
+            assertEquals("newer", body(store.get("http://a/1")));
+        }
+    }
+
+    @Test
+    public void testSizeBoundedEviction() throws IOException {
+        char[] chars = new char[10000];
+        Arrays.fill(chars, 'x');
+        String large = new String(chars);
+        try (DiskCacheStore store = new DiskCacheStore(directory, 3 * SEGMENT_SIZE, SEGMENT_SIZE)) {
+            for (int i = 0; i < 40; i++) {
+                store.put("http://a/" + i, entry(large));
+            }
+            assertTrue(store.getSegmentCount() <= 3);
+            assertTrue(store.getSize() <= store.getMaxSize());
+            assertTrue(store.getEvictionCount() > 0);
+            assertNull(store.get("http://a/0"));
+            assertEquals(large, body(store.get("http://a/39")));
+            assertEquals(40 - store.getEvictionCount(), store.getEntryCount());
+        }
+    }
+
+    @Test
+    public void testResponsesAreServedFromMapping() throws Exception {
+        try (DiskCacheStore store = new DiskCacheStore(directory, 4 * SEGMENT_SIZE, SEGMENT_SIZE)) {
+            HttpCache cache = new HttpCache(store);
+            Request request = new Request("GET", "http://example.test/config");
+            cache.send(request, sent -> {
+                Response response = new Response();
+                response.setStatusCode(200);
+                response.setHeaders(Collections.singletonMap("Cache-Control",
+                        Collections.singletonList("max-age=60")));
+                response.setContent("cached body".getBytes(StandardCharsets.UTF_8));
+                return response;
+            });
+
+            Response cached = cache.send(new Request("GET", "http://example.test/config"), sent -> {
+                throw new AssertionError("should be served from the cache");
+            });
+            ByteBuffer content = cached.getContentBuffer();
+            assertTrue(content.isDirect());
+            assertTrue(content.isReadOnly());
+            assertEquals("cached body", cached.getText());
+            assertEquals(1, cache.getHitCount());
+        }
+    }
+}
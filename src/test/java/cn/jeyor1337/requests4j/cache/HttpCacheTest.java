@@ -0,0 +1,233 @@
+package cn.jeyor1337.requests4j.cache;
+
+import cn.jeyor1337.requests4j.Request;
+import cn.jeyor1337.requests4j.Response;
+import cn.jeyor1337.requests4j.Session;
+import cn.jeyor1337.requests4j.TestServer;
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * HTTP cache tests against a local server that counts the requests reaching it.
+ */
+public class HttpCacheTest {
+    private static final String LAST_MODIFIED = "Mon, 05 Jan 2026 10:00:00 GMT";
+
+    private static TestServer server;
+    private static String baseUrl;
+    private static final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+
+    private Session session;
+    private HttpCache cache;
+
+    @BeforeAll
+    public static void startServer() throws IOException {
+        server = TestServer.loopback();
+        server.handle("/fresh", exchange -> {
+            exchange.getResponseHeaders().add("Cache-Control", "max-age=60");
+            respond(exchange, 200, "fresh " + count(exchange));
+        });
+        server.handle("/etag", exchange -> {
+            int n = count(exchange);
+            exchange.getResponseHeaders().add("Cache-Control", "no-cache");
+            exchange.getResponseHeaders().add("ETag", "\"v1\"");
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.getResponseHeaders().add("X-Revalidated", String.valueOf(n));
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            respond(exchange, 200, "etag body");
+        });
+        server.handle("/modified", exchange -> {
+            count(exchange);
+            exchange.getResponseHeaders().add("Cache-Control", "max-age=0");
+            exchange.getResponseHeaders().add("Last-Modified", LAST_MODIFIED);
+            if (LAST_MODIFIED.equals(exchange.getRequestHeaders().getFirst("If-Modified-Since"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            respond(exchange, 200, "modified body");
+        });
+        server.handle("/expires", exchange -> {
+            exchange.getResponseHeaders().add("Date", "Mon, 05 Jan 2026 10:00:00 GMT");
+            exchange.getResponseHeaders().add("Expires", "Mon, 05 Jan 2026 10:00:00 GMT");
+            respond(exchange, 200, "expires " + count(exchange));
+        });
+        server.handle("/no-store", exchange -> {
+            exchange.getResponseHeaders().add("Cache-Control", "no-store, max-age=60");
+            respond(exchange, 200, "no-store " + count(exchange));
+        });
+        server.handle("/vary", exchange -> {
+            count(exchange);
+            exchange.getResponseHeaders().add("Cache-Control", "max-age=60");
+            exchange.getResponseHeaders().add("Vary", "Accept-Language");
+            respond(exchange, 200, "lang " + exchange.getRequestHeaders().getFirst("Accept-Language"));
+        });
+        server.handle("/resource", exchange -> {
+            count(exchange);
+            exchange.getResponseHeaders().add("Cache-Control", "max-age=60");
+            respond(exchange, 200, exchange.getRequestMethod() + " " + exchange.getRequestURI().getQuery());
+        });
+        server.start();
+        baseUrl = server.getBaseUrl();
+    }
+
+    private static int count(HttpExchange exchange) {
+        return requests.computeIfAbsent(exchange.getRequestURI().getPath(), path -> new AtomicInteger())
+                .incrementAndGet();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+
+    private static int served(String path) {
+        AtomicInteger count = requests.get(path);
+        return count != null ? count.get() : 0;
+    }
+
+    @AfterAll
+    public static void stopServer() {
+        server.close();
+    }
+
+    @BeforeEach
+    public void createSession() {
+        requests.clear();
+        cache = new HttpCache(1024 * 1024);
+        session = new Session().setCache(cache);
+    }
+
+    @Test
+    public void testFreshResponseIsServedFromCache() throws Exception {
+        assertEquals("fresh 1", session.get(baseUrl + "/fresh").getText());
+        Response cached = session.get(baseUrl + "/fresh");
+        assertEquals("fresh 1", cached.getText());
+        assertEquals(200, cached.getStatusCode());
+        assertEquals("max-age=60", cached.getHeader("Cache-Control"));
+        assertEquals(1, served("/fresh"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testRequestNoCacheRevalidates() throws Exception {
+        session.get(baseUrl + "/fresh");
+        Request request = new Request("GET", baseUrl + "/fresh").addHeader("Cache-Control", "no-cache");
+        assertEquals("fresh 2", session.send(request).getText());
+        assertEquals(2, served("/fresh"));
+        assertEquals("fresh 2", session.get(baseUrl + "/fresh").getText());
+    }
+
+    @Test
+    public void testETagRevalidation() throws Exception {
+        assertEquals("etag body", session.get(baseUrl + "/etag").getText());
+        Response revalidated = session.get(baseUrl + "/etag");
+        assertEquals(200, revalidated.getStatusCode());
+        assertEquals("etag body", revalidated.getText());
+        assertEquals("2", revalidated.getHeader("X-Revalidated"));
+        assertEquals(2, served("/etag"));
+        assertEquals(1, cache.getRevalidationCount());
+        assertEquals(1, cache.getNotModifiedCount());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    public void testLastModifiedRevalidation() throws Exception {
+        session.get(baseUrl + "/modified");
+        Response revalidated = session.get(baseUrl + "/modified");
+        assertEquals("modified body", revalidated.getText());
+        assertEquals(1, cache.getNotModifiedCount());
+
+        // The caller's request is left without conditional headers
+        Request request = new Request("GET", baseUrl + "/modified");
+        session.send(request);
+        assertFalse(request.getHeaders().containsKey("If-Modified-Since"));
+    }
+
+    @Test
+    public void testExpiredAndNoStoreResponses() throws Exception {
+        assertEquals("expires 1", session.get(baseUrl + "/expires").getText());
+        assertEquals("expires 2", session.get(baseUrl + "/expires").getText());
+        assertEquals("no-store 1", session.get(baseUrl + "/no-store").getText());
+        assertEquals("no-store 2", session.get(baseUrl + "/no-store").getText());
+        assertEquals(0, cache.getStore().getEntryCount());
+    }
+
+    @Test
+    public void testVary() throws Exception {
+        Request english = new Request("GET", baseUrl + "/vary").addHeader("Accept-Language", "en");
+        Request french = new Request("GET", baseUrl + "/vary").addHeader("Accept-Language", "fr");
+        assertEquals("lang en", session.send(english).getText());
+        assertEquals("lang en", session.send(new Request("GET", baseUrl + "/vary")
+                .addHeader("Accept-Language", "en")).getText());
+        assertEquals(1, served("/vary"));
+        assertEquals("lang fr", session.send(french).getText());
+        assertEquals(2, served("/vary"));
+    }
+
+    @Test
+    public void testParamsAndInvalidation() throws Exception {
+        Map<String, String> a = Collections.singletonMap("q", "a");
+        Map<String, String> b = Collections.singletonMap("q", "b");
+        assertEquals("GET q=a", session.get(baseUrl + "/resource", a).getText());
+        assertEquals("GET q=b", session.get(baseUrl + "/resource", b).getText());
+        session.get(baseUrl + "/resource", a);
+        assertEquals(2, served("/resource"));
+
+        session.get(baseUrl + "/resource");
+        session.post(baseUrl + "/resource", "data");
+        session.get(baseUrl + "/resource");
+        assertEquals(5, served("/resource"));
+    }
+
+    @Test
+    public void testOnlyIfCached() throws Exception {
+        Request request = new Request("GET", baseUrl + "/fresh").addHeader("Cache-Control", "only-if-cached");
+        assertEquals(504, session.send(request).getStatusCode());
+        assertEquals(0, served("/fresh"));
+    }
+
+    @Test
+    public void testMemoryStoreEvictsLeastRecentlyUsed() {
+        byte[] body = new byte[1000];
+        CacheEntry entry = new CacheEntry(200, "OK", Collections.<String, List<String>>emptyMap(), body,
+                Collections.<String, String>emptyMap(), 0, 0);
+        MemoryCacheStore store = new MemoryCacheStore(entry.getSize() * 3);
+        store.put("a", entry);
+        store.put("b", entry);
+        store.put("c", entry);
+        store.get("a");
+        store.put("d", entry);
+
+        assertNotNull(store.get("a"));
+        assertNull(store.get("b"));
+        assertEquals(3, store.getEntryCount());
+        assertEquals(entry.getSize() * 3, store.getSize());
+        assertEquals(1, store.getEvictionCount());
+
+        store.put("huge", new CacheEntry(200, "OK", Collections.<String, List<String>>emptyMap(),
+                new byte[(int) store.getMaxSize()], Collections.<String, String>emptyMap(), 0, 0));
+        assertNull(store.get("huge"));
+        assertEquals(3, store.getEntryCount());
+    }
+}
@@ -0,0 +1,158 @@
+package cn.jeyor1337.requests4j.cache;
+
+import cn.jeyor1337.requests4j.Request;
+import cn.jeyor1337.requests4j.Response;
+import cn.jeyor1337.requests4j.Session;
+import cn.jeyor1337.requests4j.TestServer;
+import cn.jeyor1337.requests4j.exceptions.ConnectionError;
+import cn.jeyor1337.requests4j.exceptions.RequestException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Request coalescing tests; the server holds each request until the test releases it.
+ */
+public class RequestCoalescerTest {
+    private static final int CALLERS = 10;
+
+    private static TestServer server;
+    private static String baseUrl;
+    private static final AtomicInteger served = new AtomicInteger();
+    private static volatile CountDownLatch release;
+
+    @BeforeAll
+    public static void startServer() throws IOException {
+        server = TestServer.loopback().concurrent();
+        server.handle("/slow", exchange -> {
+            served.incrementAndGet();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = ("hello " + exchange.getRequestHeaders().getFirst("Accept-Language"))
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        baseUrl = server.getBaseUrl();
+    }
+
+    @AfterAll
+    public static void stopServer() {
+        server.close();
+    }
+
+    private static void awaitCoalesced(RequestCoalescer coalescer, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (coalescer.getCoalescedCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void testIdenticalRequestsShareOneCall() throws Exception {
+        served.set(0);
+        release = new CountDownLatch(1);
+        RequestCoalescer coalescer = new RequestCoalescer();
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try (Session session = new Session().setCoalescer(coalescer)) {
+            List<Future<Response>> futures = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                futures.add(executor.submit(() -> session.get(baseUrl + "/slow")));
+            }
+            awaitCoalesced(coalescer, CALLERS - 1);
+            release.countDown();
+
+            List<Response> responses = new ArrayList<>();
+            for (Future<Response> future : futures) {
+                responses.add(future.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(1, served.get());
+            assertEquals(1, coalescer.getSentCount());
+            assertEquals(CALLERS - 1, coalescer.getCoalescedCount());
+            assertEquals(0, coalescer.getInFlightCount());
+
+            // Each caller has its own view; changing one copy of the body leaves the others alone
+            responses.get(0).getContent()[0] = 'J';
+            for (int i = 1; i < CALLERS; i++) {
+                assertNotSame(responses.get(0), responses.get(i));
+                assertEquals("hello null", responses.get(i).getText());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDifferentHeadersAreNotCoalesced() throws Exception {
+        served.set(0);
+        release = new CountDownLatch(0);
+        RequestCoalescer coalescer = new RequestCoalescer();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (Session session = new Session().setCoalescer(coalescer)) {
+            Future<Response> english = executor.submit(() -> session.send(
+                    new Request("GET", baseUrl + "/slow").addHeader("Accept-Language", "en")));
+            Future<Response> french = executor.submit(() -> session.send(
+                    new Request("GET", baseUrl + "/slow").addHeader("Accept-Language", "fr")));
+            assertEquals("hello en", english.get(10, TimeUnit.SECONDS).getText());
+            assertEquals("hello fr", french.get(10, TimeUnit.SECONDS).getText());
+            assertEquals(2, served.get());
+            assertEquals(0, coalescer.getCoalescedCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailureIsSharedByWaitingCallers() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        CountDownLatch failing = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            List<Future<Response>> futures = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                futures.add(executor.submit(() -> coalescer.send(new Request("GET", "http://example.test/"), r -> {
+                    try {
+                        failing.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new ConnectionError("refused");
+                })));
+            }
+            awaitCoalesced(coalescer, 2);
+            failing.countDown();
+            for (Future<Response> future : futures) {
+                Exception e = assertThrows(Exception.class, () -> future.get(10, TimeUnit.SECONDS));
+                assertTrue(e.getCause() instanceof ConnectionError);
+            }
+            assertEquals(1, coalescer.getSentCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testPostIsNeverCoalesced() throws RequestException {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        coalescer.send(new Request("POST", "http://example.test/"), r -> new Response());
+        assertEquals(0, coalescer.getSentCount());
+    }
+}
@@ -0,0 +1,202 @@
+package cn.jeyor1337.requests4j.cookies;
+
+import cn.jeyor1337.requests4j.Request;
+import cn.jeyor1337.requests4j.Response;
+import cn.jeyor1337.requests4j.Session;
+import cn.jeyor1337.requests4j.TestServer;
+import cn.jeyor1337.requests4j.auth.BasicAuth;
+import org.junit.jupiter.api.Test;
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Cookie jar tests covering RFC 6265 storage and retrieval rules.
+ */
+public class CookieJarTest {
+
+    private static List<String> names(List<Cookie> cookies) {
+        List<String> names = new ArrayList<>();
+        for (Cookie cookie : cookies) {
+            names.add(cookie.getName() + "=" + cookie.getValue());
+        }
+        return names;
+    }
+
+    @Test
+    public void testDomainScope() throws Exception {
+        CookieJar jar = new CookieJar();
+        jar.store(new URL("http://www.example.com/"), Arrays.asList(
+                "host=1",
+                "wide=2; Domain=.example.com",
+                "other=3; Domain=other.com",
+                "tld=4; Domain=com"));
+
+        assertEquals(Arrays.asList("host=1", "wide=2"), names(jar.get(new URL("http://www.example.com/"))));
+        assertEquals(Collections.singletonList("wide=2"), names(jar.get(new URL("http://api.example.com/"))));
+        assertEquals(Collections.singletonList("wide=2"), names(jar.get(new URL("http://example.com/"))));
+        assertTrue(jar.get(new URL("http://notexample.com/")).isEmpty());
+        assertEquals(2, jar.size());
+    }
+
+    @Test
+    public void testPathScope() throws Exception {
+        CookieJar jar = new CookieJar();
+        jar.store(new URL("http://example.com/docs/guide/intro"), Arrays.asList(
+                "default=1",
+                "root=2; Path=/",
+                "api=3; Path=/api"));
+
+        assertEquals(Arrays.asList("default=1", "root=2"),
+                names(jar.get(new URL("http://example.com/docs/guide/other"))));
+        assertEquals(Collections.singletonList("root=2"), names(jar.get(new URL("http://example.com/docs"))));
+        assertEquals(Arrays.asList("api=3", "root=2"), names(jar.get(new URL("http://example.com/api/v1"))));
+        assertEquals(Collections.singletonList("root=2"), names(jar.get(new URL("http://example.com/apix"))));
+    }
+
+    @Test
+    public void testExpiryAndReplacement() throws Exception {
+        CookieJar jar = new CookieJar();
+        URL url = new URL("https://example.com/");
+        jar.store(url, Arrays.asList(
+                "a=1; Max-Age=3600",
+                "b=2; Expires=Wed, 21 Oct 2015 07:28:00 GMT",
+                "c=3; Expires=Fri, 01-Jan-2100 00:00:00 GMT; Max-Age=0",
+                "d=4; Secure; HttpOnly"));
+        assertEquals(Arrays.asList("a=1", "d=4"), names(jar.get(url)));
+        assertTrue(jar.get(new URL("http://example.com/")).stream().noneMatch(Cookie::isSecure));
+
+        jar.store(url, Collections.singletonList("a=changed"));
+        assertEquals(Arrays.asList("a=changed", "d=4"), names(jar.get(url)));
+        Cookie a = jar.get(url).get(0);
+        assertEquals(Cookie.SESSION, a.getExpiresAt());
+        assertTrue(jar.get(url).get(1).isHttpOnly());
+
+        // Deleting by expiring
+        jar.store(url, Collections.singletonList("a=; Max-Age=0"));
+        assertEquals(Collections.singletonList("d=4"), names(jar.get(url)));
+
+        // Secure cookies cannot be set over plain HTTP
+        jar.store(new URL("http://example.com/"), Collections.singletonList("e=5; Secure"));
+        assertEquals(1, jar.size());
+    }
+
+    @Test
+    public void testLimits() throws Exception {
+        CookieJar jar = new CookieJar().setMaxPerDomain(3).setMaxCookies(5);
+        URL url = new URL("http://a.example.com/");
+        for (int i = 0; i < 5; i++) {
+            jar.store(url, Collections.singletonList("c" + i + "=" + i));
+            Thread.sleep(2);
+        }
+        assertEquals(Arrays.asList("c2=2", "c3=3", "c4=4"), names(jar.get(url)));
+
+        for (int i = 0; i < 3; i++) {
+            jar.store(new URL("http://b.example.com/"), Collections.singletonList("d" + i + "=" + i));
+        }
+        assertEquals(5, jar.size());
+        assertEquals(Arrays.asList("c3=3", "c4=4"), names(jar.get(url)));
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        CookieJar jar = new CookieJar().setSweepInterval(0);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                URL url = new URL("http://host" + (thread % 4) + ".example.com/");
+                for (int i = 0; i < 500; i++) {
+                    jar.store(url, Arrays.asList("t" + thread + "=" + i, "short=x; Max-Age=0"));
+                    assertFalse(jar.get(url).isEmpty());
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertEquals(8, jar.size());
+        assertEquals(8, jar.getAll().size());
+    }
+
+    @Test
+    public void testSessionUsesJar() throws Exception {
+        try (TestServer server = TestServer.loopback()) {
+            server.handle("/", exchange -> {
+                if (exchange.getRequestURI().getPath().equals("/login")) {
+                    exchange.getResponseHeaders().add("Set-Cookie", "sid=abc; Path=/app");
+                }
+                String cookie = exchange.getRequestHeaders().getFirst("Cookie");
+                byte[] body = String.valueOf(cookie).getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            });
+            server.start();
+            String base = server.getBaseUrl();
+            try (Session session = new Session()) {
+                session.get(base + "/login");
+                Response inScope = session.get(base + "/app/home");
+                assertEquals("sid=abc", inScope.getText());
+                assertEquals("null", session.get(base + "/other").getText());
+                assertEquals(1, session.getCookieJar().size());
+            }
+        }
+    }
+
+    @Test
+    public void testRedirectsUseJarPerHop() throws Exception {
+        // Bound to every interface so that "localhost" reaches it as a second host
+        try (TestServer server = TestServer.anyAddress()) {
+            int port = server.getPort();
+            server.handle("/", exchange -> {
+                String path = exchange.getRequestURI().getPath();
+                if (path.equals("/login")) {
+                    exchange.getResponseHeaders().add("Set-Cookie", "sid=abc");
+                    exchange.getResponseHeaders().add("Location", "/echo");
+                    exchange.sendResponseHeaders(302, -1);
+                } else if (path.equals("/away")) {
+                    exchange.getResponseHeaders().add("Location", "http://localhost:" + port + "/echo");
+                    exchange.sendResponseHeaders(302, -1);
+                } else {
+                    String echo = exchange.getRequestHeaders().getFirst("Cookie") + "|"
+                            + exchange.getRequestHeaders().getFirst("Authorization");
+                    byte[] body = echo.getBytes(StandardCharsets.UTF_8);
+                    exchange.sendResponseHeaders(200, body.length);
+                    exchange.getResponseBody().write(body);
+                }
+                exchange.close();
+            });
+            server.start();
+            String base = "http://127.0.0.1:" + port;
+            try (Session session = new Session()) {
+                session.getCookieJar().store(new URL("https://127.0.0.1/"), Collections.singletonList("tls=1; Secure"));
+
+                // Set by the redirect itself, host-only; the Secure cookie stays off plain http
+                Request login = new Request("GET", base + "/login").setAuth(BasicAuth.of("user", "pass"));
+                String echo = session.send(login).getText();
+                assertTrue(echo.startsWith("sid=abc|Basic "), echo);
+                assertTrue(session.getCookieJar().get(new URL(base + "/")).stream().anyMatch(c -> c.getName().equals("sid")));
+
+                // Another host gets neither host-only cookies, request cookies nor credentials
+                Request away = new Request("GET", base + "/away")
+                        .addCookie("explicit", "1")
+                        .setAuth(BasicAuth.of("user", "pass"));
+                assertEquals("null|null", session.send(away).getText());
+                assertTrue(away.getCookies().containsKey("explicit"));
+            }
+        }
+    }
+}
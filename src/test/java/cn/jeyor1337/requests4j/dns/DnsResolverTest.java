@@ -0,0 +1,127 @@
+package cn.jeyor1337.requests4j.dns;
+
+import cn.jeyor1337.requests4j.Requests;
+import cn.jeyor1337.requests4j.Session;
+import cn.jeyor1337.requests4j.TestServer;
+import cn.jeyor1337.requests4j.Transport;
+import cn.jeyor1337.requests4j.transport.NioTransport;
+import cn.jeyor1337.requests4j.transport.PooledTransport;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DnsResolverTest {
+
+    @Test
+    public void testStaticResolver() throws Exception {
+        StaticDnsResolver resolver = new StaticDnsResolver().put("api.test", "10.0.0.1", "10.0.0.2");
+        List<InetAddress> addresses = resolver.resolve("API.test");
+        assertEquals(2, addresses.size());
+        assertEquals("10.0.0.1", addresses.get(0).getHostAddress());
+        assertEquals("api.test", addresses.get(0).getHostName());
+        assertThrows(UnknownHostException.class, () -> resolver.resolve("other.test"));
+    }
+
+    @Test
+    public void testCachingResolver() throws Exception {
+        AtomicInteger lookups = new AtomicInteger();
+        CachingDnsResolver resolver = new CachingDnsResolver(host -> {
+            lookups.incrementAndGet();
+            if (host.equals("missing.test")) {
+                throw new UnknownHostException(host);
+            }
+            return Arrays.asList(InetAddress.getByAddress(host, new byte[]{10, 0, 0, 1}));
+        }, Runnable::run);
+        resolver.setTtl(60000).setNegativeTtl(60000).setRefreshAhead(1);
+
+        resolver.resolve("a.test");
+        resolver.resolve("a.test");
+        assertEquals(1, lookups.get());
+        assertEquals(1, resolver.getHitCount());
+        assertEquals(1, resolver.getMissCount());
+
+        // Failures are cached too
+        assertThrows(UnknownHostException.class, () -> resolver.resolve("missing.test"));
+        assertThrows(UnknownHostException.class, () -> resolver.resolve("missing.test"));
+        assertEquals(2, lookups.get());
+
+        resolver.invalidate("a.test");
+        resolver.resolve("a.test");
+        assertEquals(3, lookups.get());
+    }
+
+    @Test
+    public void testRefreshAhead() throws Exception {
+        AtomicInteger lookups = new AtomicInteger();
+        CachingDnsResolver resolver = new CachingDnsResolver(host -> {
+            lookups.incrementAndGet();
+            return Arrays.asList(InetAddress.getByAddress(host, new byte[]{10, 0, 0, 1}));
+        }, Runnable::run);
+        resolver.setTtl(60000).setRefreshAhead(0);
+
+        resolver.resolve("a.test");
+        resolver.resolve("a.test"); // hit past the refresh point: refreshed in the background
+        assertEquals(2, lookups.get());
+        assertEquals(1, resolver.getRefreshCount());
+        assertEquals(2, resolver.getHitCount() + resolver.getMissCount());
+    }
+
+    @Test
+    public void testInterleave() throws Exception {
+        InetAddress v6a = InetAddress.getByName("2001:db8::1");
+        InetAddress v6b = InetAddress.getByName("2001:db8::2");
+        InetAddress v4a = InetAddress.getByName("10.0.0.1");
+        InetAddress v4b = InetAddress.getByName("10.0.0.2");
+
+        assertEquals(Arrays.asList(v6a, v4a, v6b, v4b),
+                HappyEyeballs.interleave(Arrays.asList(v6a, v6b, v4a, v4b)));
+        assertEquals(Arrays.asList(v4a, v6a, v4b, v6b),
+                HappyEyeballs.interleave(Arrays.asList(v4a, v4b, v6a, v6b)));
+    }
+
+    @Test
+    public void testConnectRace() throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"))) {
+            // Nothing listens on 127.0.0.2 at this port, so the first attempt is refused
+            List<InetAddress> addresses = Arrays.asList(
+                    InetAddress.getByName("127.0.0.2"), InetAddress.getByName("127.0.0.1"));
+            try (Socket socket = HappyEyeballs.connect(addresses, server.getLocalPort(), 5000, 250)) {
+                assertTrue(socket.isConnected());
+                assertEquals(InetAddress.getByName("127.0.0.1"), socket.getInetAddress());
+            }
+        }
+    }
+
+    @Test
+    public void testSessionResolver() throws Exception {
+        try (TestServer server = TestServer.loopback()) {
+            server.handle("/", exchange -> {
+                byte[] body = exchange.getRequestHeaders().getFirst("Host").getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            });
+            server.start();
+            int port = server.getPort();
+            StaticDnsResolver resolver = new StaticDnsResolver().put("service.test", "127.0.0.1");
+            for (Transport transport : new Transport[]{new PooledTransport(), new NioTransport(1)}) {
+                try (Session session = Requests.session()) {
+                    session.setTransport(transport);
+                    session.setDnsResolver(resolver);
+                    String host = "service.test:" + port;
+                    assertEquals(host, session.get("http://" + host + "/").getText());
+                }
+            }
+            assertEquals(2, resolver.getLookupCount());
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package cn.jeyor1337.requests4j.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for Content-Encoding decoding.
+ */
+public class ContentDecoderTest {
+    private static final byte[] TEXT = "hello, compressed world! ".repeat(1000).getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testGzip() throws IOException {
+        assertArrayEquals(TEXT, decode(gzip(TEXT), "gzip"));
+    }
+
+    @Test
+    public void testMultiMemberGzip() throws IOException {
+        ByteArrayOutputStream both = new ByteArrayOutputStream();
+        both.write(gzip("first ".getBytes(StandardCharsets.UTF_8)));
+        both.write(gzip("second".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("first second", new String(decode(both.toByteArray(), "gzip"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testZlibAndRawDeflate() throws IOException {
+        assertArrayEquals(TEXT, decode(deflate(TEXT, false), "deflate"));
+        assertArrayEquals(TEXT, decode(deflate(TEXT, true), "deflate"));
+    }
+
+    @Test
+    public void testStackedAndUnknownEncodings() throws IOException {
+        assertArrayEquals(TEXT, decode(gzip(deflate(TEXT, false)), "deflate, gzip"));
+        assertArrayEquals(TEXT, decode(TEXT, "identity"));
+        assertArrayEquals(TEXT, decode(TEXT, "br"));
+        assertArrayEquals(new byte[0], decode(new byte[0], "gzip"));
+    }
+
+    @Test
+    public void testCorruptGzip() throws IOException {
+        byte[] data = gzip(TEXT);
+        data[data.length - 6] ^= 0xff; // corrupt the CRC
+        assertThrows(ZipException.class, () -> decode(data, "gzip"));
+    }
+
+    @Test
+    public void testInflatersAreReused() throws IOException {
+        InflaterPool pool = new InflaterPool(4);
+        for (int i = 0; i < 10; i++) {
+            try (InputStream in = ContentDecoder.decode(new ByteArrayInputStream(gzip(TEXT)), "gzip", pool)) {
+                in.readAllBytes();
+            }
+        }
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    private static byte[] decode(byte[] data, String encoding) throws IOException {
+        try (InputStream in = ContentDecoder.decode(new ByteArrayInputStream(data), encoding, InflaterPool.shared())) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] data, boolean nowrap) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap))) {
+            deflate.write(data);
+        }
+        return out.toByteArray();
+    }
+}
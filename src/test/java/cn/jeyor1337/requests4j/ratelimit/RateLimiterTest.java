@@ -0,0 +1,166 @@
+package cn.jeyor1337.requests4j.ratelimit;
+
+import cn.jeyor1337.requests4j.Request;
+import cn.jeyor1337.requests4j.Response;
+import cn.jeyor1337.requests4j.Sender;
+import cn.jeyor1337.requests4j.exceptions.RateLimitExceeded;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Token bucket and rate limiter tests.
+ */
+public class RateLimiterTest {
+
+    private static Sender respond(int status, String... headers) {
+        return request -> {
+            Response response = new Response();
+            response.setStatusCode(status);
+            Map<String, List<String>> map = new HashMap<>();
+            for (int i = 0; i < headers.length; i += 2) {
+                map.put(headers[i], Collections.singletonList(headers[i + 1]));
+            }
+            response.setHeaders(map);
+            return response;
+        };
+    }
+
+    @Test
+    public void testBurstThenSustainedRate() throws Exception {
+        TokenBucket bucket = new TokenBucket(20, 5);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(bucket.tryAcquire(), "permit " + i);
+        }
+        assertFalse(bucket.tryAcquire());
+        assertEquals(0, bucket.getAvailablePermits());
+
+        long start = System.nanoTime();
+        assertTrue(bucket.acquire(1, TimeUnit.SECONDS));
+        assertTrue(bucket.acquire(1, TimeUnit.SECONDS));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsed >= 80, "elapsed " + elapsed);
+
+        assertFalse(bucket.acquire(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testConcurrentCallersNeverExceedRate() throws Exception {
+        TokenBucket bucket = new TokenBucket(1000, 50);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        AtomicInteger granted = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> {
+                while (System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(200)) {
+                    if (bucket.tryAcquire()) {
+                        granted.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        assertTrue(granted.get() <= 50 + 1000 * seconds + 1, "granted " + granted.get());
+        assertTrue(granted.get() >= 150, "granted " + granted.get());
+    }
+
+    @Test
+    public void testPerHostKeysAndMaxWait() throws Exception {
+        RateLimiter limiter = new RateLimiter(1, 1).setMaxWait(100);
+        limiter.send(new Request("GET", "http://a.example.com/"), respond(200));
+        limiter.send(new Request("GET", "http://b.example.com/"), respond(200));
+        assertThrows(RateLimitExceeded.class,
+                () -> limiter.send(new Request("GET", "http://a.example.com/x"), respond(200)));
+        assertEquals(1, limiter.getRejectedCount());
+
+        RateLimiter shared = RateLimiter.perSession(1, 1).setMaxWait(100);
+        shared.send(new Request("GET", "http://a.example.com/"), respond(200));
+        assertThrows(RateLimitExceeded.class,
+                () -> shared.send(new Request("GET", "http://b.example.com/"), respond(200)));
+
+        RateLimiter custom = new RateLimiter(100, 10).setLimit("a.example.com", 1, 2).setMaxWait(0);
+        for (int i = 0; i < 2; i++) {
+            custom.send(new Request("GET", "http://a.example.com/"), respond(200));
+        }
+        assertThrows(RateLimitExceeded.class,
+                () -> custom.send(new Request("GET", "http://a.example.com/"), respond(200)));
+    }
+
+    @Test
+    public void testRetryAfterPausesKey() throws Exception {
+        RateLimiter limiter = new RateLimiter(100, 10).setMaxWait(0);
+        limiter.send(new Request("GET", "http://a.example.com/"), respond(429, "Retry-After", "5"));
+        assertThrows(RateLimitExceeded.class,
+                () -> limiter.send(new Request("GET", "http://a.example.com/"), respond(200)));
+        limiter.send(new Request("GET", "http://b.example.com/"), respond(200));
+    }
+
+    @Test
+    public void testQuotaHeaders() throws Exception {
+        // One permit a minute, so no permit comes back while the test runs
+        double perMinute = 1.0 / 60;
+        RateLimiter limiter = new RateLimiter(perMinute, 10);
+        // Quota spent: wait until the reset
+        limiter.send(new Request("GET", "http://a.example.com/"),
+                respond(200, "X-RateLimit-Remaining", "0", "X-RateLimit-Reset", "60"));
+        assertEquals(0, limiter.getBucket("a.example.com").getAvailablePermits());
+        assertEquals(-1, limiter.getBucket("a.example.com").reserve(TimeUnit.SECONDS.toNanos(50)));
+
+        // A window that has already reset leaves the bucket alone
+        limiter.send(new Request("GET", "http://b.example.com/"),
+                respond(200, "RateLimit-Remaining", "4", "RateLimit-Reset", "0"));
+        assertEquals(9, limiter.getBucket("b.example.com").getAvailablePermits());
+
+        // Four requests left in the next hour: spaced twelve minutes apart, slower than the bucket
+        limiter.send(new Request("GET", "http://c.example.com/"),
+                respond(200, "X-RateLimit-Remaining", "4", "X-RateLimit-Reset", "3600"));
+        long wait = limiter.getBucket("c.example.com").reserve(Long.MAX_VALUE);
+        assertTrue(wait > TimeUnit.MINUTES.toNanos(11) && wait <= TimeUnit.MINUTES.toNanos(12), "wait " + wait);
+
+        // The same window given as an epoch time
+        long epochReset = System.currentTimeMillis() / 1000 + 3600;
+        limiter.send(new Request("GET", "http://d.example.com/"),
+                respond(200, "X-RateLimit-Remaining", "4", "X-RateLimit-Reset", String.valueOf(epochReset)));
+        wait = limiter.getBucket("d.example.com").reserve(Long.MAX_VALUE);
+        assertTrue(wait > TimeUnit.MINUTES.toNanos(11) && wait <= TimeUnit.MINUTES.toNanos(12), "wait " + wait);
+
+        RateLimiter fixed = new RateLimiter(perMinute, 10).setAdaptive(false);
+        fixed.send(new Request("GET", "http://a.example.com/"),
+                respond(429, "Retry-After", "60"));
+        assertTrue(fixed.getBucket("a.example.com").tryAcquire());
+    }
+
+    @Test
+    public void testAcquireAsync() throws Exception {
+        RateLimiter limiter = new RateLimiter(20, 1).setMaxWait(1000);
+        Request request = new Request("GET", "http://a.example.com/");
+        assertTrue(limiter.acquireAsync(request).isDone());
+        long start = System.nanoTime();
+        CompletableFuture<Void> second = limiter.acquireAsync(request);
+        assertFalse(second.isDone());
+        second.get(1, TimeUnit.SECONDS);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+
+        RateLimiter strict = new RateLimiter(1, 1).setMaxWait(10);
+        strict.acquireAsync(request);
+        CompletableFuture<Void> refused = strict.acquireAsync(request);
+        assertTrue(refused.isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,173 @@
+package cn.jeyor1337.requests4j.retry;
+
+import cn.jeyor1337.requests4j.Request;
+import cn.jeyor1337.requests4j.Response;
+import cn.jeyor1337.requests4j.Sender;
+import cn.jeyor1337.requests4j.exceptions.ConnectionError;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Hedging tests against senders that are slow on demand.
+ */
+public class HedgingPolicyTest {
+
+    private static Response ok(String reason) {
+        Response response = new Response();
+        response.setStatusCode(200);
+        response.setReason(reason);
+        return response;
+    }
+
+    private static void sleep(long millis) throws ConnectionError {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new ConnectionError("interrupted");
+        }
+    }
+
+    @Test
+    public void testSlowRequestIsHedgedAndLoserCancelled() throws Exception {
+        List<String> urls = new CopyOnWriteArrayList<>();
+        CountDownLatch loserStopped = new CountDownLatch(1);
+        Sender sender = request -> {
+            urls.add(request.getUrl());
+            if (request.getUrl().contains("primary")) {
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException e) {
+                    loserStopped.countDown();
+                    throw new ConnectionError("interrupted");
+                }
+            }
+            return ok(request.getUrl());
+        };
+        HedgingPolicy policy = new HedgingPolicy().setDelay(50).setEndpoints("https://backup.example.com:8443");
+
+        long start = System.nanoTime();
+        Response response = policy.send(new Request("GET", "http://primary.example.com/items?id=1"), sender);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        assertEquals("https://backup.example.com:8443/items?id=1", response.getReason());
+        assertEquals(2, urls.size());
+        assertTrue(loserStopped.await(2, TimeUnit.SECONDS));
+        assertEquals(1, policy.getHedgeCount());
+        assertEquals(1, policy.getHedgeWinCount());
+    }
+
+    @Test
+    public void testFastRequestIsNotHedged() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        HedgingPolicy policy = new HedgingPolicy().setDelay(200);
+        Response response = policy.send(new Request("GET", "http://example.com/"), request -> {
+            calls.incrementAndGet();
+            return ok("fast");
+        });
+        assertEquals("fast", response.getReason());
+        assertEquals(1, calls.get());
+        assertEquals(0, policy.getHedgeCount());
+    }
+
+    @Test
+    public void testNonIdempotentRequestIsNotHedged() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        HedgingPolicy policy = new HedgingPolicy().setDelay(10);
+        policy.send(new Request("POST", "http://example.com/"), request -> {
+            calls.incrementAndGet();
+            sleep(100);
+            return ok("slow");
+        });
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testFailureWaitsForOtherAttempt() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        HedgingPolicy policy = new HedgingPolicy().setDelay(20);
+        Response response = policy.send(new Request("GET", "http://example.com/"), request -> {
+            if (calls.incrementAndGet() == 1) {
+                sleep(100);
+                throw new ConnectionError("reset");
+            }
+            sleep(200);
+            return ok("hedge");
+        });
+        assertEquals("hedge", response.getReason());
+
+        // With no attempt left the error is thrown
+        assertThrows(ConnectionError.class, () -> new HedgingPolicy().setDelay(1000).send(
+                new Request("GET", "http://example.com/"), request -> {
+                    throw new ConnectionError("refused");
+                }));
+    }
+
+    @Test
+    public void testBusyExecutorSendsOnCallerThread() throws Exception {
+        // One thread, no queue: the first attempt takes it, so its hedge is rejected
+        ExecutorService executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new SynchronousQueue<>());
+        try {
+            HedgingPolicy policy = new HedgingPolicy(executor).setDelay(10);
+            Response response = policy.send(new Request("GET", "http://example.com/"), request -> {
+                sleep(100);
+                return ok(Thread.currentThread().getName());
+            });
+            assertNotEquals(Thread.currentThread().getName(), response.getReason());
+            assertEquals(0, policy.getHedgeCount());
+
+            executor.shutdown();
+            response = policy.send(new Request("GET", "http://example.com/"),
+                    request -> ok(Thread.currentThread().getName()));
+            assertEquals(Thread.currentThread().getName(), response.getReason());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBudgetLimitsHedges() throws Exception {
+        HedgingPolicy policy = new HedgingPolicy().setDelay(1).setBudget(new RetryBudget(0, 0));
+        Sender slow = request -> {
+            sleep(10);
+            return ok("slow");
+        };
+        // The budget starts with a small allowance, then refuses
+        for (int i = 0; i < 20; i++) {
+            policy.send(new Request("GET", "http://example.com/"), slow);
+        }
+        assertEquals(10, policy.getHedgeCount());
+    }
+
+    @Test
+    public void testAdaptiveDelay() throws Exception {
+        HedgingPolicy policy = new HedgingPolicy().setDelay(500).setAdaptive(0.95).setBudget(null);
+        assertEquals(500, policy.getHedgeDelay());
+        AtomicInteger calls = new AtomicInteger();
+        Sender sender = request -> {
+            sleep(calls.incrementAndGet() % 10 == 0 ? 40 : 5);
+            return ok("done");
+        };
+        for (int i = 0; i < 32; i++) {
+            policy.send(new Request("GET", "http://example.com/"), sender);
+        }
+        long delay = policy.getHedgeDelay();
+        assertTrue(delay >= 5 && delay < 500, "delay " + delay);
+    }
+
+    @Test
+    public void testRebase() throws Exception {
+        assertEquals("https://b.example.com/x/y?q=1",
+                HedgingPolicy.rebase("http://a.example.com:8080/x/y?q=1", "https://b.example.com"));
+        assertEquals("http://b.example.com:81/",
+                HedgingPolicy.rebase("http://a.example.com", "http://b.example.com:81/ignored"));
+    }
+}
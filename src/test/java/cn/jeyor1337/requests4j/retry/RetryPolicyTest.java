@@ -0,0 +1,241 @@
+package cn.jeyor1337.requests4j.retry;
+
+import cn.jeyor1337.requests4j.Request;
+import cn.jeyor1337.requests4j.Response;
+import cn.jeyor1337.requests4j.Sender;
+import cn.jeyor1337.requests4j.Session;
+import cn.jeyor1337.requests4j.TestServer;
+import cn.jeyor1337.requests4j.exceptions.ConnectTimeout;
+import cn.jeyor1337.requests4j.exceptions.ConnectionError;
+import cn.jeyor1337.requests4j.exceptions.HTTPError;
+import cn.jeyor1337.requests4j.exceptions.ReadTimeout;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Retry policy tests, mostly against scripted senders.
+ */
+public class RetryPolicyTest {
+
+    private static Response response(int status, String retryAfter) {
+        Response response = new Response();
+        response.setStatusCode(status);
+        Map<String, List<String>> headers = new HashMap<>();
+        if (retryAfter != null) {
+            headers.put("Retry-After", Collections.singletonList(retryAfter));
+        }
+        response.setHeaders(headers);
+        return response;
+    }
+
+    private static RetryPolicy fastPolicy() {
+        return new RetryPolicy().setBaseDelay(1).setMaxDelay(5);
+    }
+
+    @Test
+    public void testRetriesStatusUntilSuccess() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Sender sender = request -> response(calls.incrementAndGet() < 3 ? 503 : 200, null);
+        RetryPolicy policy = fastPolicy();
+
+        Response response = policy.send(new Request("GET", "http://example.com/"), sender);
+        assertEquals(200, response.getStatusCode());
+        assertEquals(3, calls.get());
+        assertEquals(2, policy.getRetryCount());
+    }
+
+    @Test
+    public void testReturnsLastResponseWhenAttemptsRunOut() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Sender sender = request -> {
+            calls.incrementAndGet();
+            return response(502, null);
+        };
+
+        Response response = fastPolicy().setMaxAttempts(2).send(new Request("GET", "http://example.com/"), sender);
+        assertEquals(502, response.getStatusCode());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testStatusNotRetryable() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Sender sender = request -> {
+            calls.incrementAndGet();
+            return response(500, null);
+        };
+
+        assertEquals(500, fastPolicy().send(new Request("GET", "http://example.com/"), sender).getStatusCode());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testRetriesExceptionsAndRethrowsLast() {
+        AtomicInteger calls = new AtomicInteger();
+        Sender sender = request -> {
+            throw new ConnectionError("refused " + calls.incrementAndGet());
+        };
+
+        ConnectionError error = assertThrows(ConnectionError.class,
+                () -> fastPolicy().send(new Request("GET", "http://example.com/"), sender));
+        assertEquals("refused 3", error.getMessage());
+
+        calls.set(0);
+        Sender failing = request -> {
+            calls.incrementAndGet();
+            throw new HTTPError("bad");
+        };
+        assertThrows(HTTPError.class, () -> fastPolicy().send(new Request("GET", "http://example.com/"), failing));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testNonIdempotentRequests() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Sender unavailable = request -> {
+            calls.incrementAndGet();
+            return response(503, null);
+        };
+        Request post = new Request("POST", "http://example.com/");
+        assertEquals(503, fastPolicy().send(post, unavailable).getStatusCode());
+        assertEquals(1, calls.get());
+
+        // A read timeout may mean the server processed the request
+        calls.set(0);
+        Sender readTimeout = request -> {
+            calls.incrementAndGet();
+            throw new ReadTimeout("slow");
+        };
+        assertThrows(ReadTimeout.class, () -> fastPolicy().send(post, readTimeout));
+        assertEquals(1, calls.get());
+
+        // A connect timeout means it was never sent
+        calls.set(0);
+        Sender connectTimeout = request -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new ConnectTimeout("slow");
+            }
+            return response(200, null);
+        };
+        assertEquals(200, fastPolicy().send(post, connectTimeout).getStatusCode());
+        assertEquals(2, calls.get());
+
+        calls.set(0);
+        assertEquals(503, fastPolicy().setRetryNonIdempotent(true).send(post, unavailable).getStatusCode());
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void testRetryAfter() throws Exception {
+        assertEquals(-1, RetryPolicy.parseRetryAfter(null));
+        assertEquals(-1, RetryPolicy.parseRetryAfter("soon"));
+        assertEquals(120000, RetryPolicy.parseRetryAfter("120"));
+        String date = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now().plusSeconds(30));
+        long delay = RetryPolicy.parseRetryAfter(date);
+        assertTrue(delay > 28000 && delay <= 30000, "delay " + delay);
+
+        // The server's delay is honored
+        AtomicInteger calls = new AtomicInteger();
+        Sender sender = request -> calls.incrementAndGet() == 1 ? response(429, "1") : response(200, null);
+        long start = System.nanoTime();
+        assertEquals(200, fastPolicy().send(new Request("GET", "http://example.com/"), sender).getStatusCode());
+        assertTrue(System.nanoTime() - start >= 900_000_000L);
+
+        // Longer than we are willing to wait: return the response
+        calls.set(0);
+        Sender far = request -> {
+            calls.incrementAndGet();
+            return response(503, "3600");
+        };
+        assertEquals(503, fastPolicy().send(new Request("GET", "http://example.com/"), far).getStatusCode());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testInterruptedBackoffReturnsOpenResponse() throws Exception {
+        Sender sender = request -> {
+            Response response = response(503, null);
+            try {
+                response.readBody(new ByteArrayInputStream("busy".getBytes(StandardCharsets.UTF_8)), true);
+            } catch (IOException e) {
+                throw new ConnectionError(e.getMessage());
+            }
+            return response;
+        };
+
+        Thread.currentThread().interrupt();
+        Response response;
+        try {
+            response = new RetryPolicy().setBaseDelay(1000).send(new Request("GET", "http://example.com/"), sender);
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+        assertEquals(503, response.getStatusCode());
+        assertEquals("busy", response.getText());
+    }
+
+    @Test
+    public void testDecorrelatedJitter() {
+        RetryPolicy policy = new RetryPolicy().setBaseDelay(100).setMaxDelay(1000);
+        long delay = 100;
+        for (int i = 0; i < 100; i++) {
+            long next = policy.nextDelay(delay);
+            assertTrue(next >= 100 && next <= Math.min(1000, delay * 3), "delay " + next);
+            delay = next;
+        }
+    }
+
+    @Test
+    public void testBudgetCapsRetries() throws Exception {
+        RetryBudget budget = new RetryBudget(0.1, 0);
+        RetryPolicy policy = fastPolicy().setMaxAttempts(2).setBudget(budget);
+        AtomicInteger calls = new AtomicInteger();
+        Sender sender = request -> {
+            calls.incrementAndGet();
+            return response(503, null);
+        };
+
+        // The initial burst allowance is spent, after which only 10% of requests may retry
+        for (int i = 0; i < 200; i++) {
+            policy.send(new Request("GET", "http://example.com/"), sender);
+        }
+        long retries = calls.get() - 200;
+        assertTrue(retries <= 10 + 20 + 1, "retries " + retries);
+        assertTrue(budget.getExhaustedCount() > 0);
+        assertEquals(retries, policy.getRetryCount());
+    }
+
+    @Test
+    public void testSessionRetries() throws Exception {
+        AtomicInteger served = new AtomicInteger();
+        try (TestServer server = TestServer.loopback()) {
+            server.handle("/flaky", exchange -> {
+                byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(served.incrementAndGet() == 1 ? 503 : 200, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            });
+            server.start();
+            try (Session session = new Session()) {
+                session.setRetryPolicy(fastPolicy());
+                Response response = session.get(server.url("/flaky"));
+                assertEquals(200, response.getStatusCode());
+                assertEquals("ok", response.getText());
+                assertEquals(2, served.get());
+            }
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package cn.jeyor1337.requests4j.tls;
+
+import cn.jeyor1337.requests4j.Request;
+import cn.jeyor1337.requests4j.Response;
+import cn.jeyor1337.requests4j.Session;
+import cn.jeyor1337.requests4j.Transport;
+import cn.jeyor1337.requests4j.exceptions.RequestException;
+import cn.jeyor1337.requests4j.transport.HttpClientTransport;
+import cn.jeyor1337.requests4j.transport.NioTransport;
+import cn.jeyor1337.requests4j.transport.PooledTransport;
+import cn.jeyor1337.requests4j.transport.UrlConnectionTransport;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsExchange;
+import com.sun.net.httpserver.HttpsParameters;
+import com.sun.net.httpserver.HttpsServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TLS settings against local https servers using a generated self-signed certificate.
+ */
+public class TlsTest {
+    private static final String PASSWORD = "changeit";
+
+    private static Path keyStoreFile;
+    private static HttpsServer server;
+    private static HttpsServer mtlsServer;
+    private static int port;
+    private static int mtlsPort;
+
+    @BeforeAll
+    public static void startServers() throws Exception {
+        // Certificate valid for "localhost" only, so requests to 127.0.0.1 fail hostname verification
+        keyStoreFile = Files.createTempDirectory("requests4j-tls").resolve("server.p12");
+        Process keytool = new ProcessBuilder(
+                System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool",
+                "-genkeypair", "-alias", "server", "-keyalg", "EC", "-groupname", "secp256r1",
+                "-dname", "CN=localhost", "-ext", "SAN=dns:localhost", "-validity", "2",
+                "-storetype", "PKCS12", "-keystore", keyStoreFile.toString(),
+                "-storepass", PASSWORD, "-keypass", PASSWORD)
+                .redirectErrorStream(true)
+                .start();
+        keytool.getInputStream().readAllBytes();
+        assertEquals(0, keytool.waitFor(), "keytool failed");
+
+        KeyStore keyStore = KeyStore.getInstance(keyStoreFile.toFile(), PASSWORD.toCharArray());
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(keyStore, PASSWORD.toCharArray());
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        tmf.init(keyStore);
+        SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+
+        server = HttpsServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(serverContext));
+        server.createContext("/session", TlsTest::describeSession);
+        server.start();
+        port = server.getAddress().getPort();
+
+        mtlsServer = HttpsServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mtlsServer.setHttpsConfigurator(new HttpsConfigurator(serverContext) {
+            @Override
+            public void configure(HttpsParameters params) {
+                SSLParameters parameters = getSSLContext().getDefaultSSLParameters();
+                parameters.setNeedClientAuth(true);
+                params.setSSLParameters(parameters);
+            }
+        });
+        mtlsServer.createContext("/session", TlsTest::describeSession);
+        mtlsServer.start();
+        mtlsPort = mtlsServer.getAddress().getPort();
+    }
+
+    private static void describeSession(com.sun.net.httpserver.HttpExchange exchange) throws IOException {
+        SSLSession session = ((HttpsExchange) exchange).getSSLSession();
+        String text = session.getProtocol() + " " + new BigInteger(1, session.getId()).toString(16);
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+
+    @AfterAll
+    public static void stopServers() throws IOException {
+        server.stop(0);
+        mtlsServer.stop(0);
+        Files.deleteIfExists(keyStoreFile);
+        Files.deleteIfExists(keyStoreFile.getParent());
+    }
+
+    private static Transport[] transports() {
+        return new Transport[]{
+                new UrlConnectionTransport(),
+                new HttpClientTransport(),
+                new PooledTransport(),
+                new NioTransport(1)
+        };
+    }
+
+    private static TlsConfig trusting() throws IOException {
+        return new TlsConfig().setTrustStore(keyStoreFile.toString(), PASSWORD);
+    }
+
+    @Test
+    public void testTrustStore() throws Exception {
+        for (Transport transport : transports()) {
+            try (Session session = new Session().setTransport(transport).setTlsConfig(trusting())) {
+                Response response = session.get("https://localhost:" + port + "/session");
+                assertEquals(200, response.getStatusCode(), transport.getClass().getSimpleName());
+            }
+        }
+    }
+
+    @Test
+    public void testUntrustedCertificateFails() {
+        for (Transport transport : transports()) {
+            try (Session session = new Session().setTransport(transport)) {
+                assertThrows(RequestException.class,
+                        () -> session.get("https://localhost:" + port + "/session"),
+                        transport.getClass().getSimpleName());
+            }
+        }
+    }
+
+    @Test
+    public void testHostnameMismatch() throws Exception {
+        for (Transport transport : transports()) {
+            String name = transport.getClass().getSimpleName();
+            try (Session session = new Session().setTransport(transport).setTlsConfig(trusting())) {
+                assertThrows(RequestException.class,
+                        () -> session.get("https://127.0.0.1:" + port + "/session"), name);
+
+                session.setVerifySSL(false);
+                assertEquals(200, session.get("https://127.0.0.1:" + port + "/session").getStatusCode(), name);
+            }
+        }
+    }
+
+    @Test
+    public void testVerifyDisabled() throws Exception {
+        for (Transport transport : transports()) {
+            try (Session session = new Session().setTransport(transport).setVerifySSL(false)) {
+                Response response = session.get("https://localhost:" + port + "/session");
+                assertEquals(200, response.getStatusCode(), transport.getClass().getSimpleName());
+            }
+        }
+    }
+
+    @Test
+    public void testClientCertificate() throws Exception {
+        for (Transport transport : transports()) {
+            String name = transport.getClass().getSimpleName();
+            try (Session session = new Session().setTransport(transport).setTlsConfig(trusting())) {
+                assertThrows(RequestException.class,
+                        () -> session.get("https://localhost:" + mtlsPort + "/session"), name);
+
+                session.setTlsConfig(trusting().setKeyStore(keyStoreFile.toString(), PASSWORD));
+                assertEquals(200, session.get("https://localhost:" + mtlsPort + "/session").getStatusCode(), name);
+            }
+        }
+    }
+
+    @Test
+    public void testProtocols() throws Exception {
+        for (Transport transport : transports()) {
+            TlsConfig config = trusting().setProtocols("TLSv1.2");
+            try (Session session = new Session().setTransport(transport).setTlsConfig(config)) {
+                Response response = session.get("https://localhost:" + port + "/session");
+                assertTrue(response.getText().startsWith("TLSv1.2 "), transport.getClass().getSimpleName());
+            }
+        }
+    }
+
+    @Test
+    public void testContextsAreCached() throws Exception {
+        TlsConfig config = trusting().setProtocols("TLSv1.3").setSessionCacheSize(100).setSessionTimeout(600);
+        TlsContext context = TlsContext.of(config, true);
+        assertSame(context, TlsContext.of(config, true));
+        assertNotSame(context, TlsContext.of(config, false));
+        assertNotSame(context, TlsContext.of(trusting().setProtocols("TLSv1.2"), true));
+        assertEquals(100, context.getSSLContext().getClientSessionContext().getSessionCacheSize());
+        assertEquals(600, context.getSSLContext().getClientSessionContext().getSessionTimeout());
+
+        // Mutating the config afterwards does not affect the cached context
+        config.setSessionCacheSize(5);
+        assertNotSame(context, TlsContext.of(config, true));
+    }
+
+    @Test
+    public void testSessionResumption() throws Exception {
+        TlsConfig config = trusting().setProtocols("TLSv1.2");
+        PooledTransport transport = new PooledTransport();
+        try (Session session = new Session().setTransport(transport).setTlsConfig(config)) {
+            String first = session.get("https://localhost:" + port + "/session").getText();
+            transport.getPool().evictAll();
+            Request request = new Request("GET", "https://localhost:" + port + "/session");
+            String second = session.send(request).getText();
+            // A resumed TLS 1.2 session keeps its id across connections
+            assertEquals(first, second);
+            assertEquals(2, transport.getPool().getStats().getCreated());
+        }
+    }
+}